@@ -0,0 +1,113 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.ColumnBatchPool;
+import com.sanjith.dbmigrator.dao.RowCopier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Builds the batch container of a batch of rows from an in-memory row set, so the database is not measured: a
+ * List of Object[] as the original row copy did, a new {@link ColumnBatch} per batch, and a pooled ColumnBatch
+ * as the multithreaded migration does. Scores are per batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBuildBenchmark {
+
+    @Param({"NARROW", "MIXED", "WIDE"})
+    public BenchmarkDatabase.Shape shape;
+
+    @Param({"1000", "10000"})
+    public int batchSize;
+
+    private BenchmarkDatabase database;
+
+    private CachedRowSet rowSet;
+
+    private RowCopier rowCopier;
+
+    private ColumnBatchPool batchPool;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(shape, batchSize);
+        rowCopier = new RowCopier(database.getColumnNames(), database.getColumnMetaData(), database.getTypeArr());
+        batchPool = new ColumnBatchPool(rowCopier, batchSize, 2);
+        rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        try (Connection connection = database.getDataSource().getConnection(); Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + rowCopier.getSelectList() + " FROM SOURCE_TABLE")) {
+            rowSet.populate(rs);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        rowSet.close();
+        rowCopier.cleanup();
+        database.close();
+    }
+
+    @Benchmark
+    public List<Object[]> objectArrayList() throws SQLException {
+        rowSet.beforeFirst();
+        int columnCount = rowCopier.getColumnCount();
+        List<Object[]> valueList = new ArrayList<>(batchSize);
+        while (rowSet.next()) {
+            Object[] values = new Object[columnCount];
+            for (int c = 0; c < columnCount; c++) {
+                values[c] = rowSet.getObject(c + 1);
+            }
+            valueList.add(values);
+        }
+        return valueList;
+    }
+
+    @Benchmark
+    public long newColumnBatch() throws SQLException {
+        rowSet.beforeFirst();
+        ColumnBatch batch = new ColumnBatch(rowCopier, batchSize);
+        while (rowSet.next()) {
+            batch.readRow(rowSet);
+        }
+        return batch.estimateBytes();
+    }
+
+    @Benchmark
+    public long pooledColumnBatch() throws SQLException {
+        rowSet.beforeFirst();
+        ColumnBatch batch = batchPool.acquire();
+        while (rowSet.next()) {
+            batch.readRow(rowSet);
+        }
+        long bytes = batch.estimateBytes();
+        batch.release();
+        return bytes;
+    }
+}
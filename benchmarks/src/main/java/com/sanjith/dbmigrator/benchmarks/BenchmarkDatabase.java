@@ -0,0 +1,150 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory H2 database of a benchmark. Holds a source table of the chosen shape filled with generated rows and an
+ * empty destination table of the same columns
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    /**
+     * Column mixes of the benchmark tables
+     */
+    public enum Shape {
+        /**
+         * Few fixed width columns, about 40 bytes a row
+         */
+        NARROW("ID BIGINT PRIMARY KEY, QTY INT, PRICE DECIMAL(12, 2), CREATED DATE",
+                "X, MOD(X, 1000), X * 0.25, DATEADD('DAY', MOD(X, 3650), DATE '2015-01-01')"),
+        /**
+         * Numeric, character, date and timestamp columns with some NULL values
+         */
+        MIXED("ID BIGINT PRIMARY KEY, NAME VARCHAR(64), CODE CHAR(8), AMOUNT DECIMAL(15, 4), RATIO DOUBLE, "
+                + "ACTIVE SMALLINT, CREATED DATE, UPDATED TIMESTAMP, NOTE VARCHAR(256)",
+                "X, 'CUSTOMER ' || X, LPAD(CAST(MOD(X, 99999) AS VARCHAR), 8, '0'), X / 7.0, X / 3.0, MOD(X, 2), "
+                        + "DATEADD('DAY', MOD(X, 3650), DATE '2015-01-01'), TIMESTAMP '2020-01-01 00:00:00', "
+                        + "CASEWHEN(MOD(X, 10) = 0, NULL, REPEAT('N', MOD(X, 200)))"),
+        /**
+         * Wide character rows of about 2 KB
+         */
+        WIDE("ID BIGINT PRIMARY KEY, C1 VARCHAR(200), C2 VARCHAR(200), C3 VARCHAR(200), C4 VARCHAR(200), "
+                + "C5 VARCHAR(200), C6 VARCHAR(200), C7 VARCHAR(200), C8 VARCHAR(200), C9 VARCHAR(200), C10 VARCHAR(200)",
+                "X, REPEAT('A', 200), REPEAT('B', 200), REPEAT('C', 200), REPEAT('D', 200), REPEAT('E', 200), "
+                        + "REPEAT('F', 200), REPEAT('G', 200), REPEAT('H', 200), REPEAT('I', 200), REPEAT('J', 200)");
+
+        private final String columns;
+
+        private final String values;
+
+        Shape(String columns, String values) {
+            this.columns = columns;
+            this.values = values;
+        }
+    }
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final HikariDataSource dataSource;
+
+    private final LinkedHashMap<String, Integer> columnMetaData = new LinkedHashMap<>();
+
+    /**
+     * Creates the database and fills the source table
+     *
+     * @param shape Column mix of the tables
+     * @param rows  No. of source rows
+     * @throws SQLException if the tables could not be created
+     */
+    public BenchmarkDatabase(Shape shape, int rows) throws SQLException {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:bench" + SEQUENCE.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPassword("");
+        dataSource.setMaximumPoolSize(4);
+
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE SOURCE_TABLE (" + shape.columns + ")");
+            // no key on the destination, so repeated inserts of the same rows do not fail
+            stmt.execute("CREATE TABLE DEST_TABLE (" + shape.columns.replace(" PRIMARY KEY", "") + ")");
+            stmt.execute("INSERT INTO SOURCE_TABLE SELECT " + shape.values + " FROM SYSTEM_RANGE(1, " + rows + ")");
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM SOURCE_TABLE WHERE 1 = 0")) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                for (int c = 1; c <= metaData.getColumnCount(); c++) {
+                    columnMetaData.put(metaData.getColumnName(c), metaData.getColumnType(c));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the data source of the database
+     * @return pooled data source
+     */
+    public HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Get a template of the database
+     * @return jdbc template
+     */
+    public JdbcTemplate getTemplate() {
+        return new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Get the column names and types of the tables
+     * @return Key - column name in ordinal order. Value - Column datatype in SQL type form java.sql.Types
+     */
+    public Map<String, Integer> getColumnMetaData() {
+        return columnMetaData;
+    }
+
+    /**
+     * Get the column names of the tables
+     * @return column names in ordinal order
+     */
+    public LinkedHashSet<String> getColumnNames() {
+        return new LinkedHashSet<>(columnMetaData.keySet());
+    }
+
+    /**
+     * Get the column types of the tables
+     * @return column types in java.sql.Types
+     */
+    public int[] getTypeArr() {
+        return columnMetaData.values().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Removes all rows of the destination table
+     * @throws SQLException if the table could not be truncated
+     */
+    public void truncateDestination() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("TRUNCATE TABLE DEST_TABLE");
+        }
+    }
+
+    @Override
+    public void close() {
+        try (Connection connection = dataSource.getConnection(); Statement stmt = connection.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        } catch (SQLException e) {
+            // database already closed
+        }
+        dataSource.close();
+    }
+}
@@ -0,0 +1,105 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.RowCopier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the source table through a result set: getObject by column name as the original row copy did, getObject by
+ * column index, and the typed getters of {@link ColumnBatch#readRow(ResultSet)}. Scores are per table scan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractBenchmark {
+
+    @Param({"NARROW", "MIXED", "WIDE"})
+    public BenchmarkDatabase.Shape shape;
+
+    @Param({"10000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+
+    private Connection connection;
+
+    private String[] columnNames;
+
+    private RowCopier rowCopier;
+
+    private ColumnBatch batch;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(shape, rows);
+        connection = database.getDataSource().getConnection();
+        columnNames = database.getColumnNames().toArray(new String[0]);
+        rowCopier = new RowCopier(database.getColumnNames(), database.getColumnMetaData(), database.getTypeArr());
+        batch = new ColumnBatch(rowCopier, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        rowCopier.cleanup();
+        connection.close();
+        database.close();
+    }
+
+    @Benchmark
+    public void getObjectByName(Blackhole bh) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT * FROM SOURCE_TABLE")) {
+            while (rs.next()) {
+                for (String column : columnNames) {
+                    bh.consume(rs.getObject(column));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void getObjectByIndex(Blackhole bh) throws SQLException {
+        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery("SELECT * FROM SOURCE_TABLE")) {
+            int columnCount = columnNames.length;
+            while (rs.next()) {
+                for (int c = 1; c <= columnCount; c++) {
+                    bh.consume(rs.getObject(c));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int columnBatchReadRow() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + rowCopier.getSelectList() + " FROM SOURCE_TABLE")) {
+            while (rs.next()) {
+                batch.readRow(rs);
+            }
+        }
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+}
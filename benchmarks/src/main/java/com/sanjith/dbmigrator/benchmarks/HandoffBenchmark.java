@@ -0,0 +1,151 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.sanjith.dbmigrator.dao.BulkWriter;
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.ColumnBatchPool;
+import com.sanjith.dbmigrator.dao.CommitPolicy;
+import com.sanjith.dbmigrator.dao.RowBatch;
+import com.sanjith.dbmigrator.dao.RowCopier;
+import com.sanjith.dbmigrator.dao.WriterSession;
+import com.sanjith.dbmigrator.service.DataMigrator;
+import com.sanjith.dbmigrator.service.MigrationPipeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off of batches to the writers with a writer which discards the rows, so only the overhead is measured:
+ * {@link DataMigrator.InsertService} on a writer session, and batches passed through the extract, convert and load
+ * queues of a {@link MigrationPipeline}. Scores are per batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandoffBenchmark {
+
+    /**
+     * No. of batches passed through the pipeline per invocation
+     */
+    private static final int PIPELINE_BATCHES = 1000;
+
+    /**
+     * Bulk writer which counts the rows without writing them
+     */
+    private static class DiscardingWriter implements BulkWriter {
+        @Override
+        public String getName() {
+            return "discard";
+        }
+
+        @Override
+        public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) {
+            // nothing to prepare
+        }
+
+        @Override
+        public int write(ColumnBatch batch) {
+            return batch.size();
+        }
+
+        @Override
+        public void close() {
+            // nothing to release
+        }
+    }
+
+    @Param({"MIXED"})
+    public BenchmarkDatabase.Shape shape;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"1", "4"})
+    public int loaderThreads;
+
+    private BenchmarkDatabase database;
+
+    private RowCopier rowCopier;
+
+    private ColumnBatch batch;
+
+    private ColumnBatchPool batchPool;
+
+    private WriterSession session;
+
+    private DataMigrator migrator;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(shape, batchSize);
+        LinkedHashSet<String> columnNames = database.getColumnNames();
+        int[] typeArr = database.getTypeArr();
+        rowCopier = new RowCopier(columnNames, database.getColumnMetaData(), typeArr);
+        batch = new ColumnBatch(rowCopier, batchSize);
+        batchPool = new ColumnBatchPool(rowCopier, batchSize, 16);
+        try (Connection connection = database.getDataSource().getConnection(); Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + rowCopier.getSelectList() + " FROM SOURCE_TABLE")) {
+            while (rs.next()) {
+                batch.readRow(rs);
+            }
+        }
+        session = new WriterSession(database.getDataSource().getConnection(), new DiscardingWriter(), "DEST_TABLE",
+                columnNames, typeArr, CommitPolicy.TABLE, 1);
+        migrator = new DataMigrator();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        rowCopier.cleanup();
+        database.close();
+    }
+
+    @Benchmark
+    public int insertService() throws Exception {
+        return migrator.new InsertService(session, batch, batch.estimateBytes(), 1).call();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_BATCHES)
+    public long pipeline() throws InterruptedException {
+        MigrationPipeline pipeline = new MigrationPipeline("bench", 4, 512L * 1024L * 1024L, 1, loaderThreads);
+        pipeline.start(rowBatch -> rowBatch, () -> new MigrationPipeline.Loader() {
+            @Override
+            public int load(RowBatch rowBatch) {
+                return rowBatch.size();
+            }
+
+            @Override
+            public void finish(boolean success) {
+                // nothing to commit
+            }
+        }, rows -> { });
+        for (int i = 0; i < PIPELINE_BATCHES; i++) {
+            pipeline.emit(new RowBatch(i, null, i, batchPool.acquire(), null));
+        }
+        pipeline.finishExtraction();
+        pipeline.awaitCompletion();
+        return pipeline.getCompletedBatches();
+    }
+}
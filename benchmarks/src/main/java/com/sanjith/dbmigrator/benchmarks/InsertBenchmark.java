@@ -0,0 +1,154 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.Destination;
+import com.sanjith.dbmigrator.dao.InsertPlan;
+import com.sanjith.dbmigrator.dao.JdbcBatchWriter;
+import com.sanjith.dbmigrator.dao.RowCopier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statement construction, binding and execution of a batch: {@link Destination#insertData} with a List of Object[],
+ * the {@link JdbcBatchWriter} of the writer sessions with one or many rows per statement, binding a
+ * {@link ColumnBatch} without executing, and building the insert SQL. Scores are per batch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    @Param({"NARROW", "MIXED", "WIDE"})
+    public BenchmarkDatabase.Shape shape;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    @Param({"1", "100"})
+    public int rowsPerStatement;
+
+    private BenchmarkDatabase database;
+
+    private Connection connection;
+
+    private LinkedHashSet<String> columnNames;
+
+    private int[] typeArr;
+
+    private RowCopier rowCopier;
+
+    private ColumnBatch batch;
+
+    private List<Object[]> valueList;
+
+    private Destination destination;
+
+    private InsertPlan plan;
+
+    private JdbcBatchWriter writer;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        database = new BenchmarkDatabase(shape, batchSize);
+        columnNames = database.getColumnNames();
+        typeArr = database.getTypeArr();
+        rowCopier = new RowCopier(columnNames, database.getColumnMetaData(), typeArr);
+        batch = new ColumnBatch(rowCopier, batchSize);
+        valueList = new ArrayList<>(batchSize);
+
+        connection = database.getDataSource().getConnection();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + rowCopier.getSelectList() + " FROM SOURCE_TABLE")) {
+            while (rs.next()) {
+                batch.readRow(rs);
+                Object[] values = new Object[typeArr.length];
+                for (int c = 0; c < typeArr.length; c++) {
+                    values[c] = rs.getObject(c + 1);
+                }
+                valueList.add(values);
+            }
+        }
+
+        destination = new Destination();
+        setField(destination, "tableName", "DEST_TABLE");
+        setField(destination, "rowsPerStatement", rowsPerStatement);
+        setField(destination, "destination", database.getDataSource());
+        setField(destination, "template", database.getTemplate());
+
+        plan = new InsertPlan("DEST_TABLE", columnNames, rowsPerStatement);
+        writer = new JdbcBatchWriter(plan);
+        writer.open(connection, "DEST_TABLE", columnNames, typeArr);
+    }
+
+    @Setup(Level.Iteration)
+    public void truncate() throws SQLException {
+        database.truncateDestination();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        writer.close();
+        connection.close();
+        rowCopier.cleanup();
+        database.close();
+    }
+
+    @Benchmark
+    public int destinationInsertData() {
+        return destination.insertData(columnNames, valueList, typeArr);
+    }
+
+    @Benchmark
+    public int jdbcBatchWriter() throws SQLException {
+        return writer.write(batch);
+    }
+
+    @Benchmark
+    public int bindColumnBatch() throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement(plan.getSql(1))) {
+            for (int row = 0; row < batch.size(); row++) {
+                batch.bind(stmt, row, 1);
+                stmt.addBatch();
+            }
+            stmt.clearBatch();
+        }
+        return batch.size();
+    }
+
+    @Benchmark
+    public String buildInsertSql() {
+        return new InsertPlan("DEST_TABLE", columnNames, rowsPerStatement).getSql(rowsPerStatement);
+    }
+
+    private static void setField(Object target, String name, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,329 @@
+package com.sanjith.dbmigrator.benchmarks;
+
+import com.sanjith.dbmigrator.DbMigratorApplication;
+import com.sanjith.dbmigrator.metrics.MetricsRegistry;
+import com.sanjith.dbmigrator.metrics.Timer;
+import com.sanjith.dbmigrator.service.MigrationJob;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * End-to-end throughput harness. Generates a source table of a configurable row count, column count, width and type
+ * mix in an in-memory H2 database and migrates it to an empty table of a second H2 database once per mode, through
+ * {@link MigrationJob} and so DataMigrator.migrateDataST or migrateDataMT. Every run is measured for rows/s, MB/s of
+ * the generated data, peak heap, GC time and the p50/p99 latency of the batches from the migrator.execute timer of
+ * the writer, and the runs are written to a JSON report
+ * <p>
+ * Usage: java -cp target/benchmarks.jar com.sanjith.dbmigrator.benchmarks.ThroughputHarness [options] [application args]
+ * <ul>
+ *     <li>--rows=N          source rows, default 200000</li>
+ *     <li>--columns=N       columns besides the ID key, default 10</li>
+ *     <li>--width=N         length of character and LOB values, default 32</li>
+ *     <li>--mix=T,...       column types cycled over the columns: INT, BIGINT, DECIMAL, DOUBLE, VARCHAR, DATE,
+ *                           TIMESTAMP, CLOB, BLOB. Default INT,DECIMAL,VARCHAR,DATE,TIMESTAMP</li>
+ *     <li>--modes=M,...     modes to run, default ST,MT</li>
+ *     <li>--mode.NAME=ARGS  defines a mode by its application arguments, e.g. --mode.MT8="--multi-threaded=true --partitions=8"</li>
+ *     <li>--runs=N          runs of every mode, default 1</li>
+ *     <li>--report=FILE     JSON report, default throughput-report.json</li>
+ * </ul>
+ * Other arguments, e.g. --batch-size=5000 or --pool-size=4, are passed to the application of every run
+ */
+public class ThroughputHarness {
+
+    private static final String SOURCE_URL = "jdbc:h2:mem:harness_source;DB_CLOSE_DELAY=-1";
+
+    private static final String DESTINATION_URL = "jdbc:h2:mem:harness_destination;DB_CLOSE_DELAY=-1";
+
+    private static final String TABLE = "HARNESS_TABLE";
+
+    /**
+     * Application context of a run: the application without its command line runner
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @ComponentScan(basePackages = "com.sanjith.dbmigrator",
+            excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = DbMigratorApplication.class))
+    static class HarnessApplication {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rows", "200000");
+        options.put("columns", "10");
+        options.put("width", "32");
+        options.put("mix", "INT,DECIMAL,VARCHAR,DATE,TIMESTAMP");
+        options.put("modes", "ST,MT");
+        options.put("runs", "1");
+        options.put("report", "throughput-report.json");
+        options.put("mode.ST", "--multi-threaded=false");
+        options.put("mode.MT", "--multi-threaded=true");
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            String key = arg.startsWith("--") && arg.contains("=") ? arg.substring(2, arg.indexOf('=')) : null;
+            if (key != null && (options.containsKey(key) || key.startsWith("mode."))) {
+                options.put(key, arg.substring(arg.indexOf('=') + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        int rows = Integer.parseInt(options.get("rows"));
+        int columns = Integer.parseInt(options.get("columns"));
+        int width = Integer.parseInt(options.get("width"));
+        String[] mix = options.get("mix").toUpperCase(Locale.ROOT).split(",");
+        System.setProperty("logfilename", "throughput_harness");
+
+        long rowBytes = createTables(rows, columns, width, mix);
+        double dataMb = rows * (double) rowBytes / (1024 * 1024);
+        System.out.println("Generated " + rows + " rows of about " + rowBytes + " bytes (" + String.format(Locale.ROOT, "%.1f", dataMb) + " MB)");
+
+        List<String> runReports = new ArrayList<>();
+        for (String mode : options.get("modes").split(",")) {
+            String modeArgs = options.get("mode." + mode.trim());
+            if (modeArgs == null) {
+                throw new IllegalArgumentException("Unknown mode " + mode + ", define it with --mode." + mode + "=ARGS");
+            }
+            for (int run = 1; run <= Integer.parseInt(options.get("runs")); run++) {
+                runReports.add(runMode(mode.trim(), run, modeArgs, applicationArgs, rows, dataMb));
+            }
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"rows\": ").append(rows).append(",\n");
+        json.append("  \"columns\": ").append(columns).append(",\n");
+        json.append("  \"width\": ").append(width).append(",\n");
+        json.append("  \"mix\": \"").append(String.join(",", mix)).append("\",\n");
+        json.append("  \"rowBytes\": ").append(rowBytes).append(",\n");
+        json.append("  \"applicationArgs\": \"").append(escape(String.join(" ", applicationArgs))).append("\",\n");
+        json.append("  \"runs\": [\n").append(String.join(",\n", runReports)).append("\n  ]\n");
+        json.append("}\n");
+        Files.write(Paths.get(options.get("report")), json.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Report written to " + options.get("report"));
+    }
+
+    /**
+     * Creates the source table filled with generated rows and the empty destination table
+     * @return approximate size of a row in bytes
+     */
+    private static long createTables(int rows, int columns, int width, String[] mix) throws SQLException {
+        StringBuilder ddl = new StringBuilder("ID BIGINT PRIMARY KEY");
+        StringBuilder values = new StringBuilder("X");
+        long rowBytes = 8;
+        for (int i = 1; i <= columns; i++) {
+            String type = mix[(i - 1) % mix.length].trim();
+            String column = "C" + i;
+            switch (type) {
+                case "INT":
+                    ddl.append(", ").append(column).append(" INT");
+                    values.append(", MOD(X * ").append(i).append(", 100000)");
+                    rowBytes += 4;
+                    break;
+                case "BIGINT":
+                    ddl.append(", ").append(column).append(" BIGINT");
+                    values.append(", X * 1000 + ").append(i);
+                    rowBytes += 8;
+                    break;
+                case "DECIMAL":
+                    ddl.append(", ").append(column).append(" DECIMAL(15, 4)");
+                    values.append(", X / 7.0 + ").append(i);
+                    rowBytes += 8;
+                    break;
+                case "DOUBLE":
+                    ddl.append(", ").append(column).append(" DOUBLE");
+                    values.append(", X / 3.0");
+                    rowBytes += 8;
+                    break;
+                case "VARCHAR":
+                    ddl.append(", ").append(column).append(" VARCHAR(").append(width).append(")");
+                    values.append(", REPEAT(CHAR(65 + MOD(X + ").append(i).append(", 26)), ").append(width).append(")");
+                    rowBytes += width;
+                    break;
+                case "DATE":
+                    ddl.append(", ").append(column).append(" DATE");
+                    values.append(", DATEADD('DAY', MOD(X, 3650), DATE '2015-01-01')");
+                    rowBytes += 4;
+                    break;
+                case "TIMESTAMP":
+                    ddl.append(", ").append(column).append(" TIMESTAMP");
+                    values.append(", DATEADD('SECOND', X, TIMESTAMP '2020-01-01 00:00:00')");
+                    rowBytes += 8;
+                    break;
+                case "CLOB":
+                    ddl.append(", ").append(column).append(" CLOB");
+                    values.append(", REPEAT('L', ").append(width).append(")");
+                    rowBytes += width;
+                    break;
+                case "BLOB":
+                    ddl.append(", ").append(column).append(" BLOB");
+                    values.append(", CAST(REPEAT('B', ").append(width).append(") AS VARBINARY)");
+                    rowBytes += width;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column type " + type);
+            }
+        }
+
+        try (Connection connection = DriverManager.getConnection(SOURCE_URL, "sa", ""); Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + TABLE);
+            stmt.execute("CREATE TABLE " + TABLE + " (" + ddl + ")");
+            stmt.execute("INSERT INTO " + TABLE + " SELECT " + values + " FROM SYSTEM_RANGE(1, " + rows + ")");
+        }
+        try (Connection connection = DriverManager.getConnection(DESTINATION_URL, "sa", ""); Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + TABLE);
+            stmt.execute("CREATE TABLE " + TABLE + " (" + ddl + ")");
+        }
+        return rowBytes;
+    }
+
+    /**
+     * Migrates the source table once in a fresh application context and measures the run
+     * @return JSON object of the run
+     */
+    private static String runMode(String mode, int run, String modeArgs, List<String> applicationArgs, int rows, double dataMb) throws SQLException {
+        List<String> runArgs = new ArrayList<>(Arrays.asList(
+                "--src-url=" + SOURCE_URL, "--dest-url=" + DESTINATION_URL,
+                "--source.driver-class-name=org.h2.Driver", "--destination.driver-class-name=org.h2.Driver",
+                "--source.username=sa", "--source.password=", "--destination.username=sa", "--destination.password=",
+                "--src-schema=PUBLIC", "--dest-schema=PUBLIC", "--src-tables=" + TABLE, "--dest-tables=" + TABLE,
+                "--checkpoint=false", "--metadata-cache-dir=", "--banner=false"));
+        runArgs.addAll(Arrays.asList(modeArgs.trim().split("\\s+")));
+        runArgs.addAll(applicationArgs);
+        System.out.println("Running " + mode + " #" + run + ": " + String.join(" ", modeArgs));
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcMillis = getGcMillis();
+        long gcCount = getGcCount();
+
+        boolean success;
+        long elapsedNanos;
+        Timer latency = null;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(HarnessApplication.class)
+                .web(WebApplicationType.NONE).run(runArgs.toArray(new String[0]))) {
+            MigrationJob job = context.getBean(MigrationJob.class);
+            long startTime = System.nanoTime();
+            success = job.run();
+            elapsedNanos = System.nanoTime() - startTime;
+            // a fresh context has a fresh registry, the timers only hold this run
+            for (Timer timer : context.getBean(MetricsRegistry.class).getTimers("migrator.execute")) {
+                if (latency == null || timer.getCount() > latency.getCount()) {
+                    latency = timer;
+                }
+            }
+        }
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        gcMillis = getGcMillis() - gcMillis;
+        gcCount = getGcCount() - gcCount;
+        long migratedRows = countAndClearDestination();
+        double seconds = elapsedNanos / 1e9;
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+        report.put("run", run);
+        report.put("args", String.join(" ", modeArgs));
+        report.put("success", success && migratedRows == rows);
+        report.put("rows", migratedRows);
+        report.put("seconds", seconds);
+        report.put("rowsPerSecond", migratedRows / seconds);
+        report.put("mbPerSecond", dataMb / seconds);
+        report.put("peakHeapMb", peakHeap / (1024.0 * 1024.0));
+        report.put("gcMillis", gcMillis);
+        report.put("gcCount", gcCount);
+        report.put("batches", latency == null ? 0 : latency.getCount());
+        report.put("batchLatencyP50Millis", latency == null ? 0.0 : latency.getPercentileSeconds(50) * 1000);
+        report.put("batchLatencyP99Millis", latency == null ? 0.0 : latency.getPercentileSeconds(99) * 1000);
+        report.put("batchLatencyMaxMillis", latency == null ? 0.0 : latency.getMaxSeconds() * 1000);
+
+        StringBuilder json = new StringBuilder("    {");
+        String separator = "";
+        for (Map.Entry<String, Object> entry : report.entrySet()) {
+            json.append(separator).append('"').append(entry.getKey()).append("\": ");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                json.append('"').append(escape((String) value)).append('"');
+            } else if (value instanceof Double) {
+                json.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+            } else {
+                json.append(value);
+            }
+            separator = ", ";
+        }
+        json.append("}");
+        System.out.println(json.toString().trim());
+        return json.toString();
+    }
+
+    private static long countAndClearDestination() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(DESTINATION_URL, "sa", ""); Statement stmt = connection.createStatement()) {
+            long count;
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + TABLE)) {
+                rs.next();
+                count = rs.getLong(1);
+            }
+            stmt.execute("TRUNCATE TABLE " + TABLE);
+            return count;
+        }
+    }
+
+    /**
+     * Get the accumulated collection time of all collectors. Approximates the GC pause time, concurrent collectors
+     * also report time spent beside the application threads
+     */
+    private static long getGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long getGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -14,6 +14,33 @@ Options:
 --batch-size Batch Size [OPTIONAL]
 --multithread Enable multithreaded insert [OPTIONAL]
 --pool-size Thread Pool size [OPTIONAL]
+--partitions No. of key ranges read in parallel from the source table in multithreaded mode [OPTIONAL]
+--resume Continue from the checkpoint of a failed multithreaded run [OPTIONAL]
+--bulk-writer Destination writer: auto, jdbc, mysql-load, oracle-append, db2-load [OPTIONAL]
+--table-parallelism No. of tables migrated concurrently, tables referenced by foreign keys are migrated first [OPTIONAL]
+--adaptive-batch Adapt the batch size to the insert throughput, starting at the batch size [OPTIONAL]
+--adaptive-writers Adapt the no. of concurrent writers to the destination load in multithreaded mode [OPTIONAL]
+--extract-only Extract the source tables into snapshot files in --snapshot-dir without loading them [OPTIONAL]
+--load-only Load the destination tables from the snapshot files of the source tables in --snapshot-dir [OPTIONAL]
+--snapshot-dir Directory of the snapshot files, default ./snapshots [OPTIONAL]
+--snapshot-compression Compression of the snapshot files: none, deflate [OPTIONAL]
+--watermark-column Copy only the rows past the watermark of the last run on this monotonic key or last modified NOT NULL column [OPTIONAL]
+--apply-mode Apply rows to the destination as insert, upsert or merge, default insert [OPTIONAL]
+--fast-truncate Clear the destination tables with TRUNCATE instead of DELETE where the database allows it [OPTIONAL]
+--verify Compare the destination tables with the source tables by key range checksums instead of migrating [OPTIONAL]
+--verify-dir Directory of the verification reports, default ./verify [OPTIONAL]
+--verify-leaf-rows Max. rows of a differing key range compared row by row, default 1000 [OPTIONAL]
+--skip-exact-count Size the progress bar by the catalog statistics of the source tables only, without counting the rows [OPTIONAL]
+--defer-indexes Drop non-unique indexes and foreign keys of the destination tables before a full load and rebuild them after [OPTIONAL]
+--reject-rows Write rows refused by the destination to a reject file and continue, instead of failing the migration, not with merge apply mode [OPTIONAL]
+--reject-dir Directory of the reject files, default ./rejects [OPTIONAL]
+--max-rejects Max. rows rejected per table before the migration fails, default no limit [OPTIONAL]
+--export-format Export the source tables into columnar files instead of destination tables: arrow [OPTIONAL]
+--export-dir Directory of the exported files, default ./export [OPTIONAL]
+--export-file-mb Size in MB after which an export file rolls over to the next part, default 256 [OPTIONAL]
+--metrics-port Serve Prometheus metrics of the migration stages on http://HOST:PORT/metrics [OPTIONAL]
+--metrics-file Write a JSON snapshot of the metrics to the file every 10 seconds and at exit [OPTIONAL]
+--fast-start Start from the AOT context and class data sharing archive in ./fast-start (mvn -P fast-start package) [OPTIONAL]
 "
 
 print_usage() {
@@ -28,6 +55,33 @@ ARGUMENT_LIST=(
   "config-path:"
   "multithread"
   "pool-size:"
+  "partitions:"
+  "resume"
+  "bulk-writer:"
+  "table-parallelism:"
+  "adaptive-batch"
+  "adaptive-writers"
+  "extract-only"
+  "load-only"
+  "snapshot-dir:"
+  "snapshot-compression:"
+  "watermark-column:"
+  "apply-mode:"
+  "fast-truncate"
+  "verify"
+  "verify-dir:"
+  "verify-leaf-rows:"
+  "skip-exact-count"
+  "defer-indexes"
+  "reject-rows"
+  "reject-dir:"
+  "max-rejects:"
+  "export-format:"
+  "export-dir:"
+  "export-file-mb:"
+  "metrics-port:"
+  "metrics-file:"
+  "fast-start"
   "help"
 )
 
@@ -68,6 +122,114 @@ while [ : ]; do
     POOL_SIZE=$2
     shift 2
     ;;
+  --partitions)
+    PARTITIONS=$2
+    shift 2
+    ;;
+  --resume)
+    RESUME=true
+    shift
+    ;;
+  --bulk-writer)
+    BULK_WRITER=$2
+    shift 2
+    ;;
+  --table-parallelism)
+    TABLE_PARALLELISM=$2
+    shift 2
+    ;;
+  --adaptive-batch)
+    ADAPTIVE_BATCH=true
+    shift
+    ;;
+  --adaptive-writers)
+    ADAPTIVE_WRITERS=true
+    shift
+    ;;
+  --extract-only)
+    EXTRACT_ONLY=true
+    shift
+    ;;
+  --load-only)
+    LOAD_ONLY=true
+    shift
+    ;;
+  --snapshot-dir)
+    SNAPSHOT_DIR=$2
+    shift 2
+    ;;
+  --snapshot-compression)
+    SNAPSHOT_COMPRESSION=$2
+    shift 2
+    ;;
+  --watermark-column)
+    WATERMARK_COLUMN=$2
+    shift 2
+    ;;
+  --apply-mode)
+    APPLY_MODE=$2
+    shift 2
+    ;;
+  --fast-truncate)
+    FAST_TRUNCATE=true
+    shift
+    ;;
+  --verify)
+    VERIFY=true
+    shift
+    ;;
+  --verify-dir)
+    VERIFY_DIR=$2
+    shift 2
+    ;;
+  --verify-leaf-rows)
+    VERIFY_LEAF_ROWS=$2
+    shift 2
+    ;;
+  --skip-exact-count)
+    EXACT_COUNT=false
+    shift
+    ;;
+  --defer-indexes)
+    DEFER_INDEXES=true
+    shift
+    ;;
+  --reject-rows)
+    REJECT_ROWS=true
+    shift
+    ;;
+  --reject-dir)
+    REJECT_DIR=$2
+    shift 2
+    ;;
+  --max-rejects)
+    MAX_REJECTS=$2
+    shift 2
+    ;;
+  --export-format)
+    EXPORT_FORMAT=$2
+    shift 2
+    ;;
+  --export-dir)
+    EXPORT_DIR=$2
+    shift 2
+    ;;
+  --export-file-mb)
+    EXPORT_FILE_MB=$2
+    shift 2
+    ;;
+  --metrics-port)
+    METRICS_PORT=$2
+    shift 2
+    ;;
+  --metrics-file)
+    METRICS_FILE=$2
+    shift 2
+    ;;
+  --fast-start)
+    FAST_START=true
+    shift
+    ;;
   --)
     shift
     break
@@ -85,12 +247,88 @@ if [[ -z $SRC_TABLE ]]; then
 fi
 
 if [[ -n $BATCH_SIZE ]]; then
-  BATCHED="false"
+  BATCHED="true"
 else
-  BATCHED=10000
+  BATCH_SIZE=10000
   BATCHED="false"
 fi
 
+if [[ -z $ADAPTIVE_BATCH ]]; then
+  ADAPTIVE_BATCH=false
+fi
+
+if [[ -z $ADAPTIVE_WRITERS ]]; then
+  ADAPTIVE_WRITERS=false
+fi
+
+if [[ -z $EXTRACT_ONLY ]]; then
+  EXTRACT_ONLY=false
+fi
+
+if [[ -z $LOAD_ONLY ]]; then
+  LOAD_ONLY=false
+fi
+
+if [[ -z $SNAPSHOT_DIR ]]; then
+  SNAPSHOT_DIR=./snapshots
+fi
+
+if [[ -z $SNAPSHOT_COMPRESSION ]]; then
+  SNAPSHOT_COMPRESSION=none
+fi
+
+if [[ -z $APPLY_MODE ]]; then
+  APPLY_MODE=insert
+fi
+
+if [[ -z $FAST_TRUNCATE ]]; then
+  FAST_TRUNCATE=false
+fi
+
+if [[ -z $DEFER_INDEXES ]]; then
+  DEFER_INDEXES=false
+fi
+
+if [[ -z $REJECT_ROWS ]]; then
+  REJECT_ROWS=false
+fi
+
+if [[ -z $REJECT_DIR ]]; then
+  REJECT_DIR=./rejects
+fi
+
+if [[ -z $MAX_REJECTS ]]; then
+  MAX_REJECTS=-1
+fi
+
+if [[ -z $EXACT_COUNT ]]; then
+  EXACT_COUNT=true
+fi
+
+if [[ -z $VERIFY ]]; then
+  VERIFY=false
+fi
+
+if [[ -z $VERIFY_DIR ]]; then
+  VERIFY_DIR=./verify
+fi
+
+if [[ -z $VERIFY_LEAF_ROWS ]]; then
+  VERIFY_LEAF_ROWS=1000
+fi
+
+if [[ -z $EXPORT_DIR ]]; then
+  EXPORT_DIR=./export
+fi
+
+if [[ -z $EXPORT_FILE_MB ]]; then
+  EXPORT_FILE_MB=256
+fi
+
+if [[ -z $METRICS_PORT ]]; then
+  METRICS_PORT=0
+fi
+
 if [[ -z $MT ]]; then
   MT=false
 fi
@@ -103,6 +341,22 @@ if [[ -z $POOL_SIZE ]]; then
   POOL_SIZE=3
 fi
 
+if [[ -z $PARTITIONS ]]; then
+  PARTITIONS=1
+fi
+
+if [[ -z $RESUME ]]; then
+  RESUME=false
+fi
+
+if [[ -z $BULK_WRITER ]]; then
+  BULK_WRITER=auto
+fi
+
+if [[ -z $TABLE_PARALLELISM ]]; then
+  TABLE_PARALLELISM=2
+fi
+
 IFS="," read -r -a array1 <<<"$SRC_TABLE"
 IFS="," read -r -a array2 <<<"$DEST_TABLE"
 
@@ -134,19 +388,38 @@ else
   echo "BATCH SIZE: 10000 (default)"
 fi
 
+echo "ADAPTIVE BATCH: $ADAPTIVE_BATCH"
+echo "ADAPTIVE WRITERS: $ADAPTIVE_WRITERS"
 echo "POOL SIZE: $POOL_SIZE"
+echo "PARTITIONS: $PARTITIONS"
+echo "RESUME: $RESUME"
+echo "BULK WRITER: $BULK_WRITER"
+echo "TABLE PARALLELISM: $TABLE_PARALLELISM"
+echo "EXTRACT ONLY: $EXTRACT_ONLY"
+echo "LOAD ONLY: $LOAD_ONLY"
+echo "WATERMARK COLUMN: $WATERMARK_COLUMN"
+echo "APPLY MODE: $APPLY_MODE"
+echo "FAST TRUNCATE: $FAST_TRUNCATE"
+echo "DEFER INDEXES: $DEFER_INDEXES"
+echo "REJECT ROWS: $REJECT_ROWS"
+echo "MAX REJECTS: $MAX_REJECTS"
+echo "EXACT COUNT: $EXACT_COUNT"
+echo "VERIFY: $VERIFY"
+echo "EXPORT FORMAT: $EXPORT_FORMAT"
+echo "METRICS PORT: $METRICS_PORT"
+echo "FAST START: ${FAST_START:-false}"
 echo ""
 
-for index in "${!array1[@]}"; do
-  TIME_STAMP=${date+F_%H-%M-%S}
-  LOG_FILE_NAME="${array1[index]}_${array2[index]}_${TIME_STAMP}"
+TIME_STAMP=$(date +%F_%H-%M-%S)
+LOG_FILE_NAME="migration_${TIME_STAMP}"
 
-  if (($((index + 1)) == 1)); then
-    java -Xms768m -Xmx2048m -Dlogfilename=$LOG_FILE_NAME -jar data-migrator-release.jar --src-tables=${array1[index]} --src-tables=${array2[index]} --batched=$BATCHED --batch-size=$BATCH_SIZE --multi-threaded=$MT --banner=true --pool-size=$POOL_SIZE
-    continue
-  fi
-  java -Xms768m -Xmx2048m -Dlogfilename=$LOG_FILE_NAME -jar data-migrator-release.jar --src-tables=${array1[index]} --src-tables=${array2[index]} --batched=$BATCHED --batch-size=$BATCH_SIZE --multi-threaded=$MT --banner=false --pool-size=$POOL_SIZE
-done
+if [[ $FAST_START == "true" ]]; then
+  JAR_OPTS="-XX:SharedArchiveFile=fast-start/db-migrator.jsa -Dspring.aot.enabled=true -Dspring.devtools.restart.enabled=false -jar fast-start/db-migrator.jar"
+else
+  JAR_OPTS="-jar data-migrator-release.jar"
+fi
+
+java -Xms768m -Xmx2048m --add-opens=java.base/java.nio=ALL-UNNAMED -Dlogfilename=$LOG_FILE_NAME $JAR_OPTS --src-tables=$SRC_TABLE --dest-tables=$DEST_TABLE --table-parallelism=$TABLE_PARALLELISM --batched=$BATCHED --batch-size=$BATCH_SIZE --adaptive-batch=$ADAPTIVE_BATCH --adaptive-writers=$ADAPTIVE_WRITERS --multi-threaded=$MT --banner=true --pool-size=$POOL_SIZE --partitions=$PARTITIONS --resume=$RESUME --bulk-writer=$BULK_WRITER --extract-only=$EXTRACT_ONLY --load-only=$LOAD_ONLY --snapshot-dir=$SNAPSHOT_DIR --snapshot-compression=$SNAPSHOT_COMPRESSION --watermark-column=$WATERMARK_COLUMN --apply-mode=$APPLY_MODE --fast-truncate=$FAST_TRUNCATE --defer-indexes=$DEFER_INDEXES --reject-rows=$REJECT_ROWS --reject-dir=$REJECT_DIR --max-rejects=$MAX_REJECTS --exact-count=$EXACT_COUNT --verify=$VERIFY --verify-dir=$VERIFY_DIR --verify-leaf-rows=$VERIFY_LEAF_ROWS --export-format=$EXPORT_FORMAT --export-dir=$EXPORT_DIR --export-file-mb=$EXPORT_FILE_MB --metrics-port=$METRICS_PORT --metrics-file=$METRICS_FILE
 
 END_TIME=$(date +%s)
 
@@ -0,0 +1,21 @@
+-- Training data of the fast-start profile. The application is run once against this in-memory H2 database to record
+-- the loaded classes in the class data sharing archive
+CREATE TABLE IF NOT EXISTS TRAIN_SOURCE (
+    ID INT PRIMARY KEY,
+    NAME VARCHAR(64),
+    AMOUNT DECIMAL(12, 2),
+    RATIO DOUBLE,
+    CREATED DATE,
+    UPDATED TIMESTAMP
+);
+CREATE TABLE IF NOT EXISTS TRAIN_DEST (
+    ID INT PRIMARY KEY,
+    NAME VARCHAR(64),
+    AMOUNT DECIMAL(12, 2),
+    RATIO DOUBLE,
+    CREATED DATE,
+    UPDATED TIMESTAMP
+);
+MERGE INTO TRAIN_SOURCE
+SELECT X, 'ROW ' || X, X * 1.25, X / 7.0, DATEADD('DAY', X, DATE '2020-01-01'), CURRENT_TIMESTAMP
+FROM SYSTEM_RANGE(1, 20000);
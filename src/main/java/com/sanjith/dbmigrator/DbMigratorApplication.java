@@ -2,6 +2,7 @@ package com.sanjith.dbmigrator;
 
 import com.google.common.base.Throwables;
 import com.sanjith.dbmigrator.service.DataMigrator;
+import com.sanjith.dbmigrator.service.MigrationJob;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,9 +28,29 @@ public class DbMigratorApplication implements CommandLineRunner {
 
     private final DataMigrator serviceManager;
 
+    private final MigrationJob migrationJob;
+
     @Value("${input.multithreaded}")
     private boolean multithreaded;
 
+    @Value("${input.extract-only}")
+    private boolean extractOnly;
+
+    @Value("${input.load-only}")
+    private boolean loadOnly;
+
+    @Value("${input.export-format}")
+    private String exportFormat;
+
+    @Value("${input.verify}")
+    private boolean verify;
+
+    @Value("${input.apply-mode}")
+    private String applyMode;
+
+    @Value("${input.reject-rows}")
+    private boolean rejectRows;
+
     @Value("${input.banner}")
     private boolean banner;
 
@@ -42,8 +63,9 @@ public class DbMigratorApplication implements CommandLineRunner {
         +" |_____/ |     |    |    |     | |_____] |     | ______| |______      |  |  | __|__ |_____| |    \\_ |     |    |    |_____| |    \\_\n";
 
 
-    public DbMigratorApplication(@Autowired DataMigrator serviceManager) {
+    public DbMigratorApplication(@Autowired DataMigrator serviceManager, @Autowired MigrationJob migrationJob) {
         this.serviceManager = serviceManager;
+        this.migrationJob = migrationJob;
     }
 
     public static void main(String[] args) {
@@ -87,7 +109,34 @@ public class DbMigratorApplication implements CommandLineRunner {
             long startTime = System.currentTimeMillis();
             LOG.info("Service started");
 
-            if(multithreaded) {
+            if(extractOnly && loadOnly) {
+                LOG.error("--extract-only and --load-only cannot be combined");
+                System.out.println("--extract-only and --load-only cannot be combined");
+            } else if(!exportFormat.isEmpty() && (extractOnly || loadOnly)) {
+                LOG.error("--export-format cannot be combined with --extract-only or --load-only");
+                System.out.println("--export-format cannot be combined with --extract-only or --load-only");
+            } else if(verify && (extractOnly || loadOnly || !exportFormat.isEmpty())) {
+                LOG.error("--verify cannot be combined with --extract-only, --load-only or --export-format");
+                System.out.println("--verify cannot be combined with --extract-only, --load-only or --export-format");
+            } else if(rejectRows && applyMode.trim().equalsIgnoreCase("merge")) {
+                LOG.error("--reject-rows cannot be combined with --apply-mode=merge");
+                System.out.println("--reject-rows cannot be combined with --apply-mode=merge");
+            } else if(migrationJob.isConfigured()) {
+                LOG.info("Executing migration job");
+                EXIT_STATUS = migrationJob.run();
+            } else if(verify) {
+                LOG.info("Executing verification of destination against source");
+                EXIT_STATUS = serviceManager.verifyData();
+            } else if(!exportFormat.isEmpty()) {
+                LOG.info("Executing export to " + exportFormat + " files");
+                EXIT_STATUS = serviceManager.exportFiles();
+            } else if(extractOnly) {
+                LOG.info("Executing extraction to snapshot");
+                EXIT_STATUS = serviceManager.extractSnapshot();
+            } else if(loadOnly) {
+                LOG.info("Executing load from snapshot");
+                EXIT_STATUS = serviceManager.loadSnapshot();
+            } else if(multithreaded) {
                 LOG.info("Executing migration task in multithreaded env");
                 EXIT_STATUS = serviceManager.migrateDataMT();
             } else {
@@ -1,5 +1,6 @@
 package com.sanjith.dbmigrator.config;
 
+import com.sanjith.dbmigrator.dao.MetadataCache;
 import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -21,9 +22,15 @@ import javax.sql.DataSource;
 @EnableTransactionManagement
 public class AppConfig {
 
-    @Value("${input.poolSize")
+    @Value("${input.poolSize}")
     private int poolSize;
 
+    @Value("${input.partitions}")
+    private int partitions;
+
+    @Value("${input.metadata-cache-dir}")
+    private String metadataCacheDir;
+
     /**
      * Creates datasource bean for Source db. Uses HikariCP datasource
      *
@@ -34,6 +41,7 @@ public class AppConfig {
     public DataSource dbSource() {
         HikariDataSource hds = DataSourceBuilder.create().type(com.zaxxer.hikari.HikariDataSource.class).build();
         hds.setConnectionTimeout(300000);
+        hds.setMaximumPoolSize(Math.max(partitions + 1, hds.getMaximumPoolSize()));
         hds.setPoolName("source-pool");
         return hds;
     }
@@ -83,4 +91,24 @@ public class AppConfig {
         return new JdbcTemplate(dbSource());
     }
 
+    /**
+     * Creates the schema metadata cache bean for source DB
+     *
+     * @return Metadata cache for source DB
+     */
+    @Bean(name = "sourceMetadata")
+    public MetadataCache sourceMetadata() {
+        return new MetadataCache("source", sourceTemplate(), metadataCacheDir);
+    }
+
+    /**
+     * Creates the schema metadata cache bean for destination DB
+     *
+     * @return Metadata cache for destination DB
+     */
+    @Bean(name = "destinationMetadata")
+    public MetadataCache destinationMetadata() {
+        return new MetadataCache("destination", destinationTemplate(), metadataCacheDir);
+    }
+
 }
@@ -0,0 +1,333 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeMilliVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes column batches into Arrow IPC files with the Arrow Java writer, one record batch per column batch. Column
+ * types are mapped from java.sql.Types to Arrow types, DECIMAL columns of known precision up to 38 digits to
+ * Decimal128 and other types without an Arrow counterpart to Utf8. A writer is used by one thread and rolls over to a
+ * new file part once the current part has reached the size limit. Parts are written under a temporary name and
+ * renamed when complete
+ */
+public class ArrowFileWriter implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(ArrowFileWriter.class);
+
+    /**
+     * Allocator of all writers, each writer allocates its vectors from a child
+     */
+    private static final BufferAllocator rootAllocator = new RootAllocator();
+
+    private final Path dir;
+
+    private final String prefix;
+
+    private final List<String> columnNames;
+
+    private final int[] precisions;
+
+    private final int[] scales;
+
+    private final long maxFileBytes;
+
+    private final BufferAllocator allocator;
+
+    private final VectorSchemaRoot root;
+
+    private FileChannel channel;
+
+    private org.apache.arrow.vector.ipc.ArrowFileWriter fileWriter;
+
+    private Path partFile;
+
+    private Path tempFile;
+
+    private int partNo = 0;
+
+    private int partBatches = 0;
+
+    private long partRows = 0;
+
+    private final List<Path> parts = new ArrayList<>();
+
+    /**
+     * Constructs a writer of Arrow file parts
+     *
+     * @param dir          Output directory
+     * @param prefix       File name prefix, parts are named prefix-NNNN.arrow
+     * @param columnNames  Column names
+     * @param typeArr      Column types in java.sql.Types
+     * @param precisions   Column precisions, used for DECIMAL columns
+     * @param scales       Column scales, used for DECIMAL columns
+     * @param maxFileBytes Size after which the next batch goes to a new part
+     */
+    public ArrowFileWriter(Path dir, String prefix, List<String> columnNames, int[] typeArr, int[] precisions, int[] scales, long maxFileBytes) {
+        this.dir = dir;
+        this.prefix = prefix;
+        this.columnNames = columnNames;
+        this.precisions = precisions;
+        this.scales = scales;
+        this.maxFileBytes = maxFileBytes;
+        List<Field> fields = new ArrayList<>();
+        for (int c = 0; c < typeArr.length; c++) {
+            fields.add(Field.nullable(columnNames.get(c), typeOf(typeArr[c], precisions[c], scales[c])));
+        }
+        this.allocator = rootAllocator.newChildAllocator(prefix, 0, Long.MAX_VALUE);
+        this.root = VectorSchemaRoot.create(new Schema(fields), allocator);
+    }
+
+    private static ArrowType typeOf(int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.TINYINT:
+                return new ArrowType.Int(8, true);
+            case Types.SMALLINT:
+                return new ArrowType.Int(16, true);
+            case Types.INTEGER:
+                return new ArrowType.Int(32, true);
+            case Types.BIGINT:
+                return new ArrowType.Int(64, true);
+            case Types.REAL:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                // e.g. Oracle NUMBER without precision has no fixed scale
+                return precision > 0 && precision <= 38 && scale >= 0 && scale <= precision
+                        ? new ArrowType.Decimal(precision, scale, 128) : ArrowType.Utf8.INSTANCE;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            case Types.DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            case Types.TIME:
+                return new ArrowType.Time(TimeUnit.MILLISECOND, 32);
+            case Types.TIMESTAMP:
+                // wall clock time, no time zone
+                return new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return ArrowType.Binary.INSTANCE;
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /**
+     * Writes the rows of a batch as a record batch of the current part
+     *
+     * @param batch Rows to write
+     * @throws IOException if the file could not be written
+     */
+    public void write(ColumnBatch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        if (fileWriter == null) {
+            openPart();
+        }
+        int rows = batch.size();
+        root.allocateNew();
+        List<FieldVector> vectors = root.getFieldVectors();
+        for (int c = 0; c < vectors.size(); c++) {
+            FieldVector vector = vectors.get(c);
+            for (int row = 0; row < rows; row++) {
+                Object value = batch.getValue(row, c);
+                if (value == null) {
+                    vector.setNull(row);
+                } else {
+                    setValue(vector, row, value, c);
+                }
+            }
+        }
+        root.setRowCount(rows);
+        fileWriter.writeBatch();
+        partBatches++;
+        partRows += rows;
+        if (channel.position() >= maxFileBytes) {
+            finishPart();
+        }
+    }
+
+    private void setValue(FieldVector vector, int row, Object value, int c) {
+        if (vector instanceof TinyIntVector) {
+            ((TinyIntVector) vector).setSafe(row, ((Number) value).byteValue());
+        } else if (vector instanceof SmallIntVector) {
+            ((SmallIntVector) vector).setSafe(row, ((Number) value).shortValue());
+        } else if (vector instanceof IntVector) {
+            ((IntVector) vector).setSafe(row, ((Number) value).intValue());
+        } else if (vector instanceof BigIntVector) {
+            ((BigIntVector) vector).setSafe(row, ((Number) value).longValue());
+        } else if (vector instanceof Float4Vector) {
+            ((Float4Vector) vector).setSafe(row, ((Number) value).floatValue());
+        } else if (vector instanceof Float8Vector) {
+            ((Float8Vector) vector).setSafe(row, ((Number) value).doubleValue());
+        } else if (vector instanceof DecimalVector) {
+            BigDecimal decimal = toDecimal(value).setScale(scales[c], RoundingMode.HALF_UP);
+            if (decimal.precision() > precisions[c]) {
+                throw new IllegalArgumentException(value + " exceeds DECIMAL(" + precisions[c] + "," + scales[c] + ") of " + columnNames.get(c));
+            }
+            ((DecimalVector) vector).setSafe(row, decimal);
+        } else if (vector instanceof BitVector) {
+            ((BitVector) vector).setSafe(row, toBoolean(value) ? 1 : 0);
+        } else if (vector instanceof DateDayVector) {
+            ((DateDayVector) vector).setSafe(row, (int) toLocalDate(value).toEpochDay());
+        } else if (vector instanceof TimeMilliVector) {
+            ((TimeMilliVector) vector).setSafe(row, (int) (((Time) value).toLocalTime().toNanoOfDay() / 1000000));
+        } else if (vector instanceof TimeStampMicroVector) {
+            ((TimeStampMicroVector) vector).setSafe(row, toEpochMicros(value));
+        } else if (vector instanceof VarBinaryVector) {
+            ((VarBinaryVector) vector).setSafe(row, (byte[]) value);
+        } else if (vector instanceof VarCharVector) {
+            ((VarCharVector) vector).setSafe(row, value.toString().getBytes(StandardCharsets.UTF_8));
+        } else {
+            throw new IllegalStateException("Unexpected vector " + vector.getClass().getSimpleName());
+        }
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        return value instanceof BigDecimal ? (BigDecimal) value : new BigDecimal(value.toString());
+    }
+
+    private static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        }
+        return Boolean.parseBoolean(value.toString());
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate();
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toLocalDate();
+        }
+        return LocalDate.parse(value.toString());
+    }
+
+    /**
+     * Converts a timestamp to microseconds since the epoch of its wall clock time, Arrow timestamps without time zone
+     */
+    private static long toEpochMicros(Object value) {
+        LocalDateTime dateTime;
+        if (value instanceof Timestamp) {
+            dateTime = ((Timestamp) value).toLocalDateTime();
+        } else if (value instanceof java.sql.Date) {
+            dateTime = ((java.sql.Date) value).toLocalDate().atStartOfDay();
+        } else {
+            dateTime = Timestamp.valueOf(value.toString()).toLocalDateTime();
+        }
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000000L + dateTime.getNano() / 1000;
+    }
+
+    private void openPart() throws IOException {
+        Files.createDirectories(dir);
+        partFile = dir.resolve(String.format("%s-%04d.arrow", prefix, ++partNo));
+        tempFile = partFile.resolveSibling(partFile.getFileName() + ".tmp");
+        channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        fileWriter = new org.apache.arrow.vector.ipc.ArrowFileWriter(root, null, channel);
+        fileWriter.start();
+        partBatches = 0;
+        partRows = 0;
+    }
+
+    /**
+     * Writes the footer and renames the part to its final name
+     */
+    private void finishPart() throws IOException {
+        fileWriter.end();
+        channel.force(true);
+        fileWriter.close();
+        fileWriter = null;
+        channel = null;
+        Files.move(tempFile, partFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        parts.add(partFile);
+        log.info("WROTE " + partRows + " ROWS IN " + partBatches + " BATCHES TO " + partFile + " (" + Files.size(partFile) + " BYTES)");
+    }
+
+    /**
+     * Get the completed file parts
+     * @return files
+     */
+    public List<Path> getParts() {
+        return parts;
+    }
+
+    /**
+     * Completes the current part
+     * @throws IOException if the part could not be completed
+     */
+    public void finish() throws IOException {
+        if (fileWriter != null) {
+            finishPart();
+        }
+    }
+
+    /**
+     * Closes the writer and releases its vectors. An incomplete part is deleted
+     */
+    @Override
+    public void close() {
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+                Files.deleteIfExists(tempFile);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error in removing incomplete part " + tempFile + ": " + e.getMessage());
+            }
+            fileWriter = null;
+            channel = null;
+        }
+        root.close();
+        allocator.close();
+    }
+}
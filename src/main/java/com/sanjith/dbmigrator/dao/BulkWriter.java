@@ -0,0 +1,76 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+
+/**
+ * Writes batches of rows into the destination table. Implementations use the fastest load path of the destination
+ * database. A writer is used by a single {@link WriterSession} and thread
+ *
+ * @see Destination#openSession(LinkedHashSet, int[], CommitPolicy, long)
+ */
+public interface BulkWriter {
+
+    /**
+     * Get the writer name used in the configuration (input.bulk-writer)
+     * @return writer name
+     */
+    String getName();
+
+    /**
+     * Checks whether the writer can load columns of the given types
+     * @param typeArr Column types in java.sql.Types
+     * @return true - supported
+     */
+    default boolean supports(int[] typeArr) {
+        return true;
+    }
+
+    /**
+     * Prepares the writer on the session connection
+     * @param connection Destination connection with auto commit disabled
+     * @param tableName Destination table
+     * @param columnNames Column names
+     * @param typeArr Column types in java.sql.Types
+     * @throws SQLException if the writer could not be prepared
+     */
+    void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) throws SQLException;
+
+    /**
+     * Writes rows into the destination table
+     * @param batch Row values in destination column order
+     * @return no. of rows written
+     * @throws SQLException if the write failed
+     */
+    int write(ColumnBatch batch) throws SQLException;
+
+    /**
+     * Checks whether the session has to commit after every write, because the load path does not allow further
+     * writes in the same transaction or commits on its own
+     * @return true - commit after every batch
+     */
+    default boolean isCommitPerBatch() {
+        return false;
+    }
+
+    /**
+     * Applies rows the writer holds back, called by the session right before every commit
+     * @throws SQLException if the rows could not be applied
+     */
+    default void flush() throws SQLException {
+    }
+
+    /**
+     * Get the time the last write spent binding or formatting the rows, the rest of the write is spent executing
+     * @return bind time in nanoseconds, 0 if not measured
+     */
+    default long getBindNanos() {
+        return 0;
+    }
+
+    /**
+     * Releases the statements of the writer. The connection is closed by the session
+     */
+    void close();
+}
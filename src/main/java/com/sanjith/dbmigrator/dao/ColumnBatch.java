@@ -0,0 +1,308 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Column oriented buffer of a batch of rows. Every column is stored in a primitive array chosen by the
+ * {@link RowCopier} of the table: integers in long[], floating point numbers in double[], dates as epoch days in int[],
+ * timestamps as epoch milliseconds and nanos. Strings and other types are kept as the objects of the driver. LOB
+ * values are streamed, large ones through spill files. Null values are tracked in a bitmap per column. Buffers are
+ * cleared and reused through a {@link ColumnBatchPool}, so moving rows does not allocate objects beyond the values
+ */
+public class ColumnBatch {
+
+    private final RowCopier copier;
+
+    private final ColumnVector[] vectors;
+
+    private final int capacity;
+
+    private final ColumnBatchPool pool;
+
+    /**
+     * First row of the batch in the vectors, see {@link #slice(int, int)}
+     */
+    private final int offset;
+
+    /**
+     * true - view of the rows of another batch, which owns the buffers
+     */
+    private final boolean slice;
+
+    private int size = 0;
+
+    /**
+     * Constructs a column batch which is not pooled
+     *
+     * @param copier   Copy plan of the table
+     * @param capacity Maximum no. of rows
+     */
+    public ColumnBatch(RowCopier copier, int capacity) {
+        this(copier, capacity, null);
+    }
+
+    ColumnBatch(RowCopier copier, int capacity, ColumnBatchPool pool) {
+        this.copier = copier;
+        this.capacity = capacity;
+        this.pool = pool;
+        this.vectors = copier.newVectors(capacity);
+        this.offset = 0;
+        this.slice = false;
+    }
+
+    private ColumnBatch(ColumnBatch batch, int from, int to) {
+        this.copier = batch.copier;
+        this.capacity = to - from;
+        this.pool = null;
+        this.vectors = batch.vectors;
+        this.offset = batch.offset + from;
+        this.size = to - from;
+        this.slice = true;
+    }
+
+    /**
+     * Get a view of the rows [from, to) of the batch, sharing its buffers. Used to write part of the rows again. The
+     * view is only valid until the batch is cleared. Rows cannot be added to or removed from the view
+     *
+     * @param from First row
+     * @param to   Row after the last row
+     * @return batch of the rows
+     */
+    public ColumnBatch slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Rows " + from + "-" + to + " of " + size);
+        }
+        return new ColumnBatch(this, from, to);
+    }
+
+    /**
+     * Appends the current row of a result set. The result set has to select the columns in the order of
+     * {@link RowCopier#getSelectList()}
+     *
+     * @param rs Source result set positioned on a row
+     * @throws SQLException if a value could not be read
+     */
+    public void readRow(ResultSet rs) throws SQLException {
+        checkNotSlice();
+        if (size == capacity) {
+            throw new IllegalStateException("Column batch full");
+        }
+        int row = size++;
+        for (int c = 0; c < vectors.length; c++) {
+            vectors[c].read(rs, c + 1, row);
+        }
+    }
+
+    /**
+     * Binds a row to the parameters of a statement
+     *
+     * @param stmt       Prepared INSERT statement
+     * @param row        Row index
+     * @param firstIndex Parameter index of the first column
+     * @throws SQLException if a value could not be bound
+     */
+    public void bind(PreparedStatement stmt, int row, int firstIndex) throws SQLException {
+        for (int c = 0; c < vectors.length; c++) {
+            vectors[c].bind(stmt, firstIndex + c, offset + row);
+        }
+    }
+
+    /**
+     * Writes the rows to a snapshot block, column by column: a null bitmap followed by the non null values
+     *
+     * @param out Block buffer
+     * @throws IOException if a LOB spill file could not be read
+     * @see SnapshotWriter
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        byte[] nullBytes = new byte[(size + 7) >>> 3];
+        for (ColumnVector vector : vectors) {
+            Arrays.fill(nullBytes, (byte) 0);
+            for (int row = 0; row < size; row++) {
+                if (vector.isNull(offset + row)) {
+                    nullBytes[row >>> 3] |= (byte) (1 << (row & 7));
+                }
+            }
+            out.write(nullBytes);
+            for (int row = 0; row < size; row++) {
+                if (!vector.isNull(offset + row)) {
+                    vector.encode(out, offset + row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of a snapshot block written by {@link #writeTo(DataOutputStream)} into the empty batch
+     *
+     * @param in   Block contents
+     * @param rows No. of rows in the block
+     * @throws IOException if the block is corrupt or a LOB spill file could not be written
+     * @see SnapshotReader
+     */
+    public void readFrom(ByteBuffer in, int rows) throws IOException {
+        checkNotSlice();
+        if (size > 0 || rows > capacity) {
+            throw new IllegalStateException("Column batch cannot hold " + rows + " rows");
+        }
+        // the rows count from now on, so a failed read is cleared with the batch
+        size = rows;
+        byte[] nullBytes = new byte[(rows + 7) >>> 3];
+        for (ColumnVector vector : vectors) {
+            in.get(nullBytes);
+            for (int row = 0; row < rows; row++) {
+                if ((nullBytes[row >>> 3] & (1 << (row & 7))) != 0) {
+                    vector.decodeNull(row);
+                } else {
+                    vector.decode(in, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a value as an object
+     *
+     * @param row Row index
+     * @param c   Column index
+     * @return Long, Double, BigDecimal, Date, Timestamp, String or the value read from the source, null for SQL NULL
+     */
+    public Object getValue(int row, int c) {
+        return vectors[c].getValue(offset + row);
+    }
+
+    /**
+     * Replaces a value of a column which is stored as objects
+     *
+     * @param row   Row index
+     * @param c     Column index
+     * @param value New value
+     * @see #isObjectColumn(int)
+     */
+    public void setObject(int row, int c, Object value) {
+        ((ColumnVector.ObjectVector) vectors[c]).set(offset + row, value);
+    }
+
+    /**
+     * Checks whether a column is stored as objects, i.e. its values are not converted by a typed getter
+     * @param c Column index
+     * @return true - object column
+     */
+    public boolean isObjectColumn(int c) {
+        return vectors[c] instanceof ColumnVector.ObjectVector;
+    }
+
+    /**
+     * Checks whether a value is SQL NULL
+     * @param row Row index
+     * @param c   Column index
+     * @return true - null
+     */
+    public boolean isNull(int row, int c) {
+        return vectors[c].isNull(offset + row);
+    }
+
+    /**
+     * Estimates the heap size of the batch buffers by their capacity, the memory held while the batch is queued. A
+     * slice gets the share of its rows
+     * @return size in bytes
+     * @see #estimateDataBytes()
+     */
+    public long estimateBytes() {
+        long bytes = 0;
+        for (ColumnVector vector : vectors) {
+            bytes += vector.estimateNullBytes() + vector.estimateBytes(offset + size);
+        }
+        return slice ? share(bytes) : bytes;
+    }
+
+    /**
+     * Estimates the size of the row values of the batch, the data written to the destination
+     * @return size in bytes
+     */
+    public long estimateDataBytes() {
+        long bytes = 0;
+        for (ColumnVector vector : vectors) {
+            bytes += vector.estimateDataBytes(offset, offset + size);
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the size of the LOB values in the batch, in memory or spilled. A slice gets the share of its rows
+     * @return size in bytes
+     */
+    public long getLobBytes() {
+        long bytes = 0;
+        for (ColumnVector vector : vectors) {
+            bytes += vector.getLobBytes();
+        }
+        return slice ? share(bytes) : bytes;
+    }
+
+    /**
+     * Prorates a size of the buffers up to the end of the slice to the rows of the slice
+     */
+    private long share(long bytes) {
+        return offset + size == 0 ? 0 : bytes * size / (offset + size);
+    }
+
+    /**
+     * Get the no. of rows
+     * @return row count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the no. of columns
+     * @return column count
+     */
+    public int getColumnCount() {
+        return vectors.length;
+    }
+
+    /**
+     * Get the destination type of a column
+     * @param c Column index
+     * @return type in java.sql.Types
+     */
+    public int getType(int c) {
+        return copier.getTypeArr()[c];
+    }
+
+    /**
+     * Removes all rows, keeping the buffers
+     */
+    public void clear() {
+        checkNotSlice();
+        for (ColumnVector vector : vectors) {
+            vector.clear(size);
+        }
+        size = 0;
+    }
+
+    /**
+     * Clears the batch and returns it to its pool. The batch must not be used afterwards
+     */
+    public void release() {
+        checkNotSlice();
+        clear();
+        if (pool != null) {
+            pool.release(this);
+        }
+    }
+
+    private void checkNotSlice() {
+        if (slice) {
+            throw new IllegalStateException("Rows of a slice are owned by its batch");
+        }
+    }
+}
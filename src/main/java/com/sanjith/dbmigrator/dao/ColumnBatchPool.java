@@ -0,0 +1,60 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of column batches of one table. Released batches are kept for reuse up to the pool size, so in steady state
+ * the extractors fill buffers which the loaders have emptied
+ *
+ * @see ColumnBatch
+ */
+public class ColumnBatchPool {
+
+    private final RowCopier copier;
+
+    private final int batchSize;
+
+    private final BlockingQueue<ColumnBatch> free;
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * Constructs a pool
+     *
+     * @param copier    Copy plan of the table
+     * @param batchSize Row capacity of every batch
+     * @param poolSize  Maximum no. of idle batches kept
+     */
+    public ColumnBatchPool(RowCopier copier, int batchSize, int poolSize) {
+        this.copier = copier;
+        this.batchSize = batchSize;
+        this.free = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+    }
+
+    /**
+     * Takes an empty batch from the pool, allocating a new one if the pool is empty
+     * @return empty batch
+     */
+    public ColumnBatch acquire() {
+        ColumnBatch batch = free.poll();
+        if (batch == null) {
+            allocated.incrementAndGet();
+            batch = new ColumnBatch(copier, batchSize, this);
+        }
+        return batch;
+    }
+
+    void release(ColumnBatch batch) {
+        free.offer(batch);
+    }
+
+    /**
+     * Get the no. of batches allocated by the pool
+     * @return allocated batch count
+     */
+    public int getAllocated() {
+        return allocated.get();
+    }
+}
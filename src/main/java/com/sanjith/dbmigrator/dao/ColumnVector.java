@@ -0,0 +1,998 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Values of one column of a {@link ColumnBatch}. Every subclass copies a single type with the typed getter of the
+ * result set and the typed setter of the statement, so no boxing or type dispatch happens per value. Null values are
+ * tracked in a bitmap
+ *
+ * @see RowCopier
+ */
+abstract class ColumnVector {
+
+    private static final Logger log = LogManager.getLogger(ColumnVector.class);
+
+    /**
+     * Largest LOB value in bytes or chars kept in memory
+     */
+    static final int INLINE_LIMIT = 64 * 1024;
+
+    /**
+     * Chunk size in which LOB values are copied
+     */
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    protected final int sqlType;
+
+    private final long[] nulls;
+
+    ColumnVector(int sqlType, int capacity) {
+        this.sqlType = sqlType;
+        this.nulls = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Reads the value of the current result set row
+     */
+    abstract void read(ResultSet rs, int ordinal, int row) throws SQLException;
+
+    /**
+     * Binds a non null value
+     */
+    abstract void bindValue(PreparedStatement stmt, int index, int row) throws SQLException;
+
+    /**
+     * Get a non null value as an object
+     */
+    abstract Object getObject(int row);
+
+    /**
+     * Estimated heap size of the value buffers, by their capacity
+     */
+    abstract long estimateBytes(int size);
+
+    /**
+     * Estimated size of the values of the rows from (inclusive) to (exclusive), i.e. of the data written
+     */
+    abstract long estimateDataBytes(int from, int to);
+
+    /**
+     * Writes a non null value to a snapshot block
+     */
+    abstract void encode(DataOutputStream out, int row) throws IOException;
+
+    /**
+     * Reads a non null value from a snapshot block
+     */
+    abstract void decode(ByteBuffer in, int row) throws IOException;
+
+    /**
+     * Reads a null value from a snapshot block
+     */
+    void decodeNull(int row) {
+        setNull(row, true);
+    }
+
+    /**
+     * Size of the LOB values read into the vector, kept in memory or spilled
+     */
+    long getLobBytes() {
+        return 0;
+    }
+
+    final void bind(PreparedStatement stmt, int index, int row) throws SQLException {
+        if (isNull(row)) {
+            stmt.setNull(index, sqlType);
+        } else {
+            bindValue(stmt, index, row);
+        }
+    }
+
+    final Object getValue(int row) {
+        return isNull(row) ? null : getObject(row);
+    }
+
+    final boolean isNull(int row) {
+        return (nulls[row >>> 6] & (1L << row)) != 0;
+    }
+
+    final void setNull(int row, boolean isNull) {
+        if (isNull) {
+            nulls[row >>> 6] |= 1L << row;
+        } else {
+            nulls[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    void clear(int size) {
+        Arrays.fill(nulls, 0L);
+    }
+
+    long estimateNullBytes() {
+        return 8L * nulls.length;
+    }
+
+    /**
+     * Integer column, getLong to setLong
+     */
+    static final class LongVector extends ColumnVector {
+        private final long[] values;
+
+        LongVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            values[row] = rs.getLong(ordinal);
+            setNull(row, rs.wasNull());
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setLong(index, values[row]);
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeLong(values[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) {
+            values[row] = in.getLong();
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            return 8L * values.length;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            return 8L * (to - from);
+        }
+    }
+
+    /**
+     * Floating point column, getDouble to setDouble
+     */
+    static final class DoubleVector extends ColumnVector {
+        private final double[] values;
+
+        DoubleVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new double[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            values[row] = rs.getDouble(ordinal);
+            setNull(row, rs.wasNull());
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setDouble(index, values[row]);
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeDouble(values[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) {
+            values[row] = in.getDouble();
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            return 8L * values.length;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            return 8L * (to - from);
+        }
+    }
+
+    /**
+     * Decimal column, getBigDecimal to setBigDecimal
+     */
+    static final class DecimalVector extends ColumnVector {
+        private final BigDecimal[] values;
+
+        DecimalVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new BigDecimal[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            values[row] = rs.getBigDecimal(ordinal);
+            setNull(row, values[row] == null);
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setBigDecimal(index, values[row]);
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            encodeDecimal(out, values[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) {
+            values[row] = decodeDecimal(in);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            long bytes = 8L * values.length;
+            for (int row = 0; row < size; row++) {
+                bytes += RowBatch.estimateSize(values[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            long bytes = 0;
+            for (int row = from; row < to; row++) {
+                bytes += RowBatch.estimateSize(values[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        void clear(int size) {
+            super.clear(size);
+            Arrays.fill(values, 0, size, null);
+        }
+    }
+
+    /**
+     * Date column stored as epoch days, getDate to setDate
+     */
+    static final class DateVector extends ColumnVector {
+        private final int[] values;
+
+        DateVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            Date date = rs.getDate(ordinal);
+            setNull(row, date == null);
+            if (date != null) {
+                values[row] = (int) date.toLocalDate().toEpochDay();
+            }
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setDate(index, (Date) getObject(row));
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeInt(values[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) {
+            values[row] = in.getInt();
+        }
+
+        @Override
+        Object getObject(int row) {
+            return Date.valueOf(LocalDate.ofEpochDay(values[row]));
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            return 4L * values.length;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            return 4L * (to - from);
+        }
+    }
+
+    /**
+     * Timestamp column stored as epoch milliseconds and nanos, getTimestamp to setTimestamp
+     */
+    static final class TimestampVector extends ColumnVector {
+        private final long[] millis;
+        private final int[] nanos;
+
+        TimestampVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.millis = new long[capacity];
+            this.nanos = new int[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            Timestamp timestamp = rs.getTimestamp(ordinal);
+            setNull(row, timestamp == null);
+            if (timestamp != null) {
+                millis[row] = timestamp.getTime();
+                nanos[row] = timestamp.getNanos();
+            }
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setTimestamp(index, (Timestamp) getObject(row));
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeLong(millis[row]);
+            out.writeInt(nanos[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) {
+            millis[row] = in.getLong();
+            nanos[row] = in.getInt();
+        }
+
+        @Override
+        Object getObject(int row) {
+            Timestamp timestamp = new Timestamp(millis[row]);
+            timestamp.setNanos(nanos[row]);
+            return timestamp;
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            return 12L * millis.length;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            return 12L * (to - from);
+        }
+    }
+
+    /**
+     * Character column, getString to setString. The strings of the driver are kept as they are, copying them into a
+     * buffer would only add a copy since the statement needs a String again
+     */
+    static final class StringVector extends ColumnVector {
+        private final String[] values;
+
+        StringVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new String[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            values[row] = rs.getString(ordinal);
+            setNull(row, values[row] == null);
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            stmt.setString(index, values[row]);
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            encodeBytes(out, values[row].getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Decodes the UTF-8 bytes straight from the block into the String
+         */
+        @Override
+        void decode(ByteBuffer in, int row) {
+            int length = in.getInt();
+            values[row] = StandardCharsets.UTF_8.decode(in.slice(in.position(), length)).toString();
+            in.position(in.position() + length);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            long bytes = 8L * values.length;
+            for (int row = 0; row < size; row++) {
+                bytes += RowBatch.estimateSize(values[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            long bytes = 0;
+            for (int row = from; row < to; row++) {
+                if (values[row] != null) {
+                    bytes += 2L * values[row].length();
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        void clear(int size) {
+            super.clear(size);
+            Arrays.fill(values, 0, size, null);
+        }
+    }
+
+    /**
+     * Column of any other type or of mismatching source and destination types, getObject to a typed bind of the
+     * destination type
+     */
+    static final class ObjectVector extends ColumnVector {
+        private final Object[] values;
+
+        ObjectVector(int sqlType, int capacity) {
+            super(sqlType, capacity);
+            this.values = new Object[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            values[row] = rs.getObject(ordinal);
+            setNull(row, values[row] == null);
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            StatementCreatorUtils.setParameterValue(stmt, index, sqlType, values[row]);
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            encodeObject(out, values[row]);
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) throws IOException {
+            values[row] = decodeObject(in);
+        }
+
+        @Override
+        Object getObject(int row) {
+            return values[row];
+        }
+
+        void set(int row, Object value) {
+            values[row] = value;
+            setNull(row, value == null);
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            long bytes = 8L * values.length;
+            for (int row = 0; row < size; row++) {
+                bytes += RowBatch.estimateSize(values[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            long bytes = 0;
+            for (int row = from; row < to; row++) {
+                bytes += RowBatch.estimateSize(values[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        void clear(int size) {
+            super.clear(size);
+            Arrays.fill(values, 0, size, null);
+        }
+    }
+
+    /**
+     * Binary LOB column, getBinaryStream to setBinaryStream. Values up to {@link #INLINE_LIMIT} bytes are kept in
+     * memory, larger values are copied in chunks to a spill file of the row copier and streamed from there on bind
+     */
+    static final class BlobVector extends ColumnVector {
+        private final RowCopier copier;
+        private final byte[][] inline;
+        private final Path[] files;
+        private final long[] lengths;
+        private final List<InputStream> openStreams = new ArrayList<>();
+        private long lobBytes = 0;
+
+        BlobVector(int sqlType, int capacity, RowCopier copier) {
+            super(sqlType, capacity);
+            this.copier = copier;
+            this.inline = new byte[capacity][];
+            this.files = new Path[capacity];
+            this.lengths = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            try (InputStream in = rs.getBinaryStream(ordinal)) {
+                setNull(row, in == null);
+                if (in == null) {
+                    return;
+                }
+                byte[] chunk = new byte[CHUNK_SIZE];
+                ByteArrayOutputStream head = new ByteArrayOutputStream();
+                OutputStream spill = null;
+                long length = 0;
+                try {
+                    int n;
+                    while ((n = in.read(chunk)) > 0) {
+                        length += n;
+                        if (spill == null && length > INLINE_LIMIT) {
+                            files[row] = copier.createSpillFile();
+                            spill = new BufferedOutputStream(Files.newOutputStream(files[row]));
+                            head.writeTo(spill);
+                        }
+                        if (spill != null) {
+                            spill.write(chunk, 0, n);
+                        } else {
+                            head.write(chunk, 0, n);
+                        }
+                    }
+                } finally {
+                    if (spill != null) {
+                        spill.close();
+                    }
+                }
+                inline[row] = spill == null ? head.toByteArray() : null;
+                lengths[row] = length;
+                lobBytes += length;
+            } catch (IOException e) {
+                throw new SQLException("LOB could not be read", e);
+            }
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            if (inline[row] != null) {
+                stmt.setBinaryStream(index, new ByteArrayInputStream(inline[row]), inline[row].length);
+                return;
+            }
+            try {
+                InputStream in = new BufferedInputStream(Files.newInputStream(files[row]), CHUNK_SIZE);
+                openStreams.add(in);
+                stmt.setBinaryStream(index, in, lengths[row]);
+            } catch (IOException e) {
+                throw new SQLException("LOB spill file could not be read", e);
+            }
+        }
+
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeLong(lengths[row]);
+            if (inline[row] != null) {
+                out.write(inline[row]);
+            } else {
+                Files.copy(files[row], out);
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) throws IOException {
+            long length = in.getLong();
+            if (length <= INLINE_LIMIT) {
+                inline[row] = new byte[(int) length];
+                in.get(inline[row]);
+            } else {
+                files[row] = copier.createSpillFile();
+                spill(in, (int) length, files[row]);
+            }
+            lengths[row] = length;
+            lobBytes += length;
+        }
+
+        @Override
+        Object getObject(int row) {
+            try {
+                return inline[row] != null ? inline[row] : Files.readAllBytes(files[row]);
+            } catch (IOException e) {
+                throw new RuntimeException("LOB spill file could not be read", e);
+            }
+        }
+
+        @Override
+        long getLobBytes() {
+            return lobBytes;
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            long bytes = 24L * inline.length;
+            for (int row = 0; row < size; row++) {
+                if (inline[row] != null) {
+                    bytes += 16 + inline[row].length;
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            long bytes = 0;
+            for (int row = from; row < to; row++) {
+                if (!isNull(row)) {
+                    bytes += lengths[row];
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        void clear(int size) {
+            super.clear(size);
+            closeStreams(openStreams);
+            deleteFiles(files, size);
+            Arrays.fill(inline, 0, size, null);
+            lobBytes = 0;
+        }
+    }
+
+    /**
+     * Character LOB column, getCharacterStream to setCharacterStream. Values up to {@link #INLINE_LIMIT} chars are kept
+     * in memory, larger values are copied in chunks to a UTF-8 spill file of the row copier and streamed from there on
+     * bind
+     */
+    static final class ClobVector extends ColumnVector {
+        private final RowCopier copier;
+        private final String[] inline;
+        private final Path[] files;
+        private final long[] lengths;
+        private final List<Reader> openStreams = new ArrayList<>();
+        private long lobBytes = 0;
+
+        ClobVector(int sqlType, int capacity, RowCopier copier) {
+            super(sqlType, capacity);
+            this.copier = copier;
+            this.inline = new String[capacity];
+            this.files = new Path[capacity];
+            this.lengths = new long[capacity];
+        }
+
+        @Override
+        void read(ResultSet rs, int ordinal, int row) throws SQLException {
+            try (Reader in = rs.getCharacterStream(ordinal)) {
+                setNull(row, in == null);
+                if (in == null) {
+                    return;
+                }
+                char[] chunk = new char[CHUNK_SIZE];
+                StringBuilder head = new StringBuilder();
+                Writer spill = null;
+                long length = 0;
+                try {
+                    int n;
+                    while ((n = in.read(chunk)) > 0) {
+                        length += n;
+                        if (spill == null && length > INLINE_LIMIT) {
+                            files[row] = copier.createSpillFile();
+                            spill = Files.newBufferedWriter(files[row], StandardCharsets.UTF_8);
+                            spill.append(head);
+                        }
+                        if (spill != null) {
+                            spill.write(chunk, 0, n);
+                        } else {
+                            head.append(chunk, 0, n);
+                        }
+                    }
+                } finally {
+                    if (spill != null) {
+                        spill.close();
+                    }
+                }
+                inline[row] = spill == null ? head.toString() : null;
+                lengths[row] = length;
+                lobBytes += 2 * length;
+            } catch (IOException e) {
+                throw new SQLException("LOB could not be read", e);
+            }
+        }
+
+        @Override
+        void bindValue(PreparedStatement stmt, int index, int row) throws SQLException {
+            if (inline[row] != null) {
+                stmt.setCharacterStream(index, new StringReader(inline[row]), inline[row].length());
+                return;
+            }
+            try {
+                Reader in = Files.newBufferedReader(files[row], StandardCharsets.UTF_8);
+                openStreams.add(in);
+                stmt.setCharacterStream(index, in, lengths[row]);
+            } catch (IOException e) {
+                throw new SQLException("LOB spill file could not be read", e);
+            }
+        }
+
+        /**
+         * Writes the length in chars and the UTF-8 bytes of the value
+         */
+        @Override
+        void encode(DataOutputStream out, int row) throws IOException {
+            out.writeLong(lengths[row]);
+            if (inline[row] != null) {
+                byte[] bytes = inline[row].getBytes(StandardCharsets.UTF_8);
+                out.writeLong(bytes.length);
+                out.write(bytes);
+            } else {
+                out.writeLong(Files.size(files[row]));
+                Files.copy(files[row], out);
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer in, int row) throws IOException {
+            long length = in.getLong();
+            int bytes = (int) in.getLong();
+            if (length <= INLINE_LIMIT) {
+                inline[row] = StandardCharsets.UTF_8.decode(in.slice(in.position(), bytes)).toString();
+                in.position(in.position() + bytes);
+            } else {
+                files[row] = copier.createSpillFile();
+                spill(in, bytes, files[row]);
+            }
+            lengths[row] = length;
+            lobBytes += 2 * length;
+        }
+
+        @Override
+        Object getObject(int row) {
+            try {
+                return inline[row] != null ? inline[row] : new String(Files.readAllBytes(files[row]), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new RuntimeException("LOB spill file could not be read", e);
+            }
+        }
+
+        @Override
+        long getLobBytes() {
+            return lobBytes;
+        }
+
+        @Override
+        long estimateBytes(int size) {
+            long bytes = 24L * inline.length;
+            for (int row = 0; row < size; row++) {
+                bytes += RowBatch.estimateSize(inline[row]);
+            }
+            return bytes;
+        }
+
+        @Override
+        long estimateDataBytes(int from, int to) {
+            long bytes = 0;
+            for (int row = from; row < to; row++) {
+                if (!isNull(row)) {
+                    bytes += 2 * lengths[row];
+                }
+            }
+            return bytes;
+        }
+
+        @Override
+        void clear(int size) {
+            super.clear(size);
+            closeStreams(openStreams);
+            deleteFiles(files, size);
+            Arrays.fill(inline, 0, size, null);
+            lobBytes = 0;
+        }
+    }
+
+    /**
+     * Type tags of the values of object columns in a snapshot block
+     */
+    private static final byte TAG_LONG = 1;
+    private static final byte TAG_DOUBLE = 2;
+    private static final byte TAG_DECIMAL = 3;
+    private static final byte TAG_STRING = 4;
+    private static final byte TAG_BYTES = 5;
+    private static final byte TAG_DATE = 6;
+    private static final byte TAG_TIME = 7;
+    private static final byte TAG_TIMESTAMP = 8;
+    private static final byte TAG_BOOLEAN = 9;
+
+    /**
+     * Writes a value of an object column with a type tag. Values of other types are written as strings
+     */
+    private static void encodeObject(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            out.writeByte(TAG_DECIMAL);
+            encodeDecimal(out, value instanceof BigInteger ? new BigDecimal((BigInteger) value) : (BigDecimal) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TAG_TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte(TAG_DATE);
+            out.writeInt((int) ((Date) value).toLocalDate().toEpochDay());
+        } else if (value instanceof Time) {
+            out.writeByte(TAG_TIME);
+            out.writeLong(((Time) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(TAG_BYTES);
+            encodeBytes(out, (byte[]) value);
+        } else {
+            out.writeByte(TAG_STRING);
+            encodeBytes(out, toText(value).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Object decodeObject(ByteBuffer in) throws IOException {
+        byte tag = in.get();
+        switch (tag) {
+            case TAG_LONG:
+                return in.getLong();
+            case TAG_DOUBLE:
+                return in.getDouble();
+            case TAG_DECIMAL:
+                return decodeDecimal(in);
+            case TAG_BOOLEAN:
+                return in.get() != 0;
+            case TAG_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.getLong());
+                timestamp.setNanos(in.getInt());
+                return timestamp;
+            case TAG_DATE:
+                return Date.valueOf(LocalDate.ofEpochDay(in.getInt()));
+            case TAG_TIME:
+                return new Time(in.getLong());
+            case TAG_BYTES:
+                return decodeBytes(in);
+            case TAG_STRING:
+                return new String(decodeBytes(in), StandardCharsets.UTF_8);
+            default:
+                throw new IOException("Invalid value tag " + tag + " in snapshot");
+        }
+    }
+
+    private static String toText(Object value) throws IOException {
+        try {
+            if (value instanceof Clob) {
+                Clob clob = (Clob) value;
+                return clob.getSubString(1, (int) clob.length());
+            }
+            if (value instanceof Blob) {
+                throw new IOException("BLOB value in a column of type " + value.getClass().getName());
+            }
+            return value.toString();
+        } catch (SQLException e) {
+            throw new IOException("LOB could not be read", e);
+        }
+    }
+
+    private static void encodeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        out.writeInt(value.scale());
+        encodeBytes(out, value.unscaledValue().toByteArray());
+    }
+
+    private static BigDecimal decodeDecimal(ByteBuffer in) {
+        int scale = in.getInt();
+        return new BigDecimal(new BigInteger(decodeBytes(in)), scale);
+    }
+
+    private static void encodeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] decodeBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies a large LOB value of a snapshot block to a spill file
+     */
+    private static void spill(ByteBuffer in, int length, Path file) throws IOException {
+        ByteBuffer value = in.slice(in.position(), length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            while (value.hasRemaining()) {
+                channel.write(value);
+            }
+        }
+        in.position(in.position() + length);
+    }
+
+    private static void closeStreams(List<? extends Closeable> streams) {
+        for (Closeable stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                log.warn("Error in closing LOB stream: " + e.getMessage());
+            }
+        }
+        streams.clear();
+    }
+
+    private static void deleteFiles(Path[] files, int size) {
+        for (int row = 0; row < size; row++) {
+            if (files[row] != null) {
+                try {
+                    Files.deleteIfExists(files[row]);
+                } catch (IOException e) {
+                    log.warn("Error in deleting LOB spill file: " + e.getMessage());
+                }
+                files[row] = null;
+            }
+        }
+    }
+}
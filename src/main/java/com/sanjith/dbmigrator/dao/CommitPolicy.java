@@ -0,0 +1,40 @@
+package com.sanjith.dbmigrator.dao;
+
+/**
+ * Defines when a writer session commits its inserts
+ *
+ * @see WriterSession
+ */
+public enum CommitPolicy {
+    /**
+     * Commit once, after the whole table has been written
+     */
+    TABLE,
+    /**
+     * Commit after every N batches
+     */
+    BATCHES,
+    /**
+     * Commit after every N rows
+     */
+    ROWS,
+    /**
+     * Commit after every N bytes, based on the estimated batch size
+     */
+    BYTES;
+
+    /**
+     * Parses a commit policy name
+     *
+     * @param value         Policy name, case insensitive
+     * @param defaultPolicy Policy used if no name is given
+     * @return commit policy
+     * @throws IllegalArgumentException if the name is not a commit policy
+     */
+    public static CommitPolicy parse(String value, CommitPolicy defaultPolicy) throws IllegalArgumentException {
+        if (value == null || value.isBlank()) {
+            return defaultPolicy;
+        }
+        return CommitPolicy.valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,192 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * DB2 writer using the LOAD utility through SYSPROC.ADMIN_CMD. Every batch is written as a DEL file into a stage
+ * directory which the database server reads, and loaded with INSERT mode. LOAD commits on its own and locks the table,
+ * so the loads of one table are run one after another and the batch size should be large
+ */
+public class Db2LoadWriter implements BulkWriter {
+
+    private static final Logger log = LogManager.getLogger(Db2LoadWriter.class);
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH.mm.ss.SSSSSS");
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH.mm.ss");
+
+    /**
+     * Serializes the loads into the same table across sessions
+     */
+    private static final ConcurrentMap<String, Object> TABLE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path stageDir;
+
+    private final String serverStageDir;
+
+    private final String loadOptions;
+
+    private CallableStatement statement;
+
+    private String tableName;
+
+    private String columnList;
+
+    private int fileNo = 0;
+
+    private long bindNanos;
+
+    /**
+     * Constructs a DB2 LOAD writer
+     *
+     * @param stageDir       Directory the load files are written to
+     * @param serverStageDir Same directory as seen by the database server, empty if the server sees the same path
+     * @param loadOptions    Options appended to the LOAD command, e.g. NONRECOVERABLE
+     */
+    public Db2LoadWriter(String stageDir, String serverStageDir, String loadOptions) {
+        this.stageDir = Paths.get(stageDir).toAbsolutePath();
+        this.serverStageDir = serverStageDir.isEmpty() ? this.stageDir.toString() : serverStageDir;
+        this.loadOptions = loadOptions;
+    }
+
+    @Override
+    public String getName() {
+        return "db2-load";
+    }
+
+    @Override
+    public boolean supports(int[] typeArr) {
+        for (int type : typeArr) {
+            if (!DbUtils.isTextLoadableType(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) throws SQLException {
+        this.tableName = tableName;
+        this.columnList = String.join(",", columnNames);
+        this.statement = connection.prepareCall("CALL SYSPROC.ADMIN_CMD(?)");
+        try {
+            Files.createDirectories(stageDir);
+        } catch (IOException e) {
+            statement.close();
+            throw new SQLException("Stage directory " + stageDir + " could not be created", e);
+        }
+    }
+
+    @Override
+    public int write(ColumnBatch batch) throws SQLException {
+        String fileName = tableName + "-" + Thread.currentThread().getName() + "-" + (fileNo++) + ".del";
+        Path file = stageDir.resolve(fileName);
+        long bindStart = System.nanoTime();
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int row = 0; row < batch.size(); row++) {
+                    for (int i = 0; i < batch.getColumnCount(); i++) {
+                        if (i > 0) {
+                            out.write(',');
+                        }
+                        out.write(formatValue(batch.getValue(row, i)));
+                    }
+                    out.write('\n');
+                }
+            }
+            bindNanos = System.nanoTime() - bindStart;
+
+            String command = "LOAD FROM " + serverStageDir + "/" + fileName + " OF DEL MODIFIED BY CODEPAGE=1208 DELPRIORITYCHAR"
+                    + " INSERT INTO " + tableName + " (" + columnList + ") " + loadOptions;
+            statement.setString(1, command);
+            synchronized (TABLE_LOCKS.computeIfAbsent(tableName.toUpperCase(), k -> new Object())) {
+                statement.execute();
+            }
+            return checkResult(batch.size());
+        } catch (IOException e) {
+            throw new SQLException("Load file " + file + " could not be written", e);
+        } finally {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Error in deleting load file: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public long getBindNanos() {
+        return bindNanos;
+    }
+
+    /**
+     * Reads the LOAD result and fails unless every row has been loaded
+     */
+    private int checkResult(int rowCount) throws SQLException {
+        try (ResultSet rs = statement.getResultSet()) {
+            if (rs == null || !rs.next()) {
+                throw new SQLException("Load Failed: no result");
+            }
+            long loaded = rs.getLong("ROWS_LOADED");
+            long rejected = rs.getLong("ROWS_REJECTED");
+            if (loaded != rowCount || rejected > 0) {
+                throw new SQLException("Load Failed: " + loaded + " of " + rowCount + " rows loaded, " + rejected
+                        + " rejected. Messages: " + rs.getString("MSG_RETRIEVAL"));
+            }
+            return (int) loaded;
+        }
+    }
+
+    private static String formatValue(Object value) {
+        if (value == null) {
+            return "";
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).toPlainString();
+        } else if (value instanceof Timestamp) {
+            return TIMESTAMP_FORMAT.format(((Timestamp) value).toLocalDateTime());
+        } else if (value instanceof Time) {
+            return TIME_FORMAT.format(((Time) value).toLocalTime());
+        } else if (value instanceof Number || value instanceof java.sql.Date) {
+            return value.toString();
+        } else {
+            return "\"" + value.toString().replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    @Override
+    public boolean isCommitPerBatch() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            log.warn("Error in closing statement: " + e.getMessage());
+        }
+    }
+}
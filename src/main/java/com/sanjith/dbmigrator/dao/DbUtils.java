@@ -5,8 +5,13 @@ import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * Utility class for DB operations
@@ -79,9 +84,6 @@ public class DbUtils {
             Map<String, Integer> columnEntry = new HashMap<>();
 
             while (rs.next()) {
-                if (rs.getInt("DATA_TYPE") == Types.CLOB || rs.getInt("DATA_TYPE") == Types.BLOB) {
-                    throw new RuntimeException("CLOB/BLOB detected. Migration could not proceed");
-                }
                 columnEntry.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
             }
             return columnEntry;
@@ -91,5 +93,378 @@ public class DbUtils {
         return result;
     }
 
+    /**
+     * Retrieves the precision and scale of the columns, as needed by typed file formats for DECIMAL columns
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return Key - column name. Value - {precision, scale}, scale is -1 if the database reports none
+     */
+    public static Map<String, int[]> getColumnPrecisionScale(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<Map<String, int[]>>) connection -> {
+            Map<String, int[]> columnEntry = new HashMap<>();
+            try (ResultSet rs = connection.getMetaData().getColumns(null, schema, table, null)) {
+                while (rs.next()) {
+                    int scale = rs.getInt("DECIMAL_DIGITS");
+                    if (rs.wasNull()) {
+                        scale = -1;
+                    }
+                    columnEntry.put(rs.getString("COLUMN_NAME"), new int[]{rs.getInt("COLUMN_SIZE"), scale});
+                }
+            }
+            return columnEntry;
+        });
+    }
+
+    /**
+     * Finds a column which can be used to split the table into key ranges. The leading primary key column is preferred,
+     * otherwise the leading column of any index. Only numeric and date/time columns are considered
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return split column name, null if the table has no splittable indexed column
+     * @see #isSplittableType(int)
+     */
+    public static String getSplitColumn(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<String>) connection -> {
+
+            DatabaseMetaData metaData = connection.getMetaData();
+            Map<String, Integer> columnTypes = new HashMap<>();
+            try (ResultSet rs = metaData.getColumns(null, schema, table, null)) {
+                while (rs.next()) {
+                    columnTypes.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+                }
+            }
+
+            Map<Short, String> primaryKey = new TreeMap<>();
+            try (ResultSet rs = metaData.getPrimaryKeys(null, schema, table)) {
+                while (rs.next()) {
+                    primaryKey.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+            if (!primaryKey.isEmpty()) {
+                String leading = primaryKey.values().iterator().next();
+                if (isSplittableType(columnTypes.getOrDefault(leading, Types.OTHER))) {
+                    return leading;
+                }
+            }
+
+            try (ResultSet rs = metaData.getIndexInfo(null, schema, table, false, true)) {
+                while (rs.next()) {
+                    String column = rs.getString("COLUMN_NAME");
+                    if (rs.getShort("ORDINAL_POSITION") == 1 && column != null
+                            && isSplittableType(columnTypes.getOrDefault(column, Types.OTHER))) {
+                        return column;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Finds the tables referenced by the foreign keys of a table
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return names of the referenced tables in the same schema, case insensitive, without the table itself
+     */
+    public static Set<String> getReferencedTables(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<Set<String>>) connection -> {
+            Set<String> parents = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            try (ResultSet rs = connection.getMetaData().getImportedKeys(null, schema, table)) {
+                while (rs.next()) {
+                    String parentSchema = rs.getString("PKTABLE_SCHEM");
+                    String parent = rs.getString("PKTABLE_NAME");
+                    if ((parentSchema == null || parentSchema.equalsIgnoreCase(schema)) && !parent.equalsIgnoreCase(table)) {
+                        parents.add(parent);
+                    }
+                }
+            }
+            return parents;
+        });
+    }
+
+    /**
+     * Retrieves the non-unique indexes of a table, which can be dropped before a load and rebuilt after it. Indexes on
+     * expressions are left out
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return Key - index name. Value - index column list in key order, descending columns followed by DESC
+     */
+    public static Map<String, String> getNonUniqueIndexes(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<Map<String, String>>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            Set<String> columns = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            try (ResultSet rs = metaData.getColumns(null, schema, table, null)) {
+                while (rs.next()) {
+                    columns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+            Map<String, Map<Short, String>> indexColumns = new TreeMap<>();
+            Set<String> skipped = new TreeSet<>();
+            try (ResultSet rs = metaData.getIndexInfo(null, schema, table, false, true)) {
+                while (rs.next()) {
+                    String index = rs.getString("INDEX_NAME");
+                    if (index == null || rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic || !rs.getBoolean("NON_UNIQUE")) {
+                        continue;
+                    }
+                    String column = rs.getString("COLUMN_NAME");
+                    if (column == null || !columns.contains(column)) {
+                        skipped.add(index);
+                        continue;
+                    }
+                    indexColumns.computeIfAbsent(index, k -> new TreeMap<>())
+                            .put(rs.getShort("ORDINAL_POSITION"), "D".equals(rs.getString("ASC_OR_DESC")) ? column + " DESC" : column);
+                }
+            }
+            Map<String, String> indexes = new TreeMap<>();
+            for (Map.Entry<String, Map<Short, String>> entry : indexColumns.entrySet()) {
+                if (!skipped.contains(entry.getKey())) {
+                    indexes.put(entry.getKey(), String.join(",", entry.getValue().values()));
+                }
+            }
+            return indexes;
+        });
+    }
 
+    /**
+     * Retrieves the foreign keys of a table as constraint definitions
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return Key - constraint name. Value - FOREIGN KEY (...) REFERENCES ... clause, with its ON DELETE rule if it
+     * cascades or sets null
+     */
+    public static Map<String, String> getForeignKeys(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<Map<String, String>>) connection -> {
+            Map<String, Map<Short, String[]>> keyColumns = new TreeMap<>();
+            Map<String, String> parents = new HashMap<>();
+            Map<String, Short> deleteRules = new HashMap<>();
+            try (ResultSet rs = connection.getMetaData().getImportedKeys(null, schema, table)) {
+                while (rs.next()) {
+                    String name = rs.getString("FK_NAME");
+                    if (name == null) {
+                        continue;
+                    }
+                    String parentSchema = rs.getString("PKTABLE_SCHEM");
+                    parents.put(name, (parentSchema == null ? "" : parentSchema + ".") + rs.getString("PKTABLE_NAME"));
+                    deleteRules.put(name, rs.getShort("DELETE_RULE"));
+                    keyColumns.computeIfAbsent(name, k -> new TreeMap<>())
+                            .put(rs.getShort("KEY_SEQ"), new String[]{rs.getString("FKCOLUMN_NAME"), rs.getString("PKCOLUMN_NAME")});
+                }
+            }
+            Map<String, String> foreignKeys = new TreeMap<>();
+            for (Map.Entry<String, Map<Short, String[]>> entry : keyColumns.entrySet()) {
+                List<String> columns = new ArrayList<>();
+                List<String> parentColumns = new ArrayList<>();
+                for (String[] pair : entry.getValue().values()) {
+                    columns.add(pair[0]);
+                    parentColumns.add(pair[1]);
+                }
+                String definition = "FOREIGN KEY (" + String.join(",", columns) + ") REFERENCES " + parents.get(entry.getKey())
+                        + " (" + String.join(",", parentColumns) + ")";
+                short rule = deleteRules.get(entry.getKey());
+                if (rule == DatabaseMetaData.importedKeyCascade) {
+                    definition += " ON DELETE CASCADE";
+                } else if (rule == DatabaseMetaData.importedKeySetNull) {
+                    definition += " ON DELETE SET NULL";
+                }
+                foreignKeys.put(entry.getKey(), definition);
+            }
+            return foreignKeys;
+        });
+    }
+
+    /**
+     * Estimates the row count of a table from the index statistics of the database, without scanning the table
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return estimated row count, 0 if the database has no statistics
+     */
+    public static long getEstimatedRowCount(String schema, String table, JdbcTemplate template) {
+        Long estimate = template.execute((ConnectionCallback<Long>) connection -> {
+            long cardinality = 0;
+            try (ResultSet rs = connection.getMetaData().getIndexInfo(null, schema, table, false, true)) {
+                while (rs.next()) {
+                    if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                        return Math.max(0, rs.getLong("CARDINALITY"));
+                    }
+                    cardinality = Math.max(cardinality, rs.getLong("CARDINALITY"));
+                }
+            }
+            return cardinality;
+        });
+        return estimate == null ? 0 : estimate;
+    }
+
+    /**
+     * Checks whether the primary key of the table consists of the given column alone
+     * @param schema schema name
+     * @param table table name
+     * @param column column name
+     * @param template jdbc template
+     * @return true - column is the primary key
+     */
+    public static boolean isPrimaryKey(String schema, String table, String column, JdbcTemplate template) {
+        return Boolean.TRUE.equals(template.execute((ConnectionCallback<Boolean>) connection -> {
+            int keyColumns = 0;
+            boolean found = false;
+            try (ResultSet rs = connection.getMetaData().getPrimaryKeys(null, schema, table)) {
+                while (rs.next()) {
+                    keyColumns++;
+                    found |= column.equals(rs.getString("COLUMN_NAME"));
+                }
+            }
+            return found && keyColumns == 1;
+        }));
+    }
+
+    /**
+     * Checks whether a column is declared NOT NULL
+     * @param schema schema name
+     * @param table table name
+     * @param column column name
+     * @param template jdbc template
+     * @return true - column cannot hold NULL, false if it can or the database does not know
+     */
+    public static boolean isNotNull(String schema, String table, String column, JdbcTemplate template) {
+        return Boolean.TRUE.equals(template.execute((ConnectionCallback<Boolean>) connection -> {
+            try (ResultSet rs = connection.getMetaData().getColumns(null, schema, table, null)) {
+                while (rs.next()) {
+                    if (column.equals(rs.getString("COLUMN_NAME"))) {
+                        return rs.getInt("NULLABLE") == DatabaseMetaData.columnNoNulls;
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+
+    /**
+     * Retrieves the primary key columns of a table
+     * @param schema schema name
+     * @param table table name
+     * @param template jdbc template
+     * @return primary key column names in key order, empty if the table has no primary key
+     */
+    public static List<String> getPrimaryKeyColumns(String schema, String table, JdbcTemplate template) {
+        return template.execute((ConnectionCallback<List<String>>) connection -> {
+            Map<Short, String> primaryKey = new TreeMap<>();
+            try (ResultSet rs = connection.getMetaData().getPrimaryKeys(null, schema, table)) {
+                while (rs.next()) {
+                    primaryKey.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+                }
+            }
+            return new ArrayList<>(primaryKey.values());
+        });
+    }
+
+    /**
+     * Reads a key column value with the getter matching its type, so that the value can be bound back as a range bound
+     * @param rs result set positioned on a row
+     * @param column 1 based column position
+     * @param sqlType Column datatype in java.sql.Types form
+     * @return Long, BigDecimal, java.sql.Date or java.sql.Timestamp value, null for SQL NULL
+     * @throws SQLException
+     */
+    public static Object getKeyValue(ResultSet rs, int column, int sqlType) throws SQLException {
+        Object value;
+        switch (sqlType) {
+            case Types.DATE:
+                value = rs.getDate(column);
+                break;
+            case Types.TIMESTAMP:
+                value = rs.getTimestamp(column);
+                break;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                value = rs.getBigDecimal(column);
+                break;
+            default:
+                value = rs.getLong(column);
+        }
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * Checks whether a column of the given type can be split into ranges using MIN/MAX arithmetic
+     * @param sqlType Column datatype in java.sql.Types form
+     * @return true - numeric or date/time type
+     */
+    public static boolean isSplittableType(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether a column of the given type can be written as text in a delimited load file
+     * @param sqlType Column datatype in java.sql.Types form
+     * @return true - character, numeric, boolean or date/time type
+     */
+    public static boolean isTextLoadableType(int sqlType) {
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Checks whether a failure was caused by a deadlock or lock wait timeout, after which the transaction was rolled
+     * back and can be retried. Recognizes SQL state class 40 (DB2 -911, PostgreSQL, SQL Server), MySQL 1213 and 1205
+     * and Oracle ORA-00060
+     * @param failure Failure with the SQLException in its cause chain
+     * @return true - lock conflict
+     */
+    public static boolean isLockConflict(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof SQLTransactionRollbackException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                    String state = e.getSQLState();
+                    int code = e.getErrorCode();
+                    if ((state != null && state.startsWith("40")) || code == 1213 || code == 1205 || code == 60 || code == -911) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,273 @@
+package com.sanjith.dbmigrator.dao;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Non-unique indexes and foreign keys of a destination table, dropped before a full load and rebuilt after it so the
+ * load does not maintain them row by row. The definitions are captured from the database metadata and written to a
+ * local file before anything is dropped. The file is only deleted once every index and foreign key has been rebuilt
+ * and found again in the metadata, a run interrupted in between picks the definitions up from the file. Indexes are
+ * rebuilt in parallel, foreign keys one at a time after them
+ */
+public class DeferredIndexes {
+
+    private static final Logger log = LogManager.getLogger(DeferredIndexes.class);
+
+    private final Path file;
+
+    private final String schemaName;
+
+    private final String tableName;
+
+    private final JdbcTemplate template;
+
+    private final String jdbcUrl;
+
+    /**
+     * Key - index name. Value - index column list
+     */
+    private Map<String, String> indexes = new LinkedHashMap<>();
+
+    /**
+     * Key - constraint name. Value - constraint definition
+     */
+    private Map<String, String> foreignKeys = new LinkedHashMap<>();
+
+    /**
+     * Constructs the deferred indexes of a table
+     *
+     * @param directory  Directory holding the index definition files
+     * @param schemaName Destination schema
+     * @param tableName  Destination table
+     * @param template   Destination jdbc template
+     * @param jdbcUrl    Destination jdbc url
+     */
+    public DeferredIndexes(String directory, String schemaName, String tableName, JdbcTemplate template, String jdbcUrl) {
+        this.file = Paths.get(directory, schemaName + "." + tableName + ".indexes");
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.template = template;
+        this.jdbcUrl = jdbcUrl == null ? "" : jdbcUrl.toLowerCase();
+    }
+
+    /**
+     * Checks whether a previous run dropped the indexes and did not rebuild them
+     * @return true - definitions file exists
+     */
+    public boolean isPending() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Drops the non-unique indexes and foreign keys of the table. The definitions are taken from the file of an
+     * interrupted run if there is one, otherwise captured and saved first
+     *
+     * @throws IOException if the definitions file could not be read or written
+     */
+    public void drop() throws IOException {
+        if (isPending()) {
+            load();
+            log.info("Indexes of " + tableName + " left dropped by a previous run, definitions loaded from " + file.toAbsolutePath());
+        } else {
+            indexes = DbUtils.getNonUniqueIndexes(schemaName, tableName, template);
+            foreignKeys = DbUtils.getForeignKeys(schemaName, tableName, template);
+            if (indexes.isEmpty() && foreignKeys.isEmpty()) {
+                log.info(tableName + " has no non-unique indexes or foreign keys to defer");
+                return;
+            }
+            save();
+        }
+        Set<String> existingKeys = getNames(DbUtils.getForeignKeys(schemaName, tableName, template));
+        for (String name : foreignKeys.keySet()) {
+            if (existingKeys.contains(name)) {
+                execute(getDropForeignKeySql(name));
+            }
+        }
+        Set<String> existingIndexes = getNames(DbUtils.getNonUniqueIndexes(schemaName, tableName, template));
+        for (String name : indexes.keySet()) {
+            if (existingIndexes.contains(name)) {
+                execute(getDropIndexSql(name));
+            }
+        }
+        System.out.println("Dropped " + indexes.size() + " indexes and " + foreignKeys.size() + " foreign keys of " + tableName);
+    }
+
+    /**
+     * Rebuilds the dropped indexes in parallel and then the foreign keys, skipping those which exist already, and
+     * verifies them against the metadata. The definitions file is deleted once all are found
+     *
+     * @param parallelism Maximum no. of indexes built concurrently
+     * @throws IOException if the definitions file could not be deleted
+     * @throws RuntimeException if an index or foreign key could not be rebuilt
+     */
+    public void rebuild(int parallelism) throws IOException {
+        if (indexes.isEmpty() && foreignKeys.isEmpty()) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        System.out.println("Rebuilding " + indexes.size() + " indexes and " + foreignKeys.size() + " foreign keys of " + tableName);
+        Set<String> existingIndexes = getNames(DbUtils.getNonUniqueIndexes(schemaName, tableName, template));
+        List<String> createIndexSql = new ArrayList<>();
+        for (Map.Entry<String, String> index : indexes.entrySet()) {
+            if (!existingIndexes.contains(index.getKey())) {
+                createIndexSql.add(getCreateIndexSql(index.getKey(), index.getValue()));
+            }
+        }
+        List<Throwable> failures = new ArrayList<>();
+        if (!createIndexSql.isEmpty()) {
+            ExecutorService indexService = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, createIndexSql.size())),
+                    new ThreadFactoryBuilder().setNameFormat("index-%d").build());
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (String sql : createIndexSql) {
+                    futures.add(indexService.submit(() -> execute(sql)));
+                }
+                for (Future<?> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failures.add(e.getCause());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        failures.add(e);
+                    }
+                }
+            } finally {
+                indexService.shutdown();
+            }
+        }
+        // a foreign key locks its table, building them concurrently would only queue them up
+        Set<String> existingKeys = getNames(DbUtils.getForeignKeys(schemaName, tableName, template));
+        for (Map.Entry<String, String> foreignKey : foreignKeys.entrySet()) {
+            if (!existingKeys.contains(foreignKey.getKey())) {
+                try {
+                    execute("ALTER TABLE " + tableName + " ADD CONSTRAINT " + foreignKey.getKey() + " " + foreignKey.getValue());
+                } catch (RuntimeException e) {
+                    failures.add(e);
+                }
+            }
+        }
+        for (Throwable failure : failures) {
+            log.error("Error in rebuilding index of " + tableName + ": " + failure.getMessage());
+        }
+
+        List<String> missing = new ArrayList<>();
+        existingIndexes = getNames(DbUtils.getNonUniqueIndexes(schemaName, tableName, template));
+        for (String name : indexes.keySet()) {
+            if (!existingIndexes.contains(name)) {
+                missing.add(name);
+            }
+        }
+        existingKeys = getNames(DbUtils.getForeignKeys(schemaName, tableName, template));
+        for (String name : foreignKeys.keySet()) {
+            if (!existingKeys.contains(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.error("Indexes " + missing + " of " + tableName + " not rebuilt, definitions kept in " + file.toAbsolutePath());
+            throw new RuntimeException("Index Rebuild Failed");
+        }
+        Files.deleteIfExists(file);
+        log.info("REBUILT " + indexes.size() + " INDEXES AND " + foreignKeys.size() + " FOREIGN KEYS OF " + tableName
+                + " IN " + (System.currentTimeMillis() - startTime) + " MS");
+        System.out.println("Rebuilt indexes of " + tableName + " in " + (System.currentTimeMillis() - startTime) + " MS");
+    }
+
+    private void execute(String sql) {
+        log.info("Executing SQL Statement [" + sql + "]");
+        long startTime = System.currentTimeMillis();
+        template.execute(sql);
+        log.debug("Statement took " + (System.currentTimeMillis() - startTime) + " MS");
+    }
+
+    private String getCreateIndexSql(String name, String columnList) {
+        if (jdbcUrl.startsWith("jdbc:db2:") || jdbcUrl.startsWith("jdbc:oracle:")) {
+            name = schemaName + "." + name;
+        }
+        return "CREATE INDEX " + name + " ON " + tableName + " (" + columnList + ")";
+    }
+
+    private String getDropIndexSql(String name) {
+        if (jdbcUrl.startsWith("jdbc:mysql:") || jdbcUrl.startsWith("jdbc:mariadb:") || jdbcUrl.startsWith("jdbc:sqlserver:")) {
+            return "DROP INDEX " + name + " ON " + tableName;
+        }
+        return "DROP INDEX " + schemaName + "." + name;
+    }
+
+    private String getDropForeignKeySql(String name) {
+        if (jdbcUrl.startsWith("jdbc:mysql:") || jdbcUrl.startsWith("jdbc:mariadb:")) {
+            return "ALTER TABLE " + tableName + " DROP FOREIGN KEY " + name;
+        }
+        return "ALTER TABLE " + tableName + " DROP CONSTRAINT " + name;
+    }
+
+    private static Set<String> getNames(Map<String, String> definitions) {
+        Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        names.addAll(definitions.keySet());
+        return names;
+    }
+
+    private void load() throws IOException {
+        Properties prop = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            prop.load(is);
+        }
+        indexes = new LinkedHashMap<>();
+        for (int i = 0; prop.getProperty("index." + i) != null; i++) {
+            indexes.put(prop.getProperty("index." + i), prop.getProperty("index." + i + ".columns"));
+        }
+        foreignKeys = new LinkedHashMap<>();
+        for (int i = 0; prop.getProperty("fk." + i) != null; i++) {
+            foreignKeys.put(prop.getProperty("fk." + i), prop.getProperty("fk." + i + ".definition"));
+        }
+    }
+
+    private void save() throws IOException {
+        Properties prop = new Properties();
+        prop.setProperty("table", schemaName + "." + tableName);
+        prop.setProperty("captured", LocalDateTime.now().toString());
+        int i = 0;
+        for (Map.Entry<String, String> index : indexes.entrySet()) {
+            prop.setProperty("index." + i, index.getKey());
+            prop.setProperty("index." + i++ + ".columns", index.getValue());
+        }
+        i = 0;
+        for (Map.Entry<String, String> foreignKey : foreignKeys.entrySet()) {
+            prop.setProperty("fk." + i, foreignKey.getKey());
+            prop.setProperty("fk." + i++ + ".definition", foreignKey.getValue());
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            prop.store(out, "Data Migrator deferred indexes");
+            out.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Saved definitions of " + indexes.size() + " indexes and " + foreignKeys.size() + " foreign keys to " + file.toAbsolutePath());
+    }
+}
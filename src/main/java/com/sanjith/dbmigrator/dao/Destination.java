@@ -2,17 +2,24 @@ package com.sanjith.dbmigrator.dao;
 
 import static java.sql.Statement.EXECUTE_FAILED;
 
-import com.google.common.base.Strings;
+import com.sanjith.dbmigrator.metrics.MetricsRegistry;
 import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.List;
@@ -23,14 +30,51 @@ import javax.sql.DataSource;
  * DAO Class for Destination table
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class Destination {
 
+    private static final Logger log = LogManager.getLogger(Destination.class);
+
     @Value("${input.destination-table}")
     private String tableName;
 
     @Value("${input.destination-schema}")
     private String schemaName;
 
+    @Value("${input.rows-per-statement}")
+    private int rowsPerStatement;
+
+    @Value("${input.bulk-writer}")
+    private String bulkWriter;
+
+    @Value("${input.bulk-stage-dir}")
+    private String bulkStageDir;
+
+    @Value("${input.bulk-server-stage-dir}")
+    private String bulkServerStageDir;
+
+    @Value("${input.db2-load-options}")
+    private String db2LoadOptions;
+
+    /**
+     * How rows are applied to the table: insert, upsert to update the rows whose primary key exists, or merge to
+     * upsert from a staging table with one set-based statement per commit
+     */
+    @Value("${input.apply-mode}")
+    private String applyMode;
+
+    /**
+     * Clears the table with TRUNCATE instead of DELETE, falls back to DELETE where the database refuses it
+     */
+    @Value("${input.fast-truncate}")
+    private boolean fastTruncate;
+
+    /**
+     * Directory recording the staging tables of merge mode until they are dropped
+     */
+    @Value("${input.checkpoint-dir}")
+    private String checkpointDir;
+
     @Qualifier("destinationDataSource")
     @Autowired
     private DataSource destination;
@@ -39,8 +83,29 @@ public class Destination {
     @Autowired
     private JdbcTemplate template;
 
+    @Qualifier("destinationMetadata")
+    @Autowired
+    private MetadataCache metadata;
+
+    @Autowired(required = false)
+    private MetricsRegistry metrics;
+
     private Map<String, Integer> columnMetaData = null;
 
+    private InsertPlan insertPlan = null;
+
+    private InsertPlan upsertPlan = null;
+
+    /**
+     * Staging tables of merge mode, null until the first session opens
+     */
+    private StagingTables stagingTables = null;
+
+    /**
+     * Reject file of the table, null if failing rows fail the migration
+     */
+    private RejectLog rejectLog = null;
+
     /**
      * Inserts queried data into destination table
      * @param columnNames Column names
@@ -52,25 +117,17 @@ public class Destination {
      */
     public int insertData(LinkedHashSet<String> columnNames, List<Object[]> valueList, int[] typeArr) {
 
-        StringBuilder stmtBuilder = new StringBuilder("INSERT INTO ");
-        stmtBuilder.append(tableName);
-        stmtBuilder.append(" (");
-        stmtBuilder.append(String.join(",", columnNames));
-        stmtBuilder.append(") VALUES (");
-        stmtBuilder.append(Strings.repeat("?,", columnNames.size() - 1));
-        stmtBuilder.append("?)");
-
-        String sqlStmt = stmtBuilder.toString();
+        String sqlStmt = getInsertPlan(columnNames).getSql(1);
         int queryResult[] = null;
 
         try {
             queryResult = template.batchUpdate(sqlStmt, valueList, typeArr);
         } catch (Exception e) {
-            BatchUpdateException ex = (BatchUpdateException) e.getCause();
-            Exception eex = ex.getNextException();
-            eex.printStackTrace();
-
-            throw new RuntimeException("Insert Failed");
+            log.error("Insert into " + tableName + " failed: " + e.getMessage());
+            if (e.getCause() instanceof BatchUpdateException && ((BatchUpdateException) e.getCause()).getNextException() != null) {
+                log.error("Caused by: " + ((BatchUpdateException) e.getCause()).getNextException().getMessage());
+            }
+            throw new RuntimeException("Insert Failed", e);
         }
 
         for (int insertStatus : queryResult) {
@@ -83,14 +140,241 @@ public class Destination {
     }
 
     /**
-     * Truncates the destination table
+     * Isolates the rows which the destination refuses in the sessions opened from now on, instead of failing their
+     * batch. Writers are limited to the JDBC batch writer. Not available in merge mode, where the rows are applied by a
+     * single MERGE per session
+     * @param rejectLog Reject file of the table, null to fail on the first refused row
+     * @see WriterSession#setRejectLog(RejectLog)
+     */
+    public void setRejectLog(RejectLog rejectLog) {
+        if (rejectLog != null && isStagedMerge()) {
+            throw new IllegalArgumentException("Rejected rows cannot be isolated in merge mode");
+        }
+        this.rejectLog = rejectLog;
+    }
+
+    /**
+     * Opens a long lived insert session on a dedicated destination connection. The session owns the connection until
+     * it is closed. In merge mode the session loads its own staging table, see {@link StagedMergeWriter}
+     * @param columnNames Column names
+     * @param typeArr Column types
+     * @param policy Commit policy
+     * @param commitInterval No. of batches, rows or bytes between commits
+     * @return writer session
+     * @throws SQLException if no connection could be obtained
+     * @see WriterSession
+     * @see BulkWriter
+     */
+    public WriterSession openSession(LinkedHashSet<String> columnNames, int[] typeArr, CommitPolicy policy, long commitInterval) throws SQLException {
+        BulkWriter writer;
+        if (isStagedMerge()) {
+            StagingTables stagingTables = getStagingTables();
+            String stagingTable = stagingTables.nextName();
+            InsertPlan mergePlan = getInsertPlan(columnNames);
+            InsertPlan stagingPlan = new InsertPlan(stagingTable, new LinkedHashSet<>(columnNames), mergePlan.getRowsPerStatement());
+            writer = new StagedMergeWriter(createBulkWriter(columnNames, typeArr, policy, stagingPlan), stagingTable, stagingTables,
+                    mergePlan, ((HikariDataSource) this.destination).getJdbcUrl());
+        } else {
+            writer = createBulkWriter(columnNames, typeArr, policy, getInsertPlan(columnNames));
+        }
+        WriterSession session = new WriterSession(destination.getConnection(), writer, tableName, columnNames, typeArr, policy, commitInterval);
+        if (metrics != null) {
+            session.setMetrics(metrics, tableName);
+        }
+        if (rejectLog != null) {
+            session.setRejectLog(rejectLog);
+        }
+        return session;
+    }
+
+    /**
+     * Creates the bulk writer configured by input.bulk-writer. With auto the writer is chosen from the destination
+     * url: LOAD DATA for MySQL with allowLoadLocalInfile, direct-path insert for Oracle and LOAD for DB2 when a stage
+     * directory is configured. Writers which commit every batch are only chosen automatically when the commit policy
+     * allows it. Falls back to the JDBC batch writer when the writer cannot load the column types, and always uses it to
+     * upsert row by row and to isolate rejected rows
+     * @param columnNames Column names
+     * @param typeArr Column types
+     * @param policy Commit policy
+     * @param plan Insert plan of the table loaded by the writer
+     * @return bulk writer
+     */
+    private BulkWriter createBulkWriter(LinkedHashSet<String> columnNames, int[] typeArr, CommitPolicy policy, InsertPlan plan) {
+        String name = bulkWriter.trim().toLowerCase();
+        if (isUpsert() && !isStagedMerge()) {
+            if (!name.isEmpty() && !name.equals("auto") && !name.equals("jdbc")) {
+                log.warn(name + " cannot update existing rows, using jdbc");
+            }
+            name = "jdbc";
+        } else if (rejectLog != null) {
+            if (!name.isEmpty() && !name.equals("auto") && !name.equals("jdbc")) {
+                log.warn(name + " cannot isolate rejected rows, using jdbc");
+            }
+            name = "jdbc";
+        } else if (name.isEmpty() || name.equals("auto")) {
+            name = detectBulkWriter(policy);
+        }
+
+        BulkWriter writer;
+        switch (name) {
+            case "jdbc":
+                writer = new JdbcBatchWriter(plan);
+                break;
+            case "mysql-load":
+                writer = new MySqlLoadDataWriter();
+                break;
+            case "oracle-append":
+                writer = new OracleAppendWriter(plan);
+                break;
+            case "db2-load":
+                if (bulkStageDir.isEmpty()) {
+                    throw new IllegalArgumentException("db2-load requires a stage directory (--bulk-stage-dir)");
+                }
+                writer = new Db2LoadWriter(bulkStageDir, bulkServerStageDir, db2LoadOptions);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid bulk writer: " + bulkWriter);
+        }
+
+        if (!writer.supports(typeArr)) {
+            log.warn(writer.getName() + " cannot load the column types of " + tableName + ", using jdbc");
+            return new JdbcBatchWriter(plan);
+        }
+        if (writer.isCommitPerBatch() && policy == CommitPolicy.TABLE) {
+            log.warn(writer.getName() + " commits every batch, the table is not loaded in a single transaction");
+        }
+        return writer;
+    }
+
+    private String detectBulkWriter(CommitPolicy policy) {
+        String url = ((HikariDataSource) this.destination).getJdbcUrl();
+        url = url == null ? "" : url.toLowerCase();
+        if (url.startsWith("jdbc:mysql:") && url.contains("allowloadlocalinfile=true")) {
+            return "mysql-load";
+        }
+        if (policy != CommitPolicy.TABLE) {
+            if (url.startsWith("jdbc:oracle:")) {
+                return "oracle-append";
+            }
+            if (url.startsWith("jdbc:db2:") && !bulkStageDir.isEmpty()) {
+                return "db2-load";
+            }
+        }
+        return "jdbc";
+    }
+
+    /**
+     * Get the cached insert plan of the table, built on first use. In multi-row mode a statement inserts up to
+     * input.rows-per-statement rows, limited by the parameter limit of the driver. When rows are upserted the plan is
+     * derived for the primary key of the table
+     * @param columnNames Column names
+     * @return insert plan, upsert plan if rows are upserted
+     * @see InsertPlan
+     */
+    public synchronized InsertPlan getInsertPlan(LinkedHashSet<String> columnNames) {
+        if (insertPlan == null || !insertPlan.matches(columnNames)) {
+            String url = ((HikariDataSource) this.destination).getJdbcUrl();
+            int rows = 1;
+            if (InsertPlan.supportsMultiRow(url)) {
+                rows = Math.max(1, Math.min(rowsPerStatement, InsertPlan.getParameterLimit(url) / columnNames.size()));
+            } else if (rowsPerStatement > 1) {
+                log.warn("Multi-row VALUES not supported by " + url + ", inserting one row per statement");
+            }
+            insertPlan = new InsertPlan(tableName, new LinkedHashSet<>(columnNames), rows);
+            upsertPlan = null;
+            if (isUpsert()) {
+                List<String> keyColumns = getPrimaryKeyColumns();
+                if (keyColumns.isEmpty() || !columnNames.containsAll(keyColumns)) {
+                    throw new IllegalArgumentException("Upsert requires the primary key of " + tableName + " among the migrated columns");
+                }
+                upsertPlan = insertPlan.withUpsert(keyColumns, url);
+            }
+            log.info(upsertPlan != null ? upsertPlan : insertPlan);
+        }
+        return upsertPlan != null ? upsertPlan : insertPlan;
+    }
+
+    /**
+     * Get the staging tables of merge mode. The staging tables which a previous run left behind are dropped first
+     */
+    private synchronized StagingTables getStagingTables() {
+        if (stagingTables == null) {
+            stagingTables = new StagingTables(checkpointDir, schemaName, tableName, template);
+            stagingTables.dropLeftovers();
+        }
+        return stagingTables;
+    }
+
+    /**
+     * Checks whether rows are upserted (see input.apply-mode)
+     * @return true - rows whose primary key exists are updated, row by row or merged from a staging table, false - rows
+     * are inserted
+     */
+    public boolean isUpsert() {
+        return !getApplyMode().equals("insert");
+    }
+
+    private boolean isStagedMerge() {
+        return getApplyMode().equals("merge");
+    }
+
+    private String getApplyMode() {
+        String mode = applyMode.trim().toLowerCase();
+        switch (mode) {
+            case "":
+                return "insert";
+            case "insert":
+            case "upsert":
+            case "merge":
+                return mode;
+            default:
+                throw new IllegalArgumentException("Invalid apply mode: " + applyMode);
+        }
+    }
+
+    /**
+     * Truncates the destination table. With input.fast-truncate the rows are deallocated without logging them, where
+     * the database allows it
      */
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void clearRecords() {
         System.out.println("Truncating destination");
+        if (fastTruncate && truncate()) {
+            return;
+        }
         template.execute("DELETE FROM " + tableName);
     }
 
+    /**
+     * Runs TRUNCATE on its own auto-commit connection, as it has to be the first statement of its unit of work on DB2
+     * and is DDL on Oracle and MySQL. TRUNCATE is refused for tables referenced by foreign keys on most databases
+     * @return true - table truncated, false - the rows have to be deleted
+     */
+    private boolean truncate() {
+        String url = ((HikariDataSource) this.destination).getJdbcUrl().toLowerCase();
+        String sqlStmt = "TRUNCATE TABLE " + tableName + (url.startsWith("jdbc:db2:") ? " IMMEDIATE" : "");
+        try (Connection connection = destination.getConnection(); Statement stmt = connection.createStatement()) {
+            log.info("Executing SQL Statement [" + sqlStmt + "]");
+            stmt.execute(sqlStmt);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            return true;
+        } catch (SQLException e) {
+            log.warn("Could not truncate " + tableName + ", deleting the rows: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Get the non-unique indexes and foreign keys of the table, to be dropped before a full load and rebuilt after it
+     * @param directory Directory keeping the index definitions until they are rebuilt
+     * @return deferred indexes
+     */
+    public DeferredIndexes getDeferredIndexes(String directory) {
+        return new DeferredIndexes(directory, schemaName, tableName, template, ((HikariDataSource) this.destination).getJdbcUrl());
+    }
+
     /**
      * Truncates the destination table. Requires the existing transaction
      */
@@ -100,6 +384,20 @@ public class Destination {
         template.execute("DELETE FROM " + tableName);
     }
 
+    /**
+     * Deletes the rows of a key range from the destination table. Used when resuming a migration, to drop the rows of
+     * batches which were committed after the last checkpointed key of the range
+     * @param range Key range, the split column must have the same name in the destination table
+     * @return no. of rows deleted
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int clearRange(KeyRange range) {
+        String predicate = range.getPredicate();
+        String sqlStmt = "DELETE FROM " + tableName + (predicate.isEmpty() ? "" : " WHERE " + predicate);
+        System.out.println("Clearing uncommitted rows of " + range);
+        return template.update(sqlStmt, range.getParameters());
+    }
+
     /**
      * Verifies the table name and schema name
      * @throws IllegalArgumentException
@@ -107,15 +405,15 @@ public class Destination {
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void verify() throws IllegalArgumentException {
 
-        if (DbUtils.isValidSchema(schemaName, template) == false) {
+        if (metadata.isValidSchema(schemaName) == false) {
             throw new IllegalArgumentException("Invalid Schema/ Schema Not found");
         }
 
-        if (DbUtils.isValidTable(schemaName, tableName, template) == false) {
+        if (metadata.isValidTable(schemaName, tableName) == false) {
             throw new IllegalArgumentException("Invalid Table/ Table not found");
         }
 
-        this.setColumnMetaData(DbUtils.getColumnNamesTypes(schemaName, tableName, template));
+        this.setColumnMetaData(metadata.getColumnNamesTypes(schemaName, tableName));
     }
 
 
@@ -127,6 +425,14 @@ public class Destination {
         return tableName;
     }
 
+    /**
+     * Set the table name, replacing the configured input table
+     * @param tableName table name
+     */
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
     /**
      * Get the schema name
      * @return schema name
@@ -153,6 +459,22 @@ public class Destination {
         this.columnMetaData = columnMetaData;
     }
 
+    /**
+     * Get the primary key columns of the table
+     * @return primary key column names in key order, empty if the table has no primary key
+     */
+    public List<String> getPrimaryKeyColumns() {
+        return DbUtils.getPrimaryKeyColumns(schemaName, tableName, template);
+    }
+
+    /**
+     * Get the data source
+     * @return data source
+     */
+    public DataSource getDataSource() {
+        return this.destination;
+    }
+
     /**
      * Get the connection pool size
      * @return Connection pool size
@@ -0,0 +1,288 @@
+package com.sanjith.dbmigrator.dao;
+
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cached INSERT statements of a destination table. Built once from the column metadata and shared by all writers of
+ * the table. In multi-row mode a statement inserts several rows with INSERT ... VALUES (...),(...), sized so that the
+ * parameter count stays below the driver limit. Batches which are not a multiple of the statement size end with a
+ * smaller tail statement. An upsert plan updates the rows whose primary key already exists instead, with the statement
+ * of the destination database: INSERT ... ON DUPLICATE KEY UPDATE on MySQL, INSERT ... ON CONFLICT on PostgreSQL and
+ * MERGE elsewhere. The bind values are the same as for the INSERT statement
+ */
+public class InsertPlan {
+
+    /**
+     * Parameter limit used for drivers without a known limit
+     */
+    private static final int DEFAULT_PARAMETER_LIMIT = 2000;
+
+    private final String tableName;
+
+    private final LinkedHashSet<String> columnNames;
+
+    private final String hint;
+
+    private final int rowsPerStatement;
+
+    /**
+     * Primary key columns of an upsert plan, null for an insert plan
+     */
+    private final List<String> keyColumns;
+
+    /**
+     * Lower case jdbc url of the destination, selects the upsert statement
+     */
+    private final String jdbcUrl;
+
+    private final String statementSql;
+
+    private final ConcurrentMap<Integer, String> tailSql = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an insert plan
+     *
+     * @param tableName        Destination table
+     * @param columnNames      Column names
+     * @param rowsPerStatement No. of rows inserted by one statement
+     */
+    public InsertPlan(String tableName, LinkedHashSet<String> columnNames, int rowsPerStatement) {
+        this(tableName, columnNames, rowsPerStatement, null, null, null);
+    }
+
+    private InsertPlan(String tableName, LinkedHashSet<String> columnNames, int rowsPerStatement, String hint, List<String> keyColumns,
+                       String jdbcUrl) {
+        this.tableName = tableName;
+        this.columnNames = columnNames;
+        this.rowsPerStatement = Math.max(1, rowsPerStatement);
+        this.hint = hint;
+        this.keyColumns = keyColumns;
+        this.jdbcUrl = jdbcUrl == null ? "" : jdbcUrl.toLowerCase();
+        this.statementSql = buildSql(this.rowsPerStatement);
+    }
+
+    /**
+     * Get the maximum no. of bind parameters of a statement for the driver of a jdbc url
+     * @param jdbcUrl Destination jdbc url
+     * @return parameter limit
+     */
+    public static int getParameterLimit(String jdbcUrl) {
+        String url = jdbcUrl == null ? "" : jdbcUrl.toLowerCase();
+        if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:") || url.startsWith("jdbc:oracle:")) {
+            return 65535;
+        } else if (url.startsWith("jdbc:db2:") || url.startsWith("jdbc:postgresql:")) {
+            return 32767;
+        } else if (url.startsWith("jdbc:sqlserver:")) {
+            return 2100;
+        }
+        return DEFAULT_PARAMETER_LIMIT;
+    }
+
+    /**
+     * Checks whether a database supports multi-row VALUES lists
+     * @param jdbcUrl Destination jdbc url
+     * @return true - INSERT ... VALUES (...),(...) is supported
+     */
+    public static boolean supportsMultiRow(String jdbcUrl) {
+        return jdbcUrl == null || !jdbcUrl.toLowerCase().startsWith("jdbc:oracle:");
+    }
+
+    /**
+     * Derives a single row plan whose statement carries an optimizer hint, e.g. APPEND_VALUES
+     * @param hint Hint text without the comment delimiters
+     * @return hinted plan
+     */
+    public InsertPlan withHint(String hint) {
+        return new InsertPlan(tableName, columnNames, 1, hint, null, null);
+    }
+
+    /**
+     * Derives a plan which inserts new rows and updates the rows whose primary key exists in the table
+     * @param keyColumns Primary key columns, all part of the plan columns
+     * @param jdbcUrl Destination jdbc url
+     * @return upsert plan with the same no. of rows per statement
+     */
+    public InsertPlan withUpsert(List<String> keyColumns, String jdbcUrl) {
+        return new InsertPlan(tableName, columnNames, rowsPerStatement, null, new ArrayList<>(keyColumns), jdbcUrl);
+    }
+
+    /**
+     * Is this an upsert plan
+     * @return true - existing rows are updated
+     */
+    public boolean isUpsert() {
+        return keyColumns != null;
+    }
+
+    /**
+     * Get the statement inserting the given no. of rows
+     * @param rows Row count, at most {@link #getRowsPerStatement()}
+     * @return INSERT statement
+     */
+    public String getSql(int rows) {
+        return rows == rowsPerStatement ? statementSql : tailSql.computeIfAbsent(rows, this::buildSql);
+    }
+
+    private String buildSql(int rows) {
+        return keyColumns != null ? buildUpsertSql(rows) : buildInsertSql(rows);
+    }
+
+    private String buildInsertSql(int rows) {
+        String valueList = "(" + Strings.repeat("?,", columnNames.size() - 1) + "?)";
+        StringBuilder stmtBuilder = new StringBuilder(hint == null ? "INSERT INTO " : "INSERT /*+ " + hint + " */ INTO ");
+        stmtBuilder.append(tableName);
+        stmtBuilder.append(" (");
+        stmtBuilder.append(String.join(",", columnNames));
+        stmtBuilder.append(") VALUES ");
+        stmtBuilder.append(valueList);
+        for (int i = 1; i < rows; i++) {
+            stmtBuilder.append(",");
+            stmtBuilder.append(valueList);
+        }
+        return stmtBuilder.toString();
+    }
+
+    private String buildUpsertSql(int rows) {
+        if (isInsertOnConflict()) {
+            return buildInsertSql(rows) + getConflictClause();
+        }
+        String source;
+        if (jdbcUrl.startsWith("jdbc:oracle:")) {
+            List<String> selectList = new ArrayList<>();
+            for (String column : columnNames) {
+                selectList.add("? " + column);
+            }
+            String select = "SELECT " + String.join(",", selectList) + " FROM DUAL";
+            source = "(" + String.join(" UNION ALL ", Collections.nCopies(rows, select)) + ") s";
+        } else {
+            String valueList = "(" + Strings.repeat("?,", columnNames.size() - 1) + "?)";
+            source = "(VALUES " + String.join(",", Collections.nCopies(rows, valueList)) + ") AS s (" + String.join(",", columnNames) + ")";
+        }
+        return buildMergeSql(source);
+    }
+
+    /**
+     * Get the set-based statement applying all rows of a staging table with the plan columns to the table of this
+     * upsert plan
+     * @param stagingTable Staging table
+     * @return MERGE, or INSERT ... SELECT with the conflict clause on MySQL and PostgreSQL
+     */
+    public String getMergeSql(String stagingTable) {
+        if (isInsertOnConflict()) {
+            String columnList = String.join(",", columnNames);
+            return "INSERT INTO " + tableName + " (" + columnList + ") SELECT " + columnList + " FROM " + stagingTable + getConflictClause();
+        }
+        return buildMergeSql(stagingTable + " s");
+    }
+
+    /**
+     * Databases which upsert with INSERT and a conflict clause instead of MERGE
+     */
+    private boolean isInsertOnConflict() {
+        return jdbcUrl.startsWith("jdbc:mysql:") || jdbcUrl.startsWith("jdbc:mariadb:") || jdbcUrl.startsWith("jdbc:postgresql:");
+    }
+
+    private List<String> getUpdatedColumns() {
+        List<String> updated = new ArrayList<>();
+        for (String column : columnNames) {
+            if (!keyColumns.contains(column)) {
+                updated.add(column);
+            }
+        }
+        return updated;
+    }
+
+    private String getConflictClause() {
+        List<String> assignments = new ArrayList<>();
+        if (jdbcUrl.startsWith("jdbc:postgresql:")) {
+            for (String column : getUpdatedColumns()) {
+                assignments.add(column + "=EXCLUDED." + column);
+            }
+            return " ON CONFLICT (" + String.join(",", keyColumns) + ") DO "
+                    + (assignments.isEmpty() ? "NOTHING" : "UPDATE SET " + String.join(",", assignments));
+        }
+        for (String column : getUpdatedColumns()) {
+            assignments.add(column + "=VALUES(" + column + ")");
+        }
+        if (assignments.isEmpty()) {
+            assignments.add(keyColumns.get(0) + "=" + keyColumns.get(0));
+        }
+        return " ON DUPLICATE KEY UPDATE " + String.join(",", assignments);
+    }
+
+    /**
+     * Builds a MERGE of the source rows, aliased s, into the table
+     */
+    private String buildMergeSql(String source) {
+        StringBuilder stmtBuilder = new StringBuilder("MERGE INTO ");
+        stmtBuilder.append(tableName);
+        stmtBuilder.append(" t USING ");
+        stmtBuilder.append(source);
+        List<String> conditions = new ArrayList<>();
+        for (String column : keyColumns) {
+            conditions.add("t." + column + " = s." + column);
+        }
+        stmtBuilder.append(" ON (");
+        stmtBuilder.append(String.join(" AND ", conditions));
+        stmtBuilder.append(")");
+        List<String> updated = getUpdatedColumns();
+        if (!updated.isEmpty()) {
+            List<String> assignments = new ArrayList<>();
+            for (String column : updated) {
+                assignments.add(column + " = s." + column);
+            }
+            stmtBuilder.append(" WHEN MATCHED THEN UPDATE SET ");
+            stmtBuilder.append(String.join(",", assignments));
+        }
+        List<String> values = new ArrayList<>();
+        for (String column : columnNames) {
+            values.add("s." + column);
+        }
+        stmtBuilder.append(" WHEN NOT MATCHED THEN INSERT (");
+        stmtBuilder.append(String.join(",", columnNames));
+        stmtBuilder.append(") VALUES (");
+        stmtBuilder.append(String.join(",", values));
+        stmtBuilder.append(")");
+        if (jdbcUrl.startsWith("jdbc:sqlserver:")) {
+            stmtBuilder.append(";");
+        }
+        return stmtBuilder.toString();
+    }
+
+    /**
+     * Checks whether the plan was built for the given columns
+     * @param columnNames Column names
+     * @return true - same columns in the same order
+     */
+    public boolean matches(LinkedHashSet<String> columnNames) {
+        return this.columnNames.size() == columnNames.size() && String.join(",", this.columnNames).equals(String.join(",", columnNames));
+    }
+
+    /**
+     * Get the no. of rows inserted by one full statement
+     * @return rows per statement
+     */
+    public int getRowsPerStatement() {
+        return rowsPerStatement;
+    }
+
+    /**
+     * Get the no. of columns of a row
+     * @return column count
+     */
+    public int getColumnCount() {
+        return columnNames.size();
+    }
+
+    @Override
+    public String toString() {
+        return (keyColumns != null ? "UPSERT PLAN [" : "INSERT PLAN [") + tableName + ", " + columnNames.size() + " COLUMNS, " + rowsPerStatement + " ROWS PER STATEMENT]";
+    }
+}
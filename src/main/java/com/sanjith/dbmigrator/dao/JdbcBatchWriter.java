@@ -0,0 +1,130 @@
+package com.sanjith.dbmigrator.dao;
+
+import static java.sql.Statement.EXECUTE_FAILED;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+
+/**
+ * Writes rows with a JDBC batch of prepared INSERT statements from the {@link InsertPlan} of the table. The statements
+ * are prepared once and reused for every batch. Works with every driver and is the fallback of the vendor specific
+ * writers
+ */
+public class JdbcBatchWriter implements BulkWriter {
+
+    private static final Logger log = LogManager.getLogger(JdbcBatchWriter.class);
+
+    protected final InsertPlan plan;
+
+    private Connection connection;
+
+    private PreparedStatement statement;
+
+    private PreparedStatement tailStatement;
+
+    private int tailRows;
+
+    private long bindNanos;
+
+    /**
+     * Constructs a JDBC batch writer
+     *
+     * @param plan Insert plan of the destination table
+     */
+    public JdbcBatchWriter(InsertPlan plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public String getName() {
+        return "jdbc";
+    }
+
+    @Override
+    public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) throws SQLException {
+        this.connection = connection;
+        this.statement = connection.prepareStatement(plan.getSql(plan.getRowsPerStatement()));
+    }
+
+    @Override
+    public int write(ColumnBatch batch) throws SQLException {
+        int rowsPerStatement = plan.getRowsPerStatement();
+        int fullRows = batch.size() - batch.size() % rowsPerStatement;
+        bindNanos = 0;
+
+        if (fullRows > 0) {
+            for (int start = 0; start < fullRows; start += rowsPerStatement) {
+                bind(statement, batch, start, rowsPerStatement);
+                statement.addBatch();
+            }
+            int[] queryResult;
+            try {
+                queryResult = statement.executeBatch();
+            } catch (SQLException e) {
+                // drivers keep the statements of a failed batch, the next batch would run them again
+                statement.clearBatch();
+                throw e;
+            }
+            for (int insertStatus : queryResult) {
+                if (insertStatus == EXECUTE_FAILED) {
+                    throw new SQLException("Insert Failed");
+                }
+            }
+        }
+
+        if (fullRows < batch.size()) {
+            int rows = batch.size() - fullRows;
+            PreparedStatement tail = getTailStatement(rows);
+            bind(tail, batch, fullRows, rows);
+            tail.executeUpdate();
+        }
+        return batch.size();
+    }
+
+    private void bind(PreparedStatement stmt, ColumnBatch batch, int start, int rows) throws SQLException {
+        long bindStart = System.nanoTime();
+        int columnCount = batch.getColumnCount();
+        for (int r = 0; r < rows; r++) {
+            batch.bind(stmt, start + r, 1 + r * columnCount);
+        }
+        bindNanos += System.nanoTime() - bindStart;
+    }
+
+    @Override
+    public long getBindNanos() {
+        return bindNanos;
+    }
+
+    /**
+     * Get the statement for the rows left over after the full statements. Kept open while the tail size repeats
+     */
+    private PreparedStatement getTailStatement(int rows) throws SQLException {
+        if (tailStatement == null || tailRows != rows) {
+            closeStatement(tailStatement);
+            tailStatement = connection.prepareStatement(plan.getSql(rows));
+            tailRows = rows;
+        }
+        return tailStatement;
+    }
+
+    @Override
+    public void close() {
+        closeStatement(statement);
+        closeStatement(tailStatement);
+    }
+
+    private static void closeStatement(PreparedStatement stmt) {
+        try {
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            log.warn("Error in closing statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a half open range [lowerBound, upperBound) of the split column of a table. A missing bound leaves that
+ * side of the range open, so the first and last ranges of a table also pick up keys outside the MIN/MAX seen at split time.
+ * Ranges of an incremental run are bounded by watermarks instead: (lowerBound, upperBound] on the watermark column
+ *
+ * @see Source#getKeyRanges(int)
+ */
+public class KeyRange {
+
+    /**
+     * Range identifier, unique within a table
+     */
+    private final int id;
+
+    /**
+     * Split column name
+     */
+    private final String column;
+
+    /**
+     * Lower bound
+     */
+    private final Object lowerBound;
+
+    /**
+     * true - lower bound is exclusive, used when resuming a range after its last committed key
+     */
+    private final boolean lowerExclusive;
+
+    /**
+     * Upper bound (exclusive)
+     */
+    private final Object upperBound;
+
+    /**
+     * true - upper bound is inclusive, used for the high-water mark of an incremental run
+     */
+    private final boolean upperInclusive;
+
+    /**
+     * true - rows having NULL in the split column belong to this range
+     */
+    private final boolean includeNulls;
+
+    /**
+     * Constructs a range of the split column
+     *
+     * @param id           Range identifier
+     * @param column       Split column name
+     * @param lowerBound   Lower bound (inclusive), null for an open lower end
+     * @param upperBound   Upper bound (exclusive), null for an open upper end
+     * @param includeNulls true - NULL values of the split column are read by this range
+     */
+    public KeyRange(int id, String column, Object lowerBound, Object upperBound, boolean includeNulls) {
+        this(id, column, lowerBound, false, upperBound, false, includeNulls);
+    }
+
+    /**
+     * Constructs a range of the split column with explicit bound types
+     *
+     * @param id             Range identifier
+     * @param column         Split column name
+     * @param lowerBound     Lower bound, null for an open lower end
+     * @param lowerExclusive true - lower bound is exclusive
+     * @param upperBound     Upper bound, null for an open upper end
+     * @param upperInclusive true - upper bound is inclusive
+     * @param includeNulls   true - NULL values of the split column are read by this range
+     */
+    public KeyRange(int id, String column, Object lowerBound, boolean lowerExclusive, Object upperBound, boolean upperInclusive,
+                    boolean includeNulls) {
+        this.id = id;
+        this.column = column;
+        this.lowerBound = lowerBound;
+        this.lowerExclusive = lowerExclusive;
+        this.upperBound = upperBound;
+        this.upperInclusive = upperInclusive;
+        this.includeNulls = includeNulls;
+    }
+
+    /**
+     * Creates a range which covers the whole table
+     *
+     * @return Unbounded range
+     */
+    public static KeyRange wholeTable() {
+        return new KeyRange(1, null, null, null, true);
+    }
+
+    /**
+     * Creates the remainder of this range after the given key. NULL keys are not part of the remainder, as only ranges
+     * on a primary key column are resumed by key
+     *
+     * @param key Last committed key
+     * @return range starting right after the key
+     */
+    public KeyRange resumeAfter(Object key) {
+        return new KeyRange(id, column, key, true, upperBound, upperInclusive, false);
+    }
+
+    /**
+     * Builds the SQL predicate selecting the rows of this range. Bind values are returned by {@link #getParameters()}
+     *
+     * @return predicate without the WHERE keyword, empty string if the range covers the whole table
+     */
+    public String getPredicate() {
+        if (column == null) {
+            return "";
+        }
+
+        List<String> conditions = new ArrayList<>();
+        if (lowerBound != null) {
+            conditions.add(column + (lowerExclusive ? " > ?" : " >= ?"));
+        }
+        if (upperBound != null) {
+            conditions.add(column + (upperInclusive ? " <= ?" : " < ?"));
+        }
+
+        String predicate = String.join(" AND ", conditions);
+        if (includeNulls) {
+            predicate = predicate.isEmpty() ? "" : "(" + predicate + " OR " + column + " IS NULL)";
+        }
+        return predicate;
+    }
+
+    /**
+     * Bind values of the predicate in order
+     *
+     * @return bind values
+     */
+    public Object[] getParameters() {
+        List<Object> params = new ArrayList<>();
+        if (column != null && lowerBound != null) {
+            params.add(lowerBound);
+        }
+        if (column != null && upperBound != null) {
+            params.add(upperBound);
+        }
+        return params.toArray();
+    }
+
+    /**
+     * Get the range identifier
+     * @return range identifier
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the split column name
+     * @return split column, null if the range covers the whole table
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the lower bound
+     * @return lower bound
+     */
+    public Object getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Is the lower bound exclusive
+     * @return true - rows having the lower bound are not part of the range
+     */
+    public boolean isLowerExclusive() {
+        return lowerExclusive;
+    }
+
+    /**
+     * Get the upper bound
+     * @return upper bound
+     */
+    public Object getUpperBound() {
+        return upperBound;
+    }
+
+    /**
+     * Is the upper bound inclusive
+     * @return true - rows having the upper bound are part of the range
+     */
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    /**
+     * Does the range read NULL values of the split column
+     * @return true - NULL values are included
+     */
+    public boolean isIncludeNulls() {
+        return includeNulls;
+    }
+
+    @Override
+    public String toString() {
+        if (column == null) {
+            return "RANGE " + id + " [whole table]";
+        }
+        return "RANGE " + id + (lowerExclusive ? " (" : " [") + column + " " + lowerBound + " - " + upperBound + (upperInclusive ? "]" : ")");
+    }
+}
@@ -0,0 +1,334 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Snapshot of the schemas, tables and columns of a database. A schema is loaded on first use with one bulk catalog
+ * query for its tables and one for its columns, instead of separate metadata queries per table. The snapshot is kept
+ * in a versioned cache file. On repeat runs the DDL timestamps of the schema are read from the vendor catalog
+ * (SYSCAT.TABLES on DB2, ALL_OBJECTS on Oracle, information_schema.TABLES on MySQL) and only changed tables are
+ * reloaded. Databases without known timestamps are always loaded in bulk. MySQL does not move the create time on
+ * instant ALTER TABLE, delete the cache file after such changes
+ *
+ * @see DbUtils#getColumnNamesTypes(String, String, JdbcTemplate)
+ */
+public class MetadataCache {
+
+    private static final Logger log = LogManager.getLogger(MetadataCache.class);
+
+    /**
+     * Version of the cache file layout, cache files of other versions are ignored
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Above this no. of changed tables the whole schema is reloaded in bulk
+     */
+    private static final int MAX_TABLE_RELOADS = 20;
+
+    /**
+     * Tables and columns of a schema
+     */
+    private static class SchemaSnapshot {
+        private final Map<String, TableSnapshot> tables = new LinkedHashMap<>();
+    }
+
+    /**
+     * Columns of a table and the catalog timestamp they were read at
+     */
+    private static class TableSnapshot {
+        private String changeStamp;
+        private final LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+    }
+
+    private final String name;
+
+    private final JdbcTemplate template;
+
+    private final Path file;
+
+    private final Map<String, SchemaSnapshot> schemas = new HashMap<>();
+
+    private String url;
+
+    /**
+     * Constructs a metadata cache of a database
+     *
+     * @param name     Name of the database side, used in the cache file name
+     * @param template Jdbc template of the database
+     * @param cacheDir Directory of the cache file, empty - do not cache on disk
+     */
+    public MetadataCache(String name, JdbcTemplate template, String cacheDir) {
+        this.name = name;
+        this.template = template;
+        this.file = cacheDir == null || cacheDir.isEmpty() ? null : Paths.get(cacheDir, name + ".metadata");
+    }
+
+    /**
+     * Validates the schema name
+     * @param schema Schema name
+     * @return true - Valid schema, false - Invalid schema
+     */
+    public synchronized boolean isValidSchema(String schema) {
+        return getSchema(schema) != null;
+    }
+
+    /**
+     * Validates the table name
+     * @param schema Schema name
+     * @param table Table name
+     * @return true - Valid table, false - Invalid table
+     */
+    public synchronized boolean isValidTable(String schema, String table) {
+        SchemaSnapshot snapshot = getSchema(schema);
+        return snapshot != null && snapshot.tables.containsKey(table);
+    }
+
+    /**
+     * Get the column names and types of a table
+     * @param schema Schema name
+     * @param table Table name
+     * @return Key - column name in ordinal order. Value - Column datatype in SQL type form java.sql.Types
+     */
+    public synchronized Map<String, Integer> getColumnNamesTypes(String schema, String table) {
+        SchemaSnapshot snapshot = getSchema(schema);
+        TableSnapshot tableSnapshot = snapshot == null ? null : snapshot.tables.get(table);
+        return tableSnapshot == null ? new LinkedHashMap<>() : new LinkedHashMap<>(tableSnapshot.columns);
+    }
+
+    private SchemaSnapshot getSchema(String schema) {
+        if (schemas.containsKey(schema)) {
+            return schemas.get(schema);
+        }
+        long startTime = System.currentTimeMillis();
+        SchemaSnapshot snapshot = template.execute((ConnectionCallback<SchemaSnapshot>) connection -> load(connection, schema));
+        schemas.put(schema, snapshot);
+        if (snapshot != null) {
+            log.info("Loaded " + name + " metadata of " + snapshot.tables.size() + " tables in schema " + schema + " in "
+                    + (System.currentTimeMillis() - startTime) + " MS");
+            save();
+        }
+        return snapshot;
+    }
+
+    private SchemaSnapshot load(Connection connection, String schema) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        url = metaData.getURL();
+        try (ResultSet rs = metaData.getSchemas(null, schema)) {
+            if (!rs.next()) {
+                return null;
+            }
+        }
+
+        Map<String, String> changeStamps = queryChangeStamps(connection, metaData.getDatabaseProductName(), schema);
+        SchemaSnapshot cached = changeStamps == null ? null : readCache(schema);
+        if (cached == null) {
+            return loadSchema(metaData, schema, changeStamps);
+        }
+
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        List<String> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : changeStamps.entrySet()) {
+            TableSnapshot table = cached.tables.get(entry.getKey());
+            if (table != null && entry.getValue().equals(table.changeStamp)) {
+                snapshot.tables.put(entry.getKey(), table);
+            } else {
+                changed.add(entry.getKey());
+            }
+        }
+        log.info(name + " metadata cache of schema " + schema + ": " + snapshot.tables.size() + " tables unchanged, "
+                + changed.size() + " changed");
+        if (changed.size() > MAX_TABLE_RELOADS) {
+            return loadSchema(metaData, schema, changeStamps);
+        }
+
+        String escape = metaData.getSearchStringEscape();
+        for (String tableName : changed) {
+            TableSnapshot table = new TableSnapshot();
+            table.changeStamp = changeStamps.get(tableName);
+            try (ResultSet rs = metaData.getColumns(null, schema, escapePattern(tableName, escape), "%")) {
+                while (rs.next()) {
+                    if (tableName.equals(rs.getString("TABLE_NAME"))) {
+                        table.columns.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+                    }
+                }
+            }
+            snapshot.tables.put(tableName, table);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Loads all tables and columns of a schema with one catalog query each
+     */
+    private SchemaSnapshot loadSchema(DatabaseMetaData metaData, String schema, Map<String, String> changeStamps) throws SQLException {
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        try (ResultSet rs = metaData.getTables(null, schema, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                TableSnapshot table = new TableSnapshot();
+                String tableName = rs.getString("TABLE_NAME");
+                table.changeStamp = changeStamps == null ? null : changeStamps.get(tableName);
+                snapshot.tables.put(tableName, table);
+            }
+        }
+        try (ResultSet rs = metaData.getColumns(null, schema, "%", "%")) {
+            while (rs.next()) {
+                TableSnapshot table = snapshot.tables.get(rs.getString("TABLE_NAME"));
+                if (table != null) {
+                    table.columns.put(rs.getString("COLUMN_NAME"), rs.getInt("DATA_TYPE"));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the DDL timestamps of all tables of a schema from the vendor catalog
+     * @return Key - table name. Value - timestamp, null if the database is not supported
+     */
+    private Map<String, String> queryChangeStamps(Connection connection, String productName, String schema) {
+        String product = productName == null ? "" : productName.toUpperCase();
+        String sqlStmt;
+        if (product.startsWith("DB2")) {
+            sqlStmt = "SELECT TABNAME, ALTER_TIME FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TYPE = 'T'";
+        } else if (product.startsWith("ORACLE")) {
+            sqlStmt = "SELECT OBJECT_NAME, LAST_DDL_TIME FROM ALL_OBJECTS WHERE OWNER = ? AND OBJECT_TYPE = 'TABLE'";
+        } else if (product.startsWith("MYSQL")) {
+            sqlStmt = "SELECT TABLE_NAME, CREATE_TIME FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_TYPE = 'BASE TABLE'";
+        } else {
+            return null;
+        }
+
+        Map<String, String> changeStamps = new LinkedHashMap<>();
+        try (PreparedStatement stmt = connection.prepareStatement(sqlStmt)) {
+            stmt.setString(1, schema);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changeStamps.put(rs.getString(1), String.valueOf(rs.getTimestamp(2)));
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Catalog timestamps of " + schema + " not available, metadata cache not used: " + e.getMessage());
+            return null;
+        }
+        return changeStamps;
+    }
+
+    private static String escapePattern(String value, String escape) {
+        if (escape == null || escape.isEmpty()) {
+            return value;
+        }
+        return value.replace(escape, escape + escape).replace("_", escape + "_").replace("%", escape + "%");
+    }
+
+    /**
+     * Reads the snapshot of a schema from the cache file
+     * @return cached snapshot, null if not cached, of another version or of another database
+     */
+    private SchemaSnapshot readCache(String schema) {
+        if (file == null || !Files.exists(file)) {
+            return null;
+        }
+        Properties prop = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            prop.load(is);
+        } catch (IOException e) {
+            log.warn("Error in reading metadata cache " + file + ": " + e.getMessage());
+            return null;
+        }
+        if (!String.valueOf(FORMAT_VERSION).equals(prop.getProperty("format.version")) || !String.valueOf(url).equals(prop.getProperty("url"))) {
+            return null;
+        }
+        String prefix = "schema." + schema + ".";
+        if (prop.getProperty(prefix + "tables") == null) {
+            return null;
+        }
+
+        SchemaSnapshot snapshot = new SchemaSnapshot();
+        int tableCount = Integer.parseInt(prop.getProperty(prefix + "tables"));
+        for (int t = 0; t < tableCount; t++) {
+            String tablePrefix = prefix + "table." + t + ".";
+            TableSnapshot table = new TableSnapshot();
+            table.changeStamp = prop.getProperty(tablePrefix + "stamp");
+            int columnCount = Integer.parseInt(prop.getProperty(tablePrefix + "columns"));
+            for (int c = 0; c < columnCount; c++) {
+                table.columns.put(prop.getProperty(tablePrefix + "column." + c + ".name"),
+                        Integer.parseInt(prop.getProperty(tablePrefix + "column." + c + ".type")));
+            }
+            snapshot.tables.put(prop.getProperty(tablePrefix + "name"), table);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshots of all loaded schemas to a temporary file and moves it over the previous cache file.
+     * Tables without a catalog timestamp are not cached
+     */
+    private void save() {
+        if (file == null) {
+            return;
+        }
+        Properties prop = new Properties();
+        prop.setProperty("format.version", String.valueOf(FORMAT_VERSION));
+        prop.setProperty("url", String.valueOf(url));
+        for (Map.Entry<String, SchemaSnapshot> schema : schemas.entrySet()) {
+            if (schema.getValue() == null) {
+                continue;
+            }
+            String prefix = "schema." + schema.getKey() + ".";
+            int t = 0;
+            for (Map.Entry<String, TableSnapshot> entry : schema.getValue().tables.entrySet()) {
+                TableSnapshot table = entry.getValue();
+                if (table.changeStamp == null) {
+                    continue;
+                }
+                String tablePrefix = prefix + "table." + t++ + ".";
+                prop.setProperty(tablePrefix + "name", entry.getKey());
+                prop.setProperty(tablePrefix + "stamp", table.changeStamp);
+                prop.setProperty(tablePrefix + "columns", String.valueOf(table.columns.size()));
+                int c = 0;
+                for (Map.Entry<String, Integer> column : table.columns.entrySet()) {
+                    prop.setProperty(tablePrefix + "column." + c + ".name", column.getKey());
+                    prop.setProperty(tablePrefix + "column." + c + ".type", String.valueOf(column.getValue()));
+                    c++;
+                }
+            }
+            if (t > 0) {
+                prop.setProperty(prefix + "tables", String.valueOf(t));
+            }
+        }
+
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+                prop.store(out, "Data Migrator metadata cache");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Error in writing metadata cache " + file + ": " + e.getMessage());
+        }
+    }
+}
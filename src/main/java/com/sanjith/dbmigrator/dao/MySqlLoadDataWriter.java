@@ -0,0 +1,149 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+
+/**
+ * MySQL writer using LOAD DATA LOCAL INFILE. Every batch is encoded as tab separated text in memory and streamed to
+ * the server through the statement of Connector/J, no file is written. Requires allowLoadLocalInfile=true in the
+ * destination url and local_infile enabled on the server. With LOCAL the server turns duplicate key and conversion
+ * errors into warnings, so a batch fails if fewer rows were loaded than sent
+ */
+public class MySqlLoadDataWriter implements BulkWriter {
+
+    private static final Logger log = LogManager.getLogger(MySqlLoadDataWriter.class);
+
+    private static final String STATEMENT_CLASS = "com.mysql.cj.jdbc.JdbcStatement";
+
+    private Statement statement;
+
+    private Object mysqlStatement;
+
+    private Method setInputStream;
+
+    private long bindNanos;
+
+    private String loadSql;
+
+    @Override
+    public String getName() {
+        return "mysql-load";
+    }
+
+    @Override
+    public boolean supports(int[] typeArr) {
+        for (int type : typeArr) {
+            if (!DbUtils.isTextLoadableType(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) throws SQLException {
+        this.loadSql = "LOAD DATA LOCAL INFILE 'batch' INTO TABLE " + tableName + " CHARACTER SET utf8mb4"
+                + " FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n'"
+                + " (" + String.join(",", columnNames) + ")";
+        this.statement = connection.createStatement();
+        try {
+            Class<?> statementClass = Class.forName(STATEMENT_CLASS);
+            this.mysqlStatement = statement.unwrap(statementClass);
+            this.setInputStream = statementClass.getMethod("setLocalInfileInputStream", InputStream.class);
+        } catch (ReflectiveOperationException e) {
+            statement.close();
+            throw new SQLException("MySQL Connector/J not found", e);
+        }
+    }
+
+    @Override
+    public int write(ColumnBatch batch) throws SQLException {
+        long bindStart = System.nanoTime();
+        StringBuilder data = new StringBuilder(batch.size() * 64);
+        for (int row = 0; row < batch.size(); row++) {
+            for (int i = 0; i < batch.getColumnCount(); i++) {
+                if (i > 0) {
+                    data.append('\t');
+                }
+                appendValue(data, batch.getValue(row, i));
+            }
+            data.append('\n');
+        }
+
+        byte[] bytes = data.toString().getBytes(StandardCharsets.UTF_8);
+        bindNanos = System.nanoTime() - bindStart;
+
+        try {
+            setInputStream.invoke(mysqlStatement, new ByteArrayInputStream(bytes));
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("Load Failed", e);
+        }
+        int loadCount = statement.executeUpdate(loadSql);
+        if (loadCount != batch.size()) {
+            throw new SQLException("Load Failed: " + loadCount + " of " + batch.size() + " rows loaded");
+        }
+        return loadCount;
+    }
+
+    @Override
+    public long getBindNanos() {
+        return bindNanos;
+    }
+
+    private static void appendValue(StringBuilder data, Object value) {
+        if (value == null) {
+            data.append("\\N");
+        } else if (value instanceof Boolean) {
+            data.append((Boolean) value ? '1' : '0');
+        } else if (value instanceof BigDecimal) {
+            data.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number || value instanceof java.util.Date) {
+            data.append(value);
+        } else {
+            String text = value.toString();
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '\\':
+                        data.append("\\\\");
+                        break;
+                    case '\t':
+                        data.append("\\t");
+                        break;
+                    case '\n':
+                        data.append("\\n");
+                        break;
+                    case '\r':
+                        data.append("\\r");
+                        break;
+                    case '\0':
+                        data.append("\\0");
+                        break;
+                    default:
+                        data.append(c);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (statement != null) {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            log.warn("Error in closing statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.sanjith.dbmigrator.dao;
+
+/**
+ * Oracle direct-path writer. Binds every batch as one array DML with the APPEND_VALUES hint, so that rows are written
+ * above the high water mark bypassing the buffer cache. Oracle does not allow further DML on the table in the same
+ * transaction after a direct-path insert (ORA-12838), so the session commits after every batch. Direct-path inserts
+ * take an exclusive table lock, concurrent writers therefore load one after another
+ */
+public class OracleAppendWriter extends JdbcBatchWriter {
+
+    /**
+     * Constructs an Oracle direct-path writer
+     *
+     * @param plan Insert plan of the destination table
+     */
+    public OracleAppendWriter(InsertPlan plan) {
+        super(plan.withHint("APPEND_VALUES"));
+    }
+
+    @Override
+    public String getName() {
+        return "oracle-append";
+    }
+
+    @Override
+    public boolean isCommitPerBatch() {
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reject file of a destination table, shared by all writer sessions of the table. Every row which the destination
+ * refused is written as a tab separated line with the SQLState, the vendor error code and the message of the error,
+ * followed by the column values. Tabs, line breaks and backslashes in values are escaped, binary values are written
+ * in hex and NULL as \N
+ *
+ * @see WriterSession#setRejectLog(RejectLog)
+ */
+public class RejectLog implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(RejectLog.class);
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Path file;
+
+    private final long maxRejects;
+
+    private final BufferedWriter out;
+
+    private long rejectedRows = 0;
+
+    /**
+     * Opens the reject file of a table
+     *
+     * @param directory   Directory holding the reject files
+     * @param fileName    Reject file name
+     * @param columnNames Destination column names, written as the header
+     * @param maxRejects  Maximum no. of rejected rows before the migration fails, -1 for no limit
+     * @param append      true - keep the rows rejected by a previous run of a resumed migration
+     * @throws IOException if the file could not be opened
+     */
+    public RejectLog(String directory, String fileName, List<String> columnNames, long maxRejects, boolean append) throws IOException {
+        this.file = Paths.get(directory, fileName);
+        this.maxRejects = maxRejects;
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        boolean header = !append || !Files.exists(file) || Files.size(file) == 0;
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        if (header) {
+            List<String> fields = new ArrayList<>(List.of("SQLSTATE", "ERRORCODE", "MESSAGE"));
+            fields.addAll(columnNames);
+            out.write(String.join("\t", fields));
+            out.newLine();
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes a rejected row to the file
+     *
+     * @param batch Batch holding the row
+     * @param row   Row index in the batch
+     * @param error Error raised by the row alone
+     * @throws SQLException if the maximum no. of rejected rows has been exceeded, or the row could not be written
+     */
+    public synchronized void reject(ColumnBatch batch, int row, SQLException error) throws SQLException {
+        if (error.getNextException() != null) {
+            // the batch error of some drivers only points to the error of the statement
+            error = error.getNextException();
+        }
+        rejectedRows++;
+        StringBuilder line = new StringBuilder();
+        line.append(error.getSQLState() == null ? "" : error.getSQLState()).append('\t').append(error.getErrorCode())
+                .append('\t');
+        escape(line, String.valueOf(error.getMessage()));
+        for (int c = 0; c < batch.getColumnCount(); c++) {
+            line.append('\t');
+            Object value = batch.getValue(row, c);
+            if (value == null) {
+                line.append("\\N");
+            } else if (value instanceof byte[]) {
+                for (byte b : (byte[]) value) {
+                    line.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+            } else {
+                escape(line, value.toString());
+            }
+        }
+        try {
+            out.write(line.toString());
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            throw new SQLException("Reject file " + file.toAbsolutePath() + " not writable: " + e.getMessage(), e);
+        }
+        log.warn("Row rejected (SQLState " + error.getSQLState() + "): " + error.getMessage());
+        if (maxRejects >= 0 && rejectedRows > maxRejects) {
+            throw new SQLException("Rejected rows exceed the maximum of " + maxRejects + ", see " + file.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Get the no. of rows rejected so far
+     * @return rejected row count
+     */
+    public synchronized long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    /**
+     * Get the reject file
+     * @return path of the file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    private static void escape(StringBuilder line, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '\t':
+                    line.append("\\t");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                default:
+                    line.append(ch);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("Error in closing reject file " + file.toAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+}
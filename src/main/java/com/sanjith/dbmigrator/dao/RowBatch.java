@@ -0,0 +1,157 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.math.BigDecimal;
+
+/**
+ * Batch of rows moving from the source table to the destination table
+ */
+public class RowBatch {
+
+    /**
+     * Batch identifier
+     */
+    private final int id;
+
+    /**
+     * Key range the batch was read from
+     */
+    private final KeyRange range;
+
+    /**
+     * Position of the batch within its key range, starting at 0
+     */
+    private final int sequence;
+
+    /**
+     * Split column value of the last row, null if the range is not read in key order
+     */
+    private final Object lastKey;
+
+    /**
+     * Row values in destination column order, null once the batch has been released
+     */
+    private ColumnBatch columns;
+
+    /**
+     * Estimated heap size of the row buffers in bytes
+     */
+    private final long estimatedBytes;
+
+    /**
+     * Estimated size of the row values in bytes
+     */
+    private final long dataBytes;
+
+    /**
+     * Constructs a batch of rows
+     *
+     * @param id             Batch identifier
+     * @param range          Key range the batch was read from
+     * @param sequence       Position of the batch within its key range
+     * @param columns        Row values
+     * @param lastKey        Split column value of the last row, null if the range is not read in key order
+     */
+    public RowBatch(int id, KeyRange range, int sequence, ColumnBatch columns, Object lastKey) {
+        this.id = id;
+        this.range = range;
+        this.sequence = sequence;
+        this.columns = columns;
+        this.estimatedBytes = columns == null ? 0 : columns.estimateBytes();
+        this.dataBytes = columns == null ? 0 : columns.estimateDataBytes();
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * Estimates the heap size of a single column value
+     *
+     * @param value Column value
+     * @return estimated size in bytes
+     */
+    public static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else if (value instanceof BigDecimal) {
+            return 40 + ((BigDecimal) value).unscaledValue().bitLength() / 8;
+        } else {
+            return 24;
+        }
+    }
+
+    /**
+     * Get the batch identifier
+     * @return batch identifier
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Get the key range the batch was read from
+     * @return key range
+     */
+    public KeyRange getRange() {
+        return range;
+    }
+
+    /**
+     * Get the position of the batch within its key range
+     * @return sequence no. starting at 0
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the split column value of the last row
+     * @return last key, null if the range is not read in key order
+     */
+    public Object getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * Get the row values
+     * @return rows in destination column order
+     */
+    public ColumnBatch getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the row buffers to their pool. Only the position of the batch is kept, e.g. for the checkpoint
+     */
+    public void release() {
+        if (columns != null) {
+            columns.release();
+            columns = null;
+        }
+    }
+
+    /**
+     * Get the estimated heap size of the batch buffers when it was read, held until the batch is released
+     * @return size in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Get the estimated size of the row values of the batch when it was read
+     * @return size in bytes
+     */
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    /**
+     * Get the number of rows in the batch
+     * @return row count
+     */
+    public int size() {
+        return columns == null ? 0 : columns.size();
+    }
+}
@@ -0,0 +1,237 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Copy plan of a table, built once from the source and destination column metadata. Chooses for every column the
+ * typed getter and setter pair which fits both column types, e.g. getLong/setLong or getBigDecimal/setBigDecimal.
+ * Columns whose types do not match are copied with getObject and bound with the destination type. The source query
+ * selects the columns in destination order, so column positions are known without looking up names
+ *
+ * @see ColumnVector
+ * @see DbUtils#getColumnNamesTypes(String, String, org.springframework.jdbc.core.JdbcTemplate)
+ */
+public class RowCopier {
+
+    private static final Logger log = LogManager.getLogger(RowCopier.class);
+
+    private enum Kind { LONG, DOUBLE, DECIMAL, DATE, TIMESTAMP, STRING, BLOB, CLOB, OBJECT }
+
+    private final List<String> columnNames;
+
+    private final int[] typeArr;
+
+    private final Kind[] kinds;
+
+    private Path spillDir;
+
+    /**
+     * Builds the copy plan of a table
+     *
+     * @param columnNames        Column names in destination order
+     * @param sourceMetaData     Source column names and types
+     * @param destinationTypeArr Destination column types in java.sql.Types
+     */
+    public RowCopier(LinkedHashSet<String> columnNames, Map<String, Integer> sourceMetaData, int[] destinationTypeArr) {
+        this.columnNames = new ArrayList<>(columnNames);
+        this.typeArr = destinationTypeArr;
+        this.kinds = new Kind[typeArr.length];
+        StringBuilder plan = new StringBuilder();
+        for (int c = 0; c < kinds.length; c++) {
+            String column = this.columnNames.get(c);
+            Integer sourceType = sourceMetaData.get(column);
+            kinds[c] = kindOf(sourceType == null ? typeArr[c] : sourceType, typeArr[c]);
+            plan.append(c == 0 ? "" : ", ").append(column).append(" ").append(kinds[c]);
+        }
+        log.debug("Row copier [" + plan + "]");
+    }
+
+    private static Kind kindOf(int sourceType, int destinationType) {
+        switch (destinationType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return isInteger(sourceType) ? Kind.LONG : Kind.OBJECT;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return isInteger(sourceType) || isFloat(sourceType) ? Kind.DOUBLE : Kind.OBJECT;
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return isInteger(sourceType) || sourceType == Types.DECIMAL || sourceType == Types.NUMERIC ? Kind.DECIMAL : Kind.OBJECT;
+            case Types.DATE:
+                return sourceType == Types.DATE ? Kind.DATE : Kind.OBJECT;
+            case Types.TIMESTAMP:
+                return sourceType == Types.TIMESTAMP || sourceType == Types.DATE ? Kind.TIMESTAMP : Kind.OBJECT;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return isCharacter(sourceType) ? Kind.STRING : Kind.OBJECT;
+            case Types.BLOB:
+                return Kind.BLOB;
+            case Types.CLOB:
+            case Types.NCLOB:
+                return Kind.CLOB;
+            default:
+                return Kind.OBJECT;
+        }
+    }
+
+    private static boolean isInteger(int sqlType) {
+        return sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER || sqlType == Types.BIGINT;
+    }
+
+    private static boolean isFloat(int sqlType) {
+        return sqlType == Types.REAL || sqlType == Types.FLOAT || sqlType == Types.DOUBLE;
+    }
+
+    private static boolean isCharacter(int sqlType) {
+        switch (sqlType) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Creates the column buffers of a batch
+     * @param capacity Row capacity
+     * @return one vector per column
+     */
+    ColumnVector[] newVectors(int capacity) {
+        ColumnVector[] vectors = new ColumnVector[kinds.length];
+        for (int c = 0; c < kinds.length; c++) {
+            switch (kinds[c]) {
+                case LONG:
+                    vectors[c] = new ColumnVector.LongVector(typeArr[c], capacity);
+                    break;
+                case DOUBLE:
+                    vectors[c] = new ColumnVector.DoubleVector(typeArr[c], capacity);
+                    break;
+                case DECIMAL:
+                    vectors[c] = new ColumnVector.DecimalVector(typeArr[c], capacity);
+                    break;
+                case DATE:
+                    vectors[c] = new ColumnVector.DateVector(typeArr[c], capacity);
+                    break;
+                case TIMESTAMP:
+                    vectors[c] = new ColumnVector.TimestampVector(typeArr[c], capacity);
+                    break;
+                case STRING:
+                    vectors[c] = new ColumnVector.StringVector(typeArr[c], capacity);
+                    break;
+                case BLOB:
+                    vectors[c] = new ColumnVector.BlobVector(typeArr[c], capacity, this);
+                    break;
+                case CLOB:
+                    vectors[c] = new ColumnVector.ClobVector(typeArr[c], capacity, this);
+                    break;
+                default:
+                    vectors[c] = new ColumnVector.ObjectVector(typeArr[c], capacity);
+            }
+        }
+        return vectors;
+    }
+
+    /**
+     * Checks whether the table has LOB columns, whose batches are limited by size
+     * @return true - BLOB, CLOB or NCLOB column copied
+     */
+    public boolean hasLobs() {
+        for (Kind kind : kinds) {
+            if (kind == Kind.BLOB || kind == Kind.CLOB) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a file for a LOB value too large to be kept in memory. The files are kept in a temporary directory of
+     * the copier and deleted when the batch is cleared
+     * @return new empty file
+     * @throws IOException if the file could not be created
+     */
+    synchronized Path createSpillFile() throws IOException {
+        if (spillDir == null) {
+            spillDir = Files.createTempDirectory("dbmigrator-lob-");
+            log.info("Spilling large LOB values to " + spillDir);
+        }
+        return Files.createTempFile(spillDir, "lob-", ".tmp");
+    }
+
+    /**
+     * Deletes the LOB spill directory including the files of batches which were never loaded
+     */
+    public synchronized void cleanup() {
+        if (spillDir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(spillDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Error in deleting LOB spill directory: " + e.getMessage());
+        }
+        spillDir = null;
+    }
+
+    /**
+     * Get the select list of the source query, the columns in destination order
+     * @return comma separated column names
+     */
+    public String getSelectList() {
+        return String.join(",", columnNames);
+    }
+
+    /**
+     * Get the result set position of a column in the source query
+     * @param column Column name
+     * @return 1 based position, -1 if the column is not copied
+     */
+    public int getOrdinal(String column) {
+        for (int c = 0; c < columnNames.size(); c++) {
+            if (columnNames.get(c).equalsIgnoreCase(column)) {
+                return c + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the no. of copied columns
+     * @return column count
+     */
+    public int getColumnCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Get the destination column types
+     * @return types in java.sql.Types
+     */
+    public int[] getTypeArr() {
+        return typeArr;
+    }
+}
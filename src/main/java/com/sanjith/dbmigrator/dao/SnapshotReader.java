@@ -0,0 +1,298 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a table snapshot written by a {@link SnapshotWriter}. The header and block index are read on open, the blocks
+ * are memory-mapped and decoded into column batches. The blocks can be split into contiguous segments which are read
+ * in parallel, each by its own {@link Segment}
+ */
+public class SnapshotReader implements AutoCloseable {
+
+    /**
+     * Largest region of the file mapped at once by a segment. A larger block is mapped on its own
+     */
+    private static final long MAP_WINDOW = 256L * 1024L * 1024L;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final boolean compressed;
+
+    private final Map<String, Integer> columnMetaData = new LinkedHashMap<>();
+
+    private final long[] offsets;
+
+    private final int[] rows;
+
+    private final int[] rawLengths;
+
+    private final int[] storedLengths;
+
+    private final long totalRows;
+
+    /**
+     * Opens a snapshot and reads its header and block index
+     *
+     * @param file Snapshot file
+     * @throws IOException if the file could not be read or is not a complete snapshot
+     */
+    public SnapshotReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < SnapshotWriter.MAGIC.length + 9 + SnapshotWriter.TRAILER_BYTES) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            ByteBuffer trailer = read(size - SnapshotWriter.TRAILER_BYTES, SnapshotWriter.TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            this.totalRows = trailer.getLong();
+            checkMagic(trailer);
+
+            ByteBuffer header = read(0, (int) Math.min(indexOffset, 1 << 20));
+            checkMagic(header);
+            int version = header.getInt();
+            if (version != SnapshotWriter.VERSION) {
+                throw new IOException(file + " has unsupported snapshot version " + version);
+            }
+            this.compressed = header.get() == SnapshotWriter.COMPRESSION_DEFLATE;
+            int columnCount = header.getInt();
+            for (int c = 0; c < columnCount; c++) {
+                byte[] name = new byte[header.getInt()];
+                header.get(name);
+                columnMetaData.put(new String(name, StandardCharsets.UTF_8), header.getInt());
+            }
+
+            ByteBuffer index = read(indexOffset, (int) (size - SnapshotWriter.TRAILER_BYTES - indexOffset));
+            int blocks = index.getInt();
+            offsets = new long[blocks];
+            rows = new int[blocks];
+            rawLengths = new int[blocks];
+            storedLengths = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                offsets[b] = index.getLong();
+                rows[b] = index.getInt();
+                rawLengths[b] = index.getInt();
+                storedLengths[b] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file + " is truncated");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void checkMagic(ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[SnapshotWriter.MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, SnapshotWriter.MAGIC)) {
+            throw new IOException(file + " is not a complete snapshot");
+        }
+    }
+
+    /**
+     * Get the columns of the snapshot
+     * @return column names and types in java.sql.Types, in snapshot order
+     */
+    public Map<String, Integer> getColumnMetaData() {
+        return columnMetaData;
+    }
+
+    /**
+     * Get the no. of rows in the snapshot
+     * @return row count
+     */
+    public long getRowCount() {
+        return totalRows;
+    }
+
+    /**
+     * Get the no. of blocks in the snapshot
+     * @return block count
+     */
+    public int getBlockCount() {
+        return offsets.length;
+    }
+
+    /**
+     * Get the row count of the largest block, the capacity a batch needs to read any block
+     * @return row count
+     */
+    public int getMaxBlockRows() {
+        return Arrays.stream(rows).max().orElse(0);
+    }
+
+    /**
+     * Splits the blocks into contiguous segments of about the same no. of bytes
+     *
+     * @param count Maximum no. of segments
+     * @return segments, fewer than count if there are fewer blocks
+     */
+    public List<Segment> split(int count) {
+        List<Segment> segments = new ArrayList<>();
+        int blocks = offsets.length;
+        count = Math.max(1, Math.min(count, blocks));
+        long totalBytes = 0;
+        for (int length : storedLengths) {
+            totalBytes += length;
+        }
+        int from = 0;
+        long bytes = 0;
+        for (int b = 0; b < blocks; b++) {
+            bytes += storedLengths[b];
+            boolean last = b == blocks - 1;
+            if (last || (segments.size() < count - 1 && bytes >= totalBytes * (segments.size() + 1) / count)) {
+                segments.add(new Segment(segments.size() + 1, from, b + 1));
+                from = b + 1;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Closes the file. Mapped regions stay valid until they are garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Contiguous range of blocks read by one thread. Maps the file in windows of whole blocks
+     */
+    public class Segment {
+
+        private final int id;
+
+        private final int fromBlock;
+
+        private final int toBlock;
+
+        private int next;
+
+        private MappedByteBuffer window;
+
+        private long windowStart;
+
+        private long windowEnd;
+
+        private byte[] inflated;
+
+        private Inflater inflater;
+
+        private Segment(int id, int fromBlock, int toBlock) {
+            this.id = id;
+            this.fromBlock = fromBlock;
+            this.toBlock = toBlock;
+            this.next = fromBlock;
+        }
+
+        /**
+         * Reads the next block of the segment into an empty batch
+         *
+         * @param batch Batch of at least {@link #getMaxBlockRows()} rows capacity
+         * @return false - no more blocks
+         * @throws IOException if the block could not be read or is corrupt
+         */
+        public boolean next(ColumnBatch batch) throws IOException {
+            if (next >= toBlock) {
+                return false;
+            }
+            int b = next++;
+            long offset = offsets[b];
+            int length = storedLengths[b];
+            if (window == null || offset < windowStart || offset + length > windowEnd) {
+                long end = offsets[toBlock - 1] + storedLengths[toBlock - 1];
+                long windowLength = Math.max(length, Math.min(MAP_WINDOW, end - offset));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset, windowLength);
+                windowStart = offset;
+                windowEnd = offset + windowLength;
+            }
+            ByteBuffer block = window.slice((int) (offset - windowStart), length);
+            if (compressed) {
+                block = inflate(block, rawLengths[b]);
+            }
+            batch.readFrom(block, rows[b]);
+            return true;
+        }
+
+        private ByteBuffer inflate(ByteBuffer block, int rawLength) throws IOException {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            if (inflated == null || inflated.length < rawLength) {
+                inflated = new byte[rawLength];
+            }
+            inflater.reset();
+            inflater.setInput(block);
+            try {
+                int length = 0;
+                while (length < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(inflated, length, rawLength - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    length += n;
+                }
+                if (length != rawLength) {
+                    throw new IOException(file + " has a corrupt block at segment " + id);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(file + " has a corrupt block at segment " + id, e);
+            }
+            return ByteBuffer.wrap(inflated, 0, rawLength);
+        }
+
+        /**
+         * Get the no. of rows in the segment
+         * @return row count
+         */
+        public long getRowCount() {
+            long count = 0;
+            for (int b = fromBlock; b < toBlock; b++) {
+                count += rows[b];
+            }
+            return count;
+        }
+
+        /**
+         * Releases the inflater of the segment
+         */
+        public void close() {
+            if (inflater != null) {
+                inflater.end();
+            }
+            window = null;
+        }
+
+        @Override
+        public String toString() {
+            return "SEGMENT " + id + " [BLOCKS " + fromBlock + " - " + (toBlock - 1) + "]";
+        }
+    }
+}
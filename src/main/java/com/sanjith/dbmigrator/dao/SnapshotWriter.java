@@ -0,0 +1,210 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a table snapshot, the typed binary form of the extracted rows which is loaded later by a
+ * {@link SnapshotReader}. Every batch is appended as a block, optionally deflated, and the block index is written at
+ * the end of the file. Blocks are encoded by the calling threads and appended in arrival order. The file is written
+ * under a temporary name and only renamed by {@link #finish()}, so an incomplete snapshot is never loaded
+ *
+ * <pre>
+ * header  MAGIC, version, compression, column count, (name, type)*
+ * blocks  block*
+ * index   block count, (offset, rows, raw length, stored length)*
+ * trailer index offset, total rows, MAGIC
+ * </pre>
+ *
+ * @see ColumnBatch#writeTo(DataOutputStream)
+ */
+public class SnapshotWriter implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(SnapshotWriter.class);
+
+    static final byte[] MAGIC = "DBMSNAP1".getBytes(StandardCharsets.US_ASCII);
+
+    static final int VERSION = 1;
+
+    static final byte COMPRESSION_NONE = 0;
+
+    static final byte COMPRESSION_DEFLATE = 1;
+
+    /**
+     * Size of the trailer: index offset, total rows and MAGIC
+     */
+    static final int TRAILER_BYTES = 16 + 8;
+
+    /**
+     * Size of a block index entry: offset, rows, raw length and stored length
+     */
+    static final int INDEX_ENTRY_BYTES = 8 + 4 + 4 + 4;
+
+    /**
+     * Block encode buffer of every appending thread
+     */
+    private static final ThreadLocal<ByteArrayOutputStream> blockBuffer = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1 << 20));
+
+    private final Path file;
+
+    private final Path tempFile;
+
+    private final FileChannel channel;
+
+    private final boolean compress;
+
+    private final List<long[]> index = new ArrayList<>();
+
+    private long totalRows = 0;
+
+    private boolean finished = false;
+
+    /**
+     * Creates a snapshot file and writes its header
+     *
+     * @param file        Snapshot file, replaced by {@link #finish()}
+     * @param columnNames Column names
+     * @param typeArr     Column types in java.sql.Types
+     * @param compress    true - deflate every block
+     * @throws IOException if the file could not be created
+     */
+    public SnapshotWriter(Path file, Collection<String> columnNames, int[] typeArr, boolean compress) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.tempFile = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        this.compress = compress;
+        Files.createDirectories(this.file.getParent());
+        this.channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(compress ? COMPRESSION_DEFLATE : COMPRESSION_NONE);
+        out.writeInt(columnNames.size());
+        int c = 0;
+        for (String column : columnNames) {
+            byte[] name = column.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(typeArr[c++]);
+        }
+        writeFully(ByteBuffer.wrap(header.toByteArray()));
+    }
+
+    /**
+     * Appends the rows of a batch as a block. Thread safe, blocks are encoded and compressed outside the lock
+     *
+     * @param batch Rows to append
+     * @throws IOException if the block could not be written
+     */
+    public void append(ColumnBatch batch) throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        ByteArrayOutputStream buffer = blockBuffer.get();
+        buffer.reset();
+        batch.writeTo(new DataOutputStream(buffer));
+        byte[] raw = buffer.toByteArray();
+        ByteBuffer stored = compress ? deflate(raw) : ByteBuffer.wrap(raw);
+
+        synchronized (this) {
+            if (finished) {
+                throw new IllegalStateException("Snapshot already finished");
+            }
+            long offset = channel.position();
+            int storedLength = stored.remaining();
+            writeFully(stored);
+            index.add(new long[]{offset, batch.size(), raw.length, storedLength});
+            totalRows += batch.size();
+        }
+    }
+
+    private static ByteBuffer deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] out = new byte[raw.length + raw.length / 1000 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            return ByteBuffer.wrap(out, 0, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the block index and the trailer, forces the file to disk and renames it to the snapshot file
+     *
+     * @return no. of rows in the snapshot
+     * @throws IOException if the index could not be written
+     */
+    public synchronized long finish() throws IOException {
+        long indexOffset = channel.position();
+        ByteBuffer indexBuffer = ByteBuffer.allocate(4 + index.size() * INDEX_ENTRY_BYTES + TRAILER_BYTES);
+        indexBuffer.putInt(index.size());
+        for (long[] block : index) {
+            indexBuffer.putLong(block[0]).putInt((int) block[1]).putInt((int) block[2]).putInt((int) block[3]);
+        }
+        indexBuffer.putLong(indexOffset).putLong(totalRows).put(MAGIC);
+        indexBuffer.flip();
+        writeFully(indexBuffer);
+        channel.force(true);
+        channel.close();
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        finished = true;
+        log.info("SNAPSHOT " + file + ": " + index.size() + " BLOCKS / " + totalRows + " ROWS / " + Files.size(file) + " BYTES");
+        return totalRows;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Get the snapshot file
+     * @return file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the file. A snapshot which was not finished is deleted
+     */
+    @Override
+    public synchronized void close() {
+        if (finished) {
+            return;
+        }
+        try {
+            channel.close();
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Error in removing incomplete snapshot " + tempFile + ": " + e.getMessage());
+        }
+    }
+}
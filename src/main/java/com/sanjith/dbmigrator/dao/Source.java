@@ -2,18 +2,39 @@ package com.sanjith.dbmigrator.dao;
 
 
 import com.google.common.base.Strings;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.sql.DataSource;
 
@@ -21,15 +42,18 @@ import javax.sql.DataSource;
  * DAO Class for Source table
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class Source {
 
+    private static final Logger log = LogManager.getLogger(Source.class);
+
     @Value("${input.source-table}")
     private String tableName;
 
     @Value("${input.source-schema}")
     private String schemaName;
 
-    @Qualifier("destinationDataSource")
+    @Qualifier("sourceDataSource")
     @Autowired
     private DataSource source;
 
@@ -37,8 +61,14 @@ public class Source {
     @Autowired
     private JdbcTemplate template;
 
+    @Qualifier("sourceMetadata")
+    @Autowired
+    private MetadataCache metadata;
+
     private Map<String, Integer> columnMetaData = null;
 
+    private String splitColumn = null;
+
 
     /**
      * Validates the table name and schema name
@@ -47,15 +77,15 @@ public class Source {
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void verify() throws IllegalArgumentException {
 
-        if (DbUtils.isValidSchema(schemaName, template) == false) {
+        if (metadata.isValidSchema(schemaName) == false) {
             throw new IllegalArgumentException("Invalid Schema/ Schema Not found");
         }
 
-        if (DbUtils.isValidTable(schemaName, tableName, template) == false) {
+        if (metadata.isValidTable(schemaName, tableName) == false) {
             throw new IllegalArgumentException("Invalid Table/ Table not found");
         }
 
-        this.setColumnMetaData(DbUtils.getColumnNamesTypes(schemaName, tableName, template));
+        this.setColumnMetaData(metadata.getColumnNamesTypes(schemaName, tableName));
     }
 
 
@@ -68,6 +98,14 @@ public class Source {
         return tableName;
     }
 
+    /**
+     * Set the table name, replacing the configured input table
+     * @param tableName table name
+     */
+    public void setTableName(String tableName) {
+        this.tableName = tableName;
+    }
+
     /**
      * Get the schema name
      * @return schema name
@@ -93,6 +131,15 @@ public class Source {
         this.columnMetaData = columnMetaData;
     }
 
+    /**
+     * Get the precision and scale of the columns
+     * @return Key - column name. Value - {precision, scale}
+     * @see DbUtils#getColumnPrecisionScale(String, String, JdbcTemplate)
+     */
+    public Map<String, int[]> getColumnPrecisionScale() {
+        return DbUtils.getColumnPrecisionScale(schemaName, tableName, template);
+    }
+
 
     /**
      * Get the record count of the table
@@ -100,7 +147,7 @@ public class Source {
      */
     public long getRecordCount() {
         System.out.println("Querying record count of " + this.tableName);
-        Integer result = template.queryForObject("SELECT COUNT(*) FROM " + tableName, Integer.class);
+        Long result = template.queryForObject("SELECT COUNT(*) FROM " + tableName, Long.class);
         if (result == null) {
             return -1;
         }
@@ -108,6 +155,293 @@ public class Source {
         return result;
     }
 
+    /**
+     * Estimates the record count of the table from the catalog statistics, without scanning it. Reads
+     * SYSCAT.TABLES.CARD on DB2, ALL_TABLES.NUM_ROWS on Oracle, information_schema.TABLES.TABLE_ROWS on MySQL,
+     * pg_class.reltuples on PostgreSQL and sys.partitions on SQL Server, and the index statistics of the JDBC metadata
+     * on other databases. The estimate is as recent as the last statistics collection
+     * @return estimated row count, -1 if the table has no statistics
+     */
+    public long getEstimatedRecordCount() {
+        String url = ((HikariDataSource) source).getJdbcUrl().toLowerCase();
+        String query;
+        if (url.startsWith("jdbc:db2:")) {
+            query = "SELECT CARD FROM SYSCAT.TABLES WHERE TABSCHEMA = ? AND TABNAME = ?";
+        } else if (url.startsWith("jdbc:oracle:")) {
+            query = "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = ? AND TABLE_NAME = ?";
+        } else if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) {
+            query = "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?";
+        } else if (url.startsWith("jdbc:postgresql:")) {
+            query = "SELECT CAST(c.reltuples AS BIGINT) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace WHERE n.nspname = ? AND c.relname = ?";
+        } else if (url.startsWith("jdbc:sqlserver:")) {
+            query = "SELECT SUM(p.rows) FROM sys.partitions p JOIN sys.tables t ON t.object_id = p.object_id JOIN sys.schemas s ON s.schema_id = t.schema_id"
+                    + " WHERE s.name = ? AND t.name = ? AND p.index_id IN (0, 1)";
+        } else {
+            query = null;
+        }
+        long estimate = -1;
+        if (query != null) {
+            try {
+                List<Long> result = template.queryForList(query, Long.class, schemaName, tableName);
+                if (!result.isEmpty() && result.get(0) != null) {
+                    estimate = result.get(0);
+                }
+            } catch (DataAccessException e) {
+                log.warn("Could not read the catalog statistics of " + tableName + ": " + e.getMostSpecificCause().getMessage());
+            }
+        }
+        if (estimate <= 0) {
+            // no statistics collected, or an empty table
+            estimate = DbUtils.getEstimatedRowCount(schemaName, tableName, template);
+        }
+        log.info("Estimated record count of " + tableName + ": " + (estimate > 0 ? estimate : "unknown"));
+        return estimate > 0 ? estimate : -1;
+    }
+
+    /**
+     * Counts the rows of a key range on a connection of its own, so the count can run alongside the extraction and be
+     * cancelled once it is not needed anymore
+     * @param range Key range, {@link KeyRange#wholeTable()} for all rows
+     * @param running Receives the running statement, to cancel it from another thread
+     * @return row count
+     * @throws SQLException
+     */
+    public long getRecordCount(KeyRange range, AtomicReference<Statement> running) throws SQLException {
+        String predicate = range.getPredicate();
+        String query = "SELECT COUNT(*) FROM " + tableName + (predicate.isEmpty() ? "" : " WHERE " + predicate);
+        try (Connection connection = source.getConnection(); PreparedStatement stmt = connection.prepareStatement(query)) {
+            Object[] params = range.getParameters();
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            running.set(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            } finally {
+                running.set(null);
+            }
+        }
+    }
+
+    /**
+     * Splits the table into key ranges on the split column using its MIN/MAX values. Falls back to a single range
+     * covering the whole table if the table has no splittable column
+     * @param partitions Number of ranges requested
+     * @return key ranges in ascending order of the split column
+     * @see DbUtils#getSplitColumn(String, String, JdbcTemplate)
+     */
+    public List<KeyRange> getKeyRanges(int partitions) {
+        List<KeyRange> ranges = new ArrayList<>();
+        String column = getSplitColumn();
+        if (column == null) {
+            if (partitions > 1) {
+                log.warn("No splittable key column found for " + tableName + ". Reading the table as a single range");
+            }
+            ranges.add(KeyRange.wholeTable());
+            return ranges;
+        }
+        if (partitions <= 1) {
+            ranges.add(new KeyRange(1, column, null, null, true));
+            return ranges;
+        }
+
+        int type = columnMetaData.get(column);
+        String query = "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + tableName;
+        log.info("Executing SQL Statement [" + query + "]");
+        BigDecimal[] bounds = template.queryForObject(query, (rs, rowNum) -> new BigDecimal[]{
+                toOrdinal(rs, 1, type), toOrdinal(rs, 2, type)});
+
+        if (bounds == null || bounds[0] == null || bounds[1] == null) {
+            ranges.add(KeyRange.wholeTable());
+            return ranges;
+        }
+
+        List<Object> splitPoints = getSplitPoints(bounds[0], bounds[1], type, partitions);
+        Object lower = null;
+        for (int i = 0; i <= splitPoints.size(); i++) {
+            Object upper = i < splitPoints.size() ? splitPoints.get(i) : null;
+            ranges.add(new KeyRange(i + 1, column, lower, upper, i == 0));
+            lower = upper;
+        }
+        log.info("Split " + tableName + " on " + column + " into " + ranges.size() + " ranges");
+        return ranges;
+    }
+
+    /**
+     * Splits the rows past a watermark into key ranges on the watermark column. The first range starts right after
+     * the watermark and the last range ends at the current MAX of the column, inclusive, which becomes the next
+     * watermark
+     * @param column Watermark column, a numeric or date/time column declared NOT NULL
+     * @param after Watermark of the last run, null to read all rows
+     * @param partitions Number of ranges requested
+     * @return key ranges in ascending order of the watermark column, empty if no rows are past the watermark
+     */
+    public List<KeyRange> getDeltaRanges(String column, Object after, int partitions) {
+        List<KeyRange> ranges = new ArrayList<>();
+        int type = columnMetaData.get(column);
+        String query = "SELECT MIN(" + column + "), MAX(" + column + ") FROM " + tableName + (after == null ? "" : " WHERE " + column + " > ?");
+        log.info("Executing SQL Statement [" + query + "]");
+        Object[] bounds = template.queryForObject(query, (rs, rowNum) -> new Object[]{
+                DbUtils.getKeyValue(rs, 1, type), DbUtils.getKeyValue(rs, 2, type)}, after == null ? new Object[0] : new Object[]{after});
+        if (bounds == null || bounds[1] == null) {
+            return ranges;
+        }
+
+        List<Object> splitPoints = partitions > 1 ? getSplitPoints(toOrdinal(bounds[0]), toOrdinal(bounds[1]), type, partitions) : new ArrayList<>();
+        Object lower = after;
+        for (int i = 0; i <= splitPoints.size(); i++) {
+            boolean last = i == splitPoints.size();
+            Object upper = last ? bounds[1] : splitPoints.get(i);
+            ranges.add(new KeyRange(i + 1, column, lower, i == 0, upper, last, false));
+            lower = upper;
+        }
+        log.info("Split rows of " + tableName + " past " + column + " " + after + " into " + ranges.size() + " ranges up to " + bounds[1]);
+        return ranges;
+    }
+
+    /**
+     * Splits a key range into narrower ranges between the lowest and highest key found in it. The first range keeps
+     * the lower bound and the NULL keys of the range, the last range keeps its upper bound
+     * @param range Key range on the split column
+     * @param low Lowest key in the range
+     * @param high Highest key in the range
+     * @param partitions Number of ranges requested
+     * @param ids Source of the identifiers of the new ranges
+     * @return narrower ranges in ascending order of the split column, only the range itself if it cannot be split
+     */
+    public List<KeyRange> splitRange(KeyRange range, Object low, Object high, int partitions, AtomicInteger ids) {
+        List<KeyRange> ranges = new ArrayList<>();
+        int type = columnMetaData.get(range.getColumn());
+        List<Object> splitPoints = getSplitPoints(toOrdinal(low), toOrdinal(high), type, partitions);
+        if (splitPoints.isEmpty()) {
+            ranges.add(range);
+            return ranges;
+        }
+        Object lower = range.getLowerBound();
+        for (int i = 0; i <= splitPoints.size(); i++) {
+            boolean first = i == 0;
+            boolean last = i == splitPoints.size();
+            Object upper = last ? range.getUpperBound() : splitPoints.get(i);
+            ranges.add(new KeyRange(ids.incrementAndGet(), range.getColumn(), lower, first && range.isLowerExclusive(),
+                    upper, last && range.isUpperInclusive(), first && range.isIncludeNulls()));
+            lower = upper;
+        }
+        return ranges;
+    }
+
+    /**
+     * Get the record count of a key range of the table
+     * @param range Key range
+     * @return row count
+     */
+    public long getRecordCount(KeyRange range) {
+        String predicate = range.getPredicate();
+        Long result = template.queryForObject("SELECT COUNT(*) FROM " + tableName + (predicate.isEmpty() ? "" : " WHERE " + predicate),
+                Long.class, range.getParameters());
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Computes the split points dividing [low, high] into ranges of equal width
+     * @return split points as bind values of the column type, ascending and above low
+     */
+    private static List<Object> getSplitPoints(BigDecimal low, BigDecimal high, int type, int partitions) {
+        BigDecimal span = high.subtract(low);
+        boolean integral = type != Types.DECIMAL && type != Types.NUMERIC;
+        List<BigDecimal> splitPoints = new ArrayList<>();
+        for (int i = 1; i < partitions; i++) {
+            BigDecimal point = low.add(span.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(partitions), MathContext.DECIMAL64));
+            if (integral) {
+                point = point.setScale(0, RoundingMode.FLOOR);
+            }
+            if (point.compareTo(low) > 0 && (splitPoints.isEmpty() || point.compareTo(splitPoints.get(splitPoints.size() - 1)) > 0)) {
+                splitPoints.add(point);
+            }
+        }
+        List<Object> values = new ArrayList<>();
+        for (BigDecimal point : splitPoints) {
+            values.add(fromOrdinal(point, type));
+        }
+        return values;
+    }
+
+    /**
+     * Get the column on which the table is split into key ranges
+     * @return split column, null if the table has no splittable column
+     * @see DbUtils#getSplitColumn(String, String, JdbcTemplate)
+     */
+    public String getSplitColumn() {
+        if (splitColumn == null) {
+            splitColumn = DbUtils.getSplitColumn(schemaName, tableName, template);
+        }
+        return splitColumn;
+    }
+
+    /**
+     * Checks whether the split column alone is the primary key of the table, i.e. its values are unique and not NULL
+     * @return true - split column is the primary key
+     */
+    public boolean isSplitColumnPrimaryKey() {
+        return getSplitColumn() != null && DbUtils.isPrimaryKey(schemaName, tableName, getSplitColumn(), template);
+    }
+
+    /**
+     * Checks whether a column of the table is declared NOT NULL
+     * @param column Column name
+     * @return true - column cannot hold NULL
+     */
+    public boolean isNotNull(String column) {
+        return DbUtils.isNotNull(schemaName, tableName, column, template);
+    }
+
+    /**
+     * Converts a split column value into a number on which the range arithmetic is done. Dates are converted to epoch
+     * days and timestamps to epoch milliseconds
+     */
+    private static BigDecimal toOrdinal(ResultSet rs, int index, int type) throws SQLException {
+        switch (type) {
+            case Types.DATE:
+                Date date = rs.getDate(index);
+                return date == null ? null : BigDecimal.valueOf(date.toLocalDate().toEpochDay());
+            case Types.TIMESTAMP:
+                Timestamp timestamp = rs.getTimestamp(index);
+                return timestamp == null ? null : BigDecimal.valueOf(timestamp.getTime());
+            default:
+                return rs.getBigDecimal(index);
+        }
+    }
+
+    /**
+     * Converts a key value read by {@link DbUtils#getKeyValue(ResultSet, int, int)} into its ordinal
+     */
+    static BigDecimal toOrdinal(Object value) {
+        if (value instanceof Date) {
+            return BigDecimal.valueOf(((Date) value).toLocalDate().toEpochDay());
+        } else if (value instanceof Timestamp) {
+            return BigDecimal.valueOf(((Timestamp) value).getTime());
+        } else if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        return BigDecimal.valueOf(((Number) value).longValue());
+    }
+
+    /**
+     * Converts a range boundary back into a bind value of the split column type
+     */
+    private static Object fromOrdinal(BigDecimal ordinal, int type) {
+        switch (type) {
+            case Types.DATE:
+                return Date.valueOf(LocalDate.ofEpochDay(ordinal.longValueExact()));
+            case Types.TIMESTAMP:
+                return new Timestamp(ordinal.longValueExact());
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return ordinal;
+            default:
+                return ordinal.longValueExact();
+        }
+    }
+
     /**
      * Get the data source
      * @return data source
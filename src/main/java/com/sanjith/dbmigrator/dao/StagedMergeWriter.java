@@ -0,0 +1,152 @@
+package com.sanjith.dbmigrator.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+
+/**
+ * Upserts by loading the batches into a staging table of the session with another {@link BulkWriter}, and applying
+ * them to the destination table with one set-based MERGE per commit (see {@link InsertPlan#getMergeSql(String)}). The
+ * staging table is created with the migrated columns of the destination table when the session opens, emptied after
+ * every merge in the same transaction and dropped when the session closes. It is recorded in {@link StagingTables} for
+ * as long as it exists. Rows in the staging table are unique by key as long as the source rows are
+ */
+public class StagedMergeWriter implements BulkWriter {
+
+    private static final Logger log = LogManager.getLogger(StagedMergeWriter.class);
+
+    private final BulkWriter stagingWriter;
+
+    private final String stagingTable;
+
+    private final StagingTables stagingTables;
+
+    private final InsertPlan upsertPlan;
+
+    private final String jdbcUrl;
+
+    private Connection connection;
+
+    private String mergeSql;
+
+    private long stagedRows = 0;
+
+    /**
+     * Constructs a staged merge writer
+     *
+     * @param stagingWriter Writer loading the staging table
+     * @param stagingTable  Staging table of the session
+     * @param stagingTables Record of the staging tables of the destination table
+     * @param upsertPlan    Upsert plan of the destination table
+     * @param jdbcUrl       Destination jdbc url
+     */
+    public StagedMergeWriter(BulkWriter stagingWriter, String stagingTable, StagingTables stagingTables, InsertPlan upsertPlan, String jdbcUrl) {
+        this.stagingWriter = stagingWriter;
+        this.stagingTable = stagingTable;
+        this.stagingTables = stagingTables;
+        this.upsertPlan = upsertPlan;
+        this.jdbcUrl = jdbcUrl == null ? "" : jdbcUrl.toLowerCase();
+    }
+
+    @Override
+    public String getName() {
+        return "merge-" + stagingWriter.getName();
+    }
+
+    @Override
+    public boolean supports(int[] typeArr) {
+        return stagingWriter.supports(typeArr);
+    }
+
+    @Override
+    public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) throws SQLException {
+        String columnList = String.join(",", columnNames);
+        try {
+            stagingTables.register(stagingTable);
+        } catch (UncheckedIOException e) {
+            throw new SQLException(e.getMessage(), e);
+        }
+        this.connection = connection;
+        try (Statement stmt = connection.createStatement()) {
+            String createSql;
+            if (jdbcUrl.startsWith("jdbc:db2:")) {
+                createSql = "CREATE TABLE " + stagingTable + " AS (SELECT " + columnList + " FROM " + tableName + ") WITH NO DATA";
+            } else if (jdbcUrl.startsWith("jdbc:sqlserver:")) {
+                createSql = "SELECT " + columnList + " INTO " + stagingTable + " FROM " + tableName + " WHERE 1 = 0";
+            } else if (jdbcUrl.startsWith("jdbc:postgresql:")) {
+                createSql = "CREATE UNLOGGED TABLE " + stagingTable + " AS SELECT " + columnList + " FROM " + tableName + " WHERE 1 = 0";
+            } else {
+                createSql = "CREATE TABLE " + stagingTable + " AS SELECT " + columnList + " FROM " + tableName + " WHERE 1 = 0";
+            }
+            log.info("Executing SQL Statement [" + createSql + "]");
+            stmt.execute(createSql);
+            connection.commit();
+        }
+        this.mergeSql = upsertPlan.getMergeSql(stagingTable);
+        log.info("Merging with [" + mergeSql + "]");
+        stagingWriter.open(connection, stagingTable, columnNames, typeArr);
+    }
+
+    @Override
+    public int write(ColumnBatch batch) throws SQLException {
+        int rows = stagingWriter.write(batch);
+        stagedRows += rows;
+        return rows;
+    }
+
+    /**
+     * Merges the staged rows into the destination table and empties the staging table, in the transaction which the
+     * session commits next
+     */
+    @Override
+    public void flush() throws SQLException {
+        if (stagedRows == 0) {
+            return;
+        }
+        if (stagingWriter.isCommitPerBatch()) {
+            // direct-path and load utility writes have to be committed before the staging table can be read
+            connection.commit();
+        }
+        long mergeStart = System.nanoTime();
+        try (Statement stmt = connection.createStatement()) {
+            int merged = stmt.executeUpdate(mergeSql);
+            stmt.executeUpdate("DELETE FROM " + stagingTable);
+            log.debug("MERGED " + stagedRows + " STAGED ROWS (" + merged + " AFFECTED) IN " + (System.nanoTime() - mergeStart) / 1000000 + " MS");
+        }
+        stagedRows = 0;
+    }
+
+    @Override
+    public boolean isCommitPerBatch() {
+        return stagingWriter.isCommitPerBatch();
+    }
+
+    @Override
+    public long getBindNanos() {
+        return stagingWriter.getBindNanos();
+    }
+
+    /**
+     * Closes the staging writer and drops the staging table. Rows staged but not merged are discarded
+     */
+    @Override
+    public void close() {
+        stagingWriter.close();
+        if (connection == null) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            connection.rollback();
+            stmt.execute("DROP TABLE " + stagingTable);
+            connection.commit();
+            stagingTables.unregister(stagingTable);
+        } catch (SQLException | UncheckedIOException e) {
+            log.warn("Error in dropping staging table " + stagingTable + ": " + e.getMessage());
+        }
+    }
+}
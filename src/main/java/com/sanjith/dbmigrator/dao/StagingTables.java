@@ -0,0 +1,152 @@
+package com.sanjith.dbmigrator.dao;
+
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staging tables of a destination table in merge mode. The names are unique per run and table: a prefix of the table
+ * name, a hash of the schema, the table and a random id of the run, and the session no. Every staging table is
+ * recorded in a local file before it is created and removed from it once dropped, so only the tables which this
+ * migrator created and did not drop are cleaned up by the next run, never a table which merely has a matching name
+ *
+ * @see StagedMergeWriter
+ */
+public class StagingTables {
+
+    private static final Logger log = LogManager.getLogger(StagingTables.class);
+
+    /**
+     * Random id of the run, tells the staging tables of concurrent runs apart
+     */
+    private static final long RUN_ID = ThreadLocalRandom.current().nextLong();
+
+    private final Path file;
+
+    private final String schemaName;
+
+    private final String tableName;
+
+    private final JdbcTemplate template;
+
+    private final String namePrefix;
+
+    private final AtomicInteger sessionCount = new AtomicInteger(0);
+
+    private final Set<String> created = new LinkedHashSet<>();
+
+    /**
+     * Constructs the staging tables of a destination table
+     *
+     * @param directory  Directory holding the staging table files
+     * @param schemaName Destination schema
+     * @param tableName  Destination table
+     * @param template   Destination jdbc template
+     */
+    public StagingTables(String directory, String schemaName, String tableName, JdbcTemplate template) {
+        this(directory, schemaName, tableName, template, RUN_ID);
+    }
+
+    StagingTables(String directory, String schemaName, String tableName, JdbcTemplate template, long runId) {
+        this.file = Paths.get(directory, schemaName + "." + tableName + ".staging");
+        this.schemaName = schemaName;
+        this.tableName = tableName;
+        this.template = template;
+        int hash = Hashing.murmur3_128().newHasher().putString(schemaName + "." + tableName, StandardCharsets.UTF_8)
+                .putLong(runId).hash().asInt();
+        this.namePrefix = (tableName.length() > 10 ? tableName.substring(0, 10) : tableName) + "_" + String.format("%08X", hash) + "_";
+    }
+
+    /**
+     * Get the name of the staging table of the next writer session, kept within the 30 character limit of older
+     * databases
+     * @return staging table name
+     */
+    public String nextName() {
+        return namePrefix + sessionCount.incrementAndGet();
+    }
+
+    /**
+     * Drops the staging tables which a previous run recorded and did not drop
+     */
+    public synchronized void dropLeftovers() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<String> leftovers;
+        try {
+            leftovers = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (String name : leftovers) {
+            if (name.isBlank()) {
+                continue;
+            }
+            if (exists(name)) {
+                try {
+                    template.execute("DROP TABLE " + name);
+                    log.info("Dropped staging table " + name + " left over by a previous run");
+                } catch (RuntimeException e) {
+                    log.warn("Error in dropping staging table " + name + " left over by a previous run: " + e.getMessage());
+                    created.add(name);
+                }
+            }
+        }
+        save();
+    }
+
+    /**
+     * Records a staging table before it is created
+     * @param name Staging table name
+     */
+    public synchronized void register(String name) {
+        created.add(name);
+        save();
+    }
+
+    /**
+     * Removes a staging table from the record once it is dropped
+     * @param name Staging table name
+     */
+    public synchronized void unregister(String name) {
+        if (created.remove(name)) {
+            save();
+        }
+    }
+
+    private boolean exists(String name) {
+        return DbUtils.isValidTable(schemaName, name, template) || DbUtils.isValidTable(schemaName, name.toUpperCase(), template)
+                || DbUtils.isValidTable(schemaName, name.toLowerCase(), template);
+    }
+
+    private void save() {
+        try {
+            if (created.isEmpty()) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, new ArrayList<>(created), StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Staging tables of " + tableName + " not recorded in " + file.toAbsolutePath(), e);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.sanjith.dbmigrator.dao;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+/**
+ * Order-independent checksum of the rows of a table by key range, computed on one side of a migration. Every row is
+ * hashed over its compared columns with values normalized across databases: numbers by value, strings without
+ * trailing blanks, booleans as 1/0 and date/time values in ISO form. A range sums up the row hashes, so the rows can
+ * be read in any order and both sides of a range compare equal when they hold the same rows. The databases share no
+ * hash function, so the rows are hashed while streaming them to the client
+ *
+ * @see Source#splitRange(KeyRange, Object, Object, int, java.util.concurrent.atomic.AtomicInteger)
+ */
+public class TableChecksum {
+
+    private static final Logger log = LogManager.getLogger(TableChecksum.class);
+
+    private final DataSource dataSource;
+
+    private final String tableName;
+
+    private final List<String> columns;
+
+    private final int[] keyIndexes;
+
+    private final int splitIndex;
+
+    private final int splitType;
+
+    private final String selectList;
+
+    private final int fetchSize;
+
+    /**
+     * Checksum of a key range on one side
+     */
+    public static class Result {
+
+        private long count;
+
+        private long sum;
+
+        private Object low;
+
+        private Object high;
+
+        /**
+         * Get the no. of rows
+         * @return row count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the lowest split column value
+         * @return lowest key, null if the range has no rows with a key
+         */
+        public Object getLow() {
+            return low;
+        }
+
+        /**
+         * Get the highest split column value
+         * @return highest key, null if the range has no rows with a key
+         */
+        public Object getHigh() {
+            return high;
+        }
+
+        /**
+         * Checks whether both sides hold the same rows
+         * @param other Checksum of the other side
+         * @return true - same row count and hash sum
+         */
+        public boolean matches(Result other) {
+            return count == other.count && sum == other.sum;
+        }
+
+        @Override
+        public String toString() {
+            return count + " ROWS, SUM " + Long.toHexString(sum);
+        }
+    }
+
+    /**
+     * Constructs the checksum of one side
+     *
+     * @param dataSource  Data source of the side
+     * @param tableName   Table name
+     * @param columns     Compared columns, in the same order on both sides
+     * @param keyColumns  Columns identifying a row, a subset of the compared columns. Empty - rows are identified by their hash
+     * @param splitColumn Split column of the key ranges, null if the table is compared as a whole
+     * @param splitType   Split column type in java.sql.Types
+     * @param fetchSize   Rows fetched per round trip
+     */
+    public TableChecksum(DataSource dataSource, String tableName, List<String> columns, List<String> keyColumns,
+                         String splitColumn, int splitType, int fetchSize) {
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.columns = columns;
+        this.keyIndexes = new int[keyColumns.size()];
+        for (int i = 0; i < keyIndexes.length; i++) {
+            keyIndexes[i] = indexOf(columns, keyColumns.get(i));
+            if (keyIndexes[i] < 0) {
+                throw new IllegalArgumentException("Key column " + keyColumns.get(i) + " is not a compared column");
+            }
+        }
+        String select = String.join(",", columns);
+        int split = splitColumn == null ? -1 : indexOf(columns, splitColumn);
+        if (splitColumn != null && split < 0) {
+            // read along to track the key bounds, without being compared
+            select += "," + splitColumn;
+            split = columns.size();
+        }
+        this.selectList = select;
+        this.splitIndex = split;
+        this.splitType = splitType;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Computes the checksum of the rows of a key range, and the bounds of their keys
+     * @param range Key range
+     * @return checksum of the range
+     * @throws SQLException
+     */
+    public Result checksum(KeyRange range) throws SQLException {
+        Result result = new Result();
+        BigDecimal low = null;
+        BigDecimal high = null;
+        try (Connection connection = dataSource.getConnection(); PreparedStatement stmt = prepare(connection, range);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                result.count++;
+                result.sum += hashRow(rs);
+                if (splitIndex >= 0) {
+                    Object key = DbUtils.getKeyValue(rs, splitIndex + 1, splitType);
+                    if (key != null) {
+                        BigDecimal ordinal = Source.toOrdinal(key);
+                        if (low == null || ordinal.compareTo(low) < 0) {
+                            low = ordinal;
+                            result.low = key;
+                        }
+                        if (high == null || ordinal.compareTo(high) > 0) {
+                            high = ordinal;
+                            result.high = key;
+                        }
+                    }
+                }
+            }
+        }
+        log.debug(tableName + " " + range + ": " + result);
+        return result;
+    }
+
+    /**
+     * Hashes the rows of a key range one by one, to find the rows which differ
+     * @param range Key range
+     * @return Key - key column values of the row, or the row hash if there are no key columns. Value - row hash
+     * @throws SQLException
+     */
+    public Map<String, Long> getRowHashes(KeyRange range) throws SQLException {
+        Map<String, Long> rows = new HashMap<>();
+        try (Connection connection = dataSource.getConnection(); PreparedStatement stmt = prepare(connection, range);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                long hash = hashRow(rs);
+                String key;
+                if (keyIndexes.length == 0) {
+                    key = "ROW " + Long.toHexString(hash);
+                } else {
+                    List<String> values = new ArrayList<>();
+                    for (int index : keyIndexes) {
+                        values.add(columns.get(index) + "=" + normalize(rs.getObject(index + 1)));
+                    }
+                    key = String.join(", ", values);
+                }
+                // duplicates of a key are told apart by their occurrence
+                String unique = key;
+                for (int n = 2; rows.containsKey(unique); n++) {
+                    unique = key + " #" + n;
+                }
+                rows.put(unique, hash);
+            }
+        }
+        return rows;
+    }
+
+    private PreparedStatement prepare(Connection connection, KeyRange range) throws SQLException {
+        String predicate = range.getPredicate();
+        String query = "SELECT " + selectList + " FROM " + tableName + (predicate.isEmpty() ? "" : " WHERE " + predicate);
+        log.debug("Executing SQL Statement [" + query + "]");
+        PreparedStatement stmt = connection.prepareStatement(query);
+        stmt.setFetchSize(fetchSize);
+        Object[] params = range.getParameters();
+        for (int i = 0; i < params.length; i++) {
+            stmt.setObject(i + 1, params[i]);
+        }
+        return stmt;
+    }
+
+    private long hashRow(ResultSet rs) throws SQLException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        for (int i = 1; i <= columns.size(); i++) {
+            Object value = rs.getObject(i);
+            if (value == null) {
+                hasher.putByte((byte) 0);
+            } else if (value instanceof byte[] || value instanceof Blob) {
+                byte[] bytes = value instanceof Blob ? ((Blob) value).getBytes(1, (int) ((Blob) value).length()) : (byte[]) value;
+                hasher.putByte((byte) 1).putInt(bytes.length).putBytes(bytes);
+            } else {
+                byte[] bytes = normalize(value).getBytes(StandardCharsets.UTF_8);
+                hasher.putByte((byte) 1).putInt(bytes.length).putBytes(bytes);
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    /**
+     * Converts a column value into the text form compared across databases
+     */
+    private static String normalize(Object value) throws SQLException {
+        if (value == null) {
+            return "NULL";
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            return decimal.signum() == 0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+        } else if ((value instanceof Double || value instanceof Float) && !Double.isFinite(((Number) value).doubleValue())) {
+            return value.toString();
+        } else if (value instanceof Number) {
+            return normalize(new BigDecimal(value.toString()));
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        } else if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime().toString();
+        } else if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().toString();
+        } else if (value instanceof Time) {
+            return ((Time) value).toLocalTime().toString();
+        } else if (value instanceof Clob) {
+            return stripTrailing(((Clob) value).getSubString(1, (int) ((Clob) value).length()));
+        } else if (value instanceof String) {
+            return stripTrailing((String) value);
+        }
+        return value.toString();
+    }
+
+    private static String stripTrailing(String value) {
+        int end = value.length();
+        while (end > 0 && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        return value.substring(0, end);
+    }
+
+    private static int indexOf(List<String> columns, String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
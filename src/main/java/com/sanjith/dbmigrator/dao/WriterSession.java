@@ -0,0 +1,296 @@
+package com.sanjith.dbmigrator.dao;
+
+import com.sanjith.dbmigrator.metrics.MetricsRegistry;
+import com.sanjith.dbmigrator.metrics.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long lived insert session of a writer thread. Holds one destination connection with auto commit disabled and the
+ * {@link BulkWriter} which loads every batch. Commits according to the {@link CommitPolicy}
+ *
+ * @see Destination#openSession(LinkedHashSet, int[], CommitPolicy, long)
+ */
+public class WriterSession implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(WriterSession.class);
+
+    /**
+     * Set once the first rows of the JVM have been written, see {@link #logTimeToFirstRow()}
+     */
+    private static final AtomicBoolean firstRowWritten = new AtomicBoolean(false);
+
+    private final Connection connection;
+
+    private final BulkWriter writer;
+
+    private final CommitPolicy policy;
+
+    private final long commitInterval;
+
+    private long uncommittedBatches = 0;
+
+    private long uncommittedRows = 0;
+
+    private long uncommittedBytes = 0;
+
+    private Timer bindTimer = null;
+
+    private Timer executeTimer = null;
+
+    private Timer commitTimer = null;
+
+    private LongAdder rowCounter = null;
+
+    private LongAdder byteCounter = null;
+
+    private RejectLog rejectLog = null;
+
+    private boolean releaseSavepoints = true;
+
+    /**
+     * Constructs a writer session
+     *
+     * @param connection     Destination connection, owned by the session from now on
+     * @param writer         Bulk writer, owned by the session from now on
+     * @param tableName      Destination table
+     * @param columnNames    Column names
+     * @param typeArr        Column types in java.sql.Types
+     * @param policy         Commit policy
+     * @param commitInterval No. of batches, rows or bytes between commits. Ignored for {@link CommitPolicy#TABLE}
+     * @throws SQLException if the connection could not be prepared
+     */
+    public WriterSession(Connection connection, BulkWriter writer, String tableName, LinkedHashSet<String> columnNames,
+                         int[] typeArr, CommitPolicy policy, long commitInterval) throws SQLException {
+        this.connection = connection;
+        this.writer = writer;
+        this.policy = policy;
+        this.commitInterval = Math.max(1, commitInterval);
+        try {
+            connection.setAutoCommit(false);
+            writer.open(connection, tableName, columnNames, typeArr);
+        } catch (SQLException e) {
+            writer.close();
+            connection.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the bind, execute and commit times and the rows and bytes written by the session, tagged with the table
+     * and the writer
+     * @param metrics   Metrics registry
+     * @param tableName Destination table
+     */
+    public void setMetrics(MetricsRegistry metrics, String tableName) {
+        String[] tags = {"table", tableName, "writer", writer.getName()};
+        bindTimer = metrics.timer("migrator.bind", tags);
+        executeTimer = metrics.timer("migrator.execute", tags);
+        commitTimer = metrics.timer("migrator.commit", tags);
+        rowCounter = metrics.counter("migrator.rows", tags);
+        byteCounter = metrics.counter("migrator.bytes", tags);
+    }
+
+    /**
+     * Isolates the rows which the destination refuses instead of failing the batch, see {@link #writeIsolated(ColumnBatch)}.
+     * Needs a writer which inserts within the transaction of the session
+     * @param rejectLog Reject file of the table
+     */
+    public void setRejectLog(RejectLog rejectLog) {
+        if (writer.isCommitPerBatch()) {
+            throw new IllegalArgumentException("Writer " + writer.getName() + " commits every batch, rows cannot be isolated");
+        }
+        this.rejectLog = rejectLog;
+    }
+
+    /**
+     * Writes rows with the bulk writer. The rows are not committed until {@link #commitIfDue()} or {@link #commit()},
+     * unless the writer requires a commit after every batch
+     *
+     * @param batch     Row values in destination column order
+     * @param bytes     Estimated size of the rows, used by {@link CommitPolicy#BYTES}
+     * @return no. of rows inserted
+     * @throws SQLException if the insert failed
+     */
+    public int write(ColumnBatch batch, long bytes) throws SQLException {
+        long writeStart = System.nanoTime();
+        int insertCount = rejectLog == null ? writer.write(batch) : writeIsolated(batch);
+        long writeNanos = System.nanoTime() - writeStart;
+        if (executeTimer != null) {
+            long bindNanos = Math.min(writeNanos, writer.getBindNanos());
+            bindTimer.record(bindNanos);
+            executeTimer.record(writeNanos - bindNanos);
+            rowCounter.add(insertCount);
+            byteCounter.add(bytes);
+        }
+        if (insertCount > 0 && !firstRowWritten.get()) {
+            logTimeToFirstRow();
+        }
+
+        uncommittedBatches++;
+        uncommittedRows += insertCount;
+        uncommittedBytes += bytes;
+        if (writer.isCommitPerBatch()) {
+            commit();
+        }
+        return insertCount;
+    }
+
+    /**
+     * Writes a batch behind a savepoint. If the batch fails, it is rolled back to the savepoint and written again in
+     * two halves, down to the single rows which fail on their own and go to the reject file. The rows around a bad row
+     * are still written a batch at a time. Lock conflicts end the transaction and are not isolated
+     *
+     * @return no. of rows inserted
+     */
+    private int writeIsolated(ColumnBatch batch) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            int rows = writer.write(batch);
+            releaseSavepoint(savepoint);
+            return rows;
+        } catch (SQLException e) {
+            if (DbUtils.isLockConflict(e)) {
+                throw e;
+            }
+            connection.rollback(savepoint);
+            if (batch.size() == 1) {
+                rejectLog.reject(batch, 0, e);
+                return 0;
+            }
+            int half = batch.size() / 2;
+            log.debug("Batch of " + batch.size() + " rows failed (" + e.getMessage() + "), retrying in halves");
+            return writeIsolated(batch.slice(0, half)) + writeIsolated(batch.slice(half, batch.size()));
+        }
+    }
+
+    /**
+     * Releases a savepoint so the open savepoints do not pile up until the commit. Oracle has no release
+     */
+    private void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        if (releaseSavepoints) {
+            try {
+                connection.releaseSavepoint(savepoint);
+            } catch (SQLFeatureNotSupportedException e) {
+                releaseSavepoints = false;
+            }
+        }
+    }
+
+    /**
+     * Logs the time from JVM start to the first rows written, once per JVM. Used to compare startup modes, see
+     * startup-benchmark.sh
+     */
+    private static void logTimeToFirstRow() {
+        if (firstRowWritten.compareAndSet(false, true)) {
+            log.info("TIME TO FIRST ROW " + ManagementFactory.getRuntimeMXBean().getUptime() + " MS");
+        }
+    }
+
+    /**
+     * Get the name of the bulk writer used by the session
+     * @return writer name
+     */
+    public String getWriterName() {
+        return writer.getName();
+    }
+
+    /**
+     * Commits if the commit interval of the policy has been reached
+     *
+     * @return true - committed
+     * @throws SQLException if the commit failed
+     */
+    public boolean commitIfDue() throws SQLException {
+        boolean due;
+        switch (policy) {
+            case BATCHES:
+                due = uncommittedBatches >= commitInterval;
+                break;
+            case ROWS:
+                due = uncommittedRows >= commitInterval;
+                break;
+            case BYTES:
+                due = uncommittedBytes >= commitInterval;
+                break;
+            default:
+                due = false;
+        }
+        if (due) {
+            commit();
+        }
+        return due;
+    }
+
+    /**
+     * Commits all rows written since the last commit, after the writer has applied the rows it holds back
+     *
+     * @throws SQLException if the commit failed
+     */
+    public void commit() throws SQLException {
+        long commitStart = System.nanoTime();
+        writer.flush();
+        connection.commit();
+        long commitNanos = System.nanoTime() - commitStart;
+        if (commitTimer != null) {
+            commitTimer.record(commitNanos);
+        }
+        log.debug("COMMITTED " + uncommittedBatches + " BATCHES / " + uncommittedRows + " ROWS IN " + commitNanos / 1000000 + " MS");
+        uncommittedBatches = 0;
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
+    }
+
+    /**
+     * Rolls back all rows written since the last commit
+     */
+    public void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.warn("Rollback failed: " + e.getMessage());
+        }
+        uncommittedBatches = 0;
+        uncommittedRows = 0;
+        uncommittedBytes = 0;
+    }
+
+    /**
+     * Get the no. of rows written since the last commit
+     * @return uncommitted row count
+     */
+    public long getUncommittedRows() {
+        return uncommittedRows;
+    }
+
+    /**
+     * Closes the writer and returns the connection to the pool. Uncommitted rows are rolled back
+     */
+    @Override
+    public void close() {
+        if (uncommittedBatches > 0) {
+            rollback();
+        }
+        writer.close();
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("Error in closing writer session: " + e.getMessage());
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Error in returning connection: " + e.getMessage());
+            }
+        }
+    }
+}
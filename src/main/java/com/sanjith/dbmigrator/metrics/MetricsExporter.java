@@ -0,0 +1,175 @@
+package com.sanjith.dbmigrator.metrics;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+/**
+ * Exports the {@link MetricsRegistry} while the migration runs. Serves the Prometheus text format on
+ * http://host:input.metrics-port/metrics and writes a JSON snapshot to input.metrics-file every input.metrics-interval
+ * seconds and once more at shutdown. Registers the connection pool gauges of the source and destination pools
+ */
+@Component
+public class MetricsExporter implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LogManager.getLogger(MetricsExporter.class);
+
+    /**
+     * Port of the metrics endpoint, 0 - disabled
+     */
+    @Value("${input.metrics-port}")
+    private int metricsPort;
+
+    /**
+     * JSON snapshot file, empty - disabled
+     */
+    @Value("${input.metrics-file}")
+    private String metricsFile;
+
+    /**
+     * Seconds between JSON snapshots
+     */
+    @Value("${input.metrics-interval}")
+    private int metricsInterval;
+
+    @Autowired
+    private MetricsRegistry metrics;
+
+    @Qualifier("sourceDataSource")
+    @Autowired
+    private DataSource source;
+
+    @Qualifier("destinationDataSource")
+    @Autowired
+    private DataSource destination;
+
+    private HttpServer server;
+
+    private ScheduledExecutorService snapshotService;
+
+    @Override
+    public void afterPropertiesSet() {
+        registerPoolGauges("source", source);
+        registerPoolGauges("destination", destination);
+
+        if (metricsPort > 0) {
+            startServer();
+        }
+        if (!metricsFile.isEmpty()) {
+            snapshotService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("metrics-%d").setDaemon(true).build());
+            snapshotService.scheduleAtFixedRate(this::writeSnapshot, metricsInterval, Math.max(1, metricsInterval), TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (snapshotService != null) {
+            snapshotService.shutdownNow();
+            writeSnapshot();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Registers the active, idle, pending and total connections of a Hikari pool
+     */
+    private void registerPoolGauges(String pool, DataSource dataSource) {
+        if (!(dataSource instanceof HikariDataSource)) {
+            return;
+        }
+        HikariDataSource hds = (HikariDataSource) dataSource;
+        registerPoolGauge(hds, pool, "active", HikariPoolMXBean::getActiveConnections);
+        registerPoolGauge(hds, pool, "idle", HikariPoolMXBean::getIdleConnections);
+        registerPoolGauge(hds, pool, "pending", HikariPoolMXBean::getThreadsAwaitingConnection);
+        registerPoolGauge(hds, pool, "total", HikariPoolMXBean::getTotalConnections);
+    }
+
+    private void registerPoolGauge(HikariDataSource hds, String pool, String state, Function<HikariPoolMXBean, Integer> value) {
+        // the pool bean is only available once the pool has been started
+        metrics.gauge("migrator.pool.connections", () -> {
+            HikariPoolMXBean bean = hds.getHikariPoolMXBean();
+            return bean == null ? 0 : value.apply(bean);
+        }, "pool", pool, "state", state);
+    }
+
+    /**
+     * Starts the metrics endpoint. The server threads inherit the daemon flag of the starting thread, so the endpoint
+     * does not keep the JVM alive after the migration
+     */
+    private void startServer() {
+        Thread starter = new Thread(() -> {
+            try {
+                server = HttpServer.create(new InetSocketAddress(metricsPort), 0);
+                server.createContext("/metrics", this::handle);
+                server.start();
+                log.info("Serving metrics on port " + metricsPort);
+            } catch (IOException e) {
+                log.error("Metrics endpoint not started: " + e.getMessage());
+            }
+        }, "metrics-server");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Writes the JSON snapshot, replacing the previous one atomically
+     */
+    private void writeSnapshot() {
+        try {
+            Path file = Paths.get(metricsFile).toAbsolutePath();
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Metrics snapshot not written: " + e.getMessage());
+            log.debug(Throwables.getStackTraceAsString(e));
+        }
+    }
+}
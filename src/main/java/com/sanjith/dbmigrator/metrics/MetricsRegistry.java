@@ -0,0 +1,253 @@
+package com.sanjith.dbmigrator.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the timers, counters and gauges of the migration. Every metric is identified by its name and tags, e.g.
+ * migrator.execute{table=T,writer=jdbc}. The registry is rendered in the Prometheus text format or as JSON by the
+ * {@link MetricsExporter}
+ *
+ * <ul>
+ *     <li>timers: migrator.fetch, migrator.convert, migrator.bind, migrator.execute, migrator.commit</li>
+ *     <li>counters: migrator.rows, migrator.bytes</li>
+ *     <li>gauges: migrator.queue.depth, migrator.inflight.bytes, migrator.pool.connections</li>
+ * </ul>
+ */
+@Component
+public class MetricsRegistry {
+
+    /**
+     * Percentiles exported for every timer
+     */
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+
+    private final Map<String, Supplier<? extends Number>> gauges = new ConcurrentSkipListMap<>();
+
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Get or create a timer
+     * @param name Metric name
+     * @param tags Tag names and values, alternating
+     * @return timer
+     */
+    public Timer timer(String name, String... tags) {
+        String id = id(name, tags);
+        return timers.computeIfAbsent(id, k -> new Timer());
+    }
+
+    /**
+     * Get the timers of a name, of all tag values
+     * @param name Metric name
+     * @return timers in the order of their tags
+     */
+    public List<Timer> getTimers(String name) {
+        List<Timer> result = new ArrayList<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            if (name.equals(names.get(entry.getKey()))) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get or create a counter
+     * @param name Metric name
+     * @param tags Tag names and values, alternating
+     * @return counter
+     */
+    public LongAdder counter(String name, String... tags) {
+        String id = id(name, tags);
+        return counters.computeIfAbsent(id, k -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, replacing a gauge of the same name and tags
+     * @param name  Metric name
+     * @param value Reads the current value
+     * @param tags  Tag names and values, alternating
+     * @return id of the gauge, used to remove it
+     */
+    public String gauge(String name, Supplier<? extends Number> value, String... tags) {
+        String id = id(name, tags);
+        gauges.put(id, value);
+        return id;
+    }
+
+    /**
+     * Removes a gauge whose source is gone, e.g. the pipeline of a finished table
+     * @param id Id returned by {@link #gauge(String, Supplier, String...)}
+     */
+    public void removeGauge(String id) {
+        gauges.remove(id);
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format. Timers are exported as summaries in seconds
+     * @return metrics text
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        String lastName = null;
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            String name = promName(entry.getKey()) + "_seconds";
+            String tags = promTags(entry.getKey());
+            Timer timer = entry.getValue();
+            if (!name.equals(lastName)) {
+                out.append("# TYPE ").append(name).append(" summary\n");
+                lastName = name;
+            }
+            for (double percentile : PERCENTILES) {
+                String quantile = "quantile=\"" + format(percentile / 100) + "\"";
+                out.append(name).append('{').append(tags.isEmpty() ? quantile : tags + "," + quantile).append("} ")
+                        .append(format(timer.getPercentileSeconds(percentile))).append('\n');
+            }
+            out.append(name).append("_count").append(braces(tags)).append(' ').append(timer.getCount()).append('\n');
+            out.append(name).append("_sum").append(braces(tags)).append(' ').append(format(timer.getTotalSeconds())).append('\n');
+            out.append(name).append("_max").append(braces(tags)).append(' ').append(format(timer.getMaxSeconds())).append('\n');
+        }
+        lastName = null;
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            String name = promName(entry.getKey()) + "_total";
+            if (!name.equals(lastName)) {
+                out.append("# TYPE ").append(name).append(" counter\n");
+                lastName = name;
+            }
+            out.append(name).append(braces(promTags(entry.getKey()))).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        lastName = null;
+        for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+            String name = promName(entry.getKey());
+            if (!name.equals(lastName)) {
+                out.append("# TYPE ").append(name).append(" gauge\n");
+                lastName = name;
+            }
+            out.append(name).append(braces(promTags(entry.getKey()))).append(' ').append(format(read(entry.getValue()))).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Renders all metrics as a JSON document
+     * @return metrics JSON
+     */
+    public String toJson() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\n  \"timestamp\": \"").append(Instant.now()).append("\",\n  \"timers\": [");
+        String separator = "\n";
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            Timer timer = entry.getValue();
+            out.append(separator).append("    {").append(jsonId(entry.getKey()))
+                    .append(", \"count\": ").append(timer.getCount())
+                    .append(", \"totalSeconds\": ").append(format(timer.getTotalSeconds()))
+                    .append(", \"maxSeconds\": ").append(format(timer.getMaxSeconds()));
+            for (double percentile : PERCENTILES) {
+                out.append(", \"p").append((int) percentile).append("Seconds\": ").append(format(timer.getPercentileSeconds(percentile)));
+            }
+            out.append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ],\n  \"counters\": [");
+        separator = "\n";
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            out.append(separator).append("    {").append(jsonId(entry.getKey())).append(", \"value\": ").append(entry.getValue().sum()).append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ],\n  \"gauges\": [");
+        separator = "\n";
+        for (Map.Entry<String, Supplier<? extends Number>> entry : gauges.entrySet()) {
+            out.append(separator).append("    {").append(jsonId(entry.getKey())).append(", \"value\": ").append(format(read(entry.getValue()))).append('}');
+            separator = ",\n";
+        }
+        out.append("\n  ]\n}\n");
+        return out.toString();
+    }
+
+    /**
+     * Builds the id of a metric, tags sorted by name: name|tag1=value1|tag2=value2
+     */
+    private String id(String name, String... tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags of " + name + " are not name value pairs");
+        }
+        Map<String, String> sorted = new TreeMap<>();
+        for (int i = 0; i < tags.length; i += 2) {
+            sorted.put(tags[i], tags[i + 1] == null ? "" : tags[i + 1]);
+        }
+        StringBuilder id = new StringBuilder(name);
+        for (Map.Entry<String, String> tag : sorted.entrySet()) {
+            id.append('|').append(tag.getKey()).append('=').append(tag.getValue());
+        }
+        String key = id.toString();
+        names.putIfAbsent(key, name);
+        return key;
+    }
+
+    private String promName(String id) {
+        return names.get(id).replace('.', '_').replace('-', '_');
+    }
+
+    private static String promTags(String id) {
+        String[] parts = id.split("\\|");
+        StringBuilder tags = new StringBuilder();
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (tags.length() > 0) {
+                tags.append(',');
+            }
+            tags.append(parts[i], 0, eq).append("=\"").append(escape(parts[i].substring(eq + 1))).append('"');
+        }
+        return tags.toString();
+    }
+
+    private String jsonId(String id) {
+        String[] parts = id.split("\\|");
+        StringBuilder json = new StringBuilder("\"name\": \"").append(escape(names.get(id))).append("\", \"tags\": {");
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            json.append(i > 1 ? ", " : "").append('"').append(escape(parts[i].substring(0, eq))).append("\": \"")
+                    .append(escape(parts[i].substring(eq + 1))).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String braces(String tags) {
+        return tags.isEmpty() ? "" : "{" + tags + "}";
+    }
+
+    private static double read(Supplier<? extends Number> value) {
+        try {
+            Number number = value.get();
+            return number == null ? Double.NaN : number.doubleValue();
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,55 @@
+package com.sanjith.dbmigrator.metrics;
+
+import com.sanjith.dbmigrator.dao.LatencyHistogram;
+
+/**
+ * Timer of a migration stage. Records the duration of every event in a {@link LatencyHistogram}, from which the
+ * count, total, maximum and percentiles are exported
+ *
+ * @see MetricsRegistry#timer(String, String...)
+ */
+public class Timer {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Records the duration of an event
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        histogram.record(nanos);
+    }
+
+    /**
+     * Get the no. of recorded events
+     * @return count
+     */
+    public long getCount() {
+        return histogram.getCount();
+    }
+
+    /**
+     * Get the total duration of the recorded events
+     * @return total in seconds
+     */
+    public double getTotalSeconds() {
+        return histogram.getTotalNanos() / 1e9;
+    }
+
+    /**
+     * Get the longest recorded event
+     * @return maximum in seconds
+     */
+    public double getMaxSeconds() {
+        return histogram.getMaxNanos() / 1e9;
+    }
+
+    /**
+     * Get a percentile of the recorded durations
+     * @param percentile percentile between 0 and 100
+     * @return percentile in seconds
+     */
+    public double getPercentileSeconds(double percentile) {
+        return histogram.getPercentileMillis(percentile) / 1000.0;
+    }
+}
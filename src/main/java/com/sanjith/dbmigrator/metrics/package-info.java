@@ -0,0 +1,4 @@
+/**
+ * Contains the metrics of the migration stages and their exporters
+ */
+package com.sanjith.dbmigrator.metrics;
@@ -0,0 +1,102 @@
+package com.sanjith.dbmigrator.service;
+
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.RowBatch;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+
+/**
+ * Converts values read from the source into bind values of the destination column types. Some drivers return
+ * java.time values from getObject which not every destination driver accepts as bind values. Only columns kept as
+ * objects are converted, the others are already read with the getter of their type
+ */
+public class BatchConverter {
+
+    /**
+     * Destination column types in java.sql.Types
+     */
+    private final int[] typeArr;
+
+    /**
+     * Constructs a converter for the destination table
+     *
+     * @param typeArr Destination column types in java.sql.Types
+     */
+    public BatchConverter(int[] typeArr) {
+        this.typeArr = typeArr;
+    }
+
+    /**
+     * Converts the rows of a batch in place
+     *
+     * @param batch Batch read from the source
+     * @return the same batch
+     */
+    public RowBatch convert(RowBatch batch) {
+        convert(batch.getColumns());
+        return batch;
+    }
+
+    /**
+     * Converts the object columns of a column batch in place
+     *
+     * @param columns Row values read from the source
+     */
+    public void convert(ColumnBatch columns) {
+        for (int c = 0; c < columns.getColumnCount(); c++) {
+            if (!columns.isObjectColumn(c)) {
+                continue;
+            }
+            for (int row = 0; row < columns.size(); row++) {
+                if (!columns.isNull(row, c)) {
+                    columns.setObject(row, c, convertValue(columns.getValue(row, c), typeArr[c]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a single value
+     *
+     * @param value   Source value
+     * @param sqlType Destination column type in java.sql.Types
+     * @return bind value
+     */
+    public static Object convertValue(Object value, int sqlType) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime) value);
+        } else if (value instanceof LocalDate) {
+            return Date.valueOf((LocalDate) value);
+        } else if (value instanceof LocalTime) {
+            return Time.valueOf((LocalTime) value);
+        } else if (value instanceof OffsetDateTime) {
+            return Timestamp.from(((OffsetDateTime) value).toInstant());
+        } else if (value instanceof Boolean && isNumeric(sqlType)) {
+            return ((Boolean) value) ? 1 : 0;
+        }
+        return value;
+    }
+
+    private static boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
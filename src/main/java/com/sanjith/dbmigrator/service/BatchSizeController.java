@@ -0,0 +1,181 @@
+package com.sanjith.dbmigrator.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Adapts the batch size of a table to the measured insert throughput. The load stage reports the rows, estimated
+ * bytes and insert time of every batch. After a window of batches the throughput is compared with the previous
+ * window and the batch size is moved by a growth step in the direction which improved it. When a step does not help
+ * the direction is reversed and the step halved, until the step is too small and the batch size settles at the best
+ * size seen. The batch size stays between the configured limits and below a memory ceiling per batch
+ *
+ * @see DataMigrator
+ */
+public class BatchSizeController {
+
+    private static final Logger log = LogManager.getLogger(BatchSizeController.class);
+
+    /**
+     * No. of batches measured before every adjustment
+     */
+    private static final int WINDOW = 3;
+
+    /**
+     * Initial factor by which the batch size grows or shrinks
+     */
+    private static final double INITIAL_STEP = 2.0;
+
+    /**
+     * Step below which the batch size settles
+     */
+    private static final double MIN_STEP = 1.1;
+
+    /**
+     * Relative throughput gain required to keep moving in the same direction
+     */
+    private static final double MIN_GAIN = 0.05;
+
+    private final String name;
+
+    private final int minBatchSize;
+
+    private final int maxBatchSize;
+
+    private final long maxBatchBytes;
+
+    private volatile int batchSize;
+
+    private boolean settled = false;
+
+    private int direction = 1;
+
+    private double step = INITIAL_STEP;
+
+    private int windowBatches = 0;
+
+    private long windowRows = 0;
+
+    private long windowBytes = 0;
+
+    private long windowNanos = 0;
+
+    private double lastThroughput = 0;
+
+    private double bestThroughput = 0;
+
+    private int bestBatchSize;
+
+    private double bytesPerRow = 0;
+
+    /**
+     * Constructs a batch size controller
+     *
+     * @param name             Table name, used in the log
+     * @param initialBatchSize Batch size of the first window
+     * @param minBatchSize     Lower limit of the batch size
+     * @param maxBatchSize     Upper limit of the batch size, the capacity of the batch buffers
+     * @param maxBatchBytes    Upper limit of the estimated size of the row values of a batch
+     */
+    public BatchSizeController(String name, int initialBatchSize, int minBatchSize, int maxBatchSize, long maxBatchBytes) {
+        this.name = name;
+        this.minBatchSize = Math.max(1, Math.min(minBatchSize, maxBatchSize));
+        this.maxBatchSize = Math.max(this.minBatchSize, maxBatchSize);
+        this.maxBatchBytes = maxBatchBytes;
+        this.batchSize = clamp(initialBatchSize);
+        this.bestBatchSize = batchSize;
+        log.info(name + " ADAPTIVE BATCH SIZE " + batchSize + " [" + this.minBatchSize + ", " + this.maxBatchSize + "], CEILING "
+                + maxBatchBytes / 1024 + " KB PER BATCH");
+    }
+
+    /**
+     * Get the no. of rows after which the next batch is emitted
+     * @return current batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Get the upper limit of the batch size. Batch buffers have to be allocated with this capacity
+     * @return maximum batch size
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Records the insert of a batch and adjusts the batch size at the end of a window
+     *
+     * @param rows  No. of rows inserted
+     * @param bytes Estimated size of the row values of the batch
+     * @param nanos Time taken by the insert
+     */
+    public synchronized void record(int rows, long bytes, long nanos) {
+        if (settled || rows == 0) {
+            return;
+        }
+        windowBatches++;
+        windowRows += rows;
+        windowBytes += bytes;
+        windowNanos += Math.max(1, nanos);
+        if (windowBatches < WINDOW) {
+            return;
+        }
+
+        double throughput = windowRows * 1e9 / windowNanos;
+        double latencyMillis = windowNanos / 1e6 / windowBatches;
+        bytesPerRow = (double) windowBytes / windowRows;
+        windowBatches = 0;
+        windowRows = 0;
+        windowBytes = 0;
+        windowNanos = 0;
+
+        if (throughput > bestThroughput) {
+            bestThroughput = throughput;
+            bestBatchSize = batchSize;
+        }
+        if (lastThroughput > 0 && throughput < lastThroughput * (1 + MIN_GAIN)) {
+            direction = -direction;
+            step = 1 + (step - 1) / 2;
+        }
+        lastThroughput = throughput;
+
+        int previous = batchSize;
+        int next = clamp((int) (direction > 0 ? batchSize * step : batchSize / step));
+        if (next == previous) {
+            // at a limit, probe the other direction
+            direction = -direction;
+            step = 1 + (step - 1) / 2;
+            next = clamp((int) (direction > 0 ? batchSize * step : batchSize / step));
+        }
+
+        if (step < MIN_STEP) {
+            settled = true;
+            batchSize = clamp(bestBatchSize);
+            log.info(name + " BATCH SIZE SETTLED AT " + batchSize + " (" + (long) bestThroughput + " ROWS/S, "
+                    + (long) bytesPerRow + " BYTES/ROW), use --batch-size=" + batchSize + " to fix it");
+            return;
+        }
+        batchSize = next;
+        log.info(name + " BATCH SIZE " + previous + " -> " + next + ": " + (long) throughput + " ROWS/S, "
+                + (long) latencyMillis + " MS/BATCH, " + (long) bytesPerRow + " BYTES/ROW");
+    }
+
+    /**
+     * Describes the chosen batch size, logged at the end of the table
+     * @return summary
+     */
+    public synchronized String report() {
+        return name + " ADAPTIVE BATCH SIZE " + (settled ? "SETTLED AT " : "ENDED AT ") + batchSize + ", BEST "
+                + (long) bestThroughput + " ROWS/S AT " + bestBatchSize + " ROWS, " + (long) bytesPerRow + " BYTES/ROW";
+    }
+
+    private int clamp(int size) {
+        int limit = maxBatchSize;
+        if (bytesPerRow > 0) {
+            limit = (int) Math.max(minBatchSize, Math.min(maxBatchSize, maxBatchBytes / bytesPerRow));
+        }
+        return Math.max(minBatchSize, Math.min(limit, size));
+    }
+}
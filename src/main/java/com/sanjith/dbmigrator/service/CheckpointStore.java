@@ -0,0 +1,279 @@
+package com.sanjith.dbmigrator.service;
+
+import com.sanjith.dbmigrator.dao.KeyRange;
+import com.sanjith.dbmigrator.dao.RowBatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Durable record of the committed work of a table migration, kept in a local properties file per source/destination
+ * table pair. Records which key ranges are fully committed and, for ranges read in primary key order, the highest key
+ * up to which all batches are committed. A resumed migration reads only the remaining part of every range
+ *
+ * @see KeyRange#resumeAfter(Object)
+ */
+public class CheckpointStore {
+
+    private static final Logger log = LogManager.getLogger(CheckpointStore.class);
+
+    private static final String STATUS_RUNNING = "RUNNING";
+
+    private static final String STATUS_COMPLETE = "COMPLETE";
+
+    /**
+     * Progress of a single key range
+     */
+    private static class RangeState {
+        private final KeyRange range;
+        private boolean done;
+        private Object committedKey;
+        private int committedBatches;
+        private int totalBatches = -1;
+        private final TreeMap<Integer, Object> pending = new TreeMap<>();
+
+        private RangeState(KeyRange range) {
+            this.range = range;
+        }
+    }
+
+    private final Path file;
+
+    private final Map<Integer, RangeState> ranges = new LinkedHashMap<>();
+
+    private String splitColumn;
+
+    private int splitType;
+
+    private boolean ordered;
+
+    private String status;
+
+    /**
+     * Constructs a checkpoint store for a table pair
+     *
+     * @param directory        Directory holding the checkpoint files
+     * @param sourceTable      Source table, qualified with its schema
+     * @param destinationTable Destination table, qualified with its schema
+     */
+    public CheckpointStore(String directory, String sourceTable, String destinationTable) {
+        this.file = Paths.get(directory, sourceTable + "-" + destinationTable + ".checkpoint");
+    }
+
+    /**
+     * Checks whether a checkpoint of an earlier run exists
+     * @return true - checkpoint file exists
+     */
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    /**
+     * Starts a new checkpoint for a fresh migration, replacing any earlier checkpoint of the table pair
+     *
+     * @param keyRanges   Key ranges of the source table
+     * @param splitType   Split column type in java.sql.Types
+     * @param ordered     true - ranges are read in key order and the committed key is recorded
+     * @throws IOException if the checkpoint file could not be written
+     */
+    public synchronized void begin(List<KeyRange> keyRanges, int splitType, boolean ordered) throws IOException {
+        this.splitColumn = keyRanges.get(0).getColumn();
+        this.splitType = splitType;
+        this.ordered = ordered;
+        this.status = STATUS_RUNNING;
+        ranges.clear();
+        for (KeyRange range : keyRanges) {
+            ranges.put(range.getId(), new RangeState(range));
+        }
+        save();
+        log.info("Checkpointing to " + file.toAbsolutePath());
+    }
+
+    /**
+     * Loads the checkpoint of an earlier run
+     *
+     * @throws IOException if the checkpoint file could not be read
+     */
+    public synchronized void load() throws IOException {
+        Properties prop = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            prop.load(is);
+        }
+        status = prop.getProperty("status");
+        splitColumn = prop.getProperty("split.column");
+        splitType = Integer.parseInt(prop.getProperty("split.type", String.valueOf(Types.OTHER)));
+        ordered = Boolean.parseBoolean(prop.getProperty("ordered"));
+        ranges.clear();
+        int rangeCount = Integer.parseInt(prop.getProperty("range.count"));
+        for (int id = 1; id <= rangeCount; id++) {
+            String prefix = "range." + id + ".";
+            KeyRange range = new KeyRange(id, splitColumn, parseKey(prop.getProperty(prefix + "lower")),
+                    parseKey(prop.getProperty(prefix + "upper")), Boolean.parseBoolean(prop.getProperty(prefix + "nulls")));
+            RangeState state = new RangeState(range);
+            state.done = Boolean.parseBoolean(prop.getProperty(prefix + "done"));
+            state.committedKey = parseKey(prop.getProperty(prefix + "key"));
+            ranges.put(id, state);
+        }
+        log.info("Loaded checkpoint " + file.toAbsolutePath() + " [" + status + "]");
+    }
+
+    /**
+     * Get the ranges which still have to be migrated. Ranges with a committed key continue right after that key
+     * @return remaining key ranges
+     */
+    public synchronized List<KeyRange> getPendingRanges() {
+        List<KeyRange> pending = new ArrayList<>();
+        for (RangeState state : ranges.values()) {
+            if (state.done) {
+                log.info(state.range + " already committed, skipping");
+            } else if (state.committedKey != null) {
+                log.info(state.range + " resuming after key " + state.committedKey);
+                pending.add(state.range.resumeAfter(state.committedKey));
+            } else {
+                pending.add(state.range);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Is the whole table committed
+     * @return true - the run which wrote the checkpoint completed
+     */
+    public synchronized boolean isComplete() {
+        return STATUS_COMPLETE.equals(status);
+    }
+
+    /**
+     * Are the ranges read in key order, so that batches carry their last key
+     * @return true - ordered reads
+     */
+    public synchronized boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Records a committed batch. The committed key of the range only moves once all earlier batches of the range are
+     * committed too, since batches complete out of order in multithreaded mode
+     *
+     * @param batch Committed batch
+     * @throws IOException if the checkpoint file could not be written
+     */
+    public synchronized void batchCommitted(RowBatch batch) throws IOException {
+        RangeState state = ranges.get(batch.getRange().getId());
+        state.pending.put(batch.getSequence(), batch.getLastKey());
+        while (!state.pending.isEmpty() && state.pending.firstKey() == state.committedBatches) {
+            Object key = state.pending.pollFirstEntry().getValue();
+            if (key != null) {
+                state.committedKey = key;
+            }
+            state.committedBatches++;
+        }
+        checkDone(state);
+        save();
+    }
+
+    /**
+     * Records that all batches of a range have been read
+     *
+     * @param range       Key range
+     * @param batchCount  No. of batches read from the range
+     * @throws IOException if the checkpoint file could not be written
+     */
+    public synchronized void rangeExtracted(KeyRange range, int batchCount) throws IOException {
+        RangeState state = ranges.get(range.getId());
+        state.totalBatches = batchCount;
+        checkDone(state);
+        save();
+    }
+
+    /**
+     * Marks the table as completely migrated
+     *
+     * @throws IOException if the checkpoint file could not be written
+     */
+    public synchronized void complete() throws IOException {
+        status = STATUS_COMPLETE;
+        for (RangeState state : ranges.values()) {
+            state.done = true;
+        }
+        save();
+    }
+
+    private void checkDone(RangeState state) {
+        if (state.totalBatches >= 0 && state.committedBatches >= state.totalBatches && !state.done) {
+            state.done = true;
+            log.info(state.range + " COMMITTED");
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file, syncs it and moves it over the previous checkpoint
+     */
+    private void save() throws IOException {
+        Properties prop = new Properties();
+        prop.setProperty("status", status);
+        if (splitColumn != null) {
+            prop.setProperty("split.column", splitColumn);
+        }
+        prop.setProperty("split.type", String.valueOf(splitType));
+        prop.setProperty("ordered", String.valueOf(ordered));
+        prop.setProperty("range.count", String.valueOf(ranges.size()));
+        for (RangeState state : ranges.values()) {
+            String prefix = "range." + state.range.getId() + ".";
+            setKey(prop, prefix + "lower", state.range.getLowerBound());
+            setKey(prop, prefix + "upper", state.range.getUpperBound());
+            setKey(prop, prefix + "key", state.committedKey);
+            prop.setProperty(prefix + "nulls", String.valueOf(state.range.isIncludeNulls()));
+            prop.setProperty(prefix + "done", String.valueOf(state.done));
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            prop.store(out, "Data Migrator checkpoint");
+            out.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void setKey(Properties prop, String name, Object key) {
+        if (key != null) {
+            prop.setProperty(name, key instanceof BigDecimal ? ((BigDecimal) key).toPlainString() : key.toString());
+        }
+    }
+
+    private Object parseKey(String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (splitType) {
+            case Types.DATE:
+                return Date.valueOf(value);
+            case Types.TIMESTAMP:
+                return Timestamp.valueOf(value);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimal(value);
+            default:
+                return Long.parseLong(value);
+        }
+    }
+}
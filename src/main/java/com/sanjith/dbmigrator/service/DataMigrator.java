@@ -2,24 +2,53 @@ package com.sanjith.dbmigrator.service;
 
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sanjith.dbmigrator.dao.ArrowFileWriter;
+import com.sanjith.dbmigrator.dao.ColumnBatch;
+import com.sanjith.dbmigrator.dao.ColumnBatchPool;
+import com.sanjith.dbmigrator.dao.CommitPolicy;
+import com.sanjith.dbmigrator.dao.DbUtils;
+import com.sanjith.dbmigrator.dao.DeferredIndexes;
 import com.sanjith.dbmigrator.dao.Destination;
+import com.sanjith.dbmigrator.dao.KeyRange;
+import com.sanjith.dbmigrator.dao.RejectLog;
+import com.sanjith.dbmigrator.dao.RowBatch;
+import com.sanjith.dbmigrator.dao.RowCopier;
+import com.sanjith.dbmigrator.dao.SnapshotReader;
+import com.sanjith.dbmigrator.dao.SnapshotWriter;
 import com.sanjith.dbmigrator.dao.Source;
+import com.sanjith.dbmigrator.dao.TableChecksum;
+import com.sanjith.dbmigrator.dao.WriterSession;
+import com.sanjith.dbmigrator.metrics.MetricsRegistry;
+import com.sanjith.dbmigrator.metrics.Timer;
 import dnl.utils.text.table.TextTable;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import com.zaxxer.hikari.HikariDataSource;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.Connection;
 import java.sql.ResultSet;
 
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import me.tongfei.progressbar.ProgressBar;
@@ -28,10 +57,14 @@ import me.tongfei.progressbar.ProgressBarStyle;
 
 
 /**
- * Service which orchestrates the migration of data
+ * Service which orchestrates the migration of data. A new instance with its own source and destination table is
+ * created for every table of a migration job
+ *
+ * @see MigrationJob
  */
 
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class DataMigrator {
 
     private static final Logger log = LogManager.getLogger(DataMigrator.class);
@@ -56,12 +89,204 @@ public class DataMigrator {
     @Value("${input.append}")
     private boolean appendToDestination;
 
+    /**
+     * true - Adapt the batch size to the measured insert throughput, starting at input.batch-size
+     */
+    @Value("${input.adaptive-batch}")
+    private boolean adaptiveBatch;
+
+    /**
+     * Lower limit of the adaptive batch size
+     */
+    @Value("${input.min-batch-size}")
+    private int minBatchSize;
+
+    /**
+     * Upper limit of the adaptive batch size. Batch buffers are allocated with this capacity
+     */
+    @Value("${input.max-batch-size}")
+    private int maxBatchSize;
+
+    /**
+     * Upper limit in MB of the estimated heap size of an adaptive batch
+     */
+    @Value("${input.max-batch-mb}")
+    private int maxBatchMb;
+
+    /**
+     * true - Adapt the no. of concurrent writers to the destination feedback in multithreaded mode
+     */
+    @Value("${input.adaptive-writers}")
+    private boolean adaptiveWriters;
+
+    /**
+     * No. of retries of a batch rolled back by a deadlock or lock wait timeout
+     */
+    private static final int MAX_LOCK_RETRIES = 3;
+
+    /**
+     * Wait before the first retry of a batch after a lock conflict, doubled for every further retry
+     */
+    private static final long LOCK_RETRY_BACKOFF_MILLIS = 200;
+
+    /**
+     * Size limit in bytes of the LOB values of a batch. Batches of tables with LOB columns end early once reached
+     */
+    @Value("${input.lob-batch-bytes}")
+    private long lobBatchBytes;
+
+    /**
+     * Number of key ranges the source table is split into for parallel extraction in multithreaded mode
+     */
+    @Value("${input.partitions}")
+    private int partitions;
+
+    /**
+     * Capacity in batches of each queue between the pipeline stages in multithreaded mode
+     */
+    @Value("${input.queue-capacity}")
+    private int queueCapacity;
+
+    /**
+     * Upper limit in MB of the estimated heap held by batches which are read but not yet inserted
+     */
+    @Value("${input.max-inflight-mb}")
+    private int maxInflightMb;
+
+    /**
+     * No. of threads converting extracted batches into bind values
+     */
+    @Value("${input.converter-threads}")
+    private int converterThreads;
+
+    /**
+     * true - Record committed key ranges in a checkpoint file in multithreaded mode
+     */
+    @Value("${input.checkpoint}")
+    private boolean checkpointEnabled;
+
+    /**
+     * Directory holding the checkpoint files
+     */
+    @Value("${input.checkpoint-dir}")
+    private String checkpointDir;
+
+    /**
+     * true - Continue from the checkpoint of an earlier run instead of clearing the destination table
+     */
+    @Value("${input.resume}")
+    private boolean resume;
+
+    /**
+     * Commit policy of the writer sessions (TABLE, BATCHES, ROWS or BYTES). Defaults to TABLE in single threaded mode
+     * and to BATCHES in multithreaded mode
+     */
+    @Value("${input.commit-policy}")
+    private String commitPolicy;
+
+    /**
+     * No. of batches, rows or bytes between commits
+     */
+    @Value("${input.commit-interval}")
+    private long commitInterval;
+
+    /**
+     * Watermark column of incremental runs, a monotonic key or last modified timestamp. Empty - full migration
+     */
+    @Value("${input.watermark-column}")
+    private String watermarkColumn;
+
+    /**
+     * Counts the source rows exactly alongside the extraction, the progress bar starts from the catalog estimate
+     */
+    @Value("${input.exact-count}")
+    private boolean exactCount;
+
+    /**
+     * Directory of the verification reports
+     */
+    @Value("${input.verify-dir}")
+    private String verifyDir;
+
+    /**
+     * Max. rows of a mismatched key range whose rows are compared one by one instead of splitting the range further
+     */
+    @Value("${input.verify-leaf-rows}")
+    private long verifyLeafRows;
+
+    /**
+     * Drops the non-unique indexes and foreign keys of the destination table before a full load and rebuilds them after
+     */
+    @Value("${input.defer-indexes}")
+    private boolean deferIndexes;
+
+    /**
+     * Writes the rows which the destination refuses to a reject file and continues, instead of failing the migration
+     */
+    @Value("${input.reject-rows}")
+    private boolean rejectRows;
+
+    /**
+     * Directory of the reject files
+     */
+    @Value("${input.reject-dir}")
+    private String rejectDir;
+
+    /**
+     * Max. rows rejected per table before the migration fails, -1 for no limit
+     */
+    @Value("${input.max-rejects}")
+    private long maxRejects;
+
+    /**
+     * Directory holding the table snapshots of --extract-only and --load-only
+     */
+    @Value("${input.snapshot-dir}")
+    private String snapshotDir;
+
+    /**
+     * Compression of the snapshot blocks (none or deflate)
+     */
+    @Value("${input.snapshot-compression}")
+    private String snapshotCompression;
+
+    /**
+     * Format of the column file export (arrow), empty - migrate into the destination table
+     */
+    @Value("${input.export-format}")
+    private String exportFormat;
+
+    /**
+     * Directory of the exported files, one sub directory per source table
+     */
+    @Value("${input.export-dir}")
+    private String exportDir;
+
+    /**
+     * Size in MB after which an export writer rolls over to a new file part
+     */
+    @Value("${input.export-file-mb}")
+    private long exportFileMb;
+
     @Autowired
     private Destination destinationTable;
 
+    /**
+     * No. of load threads in multithreaded mode, 0 - destination pool size
+     */
+    private int loaderThreads = 0;
+
+    /**
+     * true - Ask the user before migrating large tables
+     */
+    private boolean interactive = true;
+
     @Autowired
     private Source sourceTable;
 
+    @Autowired(required = false)
+    private MetricsRegistry metrics;
+
 
     /**
      * Column Names
@@ -74,16 +299,39 @@ public class DataMigrator {
     protected int[] typeArr;
 
     /**
-     * Migrates data in sequential querying and inserts. Entire migration will be done in a single transaction. Make sure the transaction log file is large enough at destination DB
+     * Copy plan of the migrated table
+     */
+    protected RowCopier rowCopier;
+
+    /**
+     * Batch size controller of the migrated table, null if the batch size is fixed
+     */
+    protected BatchSizeController batchSizeController;
+
+    /**
+     * Writer limit of the migrated table, null if all load threads write
+     */
+    protected WriterConcurrencyController writerConcurrency;
+
+    /**
+     * Migrates data in sequential querying and inserts on a single writer session. Commits according to
+     * input.commit-policy, by default the entire migration is done in a single transaction. Make sure the transaction
+     * log file is large enough at destination DB when committing per table
      *
      * @return status of migration (true SUCCESS,false FAILURE)
      */
-    @Transactional
     public boolean migrateDataST() throws Exception {
+        if (resume) {
+            log.error("Resume is supported in multithreaded mode only");
+            System.out.println("Resume is supported in multithreaded mode only");
+            return false;
+        }
         try {
+            WatermarkStore watermark;
             try {
                 sourceTable.verify();
                 destinationTable.verify();
+                watermark = openWatermark();
             } catch (IllegalArgumentException e) {
                 log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
                 return false;
@@ -92,7 +340,17 @@ public class DataMigrator {
                 return false;
             }
 
-            long recordCount = sourceTable.getRecordCount();
+            KeyRange delta = null;
+            if (watermark != null) {
+                List<KeyRange> deltaRanges = sourceTable.getDeltaRanges(watermark.getColumn(), watermark.getValue(), 1);
+                if (deltaRanges.isEmpty()) {
+                    System.out.println("No rows past watermark " + watermark.getColumn() + " " + watermark.getValue());
+                    return true;
+                }
+                delta = deltaRanges.get(0);
+            }
+            RecordCounter recordCounter = new RecordCounter(sourceTable, delta == null ? KeyRange.wholeTable() : delta);
+            long recordCount = recordCounter.getEstimate();
             if (recordCount > WARN_THRESHOLD) {
                 try {
                     warnUser(recordCount);
@@ -105,80 +363,128 @@ public class DataMigrator {
                     return false;
                 }
             }
-            if (appendToDestination == false) {
-                destinationTable.clearRecords();
-            }
-            long startTime = System.currentTimeMillis();
-            HikariDataSource srcDatasrc = (HikariDataSource) sourceTable.getDataSource();
-            Connection srcConn = null;
-
+            boolean fullLoad = delta == null && appendToDestination == false && !destinationTable.isUpsert();
+            DeferredIndexes deferredIndexes = dropIndexes(fullLoad);
             try {
-                try {
-                    srcConn = srcDatasrc.getConnection();
-                } catch (SQLException e) {
-                    log.error(e.getMessage());
-                    log.error(Throwables.getStackTraceAsString(e));
-                    throw new RuntimeException("Error in fetching connection to source DB");
+                if (delta != null) {
+                    if (!destinationTable.isUpsert()) {
+                        // rows past the watermark can only be left by a failed incremental run
+                        destinationTable.clearRange(delta);
+                    }
+                } else if (fullLoad) {
+                    // upserts refresh the table in place
+                    destinationTable.clearRecords();
                 }
+                long startTime = System.currentTimeMillis();
+                HikariDataSource srcDatasrc = (HikariDataSource) sourceTable.getDataSource();
+                Connection srcConn = null;
 
-                Statement stmt = srcConn.createStatement();
-                stmt.setFetchSize(BATCH_SIZE);
-                Map<String, Integer> columnMetaData = destinationTable.getColumnMetaData();
-                LinkedHashSet<String> columnNames = new LinkedHashSet<>(columnMetaData.keySet());
-                ArrayList<Integer> typelist = new ArrayList<>();
-                for (String column : columnNames) {
-                    typelist.add(columnMetaData.get(column));
-                }
+                try {
+                    try {
+                        srcConn = srcDatasrc.getConnection();
+                    } catch (SQLException e) {
+                        log.error(e.getMessage());
+                        log.error(Throwables.getStackTraceAsString(e));
+                        throw new RuntimeException("Error in fetching connection to source DB");
+                    }
 
-                int[] typeArr = typelist.stream().mapToInt(Integer::intValue).toArray();
-                String query = "SELECT * FROM " + sourceTable.getTableName();
-                log.info("Executing SQL Statement [" + query + "]");
-                ResultSet rs = stmt.executeQuery(query);
+                    Map<String, Integer> columnMetaData = destinationTable.getColumnMetaData();
+                    LinkedHashSet<String> columnNames = new LinkedHashSet<>(columnMetaData.keySet());
+                    ArrayList<Integer> typelist = new ArrayList<>();
+                    for (String column : columnNames) {
+                        typelist.add(columnMetaData.get(column));
+                    }
+
+                    int[] typeArr = typelist.stream().mapToInt(Integer::intValue).toArray();
+                    RowCopier rowCopier = new RowCopier(columnNames, sourceTable.getColumnMetaData(), typeArr);
+                    String query = "SELECT " + rowCopier.getSelectList() + " FROM " + sourceTable.getTableName();
+                    if (delta != null) {
+                        query += " WHERE " + delta.getPredicate();
+                    }
+                    log.info("Executing SQL Statement [" + query + "]");
+                    PreparedStatement stmt = srcConn.prepareStatement(query);
+                    stmt.setFetchSize(BATCH_SIZE);
+                    if (delta != null) {
+                        Object[] params = delta.getParameters();
+                        for (int i = 0; i < params.length; i++) {
+                            stmt.setObject(i + 1, params[i]);
+                        }
+                    }
+                    ResultSet rs = stmt.executeQuery();
 
 
-                int fetchLimit = 0;
-                int rowCount = 0;
+                    int rowCount = 0;
 
-                List<Object[]> valueList = new ArrayList<>();
-                System.out.println("Total Record Count: " + recordCount);
-                try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Migrating" + sourceTable.getTableName()).build()) {
-                    while (rs.next()) {
-                        ArrayList<Object> colValList = new ArrayList<>();
-                        for (String column : columnNames) {
-                            colValList.add(rs.getObject(column));
-                            valueList.add(colValList.toArray());
-                            fetchLimit++;
+                    batchSizeController = createBatchSizeController(maxBatchMb * 1024L * 1024L);
+                    ColumnBatch batch = new ColumnBatch(rowCopier, getBatchCapacity());
+                    BatchConverter batchConverter = new BatchConverter(typeArr);
+                    RejectLog rejectLog = openRejectLog(columnNames, false);
+                    printRecordCount(recordCount);
+                    try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Migrating" + sourceTable.getTableName()).build();
+                         WriterSession session = destinationTable.openSession(columnNames, typeArr, CommitPolicy.parse(commitPolicy, CommitPolicy.TABLE), commitInterval);
+                         recordCounter) {
+                        if (exactCount) {
+                            recordCounter.start(pb);
+                        }
+                        log.info("Loading with " + session.getWriterName() + " writer");
+                        Timer fetchTimer = getStageTimer("migrator.fetch");
+                        Timer convertTimer = getStageTimer("migrator.convert");
+                        long fetchStart = System.nanoTime();
+                        boolean hasRow = rs.next();
+                        while (hasRow) {
+                            batch.readRow(rs);
                             pb.step();
-                            if (fetchLimit == recordCount || fetchLimit == BATCH_SIZE) {
+                            hasRow = rs.next();
+                            if (batch.size() >= getBatchLimit() || batch.getLobBytes() >= lobBatchBytes || !hasRow) {
                                 try {
-                                    long insertStart = System.currentTimeMillis();
-                                    int insertCount = destinationTable.insertData(columnNames, valueList, typeArr);
-                                    long insertEnd = System.currentTimeMillis();
-                                    log.debug("Insert of " + BATCH_SIZE + " took " + (insertEnd - insertStart) + " MS ");
+                                    long insertStart = System.nanoTime();
+                                    record(fetchTimer, insertStart - fetchStart);
+                                    batchConverter.convert(batch);
+                                    record(convertTimer, System.nanoTime() - insertStart);
+                                    long bytes = batch.estimateDataBytes();
+                                    int insertCount = session.write(batch, bytes);
+                                    session.commitIfDue();
+                                    long insertNanos = System.nanoTime() - insertStart;
+                                    log.debug("Insert of " + insertCount + " took " + insertNanos / 1000000 + " MS ");
                                     rowCount += insertCount;
-                                    recordCount -= insertCount;
+                                    if (batchSizeController != null && hasRow) {
+                                        batchSizeController.record(insertCount, bytes, insertNanos);
+                                        rs.setFetchSize(batchSizeController.getBatchSize());
+                                    }
                                 } catch (RuntimeException e) {
                                     log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
                                     throw new RuntimeException("Migration Failed");
                                 }
-                                valueList.clear();
-                                fetchLimit = 0;
+                                batch.clear();
+                                fetchStart = System.nanoTime();
                             }
                         }
+                        session.commit();
+                        if (watermark != null) {
+                            watermark.save(delta.getUpperBound());
+                        }
+                        rs.close();
+                        stmt.close();
+                        srcDatasrc.evictConnection(srcConn);
+                        long endTime = System.currentTimeMillis();
+                        if (batchSizeController != null) {
+                            log.info(batchSizeController.report());
+                        }
+                        log.info("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
+                        System.out.println("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
+                        return true;
+                    } finally {
+                        rowCopier.cleanup();
+                        closeRejectLog(rejectLog);
                     }
-                    rs.close();
-                    stmt.close();
+
+                } catch (SQLException e) {
+                    log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
                     srcDatasrc.evictConnection(srcConn);
-                    long endTime = System.currentTimeMillis();
-                    log.info("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
-                    System.out.println("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
-                    return true;
+                    throw new RuntimeException("Migration Failed");
                 }
-
-            } catch (SQLException e) {
-                log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
-                srcDatasrc.evictConnection(srcConn);
-                throw new RuntimeException("Migration Failed");
+            } finally {
+                rebuildIndexes(deferredIndexes);
             }
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -189,15 +495,20 @@ public class DataMigrator {
     }
 
     /**
-     * Migrates data in sequential querying and inserts. Entire migration will be done in a single transaction. Make sure the transaction log file is large enough at destination DB
+     * Migrates data using parallel querying and inserts. The source table is split into key ranges (see input.partitions)
+     * and each range is read on its own source connection. Batches flow through a bounded extract, convert and load
+     * pipeline whose load stage is sized to the destination pool. Committed ranges are recorded in a checkpoint file
+     * (see input.checkpoint) from which a failed run can be resumed (see input.resume)
      *
      * @return status of migration (true SUCCESS,false FAILURE)
      */
     public boolean migrateDataMT() {
         try {
+            WatermarkStore watermark;
             try {
                 sourceTable.verify();
                 destinationTable.verify();
+                watermark = openWatermark();
             } catch (IllegalArgumentException e) {
                 log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
                 return false;
@@ -205,8 +516,43 @@ public class DataMigrator {
                 log.error(e.getMessage());
                 return false;
             }
+            if (watermark != null && resume) {
+                log.error("Resume is not supported in incremental runs, a failed run is repeated from the watermark");
+                System.out.println("Resume is not supported in incremental runs, a failed run is repeated from the watermark");
+                return false;
+            }
+
+            CheckpointStore checkpoint = null;
+            if ((checkpointEnabled || resume) && watermark == null) {
+                checkpoint = new CheckpointStore(checkpointDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName(),
+                        destinationTable.getSchemaName() + "." + destinationTable.getTableName());
+            }
+            if (resume) {
+                if (!checkpoint.exists()) {
+                    log.error("No checkpoint found to resume from");
+                    System.out.println("No checkpoint found to resume from");
+                    return false;
+                }
+                checkpoint.load();
+                if (checkpoint.isComplete()) {
+                    System.out.println("Migration already completed according to checkpoint");
+                    return true;
+                }
+            }
 
-            long recordCount = sourceTable.getRecordCount();
+            List<KeyRange> deltaRanges = null;
+            KeyRange countRange = KeyRange.wholeTable();
+            if (watermark != null) {
+                deltaRanges = sourceTable.getDeltaRanges(watermark.getColumn(), watermark.getValue(), partitions);
+                if (deltaRanges.isEmpty()) {
+                    System.out.println("No rows past watermark " + watermark.getColumn() + " " + watermark.getValue());
+                    return true;
+                }
+                countRange = new KeyRange(0, watermark.getColumn(), watermark.getValue(), true,
+                        deltaRanges.get(deltaRanges.size() - 1).getUpperBound(), true, false);
+            }
+            RecordCounter recordCounter = new RecordCounter(sourceTable, countRange);
+            long recordCount = recordCounter.getEstimate();
             if (recordCount > WARN_THRESHOLD) {
                 try {
                     warnUser(recordCount);
@@ -219,98 +565,135 @@ public class DataMigrator {
                     return false;
                 }
             }
-            if (appendToDestination == false) {
-                destinationTable.clearRecords();
-            }
-            long startTime = System.currentTimeMillis();
-            HikariDataSource srcDatasrc = (HikariDataSource) sourceTable.getDataSource();
-            Connection srcConn = null;
-
+            boolean fullLoad = deltaRanges == null && appendToDestination == false && resume == false && !destinationTable.isUpsert();
+            DeferredIndexes deferredIndexes = dropIndexes(fullLoad);
             try {
-                try {
-                    srcConn = srcDatasrc.getConnection();
-                } catch (SQLException e) {
-                    log.error(e.getMessage());
-                    log.error(Throwables.getStackTraceAsString(e));
-                    throw new RuntimeException("Error in fetching connection to source DB");
+                if (deltaRanges != null) {
+                    if (!destinationTable.isUpsert()) {
+                        // rows past the watermark can only be left by a failed incremental run
+                        for (KeyRange range : deltaRanges) {
+                            destinationTable.clearRange(range);
+                        }
+                    }
+                } else if (fullLoad) {
+                    // upserts refresh the table in place
+                    destinationTable.clearRecords();
                 }
+                long startTime = System.currentTimeMillis();
 
-                Statement stmt = srcConn.createStatement();
-                stmt.setFetchSize(BATCH_SIZE);
                 Map<String, Integer> columnMetaData = destinationTable.getColumnMetaData();
-                LinkedHashSet<String> columnNames = new LinkedHashSet<>(columnMetaData.keySet());
+                columnNames = new LinkedHashSet<>(columnMetaData.keySet());
                 ArrayList<Integer> typelist = new ArrayList<>();
                 for (String column : columnNames) {
                     typelist.add(columnMetaData.get(column));
                 }
+                typeArr = typelist.stream().mapToInt(Integer::intValue).toArray();
+                rowCopier = new RowCopier(columnNames, sourceTable.getColumnMetaData(), typeArr);
 
-                int[] typeArr = typelist.stream().mapToInt(Integer::intValue).toArray();
-
-                ExecutorService executorService = Executors.newFixedThreadPool(destinationTable.getPoolSize());
-                List<Future<Integer>> futureList = new ArrayList<>();
-
-                String query = "SELECT * FROM " + sourceTable.getTableName();
-                log.info("Executing SQL Statement [" + query + "]");
-                ResultSet rs = stmt.executeQuery(query);
-
+                List<KeyRange> keyRanges;
+                if (deltaRanges != null) {
+                    keyRanges = deltaRanges;
+                } else if (resume) {
+                    keyRanges = checkpoint.getPendingRanges();
+                    if (keyRanges.isEmpty()) {
+                        checkpoint.complete();
+                        System.out.println("All key ranges already committed according to checkpoint");
+                        return true;
+                    }
+                    for (KeyRange range : keyRanges) {
+                        destinationTable.clearRange(range);
+                    }
+                } else {
+                    keyRanges = sourceTable.getKeyRanges(partitions);
+                    if (checkpoint != null) {
+                        String splitColumn = keyRanges.get(0).getColumn();
+                        checkpoint.begin(keyRanges, splitColumn == null ? Types.OTHER : sourceTable.getColumnMetaData().get(splitColumn),
+                                splitColumn != null && sourceTable.isSplitColumnPrimaryKey());
+                    }
+                }
+                int splitType = keyRanges.get(0).getColumn() == null ? Types.OTHER : sourceTable.getColumnMetaData().get(keyRanges.get(0).getColumn());
+                boolean ordered = checkpoint != null && checkpoint.isOrdered();
+                CheckpointStore sessionCheckpoint = checkpoint;
+                ExecutorService extractorService = Executors.newFixedThreadPool(keyRanges.size(), new ThreadFactoryBuilder().setNameFormat("extract-%d").build());
+                MigrationPipeline pipeline = new MigrationPipeline(sourceTable.getTableName(), queueCapacity, maxInflightMb * 1024L * 1024L,
+                        converterThreads, getLoaderThreads());
+                if (adaptiveWriters) {
+                    writerConcurrency = new WriterConcurrencyController(sourceTable.getTableName(), Math.min(2, getLoaderThreads()),
+                            getLoaderThreads(), (HikariDataSource) destinationTable.getDataSource(), pipeline::isAborted);
+                    pipeline.setWriterConcurrency(writerConcurrency);
+                }
+                BatchConverter batchConverter = new BatchConverter(typeArr);
+                Timer convertTimer = getStageTimer("migrator.convert");
+                if (metrics != null) {
+                    pipeline.registerMetrics(metrics);
+                }
+                AtomicInteger insertID = new AtomicInteger(1);
+                // the queues have to hold a full batch each within the in-flight budget
+                batchSizeController = createBatchSizeController(Math.min(maxBatchMb, Math.max(1, maxInflightMb / (2 * queueCapacity))) * 1024L * 1024L);
+                ColumnBatchPool batchPool = new ColumnBatchPool(rowCopier, getBatchCapacity(),
+                        2 * queueCapacity + keyRanges.size() + converterThreads + getLoaderThreads());
 
-                int fetchLimit = 0;
-                int rowCount = 0;
-                int insertID = 1;
+                RejectLog rejectLog = openRejectLog(columnNames, resume);
+                printRecordCount(recordCount);
+                try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Migrating" + sourceTable.getTableName()).build();
+                     recordCounter) {
+                    if (exactCount) {
+                        recordCounter.start(pb);
+                    }
+                    CommitPolicy policy = CommitPolicy.parse(commitPolicy, CommitPolicy.BATCHES);
+                    pipeline.start(rowBatch -> {
+                                long convertStart = System.nanoTime();
+                                RowBatch converted = batchConverter.convert(rowBatch);
+                                record(convertTimer, System.nanoTime() - convertStart);
+                                return converted;
+                            },
+                            () -> new SessionLoader(destinationTable.openSession(columnNames, typeArr, policy, commitInterval), sessionCheckpoint), pb::stepBy);
 
-                List<Object[]> valueList = new ArrayList<>();
-                System.out.println("Total Record Count: " + recordCount);
-                try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Migrating" + sourceTable.getTableName()).build()) {
-                    while (rs.next()) {
-                        ArrayList<Object> colValList = new ArrayList<>();
-                        for (String column : columnNames) {
-                            colValList.add(rs.getObject(column));
-                            valueList.add(colValList.toArray());
-                            fetchLimit++;
-                            pb.step();
-                            if (fetchLimit == recordCount || fetchLimit == BATCH_SIZE) {
-                                try {
-                                    long insertStart = System.currentTimeMillis();
-                                    futureList.add(executorService.submit(new InsertService(valueList, insertID)));
-                                    long insertEnd = System.currentTimeMillis();
-                                    log.debug("Insert of " + BATCH_SIZE + " took " + (insertEnd - insertStart) + " MS ");
-                                    pb.stepBy(fetchLimit);
-                                    recordCount -= fetchLimit;
-                                } catch (RuntimeException e) {
-                                    log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
-                                    throw new RuntimeException("Migration Failed");
-                                }
-                                valueList.clear();
-                                fetchLimit = 0;
-                            }
-                        }
+                    List<Future<Long>> extractList = new ArrayList<>();
+                    for (KeyRange range : keyRanges) {
+                        extractList.add(extractorService.submit(new ExtractService(range, pipeline, insertID, batchPool, checkpoint, ordered, splitType)));
                     }
-                    rs.close();
-                    stmt.close();
-                    srcDatasrc.evictConnection(srcConn);
-                    System.out.println("Completing insertion");
-                    shutdownAndAwaitTermination(executorService);
-                    List<Integer> results = futureList.stream().map(integerFuture -> {
+                    for (Future<Long> extractFuture : extractList) {
                         try {
-                            return integerFuture.get();
-                        } catch (InterruptedException | ExecutionException e) {
-                            throw new RuntimeException(e);
+                            extractFuture.get();
+                        } catch (ExecutionException e) {
+                            pipeline.abort(e.getCause());
                         }
-                    }).collect(Collectors.toList());
+                    }
+                    shutdownAndAwaitTermination(extractorService);
+                    pipeline.finishExtraction();
+
+                    System.out.println("Completing insertion");
+                    boolean completed = pipeline.awaitCompletion();
+                    log.info(pipeline.report());
+                    if (batchSizeController != null) {
+                        log.info(batchSizeController.report());
+                    }
+                    if (writerConcurrency != null) {
+                        log.info(writerConcurrency.report());
+                    }
+                    log.debug(batchPool.getAllocated() + " ROW BUFFERS ALLOCATED");
+                    if (!completed) {
+                        log.error("Migration aborted after " + pipeline.getCompletedRows() + " RECORDS: " + pipeline.getFailure().getMessage());
+                        throw new RuntimeException("Migration Failed");
+                    }
 
-                    for (int result : results) {
-                        rowCount += result;
+                    if (checkpoint != null) {
+                        checkpoint.complete();
+                    }
+                    if (watermark != null) {
+                        watermark.save(keyRanges.get(keyRanges.size() - 1).getUpperBound());
                     }
                     long endTime = System.currentTimeMillis();
-                    log.info("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
-                    System.out.println("PROCESSED " + rowCount + " RECORDS IN " + (endTime - startTime) + " MS");
+                    log.info("PROCESSED " + pipeline.getCompletedRows() + " RECORDS IN " + (endTime - startTime) + " MS");
+                    System.out.println("PROCESSED " + pipeline.getCompletedRows() + " RECORDS IN " + (endTime - startTime) + " MS");
                     return true;
+                } finally {
+                    rowCopier.cleanup();
+                    closeRejectLog(rejectLog);
                 }
-
-            } catch (SQLException e) {
-                log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
-                srcDatasrc.evictConnection(srcConn);
-                throw new RuntimeException("Migration Failed");
+            } finally {
+                rebuildIndexes(deferredIndexes);
             }
         } catch (Exception e) {
             System.out.println(e.getMessage());
@@ -321,58 +704,1023 @@ public class DataMigrator {
     }
 
     /**
-     * Warns the user if record count to be migrated is greater than WARN_THRESHOLD
+     * Extracts the source table into a snapshot file without touching the destination, so the source cursors are only
+     * held as long as reading takes. The table is read in key ranges (see input.partitions) like in multithreaded mode
+     * and the batches are encoded into blocks of the snapshot by parallel encoder threads. The snapshot keeps the
+     * source column names and types and can be loaded into any destination with {@link #loadSnapshot()}
      *
-     * @param recordCount No. of records to be migrated
-     * @throws RuntimeException
-     * @throws IllegalArgumentException
+     * @return status of extraction (true SUCCESS,false FAILURE)
+     * @see SnapshotWriter
      */
-    public void warnUser(long recordCount) throws RuntimeException, IllegalArgumentException {
-        System.out.println("Record Count is greater than 1 Million [" + recordCount + "Rows]. Migration of large tables might consume more memory. Proceed with CAUTION!!!");
-        System.out.print("Do you want to proceed [y|n]? ");
-        Scanner sc = new Scanner(System.in);
-        String choice = sc.nextLine();
-        if (Character.toLowerCase(choice.charAt(0)) == 'y') {
-            System.out.println("Proceeding...");
-            log.info("Record Count is greater than 1 Million [" + recordCount + "Rows]. Migration of large tables might consume more memory. User chose to proceed");
-        } else if (Character.toLowerCase(choice.charAt(0)) == 'n') {
-            log.info("Record Count is greater than 1 Million. Migration of large tables might consume more memory. User chose to cancel");
-            throw new RuntimeException("Migration Canceled by User");
-        } else {
-            System.out.println("Invalid input");
-            log.info("Record Count is greater than 1 Million [" + recordCount + " Rows]. Migration of large tables might consume more memory. User provided invalid input");
-            throw new IllegalArgumentException("Invalid option. Migration cancelled");
-        }
-    }
+    public boolean extractSnapshot() {
+        try {
+            try {
+                sourceTable.verify();
+            } catch (IllegalArgumentException e) {
+                log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
+                return false;
+            } catch (RuntimeException e) {
+                log.error(e.getMessage());
+                return false;
+            }
 
+            long startTime = System.currentTimeMillis();
+            Map<String, Integer> sourceMetaData = sourceTable.getColumnMetaData();
+            columnNames = new LinkedHashSet<>(sourceMetaData.keySet());
+            typeArr = columnNames.stream().mapToInt(sourceMetaData::get).toArray();
+            // copied with the source types on both sides, the destination is chosen when loading
+            rowCopier = new RowCopier(columnNames, sourceMetaData, typeArr);
 
-    /**
-     * Helper method which handles the shutdown of threads
-     *
-     * @param pool Thread Pool
-     */
-    void shutdownAndAwaitTermination(ExecutorService pool) {
-        pool.shutdown();
-        try {
-            if (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
-                while (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
-                    Thread.sleep(60000);
+            RecordCounter recordCounter = new RecordCounter(sourceTable, KeyRange.wholeTable());
+            long recordCount = recordCounter.getEstimate();
+            List<KeyRange> keyRanges = sourceTable.getKeyRanges(partitions);
+            int encoderThreads = Math.max(1, Math.min(keyRanges.size(), Runtime.getRuntime().availableProcessors()));
+            ExecutorService extractorService = Executors.newFixedThreadPool(keyRanges.size(), new ThreadFactoryBuilder().setNameFormat("extract-%d").build());
+            MigrationPipeline pipeline = new MigrationPipeline(sourceTable.getTableName(), queueCapacity, maxInflightMb * 1024L * 1024L,
+                    converterThreads, encoderThreads);
+            if (metrics != null) {
+                pipeline.registerMetrics(metrics);
+            }
+            BatchConverter batchConverter = new BatchConverter(typeArr);
+            AtomicInteger insertID = new AtomicInteger(1);
+            ColumnBatchPool batchPool = new ColumnBatchPool(rowCopier, getBatchCapacity(),
+                    2 * queueCapacity + keyRanges.size() + converterThreads + encoderThreads);
+
+            Path file = getSnapshotFile();
+            printRecordCount(recordCount);
+            try (SnapshotWriter snapshot = new SnapshotWriter(file, columnNames, typeArr, isSnapshotCompressed());
+                 ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Extracting" + sourceTable.getTableName()).build();
+                 recordCounter) {
+                if (exactCount) {
+                    recordCounter.start(pb);
+                }
+                pipeline.start(batchConverter::convert, () -> new MigrationPipeline.Loader() {
+                    @Override
+                    public int load(RowBatch batch) throws IOException {
+                        snapshot.append(batch.getColumns());
+                        return batch.size();
+                    }
+
+                    @Override
+                    public void finish(boolean success) {
+                        // the snapshot is finished once all encoders have stopped
+                    }
+                }, pb::stepBy);
+
+                List<Future<Long>> extractList = new ArrayList<>();
+                for (KeyRange range : keyRanges) {
+                    extractList.add(extractorService.submit(new ExtractService(range, pipeline, insertID, batchPool, null, false, Types.OTHER)));
+                }
+                for (Future<Long> extractFuture : extractList) {
+                    try {
+                        extractFuture.get();
+                    } catch (ExecutionException e) {
+                        pipeline.abort(e.getCause());
+                    }
+                }
+                shutdownAndAwaitTermination(extractorService);
+                pipeline.finishExtraction();
+
+                boolean completed = pipeline.awaitCompletion();
+                log.info(pipeline.report());
+                if (!completed) {
+                    log.error("Extraction aborted after " + pipeline.getCompletedRows() + " RECORDS: " + pipeline.getFailure().getMessage());
+                    throw new RuntimeException("Extraction Failed");
                 }
+                snapshot.finish();
+
+                long endTime = System.currentTimeMillis();
+                log.info("EXTRACTED " + pipeline.getCompletedRows() + " RECORDS TO " + file + " IN " + (endTime - startTime) + " MS");
+                System.out.println("EXTRACTED " + pipeline.getCompletedRows() + " RECORDS TO " + file + " IN " + (endTime - startTime) + " MS");
+                return true;
+            } finally {
+                rowCopier.cleanup();
             }
-        } catch (InterruptedException ex) {
-            pool.shutdownNow();
-            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            log.debug(e);
+            log.debug(Throwables.getStackTraceAsString(e));
+            throw new RuntimeException("Extraction Failed");
         }
     }
 
     /**
-     * Helper inner class which represents the task for multithreaded insert operation. Each thread holds a Ins
+     * Loads a snapshot written by {@link #extractSnapshot()} into the destination table. The snapshot is memory-mapped
+     * and split into segments of blocks, which are loaded in parallel, each on its own writer session. The snapshot
+     * columns are matched to the destination columns by name
+     *
+     * @return status of load (true SUCCESS,false FAILURE)
+     * @see SnapshotReader
      */
-    public class InsertService implements Callable<Integer> {
-        /**
+    public boolean loadSnapshot() {
+        try {
+            try {
+                destinationTable.verify();
+            } catch (IllegalArgumentException e) {
+                log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
+                return false;
+            } catch (RuntimeException e) {
+                log.error(e.getMessage());
+                return false;
+            }
+
+            Path file = getSnapshotFile();
+            if (!Files.exists(file)) {
+                log.error("No snapshot found at " + file);
+                System.out.println("No snapshot found at " + file);
+                return false;
+            }
+
+            try (SnapshotReader snapshot = new SnapshotReader(file)) {
+                Map<String, Integer> snapshotMetaData = snapshot.getColumnMetaData();
+                Map<String, Integer> destinationMetaData = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                destinationMetaData.putAll(destinationTable.getColumnMetaData());
+                columnNames = new LinkedHashSet<>(snapshotMetaData.keySet());
+                typeArr = new int[columnNames.size()];
+                int c = 0;
+                for (String column : columnNames) {
+                    Integer type = destinationMetaData.get(column);
+                    if (type == null) {
+                        log.error("Column " + column + " of the snapshot not found in " + destinationTable.getTableName());
+                        System.out.println("Column " + column + " of the snapshot not found in " + destinationTable.getTableName());
+                        return false;
+                    }
+                    typeArr[c++] = type;
+                }
+                if (destinationMetaData.size() > columnNames.size()) {
+                    log.warn(destinationTable.getTableName() + " has columns which are not in the snapshot, they are left to their defaults");
+                }
+                int[] snapshotTypes = snapshotMetaData.values().stream().mapToInt(Integer::intValue).toArray();
+                // the batches hold the values as extracted and bind them with their source types
+                rowCopier = new RowCopier(columnNames, snapshotMetaData, snapshotTypes);
+
+                boolean fullLoad = appendToDestination == false && !destinationTable.isUpsert();
+                DeferredIndexes deferredIndexes = dropIndexes(fullLoad);
+                try {
+                    if (fullLoad) {
+                        destinationTable.clearRecords();
+                    }
+                    long startTime = System.currentTimeMillis();
+                    List<SnapshotReader.Segment> segments = snapshot.split(getLoaderThreads());
+                    log.info("Loading " + snapshot.getRowCount() + " RECORDS IN " + snapshot.getBlockCount() + " BLOCKS FROM " + file
+                            + " WITH " + segments.size() + " SEGMENTS");
+                    ExecutorService loadService = Executors.newFixedThreadPool(Math.max(1, segments.size()), new ThreadFactoryBuilder().setNameFormat("load-%d").build());
+                    AtomicBoolean aborted = new AtomicBoolean(false);
+                    long loadedRows = 0;
+                    boolean failed = false;
+                    RejectLog rejectLog = openRejectLog(columnNames, false);
+                    System.out.println("Total Record Count: " + snapshot.getRowCount());
+                    try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(snapshot.getRowCount()).setStyle(ProgressBarStyle.ASCII).setTaskName("Loading" + destinationTable.getTableName()).build()) {
+                        List<Future<Long>> loadList = new ArrayList<>();
+                        for (SnapshotReader.Segment segment : segments) {
+                            loadList.add(loadService.submit(new SnapshotLoadService(segment, snapshot.getMaxBlockRows(), aborted, pb)));
+                        }
+                        for (Future<Long> loadFuture : loadList) {
+                            try {
+                                loadedRows += loadFuture.get();
+                            } catch (ExecutionException e) {
+                                aborted.set(true);
+                                failed = true;
+                                log.error(e.getCause().getMessage());
+                            }
+                        }
+                    } finally {
+                        shutdownAndAwaitTermination(loadService);
+                        rowCopier.cleanup();
+                        closeRejectLog(rejectLog);
+                    }
+                    if (failed) {
+                        log.error("Load aborted after " + loadedRows + " RECORDS");
+                        throw new RuntimeException("Load Failed");
+                    }
+
+                    long endTime = System.currentTimeMillis();
+                    log.info("LOADED " + loadedRows + " RECORDS FROM " + file + " IN " + (endTime - startTime) + " MS");
+                    System.out.println("LOADED " + loadedRows + " RECORDS FROM " + file + " IN " + (endTime - startTime) + " MS");
+                    return true;
+                } finally {
+                    rebuildIndexes(deferredIndexes);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            log.debug(e);
+            log.debug(Throwables.getStackTraceAsString(e));
+            throw new RuntimeException("Load Failed");
+        }
+    }
+
+    /**
+     * Exports the source table into columnar files instead of a destination table. The table is read in key ranges
+     * like in multithreaded mode and every loader thread writes the batches it receives into its own series of file
+     * parts, rolling over to the next part at input.export-file-mb. The column types are taken from the source
+     * metadata, DECIMAL columns with their precision and scale
+     *
+     * @return status of export (true SUCCESS,false FAILURE)
+     * @see ArrowFileWriter
+     */
+    public boolean exportFiles() {
+        try {
+            try {
+                sourceTable.verify();
+                if (!exportFormat.trim().equalsIgnoreCase("arrow")) {
+                    throw new IllegalArgumentException("Invalid export format: " + exportFormat);
+                }
+            } catch (IllegalArgumentException e) {
+                log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
+                return false;
+            } catch (RuntimeException e) {
+                log.error(e.getMessage());
+                return false;
+            }
+
+            long startTime = System.currentTimeMillis();
+            Map<String, Integer> sourceMetaData = sourceTable.getColumnMetaData();
+            Map<String, int[]> precisionScale = sourceTable.getColumnPrecisionScale();
+            columnNames = new LinkedHashSet<>(sourceMetaData.keySet());
+            typeArr = columnNames.stream().mapToInt(sourceMetaData::get).toArray();
+            List<String> names = new ArrayList<>(columnNames);
+            int[] precisions = new int[names.size()];
+            int[] scales = new int[names.size()];
+            for (int c = 0; c < names.size(); c++) {
+                int[] ps = precisionScale.getOrDefault(names.get(c), new int[]{0, -1});
+                precisions[c] = ps[0];
+                scales[c] = ps[1];
+            }
+            rowCopier = new RowCopier(columnNames, sourceMetaData, typeArr);
+
+            Path dir = Paths.get(exportDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName());
+            Files.createDirectories(dir);
+            // parts of an earlier export would mix with the new ones
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(dir, sourceTable.getTableName() + "-*.arrow*")) {
+                for (Path part : stale) {
+                    Files.delete(part);
+                }
+            }
+
+            RecordCounter recordCounter = new RecordCounter(sourceTable, KeyRange.wholeTable());
+            long recordCount = recordCounter.getEstimate();
+            List<KeyRange> keyRanges = sourceTable.getKeyRanges(partitions);
+            int writerThreads = Math.max(1, Math.min(keyRanges.size(), getLoaderThreads()));
+            ExecutorService extractorService = Executors.newFixedThreadPool(keyRanges.size(), new ThreadFactoryBuilder().setNameFormat("extract-%d").build());
+            MigrationPipeline pipeline = new MigrationPipeline(sourceTable.getTableName(), queueCapacity, maxInflightMb * 1024L * 1024L,
+                    converterThreads, writerThreads);
+            if (metrics != null) {
+                pipeline.registerMetrics(metrics);
+            }
+            BatchConverter batchConverter = new BatchConverter(typeArr);
+            AtomicInteger insertID = new AtomicInteger(1);
+            AtomicInteger writerID = new AtomicInteger(1);
+            List<Path> parts = Collections.synchronizedList(new ArrayList<>());
+            ColumnBatchPool batchPool = new ColumnBatchPool(rowCopier, getBatchCapacity(),
+                    2 * queueCapacity + keyRanges.size() + converterThreads + writerThreads);
+
+            printRecordCount(recordCount);
+            try (ProgressBar pb = new ProgressBarBuilder().setInitialMax(recordCount).setStyle(ProgressBarStyle.ASCII).setTaskName("Exporting" + sourceTable.getTableName()).build();
+                 recordCounter) {
+                if (exactCount) {
+                    recordCounter.start(pb);
+                }
+                pipeline.start(batchConverter::convert, () -> new MigrationPipeline.Loader() {
+                    private final ArrowFileWriter writer = new ArrowFileWriter(dir, sourceTable.getTableName() + "-" + writerID.getAndIncrement(),
+                            names, typeArr, precisions, scales, exportFileMb * 1024L * 1024L);
+
+                    @Override
+                    public int load(RowBatch batch) throws IOException {
+                        writer.write(batch.getColumns());
+                        return batch.size();
+                    }
+
+                    @Override
+                    public void finish(boolean success) throws IOException {
+                        try {
+                            if (success) {
+                                writer.finish();
+                            }
+                        } finally {
+                            parts.addAll(writer.getParts());
+                            writer.close();
+                        }
+                    }
+                }, pb::stepBy);
+
+                List<Future<Long>> extractList = new ArrayList<>();
+                for (KeyRange range : keyRanges) {
+                    extractList.add(extractorService.submit(new ExtractService(range, pipeline, insertID, batchPool, null, false, Types.OTHER)));
+                }
+                for (Future<Long> extractFuture : extractList) {
+                    try {
+                        extractFuture.get();
+                    } catch (ExecutionException e) {
+                        pipeline.abort(e.getCause());
+                    }
+                }
+                shutdownAndAwaitTermination(extractorService);
+                pipeline.finishExtraction();
+
+                boolean completed = pipeline.awaitCompletion();
+                log.info(pipeline.report());
+                if (!completed) {
+                    log.error("Export aborted after " + pipeline.getCompletedRows() + " RECORDS: " + pipeline.getFailure().getMessage());
+                    throw new RuntimeException("Export Failed");
+                }
+
+                long endTime = System.currentTimeMillis();
+                log.info("EXPORTED " + pipeline.getCompletedRows() + " RECORDS TO " + parts.size() + " FILES IN " + dir + " IN " + (endTime - startTime) + " MS");
+                System.out.println("EXPORTED " + pipeline.getCompletedRows() + " RECORDS TO " + parts.size() + " FILES IN " + dir + " IN " + (endTime - startTime) + " MS");
+                return true;
+            } finally {
+                rowCopier.cleanup();
+            }
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            log.debug(e);
+            log.debug(Throwables.getStackTraceAsString(e));
+            throw new RuntimeException("Export Failed");
+        }
+    }
+
+    /**
+     * Verifies that the destination table holds the same rows as the source table, without migrating. Both tables are
+     * split into the key ranges of the source table (see input.partitions) and every range is checksummed on both
+     * sides in parallel. A range whose checksums differ is split further between the lowest and highest key found in
+     * it, until it holds no more than input.verify-leaf-rows rows, whose rows are then compared one by one by the
+     * primary key of the destination table. The differing rows are written to a report in input.verify-dir
+     *
+     * @return status of verification (true - tables match, false - tables differ or verification failed)
+     * @see TableChecksum
+     */
+    public boolean verifyData() {
+        try {
+            try {
+                sourceTable.verify();
+                destinationTable.verify();
+            } catch (IllegalArgumentException e) {
+                log.error(e.getMessage() + "In" + Throwables.getStackTraceAsString(e));
+                return false;
+            } catch (RuntimeException e) {
+                log.error(e.getMessage());
+                return false;
+            }
+
+            long startTime = System.currentTimeMillis();
+            Map<String, String> sourceColumns = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String column : sourceTable.getColumnMetaData().keySet()) {
+                sourceColumns.put(column, column);
+            }
+            List<String> compareSource = new ArrayList<>();
+            List<String> compareDestination = new ArrayList<>();
+            for (String column : destinationTable.getColumnMetaData().keySet()) {
+                if (sourceColumns.containsKey(column)) {
+                    compareSource.add(sourceColumns.get(column));
+                    compareDestination.add(column);
+                } else {
+                    log.warn("Column " + column + " of " + destinationTable.getTableName() + " not found in the source table, it is not compared");
+                }
+            }
+            List<String> keyColumns = destinationTable.getPrimaryKeyColumns();
+            if (!compareDestination.containsAll(keyColumns)) {
+                keyColumns = new ArrayList<>();
+            }
+            if (keyColumns.isEmpty()) {
+                log.warn(destinationTable.getTableName() + " has no primary key among the compared columns, differing rows are reported by their hash");
+            }
+
+            List<KeyRange> ranges = sourceTable.getKeyRanges(partitions);
+            String splitColumn = ranges.get(0).getColumn();
+            int splitType = splitColumn == null ? Types.OTHER : sourceTable.getColumnMetaData().get(splitColumn);
+            TableChecksum source = new TableChecksum(sourceTable.getDataSource(), sourceTable.getTableName(), compareSource,
+                    keyColumns.stream().map(sourceColumns::get).collect(Collectors.toList()), splitColumn, splitType, BATCH_SIZE);
+            TableChecksum destination = new TableChecksum(destinationTable.getDataSource(), destinationTable.getTableName(), compareDestination,
+                    keyColumns, splitColumn, splitType, BATCH_SIZE);
+
+            Path report = Paths.get(verifyDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName() + "-"
+                    + destinationTable.getSchemaName() + "." + destinationTable.getTableName() + ".verify");
+            Files.createDirectories(report.toAbsolutePath().getParent());
+            ExecutorService sourceService = Executors.newFixedThreadPool(ranges.size(), new ThreadFactoryBuilder().setNameFormat("verify-src-%d").build());
+            ExecutorService destinationService = Executors.newFixedThreadPool(Math.max(1, Math.min(ranges.size(), getLoaderThreads())),
+                    new ThreadFactoryBuilder().setNameFormat("verify-dest-%d").build());
+            AtomicInteger rangeID = new AtomicInteger(ranges.size());
+            AtomicLong matchedRows = new AtomicLong(0);
+            AtomicLong differingRows = new AtomicLong(0);
+            int checksums = 0;
+            System.out.println("Verifying " + destinationTable.getTableName() + " against " + sourceTable.getTableName() + " in " + ranges.size() + " ranges");
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report))) {
+                writer.println("SOURCE " + sourceTable.getSchemaName() + "." + sourceTable.getTableName() + " DESTINATION "
+                        + destinationTable.getSchemaName() + "." + destinationTable.getTableName() + " COLUMNS " + compareDestination);
+                // every level checksums the mismatched ranges of the level above, split further
+                while (!ranges.isEmpty()) {
+                    List<Future<List<KeyRange>>> futures = new ArrayList<>();
+                    for (KeyRange range : ranges) {
+                        futures.add(sourceService.submit(() -> verifyRange(range, source, destination, destinationService, rangeID,
+                                matchedRows, differingRows, writer)));
+                    }
+                    checksums += ranges.size();
+                    List<KeyRange> mismatched = new ArrayList<>();
+                    for (Future<List<KeyRange>> future : futures) {
+                        try {
+                            mismatched.addAll(future.get());
+                        } catch (ExecutionException e) {
+                            log.error(e.getCause().getMessage() + "\n" + Throwables.getStackTraceAsString(e.getCause()));
+                            throw new RuntimeException("Verification Failed");
+                        }
+                    }
+                    ranges = mismatched;
+                }
+                writer.println((differingRows.get() == 0 ? "MATCHED " : "DIFFERS ") + matchedRows.get() + " MATCHED ROWS, "
+                        + differingRows.get() + " DIFFERING ROWS");
+            } finally {
+                shutdownAndAwaitTermination(sourceService);
+                shutdownAndAwaitTermination(destinationService);
+            }
+
+            long endTime = System.currentTimeMillis();
+            log.info("VERIFIED " + matchedRows.get() + " MATCHING ROWS WITH " + checksums + " RANGE CHECKSUMS, " + differingRows.get()
+                    + " DIFFERING ROWS IN " + (endTime - startTime) + " MS");
+            System.out.println("VERIFIED " + matchedRows.get() + " MATCHING ROWS, " + differingRows.get() + " DIFFERING ROWS IN "
+                    + (endTime - startTime) + " MS. Report: " + report.toAbsolutePath());
+            return differingRows.get() == 0;
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            log.debug(e);
+            log.debug(Throwables.getStackTraceAsString(e));
+            throw new RuntimeException("Verification Failed");
+        }
+    }
+
+    /**
+     * Checksums a key range on both sides, the destination side on a thread of its own
+     * @return the range split into narrower ranges if it has to be verified further, empty if it matched or its rows
+     * were compared
+     */
+    private List<KeyRange> verifyRange(KeyRange range, TableChecksum source, TableChecksum destination, ExecutorService destinationService,
+                                       AtomicInteger rangeID, AtomicLong matchedRows, AtomicLong differingRows, PrintWriter writer) throws Exception {
+        Future<TableChecksum.Result> destinationFuture = destinationService.submit(() -> destination.checksum(range));
+        TableChecksum.Result sourceResult = source.checksum(range);
+        TableChecksum.Result destinationResult = destinationFuture.get();
+        if (sourceResult.matches(destinationResult)) {
+            log.debug(range + " MATCHED " + sourceResult.getCount() + " ROWS");
+            matchedRows.addAndGet(sourceResult.getCount());
+            return new ArrayList<>();
+        }
+        log.info(range + " DIFFERS, SOURCE " + sourceResult + ", DESTINATION " + destinationResult);
+        if (range.getColumn() != null && Math.max(sourceResult.getCount(), destinationResult.getCount()) > verifyLeafRows) {
+            Object low = getBound(sourceResult.getLow(), destinationResult.getLow(), false);
+            Object high = getBound(sourceResult.getHigh(), destinationResult.getHigh(), true);
+            if (low != null) {
+                List<KeyRange> split = sourceTable.splitRange(range, low, high, partitions, rangeID);
+                if (split.size() > 1) {
+                    return split;
+                }
+            }
+        }
+
+        Map<String, Long> sourceRows = source.getRowHashes(range);
+        Map<String, Long> destinationRows = destination.getRowHashes(range);
+        List<String> lines = new ArrayList<>();
+        long matched = 0;
+        for (Map.Entry<String, Long> row : sourceRows.entrySet()) {
+            Long hash = destinationRows.get(row.getKey());
+            if (hash == null) {
+                lines.add("MISSING " + row.getKey());
+            } else if (!hash.equals(row.getValue())) {
+                lines.add("CHANGED " + row.getKey());
+            } else {
+                matched++;
+            }
+        }
+        for (String key : destinationRows.keySet()) {
+            if (!sourceRows.containsKey(key)) {
+                lines.add("EXTRA " + key);
+            }
+        }
+        matchedRows.addAndGet(matched);
+        differingRows.addAndGet(lines.size());
+        synchronized (writer) {
+            writer.println(range);
+            for (String line : lines) {
+                writer.println("  " + line);
+            }
+        }
+        log.info(range + " COMPARED ROW BY ROW, " + lines.size() + " DIFFERING ROWS");
+        return new ArrayList<>();
+    }
+
+    /**
+     * Get the lower, or the higher, of two split column values, either of which may be null
+     */
+    private static Object getBound(Object a, Object b, boolean higher) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        @SuppressWarnings("unchecked")
+        int cmp = ((Comparable<Object>) a).compareTo(b);
+        return (cmp <= 0) != higher ? a : b;
+    }
+
+    /**
+     * Opens the watermark of an incremental run (see input.watermark-column). The watermark column has to be a numeric
+     * or date/time column of the source table declared NOT NULL
+     *
+     * @return watermark, null if the run is not incremental
+     * @throws IOException if the watermark file could not be read
+     */
+    private WatermarkStore openWatermark() throws IOException {
+        if (watermarkColumn.trim().isEmpty()) {
+            return null;
+        }
+        String column = null;
+        for (String name : sourceTable.getColumnMetaData().keySet()) {
+            if (name.equalsIgnoreCase(watermarkColumn.trim())) {
+                column = name;
+            }
+        }
+        if (column == null) {
+            throw new IllegalArgumentException("Watermark column " + watermarkColumn + " not found in " + sourceTable.getTableName());
+        }
+        int type = sourceTable.getColumnMetaData().get(column);
+        if (!DbUtils.isSplittableType(type)) {
+            throw new IllegalArgumentException("Watermark column " + column + " has to be a numeric, date or timestamp column");
+        }
+        if (!sourceTable.isNotNull(column)) {
+            // rows with a NULL watermark would neither be copied nor cleared by any run
+            throw new IllegalArgumentException("Watermark column " + column + " has to be declared NOT NULL");
+        }
+        WatermarkStore watermark = new WatermarkStore(checkpointDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName(),
+                destinationTable.getSchemaName() + "." + destinationTable.getTableName());
+        watermark.load(column, type);
+        return watermark;
+    }
+
+    /**
+     * Drops the non-unique indexes and foreign keys of the destination table before a full load (see
+     * input.defer-indexes). Indexes left dropped by an interrupted run are rebuilt after any load
+     * @param fullLoad true - the table is cleared and loaded completely
+     * @return deferred indexes to rebuild after the load, null if none were dropped
+     * @throws IOException if the index definitions could not be saved
+     */
+    private DeferredIndexes dropIndexes(boolean fullLoad) throws IOException {
+        if (!deferIndexes) {
+            return null;
+        }
+        DeferredIndexes deferredIndexes = destinationTable.getDeferredIndexes(checkpointDir);
+        if (!fullLoad && !deferredIndexes.isPending()) {
+            return null;
+        }
+        deferredIndexes.drop();
+        return deferredIndexes;
+    }
+
+    private void rebuildIndexes(DeferredIndexes deferredIndexes) throws IOException {
+        if (deferredIndexes != null) {
+            deferredIndexes.rebuild(getLoaderThreads());
+        }
+    }
+
+    /**
+     * Opens the reject file of the destination table and isolates the refused rows in the sessions opened from now on
+     * (see input.reject-rows)
+     * @param columnNames Destination columns written
+     * @param append      true - keep the rows rejected before a resumed run
+     * @return reject file, null if refused rows fail the migration
+     * @throws IOException if the reject file could not be opened
+     */
+    private RejectLog openRejectLog(LinkedHashSet<String> columnNames, boolean append) throws IOException {
+        if (!rejectRows) {
+            return null;
+        }
+        RejectLog rejectLog = new RejectLog(rejectDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName() + "-"
+                + destinationTable.getSchemaName() + "." + destinationTable.getTableName() + ".rejects",
+                new ArrayList<>(columnNames), maxRejects, append);
+        destinationTable.setRejectLog(rejectLog);
+        log.info("Rejected rows of " + destinationTable.getTableName() + " are written to " + rejectLog.getFile().toAbsolutePath());
+        return rejectLog;
+    }
+
+    private void closeRejectLog(RejectLog rejectLog) {
+        if (rejectLog == null) {
+            return;
+        }
+        destinationTable.setRejectLog(null);
+        rejectLog.close();
+        if (rejectLog.getRejectedRows() > 0) {
+            log.warn("REJECTED " + rejectLog.getRejectedRows() + " RECORDS, SEE " + rejectLog.getFile().toAbsolutePath());
+            System.out.println("REJECTED " + rejectLog.getRejectedRows() + " RECORDS, SEE " + rejectLog.getFile().toAbsolutePath());
+        }
+    }
+
+    /**
+     * Get the snapshot file of the source table, named by its schema and table
+     * @return snapshot file in input.snapshot-dir
+     */
+    private Path getSnapshotFile() {
+        return Paths.get(snapshotDir, sourceTable.getSchemaName() + "." + sourceTable.getTableName() + ".snapshot");
+    }
+
+    private boolean isSnapshotCompressed() {
+        switch (snapshotCompression.trim().toLowerCase()) {
+            case "":
+            case "none":
+                return false;
+            case "deflate":
+                return true;
+            default:
+                throw new IllegalArgumentException("Invalid snapshot compression: " + snapshotCompression);
+        }
+    }
+
+    /**
+     * Selects the table pair migrated by this instance, replacing the configured input tables
+     *
+     * @param sourceTableName      Source table
+     * @param destinationTableName Destination table
+     */
+    public void configure(String sourceTableName, String destinationTableName) {
+        sourceTable.setTableName(sourceTableName);
+        destinationTable.setTableName(destinationTableName);
+    }
+
+    /**
+     * Limits the connections used in multithreaded mode, so that several tables can share the connection pools
+     *
+     * @param partitions    No. of key ranges read in parallel
+     * @param loaderThreads No. of load threads, each holding a destination connection
+     */
+    public void setConnectionBudget(int partitions, int loaderThreads) {
+        this.partitions = partitions;
+        this.loaderThreads = loaderThreads;
+    }
+
+    /**
+     * Enables or disables the confirmation prompt for large tables
+     *
+     * @param interactive true - ask the user, false - log a warning and proceed
+     */
+    public void setInteractive(boolean interactive) {
+        this.interactive = interactive;
+    }
+
+    private int getLoaderThreads() {
+        return loaderThreads > 0 ? loaderThreads : destinationTable.getPoolSize();
+    }
+
+    /**
+     * Get the timer of a migration stage of the table
+     * @param name Metric name
+     * @return timer, null if metrics are not available
+     */
+    private Timer getStageTimer(String name) {
+        return metrics == null ? null : metrics.timer(name, "table", sourceTable.getTableName());
+    }
+
+    private static void record(Timer timer, long nanos) {
+        if (timer != null) {
+            timer.record(nanos);
+        }
+    }
+
+    /**
+     * Creates the batch size controller of the table if input.adaptive-batch is set
+     * @param maxBatchBytes Memory ceiling of a batch
+     * @return batch size controller, null if the batch size is fixed
+     */
+    private BatchSizeController createBatchSizeController(long maxBatchBytes) {
+        if (!adaptiveBatch) {
+            return null;
+        }
+        return new BatchSizeController(sourceTable.getTableName(), BATCH_SIZE, minBatchSize, maxBatchSize, maxBatchBytes);
+    }
+
+    /**
+     * Get the row capacity of the batch buffers
+     * @return input.batch-size, or the upper limit of the adaptive batch size
+     */
+    private int getBatchCapacity() {
+        return batchSizeController == null ? BATCH_SIZE : batchSizeController.getMaxBatchSize();
+    }
+
+    /**
+     * Get the no. of rows after which a batch is inserted
+     * @return input.batch-size, or the current adaptive batch size
+     */
+    private int getBatchLimit() {
+        return batchSizeController == null ? BATCH_SIZE : batchSizeController.getBatchSize();
+    }
+
+    /**
+     * Warns the user if record count to be migrated is greater than WARN_THRESHOLD
+     *
+     * @param recordCount No. of records to be migrated
+     * @throws RuntimeException
+     * @throws IllegalArgumentException
+     */
+    public void warnUser(long recordCount) throws RuntimeException, IllegalArgumentException {
+        if (!interactive) {
+            log.warn("Record Count of " + sourceTable.getTableName() + " is greater than 1 Million [" + recordCount + " Rows]. Migration of large tables might consume more memory. Proceeding without confirmation");
+            return;
+        }
+        System.out.println("Record Count is greater than 1 Million [" + recordCount + "Rows]. Migration of large tables might consume more memory. Proceed with CAUTION!!!");
+        System.out.print("Do you want to proceed [y|n]? ");
+        Scanner sc = new Scanner(System.in);
+        String choice = sc.nextLine();
+        if (Character.toLowerCase(choice.charAt(0)) == 'y') {
+            System.out.println("Proceeding...");
+            log.info("Record Count is greater than 1 Million [" + recordCount + "Rows]. Migration of large tables might consume more memory. User chose to proceed");
+        } else if (Character.toLowerCase(choice.charAt(0)) == 'n') {
+            log.info("Record Count is greater than 1 Million. Migration of large tables might consume more memory. User chose to cancel");
+            throw new RuntimeException("Migration Canceled by User");
+        } else {
+            System.out.println("Invalid input");
+            log.info("Record Count is greater than 1 Million [" + recordCount + " Rows]. Migration of large tables might consume more memory. User provided invalid input");
+            throw new IllegalArgumentException("Invalid option. Migration cancelled");
+        }
+    }
+
+
+    private void printRecordCount(long recordCount) {
+        System.out.println("Estimated Record Count: " + (recordCount < 0 ? "unknown" : recordCount));
+    }
+
+    /**
+     * Helper method which handles the shutdown of threads
+     *
+     * @param pool Thread Pool
+     */
+    void shutdownAndAwaitTermination(ExecutorService pool) {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
+                while (!pool.awaitTermination(60, TimeUnit.SECONDS)) {
+                    Thread.sleep(60000);
+                }
+            }
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper inner class which represents the task for reading a key range of the source table. Each task reads its
+     * range on its own source connection and emits its batches into the migration pipeline
+     */
+    public class ExtractService implements Callable<Long> {
+        /**
+         * Key range to be read
+         */
+        public final KeyRange range;
+
+        private final MigrationPipeline pipeline;
+
+        private final AtomicInteger insertID;
+
+        private final ColumnBatchPool batchPool;
+
+        private final CheckpointStore checkpoint;
+
+        private final boolean ordered;
+
+        private final int splitType;
+
+        /**
+         * Constructs an object of ExtractService
+         *
+         * @param range      Key range to be read
+         * @param pipeline   Pipeline receiving the extracted batches
+         * @param insertID   Batch identifier sequence shared by all ranges
+         * @param batchPool  Pool of the row buffers
+         * @param checkpoint Checkpoint of the migration, null if checkpointing is disabled
+         * @param ordered    true - read the range in split column order and record the last key of every batch
+         * @param splitType  Split column type in java.sql.Types
+         */
+        public ExtractService(KeyRange range, MigrationPipeline pipeline, AtomicInteger insertID, ColumnBatchPool batchPool,
+                              CheckpointStore checkpoint, boolean ordered, int splitType) {
+            this.range = range;
+            this.pipeline = pipeline;
+            this.insertID = insertID;
+            this.batchPool = batchPool;
+            this.checkpoint = checkpoint;
+            this.ordered = ordered;
+            this.splitType = splitType;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            String selectList = rowCopier.getSelectList();
+            int keyOrdinal = -1;
+            if (ordered) {
+                keyOrdinal = rowCopier.getOrdinal(range.getColumn());
+                if (keyOrdinal < 0) {
+                    selectList += "," + range.getColumn();
+                    keyOrdinal = rowCopier.getColumnCount() + 1;
+                }
+            }
+            String query = "SELECT " + selectList + " FROM " + sourceTable.getTableName();
+            String predicate = range.getPredicate();
+            if (!predicate.isEmpty()) {
+                query += " WHERE " + predicate;
+            }
+            if (ordered) {
+                query += " ORDER BY " + range.getColumn();
+            }
+            log.info(range + " Executing SQL Statement [" + query + "]");
+
+            long fetchCount = 0;
+            int sequence = 0;
+            long rangeStartTime = System.currentTimeMillis();
+            try (Connection srcConn = sourceTable.getDataSource().getConnection();
+                 PreparedStatement stmt = srcConn.prepareStatement(query)) {
+                stmt.setFetchSize(BATCH_SIZE);
+                Object[] params = range.getParameters();
+                for (int i = 0; i < params.length; i++) {
+                    stmt.setObject(i + 1, params[i]);
+                }
+
+                Timer fetchTimer = getStageTimer("migrator.fetch");
+                try (ResultSet rs = stmt.executeQuery()) {
+                    ColumnBatch columns = batchPool.acquire();
+                    Object lastKey = null;
+                    long fetchStart = System.nanoTime();
+                    while (rs.next()) {
+                        columns.readRow(rs);
+                        if (ordered) {
+                            lastKey = DbUtils.getKeyValue(rs, keyOrdinal, splitType);
+                        }
+                        fetchCount++;
+                        if (columns.size() >= getBatchLimit() || columns.getLobBytes() >= lobBatchBytes) {
+                            record(fetchTimer, System.nanoTime() - fetchStart);
+                            pipeline.emit(new RowBatch(insertID.getAndIncrement(), range, sequence++, columns, lastKey));
+                            columns = batchPool.acquire();
+                            fetchStart = System.nanoTime();
+                        }
+                    }
+                    if (columns.size() > 0) {
+                        record(fetchTimer, System.nanoTime() - fetchStart);
+                        pipeline.emit(new RowBatch(insertID.getAndIncrement(), range, sequence++, columns, lastKey));
+                    } else {
+                        columns.release();
+                    }
+                }
+                if (checkpoint != null) {
+                    checkpoint.rangeExtracted(range, sequence);
+                }
+            } catch (SQLException e) {
+                log.error("Failure in " + range);
+                log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+                throw new RuntimeException("Failure in " + range);
+            }
+
+            long rangeEndTime = System.currentTimeMillis();
+            log.info(range + " EXTRACTED " + fetchCount + " ROWS IN " + (rangeEndTime - rangeStartTime) + " MS");
+            return fetchCount;
+        }
+    }
+
+    /**
+     * Helper inner class which represents the task for loading a segment of a snapshot. Each task reads its blocks
+     * from the mapped file into a single batch buffer and writes them on its own writer session
+     */
+    private class SnapshotLoadService implements Callable<Long> {
+
+        private final SnapshotReader.Segment segment;
+
+        private final int capacity;
+
+        private final AtomicBoolean aborted;
+
+        private final ProgressBar pb;
+
+        SnapshotLoadService(SnapshotReader.Segment segment, int capacity, AtomicBoolean aborted, ProgressBar pb) {
+            this.segment = segment;
+            this.capacity = capacity;
+            this.aborted = aborted;
+            this.pb = pb;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            long loadCount = 0;
+            long segmentStartTime = System.currentTimeMillis();
+            ColumnBatch batch = new ColumnBatch(rowCopier, Math.max(1, capacity));
+            CommitPolicy policy = CommitPolicy.parse(commitPolicy, CommitPolicy.BATCHES);
+            try (WriterSession session = destinationTable.openSession(columnNames, typeArr, policy, commitInterval)) {
+                while (!aborted.get() && segment.next(batch)) {
+                    int insertCount = session.write(batch, batch.estimateDataBytes());
+                    session.commitIfDue();
+                    loadCount += insertCount;
+                    pb.stepBy(insertCount);
+                    batch.clear();
+                }
+                if (aborted.get()) {
+                    return loadCount;
+                }
+                session.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                aborted.set(true);
+                log.error("Failure in " + segment);
+                log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+                throw new RuntimeException("Failure in " + segment);
+            } finally {
+                batch.clear();
+                segment.close();
+            }
+
+            long segmentEndTime = System.currentTimeMillis();
+            log.info(segment + " LOADED " + loadCount + " ROWS IN " + (segmentEndTime - segmentStartTime) + " MS");
+            return loadCount;
+        }
+    }
+
+    /**
+     * Load stage of a pipeline thread. Holds the writer session of the thread and reports batches to the checkpoint
+     * once they are committed
+     */
+    private class SessionLoader implements MigrationPipeline.Loader {
+
+        private final WriterSession session;
+
+        private final CheckpointStore checkpoint;
+
+        private final List<RowBatch> uncommitted = new ArrayList<>();
+
+        SessionLoader(WriterSession session, CheckpointStore checkpoint) {
+            this.session = session;
+            this.checkpoint = checkpoint;
+            log.debug(Thread.currentThread().getName() + " loading with " + session.getWriterName() + " writer");
+        }
+
+        @Override
+        public int load(RowBatch batch) throws Exception {
+            int insertCount = insertWithRetry(batch);
+            if (checkpoint != null) {
+                // the pipeline releases the rows, only the checkpoint position is kept until the commit
+                uncommitted.add(batch);
+            }
+            if (session.commitIfDue()) {
+                markCommitted();
+            }
+            return insertCount;
+        }
+
+        @Override
+        public void finish(boolean success) throws Exception {
+            try {
+                if (success) {
+                    session.commit();
+                    markCommitted();
+                }
+            } finally {
+                session.close();
+            }
+        }
+
+        /**
+         * Inserts a batch. A batch rolled back by a deadlock or lock wait timeout is retried with backoff, as long as it
+         * was the only uncommitted batch of the session, otherwise the earlier batches would be lost with the rollback
+         */
+        private int insertWithRetry(RowBatch batch) throws Exception {
+            for (int attempt = 1; ; attempt++) {
+                boolean clean = session.getUncommittedRows() == 0;
+                try {
+                    return new InsertService(session, batch.getColumns(), batch.getDataBytes(), batch.getId()).call();
+                } catch (RuntimeException e) {
+                    if (!clean || attempt > MAX_LOCK_RETRIES || !DbUtils.isLockConflict(e)) {
+                        throw e;
+                    }
+                    session.rollback();
+                    if (writerConcurrency != null) {
+                        writerConcurrency.onLockConflict();
+                    }
+                    log.warn("Lock conflict in batch " + batch.getId() + ", retry " + attempt + " of " + MAX_LOCK_RETRIES);
+                    Thread.sleep(LOCK_RETRY_BACKOFF_MILLIS << (attempt - 1));
+                }
+            }
+        }
+
+        private void markCommitted() throws IOException {
+            for (RowBatch batch : uncommitted) {
+                checkpoint.batchCommitted(batch);
+            }
+            uncommitted.clear();
+        }
+    }
+
+    /**
+     * Helper inner class which represents the task for multithreaded insert operation. Each thread holds a writer session
+     */
+    public class InsertService implements Callable<Integer> {
+        /**
+         * Writer session of the inserting thread
+         */
+        public final WriterSession session;
+        /**
          * Insert Row values
          */
-        public final List<Object[]> valueList;
+        public final ColumnBatch batch;
+        /**
+         * Estimated size of the row values
+         */
+        public final long bytes;
         /**
          * Id
          */
@@ -381,28 +1729,34 @@ public class DataMigrator {
         /**
          * Constructs an object of InsertService
          *
-         * @param valueList Row values to be inserted of the table
+         * @param session   Writer session of the inserting thread
+         * @param batch     Row values to be inserted of the table
+         * @param bytes     Estimated size of the row values
          * @param id        Batch identifier
          */
-        public InsertService(List<Object[]> valueList, int id) {
-            this.valueList = new ArrayList<>(valueList);
+        public InsertService(WriterSession session, ColumnBatch batch, long bytes, int id) {
+            this.session = session;
+            this.batch = batch;
+            this.bytes = bytes;
             this.id = id;
         }
 
         @Override
         public Integer call() throws Exception {
             try {
-                long batchStartTime = System.currentTimeMillis();
-                int insertCount = destinationTable.insertData(columnNames, valueList, typeArr);
-                long batchEndTime = System.currentTimeMillis();
-                log.info(" BATCH " + id + " PROCESSED " + insertCount + " ROWS IN " + (batchEndTime - batchStartTime) + " MS");
-                valueList.clear();
+                long batchStartTime = System.nanoTime();
+                int insertCount = session.write(batch, bytes);
+                long batchNanos = System.nanoTime() - batchStartTime;
+                log.info(" BATCH " + id + " PROCESSED " + insertCount + " ROWS IN " + batchNanos / 1000000 + " MS");
+                if (batchSizeController != null) {
+                    batchSizeController.record(insertCount, bytes, batchNanos);
+                }
                 return insertCount;
             } catch (Exception e) {
                 log.error("Failure in Batch " + id);
                 log.error(e.getMessage());
                 log.error(Throwables.getStackTraceAsString(e));
-                throw new RuntimeException("Failure in Batch " + id);
+                throw new RuntimeException("Failure in Batch " + id, e);
             }
 
         }
@@ -0,0 +1,96 @@
+package com.sanjith.dbmigrator.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits the estimated heap held by batches which have been extracted but not yet loaded. Accounting is done in
+ * kilobytes so that the limit fits in a semaphore
+ *
+ * @see MigrationPipeline
+ */
+public class MemoryBudget {
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final int limitKb;
+
+    private final Semaphore permits;
+
+    private final BooleanSupplier cancelled;
+
+    private final AtomicLong stallNanos = new AtomicLong();
+
+    /**
+     * Constructs a memory budget
+     *
+     * @param limitBytes Maximum estimated bytes in flight
+     * @param cancelled  Returns true once the pipeline has been aborted
+     */
+    public MemoryBudget(long limitBytes, BooleanSupplier cancelled) {
+        this.limitKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, limitBytes / 1024));
+        this.permits = new Semaphore(limitKb);
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Reserves memory for a batch, blocking until enough has been released by the load stage. A single batch larger
+     * than the whole budget is admitted once everything else has been released
+     *
+     * @param bytes Estimated size of the batch
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws CancellationException if the pipeline was aborted while waiting
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        int kb = toKb(bytes);
+        if (!permits.tryAcquire(kb)) {
+            long stallStart = System.nanoTime();
+            try {
+                while (!permits.tryAcquire(kb, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Pipeline aborted");
+                    }
+                }
+            } finally {
+                stallNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+        }
+    }
+
+    /**
+     * Releases memory reserved for a batch
+     *
+     * @param bytes Estimated size of the batch, as passed to {@link #acquire(long)}
+     */
+    public void release(long bytes) {
+        permits.release(toKb(bytes));
+    }
+
+    private int toKb(long bytes) {
+        return (int) Math.max(1, Math.min(limitKb, bytes / 1024));
+    }
+
+    /**
+     * Get the estimated memory currently in flight
+     * @return in flight kilobytes
+     */
+    public int getInflightKb() {
+        return limitKb - permits.availablePermits();
+    }
+
+    /**
+     * Get the time producers spent waiting for memory
+     * @return stall time in milliseconds, summed over all producer threads
+     */
+    public long getStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(stallNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "IN FLIGHT " + getInflightKb() / 1024 + "/" + limitKb / 1024 + " MB";
+    }
+}
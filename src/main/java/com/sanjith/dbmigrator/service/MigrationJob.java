@@ -0,0 +1,314 @@
+package com.sanjith.dbmigrator.service;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sanjith.dbmigrator.dao.DbUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import dnl.utils.text.table.TextTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+/**
+ * Migrates a list of table pairs in one JVM. Tables are ordered by the foreign keys of the destination tables, a
+ * table starts once all tables it references have been migrated. Independent tables run concurrently, largest first,
+ * and share the source and destination connection pools
+ *
+ * @see DataMigrator
+ */
+@Service
+public class MigrationJob {
+
+    private static final Logger log = LogManager.getLogger(MigrationJob.class);
+
+    private enum Status { PENDING, RUNNING, SUCCESS, FAILED, SKIPPED }
+
+    /**
+     * Table pair of the job and its position in the foreign key graph
+     */
+    private static class TableTask {
+        private final String sourceTable;
+        private final String destinationTable;
+        private long estimatedRows;
+        private final List<TableTask> children = new ArrayList<>();
+        private int pendingParents = 0;
+        private Status status = Status.PENDING;
+        private long elapsedMillis;
+
+        private TableTask(String sourceTable, String destinationTable) {
+            this.sourceTable = sourceTable;
+            this.destinationTable = destinationTable;
+        }
+    }
+
+    /**
+     * Comma separated source tables, empty - single table mode
+     */
+    @Value("${input.source-tables}")
+    private String sourceTables;
+
+    /**
+     * Comma separated destination tables, empty - same names as the source tables
+     */
+    @Value("${input.destination-tables}")
+    private String destinationTables;
+
+    /**
+     * Maximum no. of tables migrated concurrently
+     */
+    @Value("${input.table-parallelism}")
+    private int tableParallelism;
+
+    @Value("${input.multithreaded}")
+    private boolean multithreaded;
+
+    @Value("${input.extract-only}")
+    private boolean extractOnly;
+
+    @Value("${input.load-only}")
+    private boolean loadOnly;
+
+    @Value("${input.export-format}")
+    private String exportFormat;
+
+    @Value("${input.verify}")
+    private boolean verify;
+
+    @Value("${input.partitions}")
+    private int partitions;
+
+    @Value("${input.source-schema}")
+    private String sourceSchema;
+
+    @Value("${input.destination-schema}")
+    private String destinationSchema;
+
+    @Autowired
+    private ObjectProvider<DataMigrator> migratorProvider;
+
+    @Qualifier("sourceTemplate")
+    @Autowired
+    private JdbcTemplate sourceTemplate;
+
+    @Qualifier("destinationTemplate")
+    @Autowired
+    private JdbcTemplate destinationTemplate;
+
+    @Qualifier("sourceDataSource")
+    @Autowired
+    private DataSource sourceDataSource;
+
+    @Qualifier("destinationDataSource")
+    @Autowired
+    private DataSource destinationDataSource;
+
+    /**
+     * Checks whether a list of tables was given
+     * @return true - job mode
+     */
+    public boolean isConfigured() {
+        return sourceTables != null && !sourceTables.trim().isEmpty();
+    }
+
+    /**
+     * Migrates all table pairs of the job
+     *
+     * @return status of migration (true - all tables migrated, false - a table failed or was skipped)
+     */
+    public boolean run() {
+        List<TableTask> tasks;
+        try {
+            tasks = buildTasks();
+        } catch (IllegalArgumentException e) {
+            log.error(e.getMessage());
+            System.out.println(e.getMessage());
+            return false;
+        }
+
+        int destinationPool = ((HikariDataSource) destinationDataSource).getMaximumPoolSize();
+        int sourcePool = ((HikariDataSource) sourceDataSource).getMaximumPoolSize();
+        int parallelism = Math.max(1, Math.min(Math.min(tableParallelism, tasks.size()), destinationPool / 2));
+        // every running table keeps one connection of each pool free for its metadata and DDL queries
+        int tableLoaders = Math.max(1, (destinationPool - parallelism) / parallelism);
+        int tablePartitions = Math.max(1, Math.min(partitions, (sourcePool - parallelism) / parallelism));
+        log.info("Migrating " + tasks.size() + " tables, " + parallelism + " concurrently with " + tablePartitions
+                + " partitions and " + tableLoaders + " loaders each");
+
+        PriorityQueue<TableTask> ready = new PriorityQueue<>(Comparator.comparingLong((TableTask t) -> t.estimatedRows).reversed());
+        for (TableTask task : tasks) {
+            if (task.pendingParents == 0) {
+                ready.add(task);
+            }
+        }
+
+        ExecutorService tableService = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder().setNameFormat("table-%d").build());
+        CompletionService<TableTask> completionService = new ExecutorCompletionService<>(tableService);
+        int running = 0;
+        int finished = 0;
+        try {
+            while (finished < tasks.size()) {
+                while (running < parallelism && !ready.isEmpty()) {
+                    TableTask task = ready.poll();
+                    task.status = Status.RUNNING;
+                    completionService.submit(() -> migrate(task, tablePartitions, tableLoaders));
+                    running++;
+                }
+                if (running == 0) {
+                    // only tables of a foreign key cycle are left, start the largest one
+                    TableTask next = tasks.stream().filter(t -> t.status == Status.PENDING)
+                            .max(Comparator.comparingLong(t -> t.estimatedRows)).orElse(null);
+                    if (next == null) {
+                        break;
+                    }
+                    log.warn("Foreign key cycle at " + next.destinationTable + ", migrating it before the tables it references");
+                    next.pendingParents = 0;
+                    ready.add(next);
+                    continue;
+                }
+
+                TableTask done = completionService.take().get();
+                running--;
+                finished++;
+                for (TableTask child : done.children) {
+                    if (child.status != Status.PENDING) {
+                        continue;
+                    }
+                    if (done.status == Status.SUCCESS) {
+                        if (--child.pendingParents == 0) {
+                            ready.add(child);
+                        }
+                    } else {
+                        finished += skip(child, done.destinationTable);
+                        ready.remove(child);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Migration job interrupted");
+        } catch (ExecutionException e) {
+            log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+        } finally {
+            tableService.shutdownNow();
+        }
+
+        printSummary(tasks);
+        return tasks.stream().allMatch(t -> t.status == Status.SUCCESS);
+    }
+
+    /**
+     * Parses the table lists, estimates the table sizes and links every table to the tables it references
+     */
+    private List<TableTask> buildTasks() {
+        String[] sources = sourceTables.split(",");
+        String[] destinations = destinationTables == null || destinationTables.trim().isEmpty() ? sources : destinationTables.split(",");
+        if (sources.length != destinations.length) {
+            throw new IllegalArgumentException("Invalid table name list length");
+        }
+
+        Map<String, TableTask> byDestination = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<TableTask> tasks = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            TableTask task = new TableTask(sources[i].trim(), destinations[i].trim());
+            if (byDestination.put(task.destinationTable, task) != null) {
+                throw new IllegalArgumentException("Destination table " + task.destinationTable + " listed twice");
+            }
+            task.estimatedRows = DbUtils.getEstimatedRowCount(sourceSchema, task.sourceTable, sourceTemplate);
+            tasks.add(task);
+        }
+
+        for (TableTask task : tasks) {
+            if (extractOnly || !exportFormat.isEmpty() || verify) {
+                // snapshots, exports and verification are independent of each other, the foreign keys only order the load
+                continue;
+            }
+            Set<String> parents = DbUtils.getReferencedTables(destinationSchema, task.destinationTable, destinationTemplate);
+            for (String parentName : parents) {
+                TableTask parent = byDestination.get(parentName);
+                if (parent != null) {
+                    parent.children.add(task);
+                    task.pendingParents++;
+                }
+            }
+            log.info(task.destinationTable + " ESTIMATED " + task.estimatedRows + " ROWS, REFERENCES " + parents);
+        }
+        return tasks;
+    }
+
+    private TableTask migrate(TableTask task, int tablePartitions, int tableLoaders) {
+        long startTime = System.currentTimeMillis();
+        log.info("Migrating " + task.sourceTable + " to " + task.destinationTable);
+        boolean success;
+        try {
+            DataMigrator migrator = migratorProvider.getObject();
+            migrator.configure(task.sourceTable, task.destinationTable);
+            migrator.setInteractive(false);
+            migrator.setConnectionBudget(tablePartitions, tableLoaders);
+            if (verify) {
+                success = migrator.verifyData();
+            } else if (!exportFormat.isEmpty()) {
+                success = migrator.exportFiles();
+            } else if (extractOnly) {
+                success = migrator.extractSnapshot();
+            } else if (loadOnly) {
+                success = migrator.loadSnapshot();
+            } else {
+                success = multithreaded ? migrator.migrateDataMT() : migrator.migrateDataST();
+            }
+        } catch (Exception e) {
+            log.error(task.sourceTable + ": " + e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+            success = false;
+        }
+        task.elapsedMillis = System.currentTimeMillis() - startTime;
+        task.status = success ? Status.SUCCESS : Status.FAILED;
+        log.info(task.destinationTable + " " + task.status + " IN " + task.elapsedMillis + " MS");
+        return task;
+    }
+
+    /**
+     * Skips a table and all tables depending on it
+     * @return no. of skipped tables
+     */
+    private int skip(TableTask task, String failedParent) {
+        if (task.status != Status.PENDING) {
+            return 0;
+        }
+        task.status = Status.SKIPPED;
+        log.error("Skipping " + task.destinationTable + ", referenced table " + failedParent + " was not migrated");
+        int skipped = 1;
+        for (TableTask child : task.children) {
+            skipped += skip(child, task.destinationTable);
+        }
+        return skipped;
+    }
+
+    private void printSummary(List<TableTask> tasks) {
+        String[] colNames = {"SOURCE", "DESTINATION", "STATUS", "EST. ROWS", "TIME (MS)"};
+        Object[][] data = new Object[tasks.size()][];
+        for (int i = 0; i < tasks.size(); i++) {
+            TableTask task = tasks.get(i);
+            data[i] = new Object[]{task.sourceTable, task.destinationTable, task.status, task.estimatedRows, task.elapsedMillis};
+        }
+        new TextTable(colNames, data).printTable();
+    }
+}
@@ -0,0 +1,384 @@
+package com.sanjith.dbmigrator.service;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sanjith.dbmigrator.dao.RowBatch;
+import com.sanjith.dbmigrator.metrics.MetricsRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Extract, convert and load pipeline of the multithreaded migration. Stages are connected by bounded queues and the
+ * extracted but not yet loaded batches are limited by a memory budget, so the readers block when the writers fall behind.
+ * Loaded batches are counted as they complete and their buffers are returned to the pool
+ *
+ * @see StageQueue
+ * @see MemoryBudget
+ */
+public class MigrationPipeline {
+
+    private static final Logger log = LogManager.getLogger(MigrationPipeline.class);
+
+    /**
+     * Interval of the periodic stage report in seconds
+     */
+    private static final long REPORT_INTERVAL_SECONDS = 30;
+
+    /**
+     * Marker which tells the stage threads that no more batches will follow
+     */
+    private static final RowBatch END_OF_STREAM = new RowBatch(-1, null, -1, null, null);
+
+    /**
+     * Convert stage
+     */
+    public interface Converter {
+        /**
+         * Converts a batch read from the source
+         *
+         * @param batch Extracted batch
+         * @return batch ready to be loaded
+         * @throws Exception on conversion failure
+         */
+        RowBatch convert(RowBatch batch) throws Exception;
+    }
+
+    /**
+     * Load stage. Every load thread opens its own loader, so a loader may hold a destination session
+     */
+    public interface Loader {
+        /**
+         * Loads a batch into the destination
+         *
+         * @param batch Converted batch
+         * @return no. of rows loaded
+         * @throws Exception on load failure
+         */
+        int load(RowBatch batch) throws Exception;
+
+        /**
+         * Called once when the load thread stops
+         *
+         * @param success true - all batches have been loaded, false - the pipeline was aborted
+         * @throws Exception on failure in completing the load
+         */
+        void finish(boolean success) throws Exception;
+    }
+
+    /**
+     * Opens the loader of a load thread
+     */
+    public interface LoaderFactory {
+        /**
+         * Opens a loader
+         *
+         * @return loader used by the calling load thread only
+         * @throws Exception if the loader could not be opened
+         */
+        Loader open() throws Exception;
+    }
+
+    private final String name;
+
+    private final int converterThreads;
+
+    private final int loaderThreads;
+
+    private final StageQueue<RowBatch> extractQueue;
+
+    private final StageQueue<RowBatch> loadQueue;
+
+    private final MemoryBudget memoryBudget;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private final AtomicLong completedBatches = new AtomicLong();
+
+    private final AtomicLong completedRows = new AtomicLong();
+
+    private final AtomicInteger activeConverters;
+
+    private ExecutorService converterService;
+
+    private ExecutorService loaderService;
+
+    private ScheduledExecutorService reporterService;
+
+    private WriterConcurrencyController writerConcurrency;
+
+    private MetricsRegistry metrics;
+
+    private final List<String> gaugeIds = new ArrayList<>();
+
+    /**
+     * Constructs a pipeline
+     *
+     * @param name             Pipeline name, used in thread names and reports
+     * @param queueCapacity    Capacity of each stage queue in batches
+     * @param maxInflightBytes Maximum estimated heap held by extracted batches which are not loaded yet
+     * @param converterThreads No. of convert stage threads
+     * @param loaderThreads    No. of load stage threads
+     */
+    public MigrationPipeline(String name, int queueCapacity, long maxInflightBytes, int converterThreads, int loaderThreads) {
+        this.name = name;
+        this.converterThreads = converterThreads;
+        this.loaderThreads = loaderThreads;
+        this.extractQueue = new StageQueue<>("CONVERT", queueCapacity, this::isAborted);
+        this.loadQueue = new StageQueue<>("LOAD", queueCapacity, this::isAborted);
+        this.memoryBudget = new MemoryBudget(maxInflightBytes, this::isAborted);
+        this.activeConverters = new AtomicInteger(converterThreads);
+    }
+
+    /**
+     * Limits the no. of load threads writing at the same time. Must be set before {@link #start}
+     *
+     * @param writerConcurrency Writer limit, null - all load threads write
+     */
+    public void setWriterConcurrency(WriterConcurrencyController writerConcurrency) {
+        this.writerConcurrency = writerConcurrency;
+    }
+
+    /**
+     * Exports the queue depths and the in-flight memory of the pipeline as gauges until it completes
+     *
+     * @param metrics Metrics registry
+     */
+    public void registerMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        gaugeIds.add(metrics.gauge("migrator.queue.depth", extractQueue::depth, "table", name, "stage", "convert"));
+        gaugeIds.add(metrics.gauge("migrator.queue.depth", loadQueue::depth, "table", name, "stage", "load"));
+        gaugeIds.add(metrics.gauge("migrator.inflight.bytes", () -> memoryBudget.getInflightKb() * 1024L, "table", name));
+    }
+
+    /**
+     * Starts the convert and load stage threads
+     *
+     * @param converter     Convert stage
+     * @param loaderFactory Opens the load stage of every load thread
+     * @param progress      Notified with the row count of every loaded batch
+     */
+    public void start(Converter converter, LoaderFactory loaderFactory, LongConsumer progress) {
+        converterService = Executors.newFixedThreadPool(converterThreads, new ThreadFactoryBuilder().setNameFormat("convert-%d").build());
+        loaderService = Executors.newFixedThreadPool(loaderThreads, new ThreadFactoryBuilder().setNameFormat("load-%d").build());
+        reporterService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("report-%d").setDaemon(true).build());
+
+        for (int i = 0; i < converterThreads; i++) {
+            converterService.submit(() -> runConverter(converter));
+        }
+        for (int i = 0; i < loaderThreads; i++) {
+            loaderService.submit(() -> runLoader(loaderFactory, progress));
+        }
+        reporterService.scheduleAtFixedRate(() -> log.info(report()), REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Hands an extracted batch to the pipeline. Blocks while the memory budget is used up or the convert queue is full
+     *
+     * @param batch Extracted batch
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws CancellationException if the pipeline has been aborted
+     */
+    public void emit(RowBatch batch) throws InterruptedException {
+        if (isAborted()) {
+            throw new CancellationException("Pipeline aborted");
+        }
+        memoryBudget.acquire(batch.getEstimatedBytes());
+        try {
+            extractQueue.put(batch);
+        } catch (InterruptedException | RuntimeException e) {
+            memoryBudget.release(batch.getEstimatedBytes());
+            throw e;
+        }
+    }
+
+    /**
+     * Signals that all extractors have finished
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void finishExtraction() throws InterruptedException {
+        for (int i = 0; i < converterThreads; i++) {
+            extractQueue.close(END_OF_STREAM);
+        }
+    }
+
+    /**
+     * Aborts the pipeline. Blocked stages give up and the remaining batches are discarded
+     *
+     * @param cause Failure which caused the abort
+     */
+    public void abort(Throwable cause) {
+        if (failure.compareAndSet(null, cause)) {
+            log.error(name + " PIPELINE ABORTED: " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Waits until the load stage has drained the pipeline or the pipeline has been aborted
+     *
+     * @return true - all batches loaded, false - pipeline aborted
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitCompletion() throws InterruptedException {
+        converterService.shutdown();
+        loaderService.shutdown();
+        while (!loaderService.awaitTermination(REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS)) {
+            log.debug(report());
+        }
+        converterService.awaitTermination(REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        reporterService.shutdownNow();
+        if (metrics != null) {
+            gaugeIds.forEach(metrics::removeGauge);
+        }
+        return !isAborted();
+    }
+
+    /**
+     * Is the pipeline aborted
+     * @return true - aborted
+     */
+    public boolean isAborted() {
+        return failure.get() != null;
+    }
+
+    /**
+     * Get the failure which aborted the pipeline
+     * @return failure, null if the pipeline has not been aborted
+     */
+    public Throwable getFailure() {
+        return failure.get();
+    }
+
+    /**
+     * Get the no. of batches loaded so far
+     * @return loaded batch count
+     */
+    public long getCompletedBatches() {
+        return completedBatches.get();
+    }
+
+    /**
+     * Get the no. of rows loaded so far
+     * @return loaded row count
+     */
+    public long getCompletedRows() {
+        return completedRows.get();
+    }
+
+    /**
+     * Describes the queue depths and stall times of every stage
+     * @return stage report
+     */
+    public String report() {
+        return name + " PIPELINE: " + completedBatches.get() + " BATCHES / " + completedRows.get() + " ROWS LOADED, " + memoryBudget
+                + " | EXTRACT blocked " + (memoryBudget.getStallMillis() + extractQueue.getPutStallMillis()) + " MS (memory " + memoryBudget.getStallMillis() + " MS)"
+                + " | " + extractQueue + ", CONVERT waiting " + extractQueue.getTakeStallMillis() + " MS, blocked " + loadQueue.getPutStallMillis() + " MS"
+                + " | " + loadQueue + ", LOAD waiting " + loadQueue.getTakeStallMillis() + " MS";
+    }
+
+    private void runConverter(Converter converter) {
+        try {
+            RowBatch batch;
+            while ((batch = extractQueue.take()) != END_OF_STREAM) {
+                try {
+                    loadQueue.put(converter.convert(batch));
+                } catch (Exception e) {
+                    memoryBudget.release(batch.getEstimatedBytes());
+                    batch.release();
+                    throw e;
+                }
+            }
+        } catch (CancellationException e) {
+            log.debug("Converter stopped: " + e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+            abort(e);
+        } finally {
+            if (activeConverters.decrementAndGet() == 0) {
+                endLoadStream();
+            }
+        }
+    }
+
+    private void endLoadStream() {
+        try {
+            for (int i = 0; i < loaderThreads; i++) {
+                loadQueue.close(END_OF_STREAM);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads the next batch, within the writer limit if one is set
+     * @return false - end of the stream reached
+     */
+    private boolean loadNext(Loader loader, LongConsumer progress) throws Exception {
+        if (writerConcurrency != null) {
+            writerConcurrency.acquire();
+        }
+        try {
+            RowBatch batch = loadQueue.take();
+            if (batch == END_OF_STREAM) {
+                return false;
+            }
+            try {
+                long loadStart = System.nanoTime();
+                int insertCount = loader.load(batch);
+                if (writerConcurrency != null) {
+                    writerConcurrency.record(insertCount, System.nanoTime() - loadStart);
+                }
+                completedBatches.incrementAndGet();
+                completedRows.addAndGet(insertCount);
+                progress.accept(insertCount);
+            } finally {
+                memoryBudget.release(batch.getEstimatedBytes());
+                batch.release();
+            }
+            return true;
+        } finally {
+            if (writerConcurrency != null) {
+                writerConcurrency.release();
+            }
+        }
+    }
+
+    private void runLoader(LoaderFactory loaderFactory, LongConsumer progress) {
+        Loader loader = null;
+        boolean drained = false;
+        try {
+            loader = loaderFactory.open();
+            while (loadNext(loader, progress)) {
+                // load until the end of the stream
+            }
+            drained = true;
+            loader.finish(true);
+        } catch (CancellationException e) {
+            log.debug("Loader stopped: " + e.getMessage());
+        } catch (Exception e) {
+            log.error(e.getMessage() + "\n" + Throwables.getStackTraceAsString(e));
+            abort(e);
+        } finally {
+            if (loader != null && !drained) {
+                try {
+                    loader.finish(false);
+                } catch (Exception e) {
+                    log.warn("Error in stopping loader: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
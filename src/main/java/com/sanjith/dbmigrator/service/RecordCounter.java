@@ -0,0 +1,104 @@
+package com.sanjith.dbmigrator.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sanjith.dbmigrator.dao.KeyRange;
+import com.sanjith.dbmigrator.dao.Source;
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Row count of the rows to be copied. The estimate is read from the catalog statistics of the source table before the
+ * migration starts, the exact count runs on a thread and connection of its own alongside the extraction and moves the
+ * progress bar to the exact total once it is known. A count still running when the migration ends is cancelled
+ */
+public class RecordCounter implements AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(RecordCounter.class);
+
+    private final Source source;
+
+    private final KeyRange range;
+
+    private final AtomicReference<Statement> running = new AtomicReference<>();
+
+    private ExecutorService countService;
+
+    private Future<?> countFuture;
+
+    private volatile long exactCount = -1;
+
+    /**
+     * Constructs a record counter
+     *
+     * @param source Source table
+     * @param range  Key range of the rows to be copied, {@link KeyRange#wholeTable()} for all rows
+     */
+    public RecordCounter(Source source, KeyRange range) {
+        this.source = source;
+        this.range = range;
+    }
+
+    /**
+     * Estimates the no. of rows to be copied. Only the whole table has catalog statistics
+     * @return estimated row count, -1 if unknown
+     */
+    public long getEstimate() {
+        return range.getColumn() == null ? source.getEstimatedRecordCount() : -1;
+    }
+
+    /**
+     * Starts the exact count
+     * @param pb Progress bar whose maximum is set to the exact count
+     */
+    public void start(ProgressBar pb) {
+        countService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("count-%d").setDaemon(true).build());
+        countFuture = countService.submit(() -> {
+            long startTime = System.currentTimeMillis();
+            try {
+                exactCount = source.getRecordCount(range, running);
+                pb.maxHint(exactCount);
+                log.info("COUNTED " + exactCount + " RECORDS OF " + source.getTableName() + " IN " + (System.currentTimeMillis() - startTime) + " MS");
+            } catch (SQLException e) {
+                log.warn("Exact record count of " + source.getTableName() + " not completed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get the exact count
+     * @return row count, -1 if the count has not completed
+     */
+    public long getExactCount() {
+        return exactCount;
+    }
+
+    /**
+     * Cancels the exact count if it is still running
+     */
+    @Override
+    public void close() {
+        if (countService == null) {
+            return;
+        }
+        if (!countFuture.isDone()) {
+            Statement stmt = running.get();
+            try {
+                if (stmt != null) {
+                    stmt.cancel();
+                }
+            } catch (SQLException e) {
+                log.debug("Error in cancelling record count: " + e.getMessage());
+            }
+            log.info("Exact record count of " + source.getTableName() + " cancelled, the migration completed first");
+        }
+        countService.shutdownNow();
+    }
+}
@@ -0,0 +1,154 @@
+package com.sanjith.dbmigrator.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded queue connecting two stages of the migration pipeline. A full queue blocks the producing stage, which is how
+ * a slow destination throttles the source. Tracks the queue depth and the time each side spent blocked
+ *
+ * @param <T> Queued item type
+ * @see MigrationPipeline
+ */
+public class StageQueue<T> {
+
+    /**
+     * Interval in which blocked producers and consumers check for cancellation
+     */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final String name;
+
+    private final int capacity;
+
+    private final BlockingQueue<T> queue;
+
+    private final BooleanSupplier cancelled;
+
+    private final AtomicLong putStallNanos = new AtomicLong();
+
+    private final AtomicLong takeStallNanos = new AtomicLong();
+
+    private final AtomicInteger peakDepth = new AtomicInteger();
+
+    /**
+     * Constructs a bounded stage queue
+     *
+     * @param name      Queue name used in reports
+     * @param capacity  Maximum number of queued items
+     * @param cancelled Returns true once the pipeline has been aborted
+     */
+    public StageQueue(String name, int capacity, BooleanSupplier cancelled) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Adds an item, blocking while the queue is full
+     *
+     * @param item Item to be queued
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws CancellationException if the pipeline was aborted while waiting
+     */
+    public void put(T item) throws InterruptedException {
+        checkCancelled();
+        if (!queue.offer(item)) {
+            long stallStart = System.nanoTime();
+            try {
+                while (!queue.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Pipeline aborted");
+                    }
+                }
+            } finally {
+                putStallNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+        }
+        peakDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    /**
+     * Adds an end of stream marker. Gives up without failing if the pipeline is aborted, as the consumers are gone
+     *
+     * @param marker End of stream marker
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void close(T marker) throws InterruptedException {
+        while (!queue.offer(marker, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+            if (cancelled.getAsBoolean()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes an item, blocking while the queue is empty
+     *
+     * @return queued item
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws CancellationException if the pipeline was aborted while waiting
+     */
+    public T take() throws InterruptedException {
+        checkCancelled();
+        T item = queue.poll();
+        if (item == null) {
+            long stallStart = System.nanoTime();
+            try {
+                while ((item = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) == null) {
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Pipeline aborted");
+                    }
+                }
+            } finally {
+                takeStallNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+        }
+        return item;
+    }
+
+    private void checkCancelled() {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Pipeline aborted");
+        }
+    }
+
+    /**
+     * Get the current number of queued items
+     * @return queue depth
+     */
+    public int depth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the time producers spent blocked on a full queue
+     * @return stall time in milliseconds, summed over all producer threads
+     */
+    public long getPutStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(putStallNanos.get());
+    }
+
+    /**
+     * Get the time consumers spent waiting on an empty queue
+     * @return wait time in milliseconds, summed over all consumer threads
+     */
+    public long getTakeStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(takeStallNanos.get());
+    }
+
+    /**
+     * Describes the current state of the queue
+     * @return depth, peak depth and capacity
+     */
+    @Override
+    public String toString() {
+        return name + " QUEUE " + depth() + "/" + capacity + " (PEAK " + peakDepth.get() + ")";
+    }
+}
@@ -0,0 +1,134 @@
+package com.sanjith.dbmigrator.service;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.Properties;
+
+/**
+ * High-water mark of the incremental runs of a table pair, kept in a local properties file next to the checkpoints.
+ * Holds the highest value of the watermark column copied by the last successful run, an incremental run reads only
+ * the rows past it. The mark is only moved once a run has committed all its rows
+ *
+ * @see com.sanjith.dbmigrator.dao.Source#getDeltaRanges(String, Object, int)
+ */
+public class WatermarkStore {
+
+    private static final Logger log = LogManager.getLogger(WatermarkStore.class);
+
+    private final Path file;
+
+    private String column;
+
+    private int type = Types.OTHER;
+
+    private Object value;
+
+    /**
+     * Constructs a watermark store for a table pair
+     *
+     * @param directory        Directory holding the watermark files
+     * @param sourceTable      Source table, qualified with its schema
+     * @param destinationTable Destination table, qualified with its schema
+     */
+    public WatermarkStore(String directory, String sourceTable, String destinationTable) {
+        this.file = Paths.get(directory, sourceTable + "-" + destinationTable + ".watermark");
+    }
+
+    /**
+     * Loads the watermark of the last successful run. Without a watermark file the next run reads all rows
+     *
+     * @param column Watermark column of this run
+     * @param type   Watermark column type in java.sql.Types
+     * @throws IOException if the watermark file could not be read
+     * @throws IllegalArgumentException if the watermark was recorded for another column
+     */
+    public synchronized void load(String column, int type) throws IOException {
+        this.column = column;
+        this.type = type;
+        this.value = null;
+        if (!Files.exists(file)) {
+            log.info("No watermark at " + file.toAbsolutePath() + ", reading all rows");
+            return;
+        }
+        Properties prop = new Properties();
+        try (InputStream is = Files.newInputStream(file)) {
+            prop.load(is);
+        }
+        if (!column.equalsIgnoreCase(prop.getProperty("column"))) {
+            throw new IllegalArgumentException("Watermark " + file + " was recorded on column " + prop.getProperty("column")
+                    + ", delete it to start over on " + column);
+        }
+        value = parseValue(prop.getProperty("value"));
+        log.info("Loaded watermark " + column + " = " + value + " from " + file.toAbsolutePath());
+    }
+
+    /**
+     * Get the watermark column
+     * @return column name as in the source metadata
+     */
+    public synchronized String getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the watermark of the last successful run
+     * @return watermark, null if no run has completed yet
+     */
+    public synchronized Object getValue() {
+        return value;
+    }
+
+    /**
+     * Moves the watermark after a successful run. Writes a temporary file, syncs it and moves it over the previous one
+     *
+     * @param value Highest watermark column value copied by the run
+     * @throws IOException if the watermark file could not be written
+     */
+    public synchronized void save(Object value) throws IOException {
+        Properties prop = new Properties();
+        prop.setProperty("column", column);
+        prop.setProperty("type", String.valueOf(type));
+        prop.setProperty("value", value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString());
+        prop.setProperty("updated", LocalDateTime.now().toString());
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            prop.store(out, "Data Migrator watermark");
+            out.getFD().sync();
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.value = value;
+        log.info("Watermark " + column + " moved to " + value);
+    }
+
+    private Object parseValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case Types.DATE:
+                return Date.valueOf(value);
+            case Types.TIMESTAMP:
+                return Timestamp.valueOf(value);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new BigDecimal(value);
+            default:
+                return Long.parseLong(value);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.sanjith.dbmigrator.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits the no. of load threads writing at the same time, adjusted by additive increase and multiplicative decrease.
+ * The load stage starts a thread per destination connection of the budget, every thread takes a permit before each
+ * batch. After a window of batches the limit grows by one writer while the throughput keeps rising, and is halved
+ * when lock conflicts were retried or the batch latency spiked. While threads wait for a destination connection
+ * (Hikari pool metrics) the limit does not grow. The limit never exceeds the no. of load threads, which is bounded by
+ * the Hikari maximum pool size
+ *
+ * @see MigrationPipeline
+ */
+public class WriterConcurrencyController {
+
+    private static final Logger log = LogManager.getLogger(WriterConcurrencyController.class);
+
+    /**
+     * No. of batches per allowed writer measured before every adjustment
+     */
+    private static final int WINDOW_BATCHES_PER_WRITER = 2;
+
+    /**
+     * Batch latency, relative to the lowest window latency seen, which counts as a spike
+     */
+    private static final double LATENCY_SPIKE = 2.0;
+
+    /**
+     * Relative throughput gain required to add a writer
+     */
+    private static final double MIN_GAIN = 0.05;
+
+    /**
+     * No. of windows without change after which one more writer is probed
+     */
+    private static final int PROBE_WINDOWS = 5;
+
+    private final String name;
+
+    private final int maxWriters;
+
+    private final HikariDataSource dataSource;
+
+    private final BooleanSupplier aborted;
+
+    private int limit;
+
+    private int active = 0;
+
+    private int peakLimit;
+
+    private long windowStart = System.nanoTime();
+
+    private int windowBatches = 0;
+
+    private long windowRows = 0;
+
+    private long windowNanos = 0;
+
+    private int windowConflicts = 0;
+
+    private int stableWindows = 0;
+
+    private double lastThroughput = 0;
+
+    private double baselineLatency = 0;
+
+    /**
+     * Constructs a writer concurrency controller
+     *
+     * @param name           Table name, used in the log
+     * @param initialWriters Writer limit of the first window
+     * @param maxWriters     No. of load threads
+     * @param dataSource     Destination pool, read for the no. of threads awaiting a connection
+     * @param aborted        Tells whether the pipeline has been aborted
+     */
+    public WriterConcurrencyController(String name, int initialWriters, int maxWriters, HikariDataSource dataSource, BooleanSupplier aborted) {
+        this.name = name;
+        this.maxWriters = Math.max(1, maxWriters);
+        this.dataSource = dataSource;
+        this.aborted = aborted;
+        this.limit = Math.max(1, Math.min(initialWriters, this.maxWriters));
+        this.peakLimit = limit;
+        log.info(name + " ADAPTIVE WRITERS " + limit + " OF " + this.maxWriters);
+    }
+
+    /**
+     * Waits until the writer limit allows one more writer
+     *
+     * @throws InterruptedException  if interrupted while waiting
+     * @throws CancellationException if the pipeline has been aborted
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            if (aborted.getAsBoolean()) {
+                throw new CancellationException("Pipeline aborted");
+            }
+            wait(1000);
+        }
+        active++;
+    }
+
+    /**
+     * Returns the permit of a writer
+     */
+    public synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * Records a lock wait timeout or deadlock which was rolled back and retried
+     */
+    public synchronized void onLockConflict() {
+        windowConflicts++;
+    }
+
+    /**
+     * Records a loaded batch and adjusts the writer limit at the end of a window
+     *
+     * @param rows  No. of rows loaded
+     * @param nanos Time taken by the load
+     */
+    public synchronized void record(int rows, long nanos) {
+        windowBatches++;
+        windowRows += rows;
+        windowNanos += nanos;
+        if (windowBatches < WINDOW_BATCHES_PER_WRITER * limit) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        double throughput = windowRows * 1e9 / Math.max(1, now - windowStart);
+        double latencyMillis = windowNanos / 1e6 / windowBatches;
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        int awaiting = pool == null ? 0 : pool.getThreadsAwaitingConnection();
+        int activeConnections = pool == null ? 0 : pool.getActiveConnections();
+        int conflicts = windowConflicts;
+        windowStart = now;
+        windowBatches = 0;
+        windowRows = 0;
+        windowNanos = 0;
+        windowConflicts = 0;
+
+        if (baselineLatency == 0 || latencyMillis < baselineLatency) {
+            baselineLatency = latencyMillis;
+        }
+
+        int previous = limit;
+        String reason;
+        if (conflicts > 0) {
+            limit = Math.max(1, limit / 2);
+            reason = conflicts + " LOCK CONFLICTS";
+        } else if (limit > 1 && latencyMillis > LATENCY_SPIKE * baselineLatency) {
+            limit = Math.max(1, limit / 2);
+            reason = "LATENCY SPIKE";
+        } else if (awaiting > 0) {
+            reason = awaiting + " THREADS AWAITING CONNECTION";
+        } else if (lastThroughput == 0 || throughput > lastThroughput * (1 + MIN_GAIN)) {
+            limit = Math.min(maxWriters, limit + 1);
+            reason = "THROUGHPUT RISING";
+        } else if (++stableWindows >= PROBE_WINDOWS) {
+            limit = Math.min(maxWriters, limit + 1);
+            reason = "PROBING";
+        } else {
+            reason = "THROUGHPUT FLAT";
+        }
+        lastThroughput = throughput;
+        peakLimit = Math.max(peakLimit, limit);
+
+        String stats = (long) throughput + " ROWS/S, " + (long) latencyMillis + " MS/BATCH, " + activeConnections
+                + " ACTIVE CONNECTIONS, " + reason;
+        if (limit != previous) {
+            stableWindows = 0;
+            log.info(name + " WRITERS " + previous + " -> " + limit + ": " + stats);
+            notifyAll();
+        } else {
+            log.debug(name + " WRITERS " + limit + ": " + stats);
+        }
+    }
+
+    /**
+     * Describes the writer limit, logged at the end of the table
+     * @return summary
+     */
+    public synchronized String report() {
+        return name + " ADAPTIVE WRITERS ENDED AT " + limit + " OF " + maxWriters + ", PEAK " + peakLimit;
+    }
+}
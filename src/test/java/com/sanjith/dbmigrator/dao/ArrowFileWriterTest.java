@@ -0,0 +1,176 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.ipc.message.ArrowBlock;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Reads the files of {@link ArrowFileWriter} back with the Arrow Java reader
+ */
+class ArrowFileWriterTest {
+
+    @TempDir
+    Path dir;
+
+    private static LinkedHashMap<String, Integer> columns() {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        columns.put("C_TINYINT", Types.TINYINT);
+        columns.put("C_SMALLINT", Types.SMALLINT);
+        columns.put("C_INTEGER", Types.INTEGER);
+        columns.put("C_BIGINT", Types.BIGINT);
+        columns.put("C_REAL", Types.REAL);
+        columns.put("C_DOUBLE", Types.DOUBLE);
+        columns.put("C_DECIMAL", Types.DECIMAL);
+        columns.put("C_NUMBER", Types.NUMERIC);
+        columns.put("C_BOOLEAN", Types.BOOLEAN);
+        columns.put("C_DATE", Types.DATE);
+        columns.put("C_TIME", Types.TIME);
+        columns.put("C_TIMESTAMP", Types.TIMESTAMP);
+        columns.put("C_BINARY", Types.VARBINARY);
+        columns.put("C_VARCHAR", Types.VARCHAR);
+        return columns;
+    }
+
+    private static final int[] PRECISIONS = {3, 5, 10, 19, 7, 15, 20, 0, 1, 10, 8, 26, 16, 100};
+
+    private static final int[] SCALES = {0, 0, 0, 0, 0, 0, 2, -1, 0, 0, 0, 6, 0, 0};
+
+    private static Object[] row(int i) {
+        return new Object[]{(byte) (i - 1), (short) -300, 70000 + i, 1L << 40 | i, 1.5f, -2.25d,
+                new BigDecimal("-12345678901234567.8" + i), new BigDecimal("3.14159"), i % 2 == 0, Date.valueOf("2023-02-2" + i),
+                Time.valueOf("13:45:0" + i), Timestamp.valueOf("1969-12-31 23:59:59.12345" + i), new byte[]{1, (byte) 0xFF, (byte) i},
+                "zeichen äöü " + i};
+    }
+
+    private static Object[] nullRow() {
+        return new Object[14];
+    }
+
+    private ArrowFileWriter writer(long maxFileBytes) {
+        return new ArrowFileWriter(dir, "T-1", new ArrayList<>(columns().keySet()),
+                columns().values().stream().mapToInt(Integer::intValue).toArray(), PRECISIONS, SCALES, maxFileBytes);
+    }
+
+    @Test
+    void writesEverySupportedType() throws Exception {
+        List<Path> parts;
+        try (ArrowFileWriter writer = writer(Long.MAX_VALUE)) {
+            writer.write(TestBatches.of(columns(), Arrays.asList(row(1), nullRow(), row(2))));
+            writer.write(TestBatches.of(columns(), Arrays.<Object[]>asList(row(3))));
+            writer.finish();
+            parts = writer.getParts();
+        }
+        assertEquals(1, parts.size());
+        assertFalse(Files.exists(parts.get(0).resolveSibling(parts.get(0).getFileName() + ".tmp")));
+
+        try (BufferAllocator allocator = new RootAllocator();
+             SeekableByteChannel channel = Files.newByteChannel(parts.get(0));
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<Field> fields = root.getSchema().getFields();
+            assertEquals(new ArrayList<>(columns().keySet()), fields.stream().map(Field::getName).toList());
+            assertEquals(Arrays.asList(new ArrowType.Int(8, true), new ArrowType.Int(16, true), new ArrowType.Int(32, true),
+                    new ArrowType.Int(64, true), new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE),
+                    new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), new ArrowType.Decimal(20, 2, 128),
+                    ArrowType.Utf8.INSTANCE, ArrowType.Bool.INSTANCE, new ArrowType.Date(DateUnit.DAY),
+                    new ArrowType.Time(TimeUnit.MILLISECOND, 32), new ArrowType.Timestamp(TimeUnit.MICROSECOND, null),
+                    ArrowType.Binary.INSTANCE, ArrowType.Utf8.INSTANCE), fields.stream().map(Field::getType).toList());
+            assertTrue(fields.stream().allMatch(Field::isNullable));
+
+            List<ArrowBlock> blocks = reader.getRecordBlocks();
+            assertEquals(2, blocks.size());
+
+            assertTrue(reader.loadRecordBatch(blocks.get(0)));
+            assertEquals(3, root.getRowCount());
+            assertRow(root, 0, 1);
+            for (FieldVector vector : root.getFieldVectors()) {
+                assertNull(vector.getObject(1), vector.getName());
+                assertEquals(1, vector.getNullCount(), vector.getName());
+            }
+            assertRow(root, 2, 2);
+
+            assertTrue(reader.loadRecordBatch(blocks.get(1)));
+            assertEquals(1, root.getRowCount());
+            assertRow(root, 0, 3);
+        }
+    }
+
+    private static void assertRow(VectorSchemaRoot root, int row, int i) {
+        assertEquals((byte) (i - 1), root.getVector("C_TINYINT").getObject(row));
+        assertEquals((short) -300, root.getVector("C_SMALLINT").getObject(row));
+        assertEquals(70000 + i, root.getVector("C_INTEGER").getObject(row));
+        assertEquals(1L << 40 | i, root.getVector("C_BIGINT").getObject(row));
+        assertEquals(1.5f, root.getVector("C_REAL").getObject(row));
+        assertEquals(-2.25d, root.getVector("C_DOUBLE").getObject(row));
+        assertEquals(new BigDecimal("-12345678901234567.8" + i).setScale(2), root.getVector("C_DECIMAL").getObject(row));
+        assertEquals("3.14159", root.getVector("C_NUMBER").getObject(row).toString());
+        assertEquals(i % 2 == 0, root.getVector("C_BOOLEAN").getObject(row));
+        assertEquals((int) LocalDate.parse("2023-02-2" + i).toEpochDay(), root.getVector("C_DATE").getObject(row));
+        assertEquals(LocalDateTime.parse("1970-01-01T13:45:0" + i), root.getVector("C_TIME").getObject(row));
+        assertEquals(LocalDateTime.parse("1969-12-31T23:59:59.12345" + i), root.getVector("C_TIMESTAMP").getObject(row));
+        assertArrayEquals(new byte[]{1, (byte) 0xFF, (byte) i}, (byte[]) root.getVector("C_BINARY").getObject(row));
+        assertEquals("zeichen äöü " + i, root.getVector("C_VARCHAR").getObject(row).toString());
+    }
+
+    @Test
+    void rollsOverToTheNextPart() throws Exception {
+        List<Path> parts;
+        try (ArrowFileWriter writer = writer(1)) {
+            writer.write(TestBatches.of(columns(), Arrays.<Object[]>asList(row(1))));
+            writer.write(TestBatches.of(columns(), Arrays.<Object[]>asList(row(2))));
+            writer.finish();
+            parts = writer.getParts();
+        }
+        assertEquals(List.of(dir.resolve("T-1-0001.arrow"), dir.resolve("T-1-0002.arrow")), parts);
+        for (int p = 0; p < parts.size(); p++) {
+            try (BufferAllocator allocator = new RootAllocator();
+                 SeekableByteChannel channel = Files.newByteChannel(parts.get(p));
+                 ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+                assertEquals(1, reader.getRecordBlocks().size());
+                assertTrue(reader.loadNextBatch());
+                assertRow(reader.getVectorSchemaRoot(), 0, p + 1);
+            }
+        }
+    }
+
+    @Test
+    void discardsAnIncompletePart() throws Exception {
+        try (ArrowFileWriter writer = writer(Long.MAX_VALUE)) {
+            writer.write(TestBatches.of(columns(), Arrays.<Object[]>asList(row(1))));
+        }
+        try (var files = Files.list(dir)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
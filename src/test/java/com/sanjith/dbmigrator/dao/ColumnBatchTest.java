@@ -0,0 +1,132 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+class ColumnBatchTest {
+
+    private static LinkedHashMap<String, Integer> columns() {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        columns.put("ID", Types.BIGINT);
+        columns.put("NAME", Types.VARCHAR);
+        columns.put("AMOUNT", Types.DECIMAL);
+        return columns;
+    }
+
+    private static List<Object[]> rows(int from, int to) {
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = from; id < to; id++) {
+            rows.add(new Object[]{id, id % 3 == 0 ? null : "name " + id, new BigDecimal(id + ".25")});
+        }
+        return rows;
+    }
+
+    @Test
+    void sliceReadsTheRowsOfItsRange() throws Exception {
+        ColumnBatch batch = TestBatches.of(columns(), rows(0, 10));
+        ColumnBatch slice = batch.slice(3, 7);
+        assertEquals(4, slice.size());
+        assertEquals(3, slice.getColumnCount());
+        assertEquals(Types.VARCHAR, slice.getType(1));
+        for (int row = 0; row < slice.size(); row++) {
+            assertEquals(3L + row, slice.getValue(row, 0));
+            assertEquals(batch.isNull(3 + row, 1), slice.isNull(row, 1));
+            assertEquals(batch.getValue(3 + row, 2), slice.getValue(row, 2));
+        }
+        assertTrue(slice.isNull(0, 1));
+        assertNull(slice.getValue(0, 1));
+    }
+
+    @Test
+    void sliceOfASliceAddsTheOffsets() throws Exception {
+        ColumnBatch batch = TestBatches.of(columns(), rows(0, 10));
+        ColumnBatch slice = batch.slice(2, 9).slice(3, 5);
+        assertEquals(2, slice.size());
+        assertEquals(5L, slice.getValue(0, 0));
+        assertEquals(6L, slice.getValue(1, 0));
+        assertEquals(0, batch.slice(4, 4).size());
+    }
+
+    @Test
+    void sliceIsBoundedByItsRows() throws Exception {
+        ColumnBatch slice = TestBatches.of(columns(), rows(0, 10)).slice(2, 6);
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.slice(0, 5));
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.slice(-1, 2));
+        assertThrows(IndexOutOfBoundsException.class, () -> slice.slice(3, 2));
+    }
+
+    @Test
+    void sliceCannotAddOrRemoveRows() throws Exception {
+        ColumnBatch batch = TestBatches.of(columns(), rows(0, 10));
+        ColumnBatch slice = batch.slice(2, 6);
+        assertThrows(IllegalStateException.class, slice::clear);
+        assertThrows(IllegalStateException.class, slice::release);
+        assertThrows(IllegalStateException.class, () -> slice.readFrom(ByteBuffer.allocate(0), 0));
+        assertThrows(IllegalStateException.class, () -> slice.readRow(null));
+        assertEquals(10, batch.size());
+        assertEquals(2L, slice.getValue(0, 0));
+    }
+
+    @Test
+    void sliceWritesTheSnapshotOfItsRows() throws Exception {
+        ColumnBatch slice = TestBatches.of(columns(), rows(0, 10)).slice(4, 9);
+        ColumnBatch same = TestBatches.of(columns(), rows(4, 9));
+        assertArrayEquals(snapshot(same), snapshot(slice));
+
+        ColumnBatch read = new ColumnBatch(new RowCopier(new LinkedHashSet<>(columns().keySet()), columns(),
+                new int[]{Types.BIGINT, Types.VARCHAR, Types.DECIMAL}), 5, null);
+        read.readFrom(ByteBuffer.wrap(snapshot(slice)), 5);
+        for (int row = 0; row < 5; row++) {
+            for (int c = 0; c < 3; c++) {
+                assertEquals(slice.getValue(row, c), read.getValue(row, c));
+            }
+        }
+    }
+
+    @Test
+    void sliceEstimatesItsShareOfTheBuffers() throws Exception {
+        ColumnBatch batch = TestBatches.of(columns(), rows(0, 10));
+        long whole = batch.estimateBytes();
+        long first = batch.slice(0, 5).estimateBytes();
+        long second = batch.slice(5, 10).estimateBytes();
+        assertTrue(first > 0 && first < whole, first + " of " + whole);
+        assertTrue(second > 0 && second <= whole, second + " of " + whole);
+        assertEquals(0, batch.slice(0, 0).estimateBytes());
+    }
+
+    @Test
+    void estimatesTheDataOfItsRowsNotTheCapacity() throws Exception {
+        ColumnBatch full = TestBatches.of(columns(), rows(0, 10));
+        ColumnBatch sparse = TestBatches.of(columns(), rows(0, 10), 1000);
+        assertEquals(full.estimateDataBytes(), sparse.estimateDataBytes());
+        assertTrue(sparse.estimateBytes() > 10 * sparse.estimateDataBytes(), sparse.estimateBytes() + " vs " + sparse.estimateDataBytes());
+
+        ColumnBatch twice = TestBatches.of(columns(), rows(0, 20), 1000);
+        long first = twice.slice(0, 10).estimateDataBytes();
+        assertEquals(full.estimateDataBytes(), first);
+        assertEquals(twice.estimateDataBytes(), first + twice.slice(10, 20).estimateDataBytes());
+    }
+
+    private static byte[] snapshot(ColumnBatch batch) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            batch.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,166 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+
+class InsertPlanTest {
+
+    private static final String DB2 = "jdbc:db2://host:50000/DB";
+
+    private static final String ORACLE = "jdbc:oracle:thin:@host:1521/ORCL";
+
+    private static final String MYSQL = "jdbc:mysql://host:3306/db";
+
+    private static final String MARIADB = "jdbc:mariadb://host:3306/db";
+
+    private static final String POSTGRES = "jdbc:postgresql://host:5432/db";
+
+    private static final String SQLSERVER = "jdbc:sqlserver://host:1433;databaseName=db";
+
+    private static LinkedHashSet<String> columns(String... names) {
+        return new LinkedHashSet<>(List.of(names));
+    }
+
+    private static InsertPlan upsert(String jdbcUrl, int rowsPerStatement, List<String> keyColumns, String... columns) {
+        return new InsertPlan("T", columns(columns), rowsPerStatement).withUpsert(keyColumns, jdbcUrl);
+    }
+
+    @Test
+    void insertsOneRow() {
+        InsertPlan plan = new InsertPlan("T", columns("ID", "NAME", "AMOUNT"), 1);
+        assertEquals("INSERT INTO T (ID,NAME,AMOUNT) VALUES (?,?,?)", plan.getSql(1));
+        assertFalse(plan.isUpsert());
+    }
+
+    @Test
+    void insertsOneColumn() {
+        assertEquals("INSERT INTO T (ID) VALUES (?),(?)", new InsertPlan("T", columns("ID"), 2).getSql(2));
+    }
+
+    @Test
+    void insertsSeveralRowsWithATailStatement() {
+        InsertPlan plan = new InsertPlan("T", columns("ID", "NAME"), 3);
+        assertEquals(3, plan.getRowsPerStatement());
+        assertEquals("INSERT INTO T (ID,NAME) VALUES (?,?),(?,?),(?,?)", plan.getSql(3));
+        assertEquals("INSERT INTO T (ID,NAME) VALUES (?,?),(?,?)", plan.getSql(2));
+        assertEquals("INSERT INTO T (ID,NAME) VALUES (?,?)", plan.getSql(1));
+        assertSame(plan.getSql(2), plan.getSql(2));
+    }
+
+    @Test
+    void insertsAtLeastOneRowPerStatement() {
+        InsertPlan plan = new InsertPlan("T", columns("ID"), 0);
+        assertEquals(1, plan.getRowsPerStatement());
+        assertEquals("INSERT INTO T (ID) VALUES (?)", plan.getSql(1));
+    }
+
+    @Test
+    void hintsSingleRowStatements() {
+        InsertPlan plan = new InsertPlan("T", columns("ID", "NAME"), 5).withHint("APPEND_VALUES");
+        assertEquals(1, plan.getRowsPerStatement());
+        assertEquals("INSERT /*+ APPEND_VALUES */ INTO T (ID,NAME) VALUES (?,?)", plan.getSql(1));
+    }
+
+    @Test
+    void limitsParametersPerDriver() {
+        assertEquals(65535, InsertPlan.getParameterLimit(MYSQL));
+        assertEquals(65535, InsertPlan.getParameterLimit(MARIADB));
+        assertEquals(65535, InsertPlan.getParameterLimit(ORACLE));
+        assertEquals(32767, InsertPlan.getParameterLimit(DB2));
+        assertEquals(32767, InsertPlan.getParameterLimit(POSTGRES));
+        assertEquals(2100, InsertPlan.getParameterLimit(SQLSERVER));
+        assertEquals(2000, InsertPlan.getParameterLimit("jdbc:h2:mem:test"));
+        assertEquals(2000, InsertPlan.getParameterLimit(null));
+        assertFalse(InsertPlan.supportsMultiRow(ORACLE));
+        assertFalse(InsertPlan.supportsMultiRow("JDBC:ORACLE:thin:@host:1521/ORCL"));
+        assertTrue(InsertPlan.supportsMultiRow(DB2));
+        assertTrue(InsertPlan.supportsMultiRow(null));
+    }
+
+    @Test
+    void upsertsWithOnDuplicateKeyOnMySql() {
+        InsertPlan plan = upsert(MYSQL, 2, List.of("ID"), "ID", "NAME", "AMOUNT");
+        assertTrue(plan.isUpsert());
+        assertEquals("INSERT INTO T (ID,NAME,AMOUNT) VALUES (?,?,?),(?,?,?) ON DUPLICATE KEY UPDATE NAME=VALUES(NAME),AMOUNT=VALUES(AMOUNT)",
+                plan.getSql(2));
+        assertEquals("INSERT INTO T (ID,NAME,AMOUNT) VALUES (?,?,?) ON DUPLICATE KEY UPDATE NAME=VALUES(NAME),AMOUNT=VALUES(AMOUNT)",
+                plan.getSql(1));
+        assertEquals("INSERT INTO T (ID,NAME,AMOUNT) SELECT ID,NAME,AMOUNT FROM T_STG ON DUPLICATE KEY UPDATE NAME=VALUES(NAME),AMOUNT=VALUES(AMOUNT)",
+                plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void assignsAKeyColumnToItselfOnMySqlWithoutOtherColumns() {
+        InsertPlan plan = upsert(MARIADB, 1, List.of("ID", "CODE"), "ID", "CODE");
+        assertEquals("INSERT INTO T (ID,CODE) VALUES (?,?) ON DUPLICATE KEY UPDATE ID=ID", plan.getSql(1));
+        assertEquals("INSERT INTO T (ID,CODE) SELECT ID,CODE FROM T_STG ON DUPLICATE KEY UPDATE ID=ID", plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void upsertsWithOnConflictOnPostgres() {
+        InsertPlan plan = upsert(POSTGRES, 2, List.of("ID", "CODE"), "ID", "CODE", "NAME");
+        assertEquals("INSERT INTO T (ID,CODE,NAME) VALUES (?,?,?),(?,?,?) ON CONFLICT (ID,CODE) DO UPDATE SET NAME=EXCLUDED.NAME",
+                plan.getSql(2));
+        assertEquals("INSERT INTO T (ID,CODE,NAME) SELECT ID,CODE,NAME FROM T_STG ON CONFLICT (ID,CODE) DO UPDATE SET NAME=EXCLUDED.NAME",
+                plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void ignoresConflictsOnPostgresWithoutOtherColumns() {
+        InsertPlan plan = upsert(POSTGRES, 1, List.of("ID"), "ID");
+        assertEquals("INSERT INTO T (ID) VALUES (?) ON CONFLICT (ID) DO NOTHING", plan.getSql(1));
+        assertEquals("INSERT INTO T (ID) SELECT ID FROM T_STG ON CONFLICT (ID) DO NOTHING", plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void mergesValuesOnDb2() {
+        InsertPlan plan = upsert(DB2, 2, List.of("ID"), "ID", "NAME");
+        assertEquals("MERGE INTO T t USING (VALUES (?,?),(?,?)) AS s (ID,NAME) ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME)", plan.getSql(2));
+        assertEquals("MERGE INTO T t USING (VALUES (?,?)) AS s (ID,NAME) ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME)", plan.getSql(1));
+        assertEquals("MERGE INTO T t USING T_STG s ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME)", plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void mergesSelectsFromDualOnOracle() {
+        InsertPlan plan = upsert(ORACLE, 2, List.of("ID"), "ID", "NAME");
+        assertEquals("MERGE INTO T t USING (SELECT ? ID,? NAME FROM DUAL UNION ALL SELECT ? ID,? NAME FROM DUAL) s ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME)", plan.getSql(2));
+        assertEquals("MERGE INTO T t USING (SELECT ? ID,? NAME FROM DUAL) s ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME)", plan.getSql(1));
+    }
+
+    @Test
+    void mergesOnlyNewRowsWithoutOtherColumns() {
+        InsertPlan plan = upsert(ORACLE, 1, List.of("ID", "CODE"), "ID", "CODE");
+        assertEquals("MERGE INTO T t USING (SELECT ? ID,? CODE FROM DUAL) s ON (t.ID = s.ID AND t.CODE = s.CODE)"
+                + " WHEN NOT MATCHED THEN INSERT (ID,CODE) VALUES (s.ID,s.CODE)", plan.getSql(1));
+    }
+
+    @Test
+    void terminatesMergeOnSqlServer() {
+        InsertPlan plan = upsert(SQLSERVER, 1, List.of("ID"), "ID", "NAME");
+        assertEquals("MERGE INTO T t USING (VALUES (?,?)) AS s (ID,NAME) ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME);", plan.getSql(1));
+        assertEquals("MERGE INTO T t USING T_STG s ON (t.ID = s.ID)"
+                + " WHEN MATCHED THEN UPDATE SET NAME = s.NAME WHEN NOT MATCHED THEN INSERT (ID,NAME) VALUES (s.ID,s.NAME);", plan.getMergeSql("T_STG"));
+    }
+
+    @Test
+    void matchesColumnsInOrder() {
+        InsertPlan plan = new InsertPlan("T", columns("ID", "NAME"), 1);
+        assertTrue(plan.matches(columns("ID", "NAME")));
+        assertFalse(plan.matches(columns("NAME", "ID")));
+        assertFalse(plan.matches(columns("ID")));
+        assertEquals(2, plan.getColumnCount());
+    }
+}
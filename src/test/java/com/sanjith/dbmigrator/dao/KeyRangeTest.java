@@ -0,0 +1,86 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class KeyRangeTest {
+
+    @Test
+    void wholeTableHasNoPredicate() {
+        KeyRange range = KeyRange.wholeTable();
+        assertEquals("", range.getPredicate());
+        assertArrayEquals(new Object[0], range.getParameters());
+        assertEquals(null, range.getColumn());
+    }
+
+    @Test
+    void boundedRangeIsHalfOpen() {
+        KeyRange range = new KeyRange(2, "ID", 100L, 200L, false);
+        assertEquals("ID >= ? AND ID < ?", range.getPredicate());
+        assertArrayEquals(new Object[]{100L, 200L}, range.getParameters());
+    }
+
+    @Test
+    void openLowerEndReadsNulls() {
+        KeyRange range = new KeyRange(1, "ID", null, 100L, true);
+        assertEquals("(ID < ? OR ID IS NULL)", range.getPredicate());
+        assertArrayEquals(new Object[]{100L}, range.getParameters());
+    }
+
+    @Test
+    void openUpperEnd() {
+        KeyRange range = new KeyRange(3, "ID", 200L, null, false);
+        assertEquals("ID >= ?", range.getPredicate());
+        assertArrayEquals(new Object[]{200L}, range.getParameters());
+    }
+
+    @Test
+    void unboundedRangeOfAColumnReadsEverything() {
+        assertEquals("", new KeyRange(1, "ID", null, null, true).getPredicate());
+        assertEquals("", new KeyRange(1, "ID", null, null, false).getPredicate());
+        assertArrayEquals(new Object[0], new KeyRange(1, "ID", null, null, true).getParameters());
+    }
+
+    @Test
+    void watermarkRangeIsOpenBelowAndClosedAbove() {
+        KeyRange range = new KeyRange(1, "UPDATED", 10L, true, 20L, true, false);
+        assertEquals("UPDATED > ? AND UPDATED <= ?", range.getPredicate());
+        assertArrayEquals(new Object[]{10L, 20L}, range.getParameters());
+        assertTrue(range.isLowerExclusive());
+        assertTrue(range.isUpperInclusive());
+    }
+
+    @Test
+    void resumesAfterTheCommittedKey() {
+        KeyRange range = new KeyRange(2, "ID", 100L, 200L, false).resumeAfter(150L);
+        assertEquals(2, range.getId());
+        assertEquals("ID > ? AND ID < ?", range.getPredicate());
+        assertArrayEquals(new Object[]{150L, 200L}, range.getParameters());
+        assertTrue(range.isLowerExclusive());
+        assertFalse(range.isUpperInclusive());
+    }
+
+    @Test
+    void resumedRangeKeepsTheUpperBoundType() {
+        KeyRange range = new KeyRange(1, "UPDATED", 10L, true, 20L, true, false).resumeAfter(15L);
+        assertEquals("UPDATED > ? AND UPDATED <= ?", range.getPredicate());
+        assertArrayEquals(new Object[]{15L, 20L}, range.getParameters());
+    }
+
+    @Test
+    void resumedRangeDropsNulls() {
+        // only ranges of a primary key column are resumed by key, they hold no NULL keys
+        KeyRange first = new KeyRange(1, "ID", null, 100L, true).resumeAfter(50L);
+        assertFalse(first.isIncludeNulls());
+        assertEquals("ID > ? AND ID < ?", first.getPredicate());
+        assertArrayEquals(new Object[]{50L, 100L}, first.getParameters());
+
+        KeyRange last = new KeyRange(3, "ID", 200L, null, true).resumeAfter(250L);
+        assertEquals("ID > ?", last.getPredicate());
+        assertArrayEquals(new Object[]{250L}, last.getParameters());
+    }
+}
@@ -0,0 +1,165 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+class SnapshotRoundTripTest {
+
+    private static final int BLOCK_ROWS = 40;
+
+    private static final int TOTAL_ROWS = 130;
+
+    @TempDir
+    Path dir;
+
+    private static LinkedHashMap<String, Integer> columns() {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        columns.put("ID", Types.BIGINT);
+        columns.put("PRICE", Types.DOUBLE);
+        columns.put("AMOUNT", Types.DECIMAL);
+        columns.put("DAY", Types.DATE);
+        columns.put("CREATED", Types.TIMESTAMP);
+        columns.put("NAME", Types.VARCHAR);
+        columns.put("ACTIVE", Types.BOOLEAN);
+        columns.put("DATA", Types.BLOB);
+        columns.put("NOTES", Types.CLOB);
+        return columns;
+    }
+
+    /**
+     * Every column but ID is NULL in one row out of 7, a different row per column. Row 17 has LOBs larger than the
+     * inline limit
+     */
+    private static Object[] row(long id) {
+        Object[] row = new Object[9];
+        row[0] = id;
+        row[1] = id * 1.5;
+        row[2] = new BigDecimal(id + ".125");
+        row[3] = Date.valueOf(LocalDate.of(2023, 1, 1).plusDays(id));
+        Timestamp created = new Timestamp(1_690_000_000_000L + id * 1000);
+        created.setNanos(123_456_000);
+        row[4] = created;
+        row[5] = "name " + id + " é";
+        row[6] = id % 2 == 0;
+        int lobLength = id == 17 ? ColumnVector.INLINE_LIMIT + 1000 : 100;
+        byte[] data = new byte[lobLength];
+        Arrays.fill(data, (byte) id);
+        row[7] = data;
+        row[8] = "nöte ".repeat(lobLength / 5) + id;
+        for (int c = 1; c < row.length; c++) {
+            if (id % 7 == c - 1) {
+                row[c] = null;
+            }
+        }
+        return row;
+    }
+
+    private Path write(boolean compress) throws Exception {
+        LinkedHashMap<String, Integer> columns = columns();
+        int[] typeArr = columns.values().stream().mapToInt(Integer::intValue).toArray();
+        Path file = dir.resolve(compress ? "deflated.snap" : "plain.snap");
+        try (SnapshotWriter writer = new SnapshotWriter(file, columns.keySet(), typeArr, compress)) {
+            for (int from = 0; from < TOTAL_ROWS; from += BLOCK_ROWS) {
+                List<Object[]> rows = new ArrayList<>();
+                for (long id = from; id < Math.min(from + BLOCK_ROWS, TOTAL_ROWS); id++) {
+                    rows.add(row(id));
+                }
+                writer.append(TestBatches.of(columns, rows, BLOCK_ROWS));
+            }
+            assertEquals(TOTAL_ROWS, writer.finish());
+        }
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".tmp")));
+        return file;
+    }
+
+    private void readBack(Path file) throws Exception {
+        try (SnapshotReader reader = new SnapshotReader(file)) {
+            assertEquals(columns(), reader.getColumnMetaData());
+            assertEquals(TOTAL_ROWS, reader.getRowCount());
+            assertEquals(4, reader.getBlockCount());
+            assertEquals(BLOCK_ROWS, reader.getMaxBlockRows());
+
+            int[] typeArr = reader.getColumnMetaData().values().stream().mapToInt(Integer::intValue).toArray();
+            RowCopier copier = new RowCopier(new LinkedHashSet<>(reader.getColumnMetaData().keySet()), reader.getColumnMetaData(), typeArr);
+            ColumnBatch batch = new ColumnBatch(copier, reader.getMaxBlockRows(), null);
+            List<SnapshotReader.Segment> segments = reader.split(3);
+            assertEquals(3, segments.size());
+            long id = 0;
+            try {
+                for (SnapshotReader.Segment segment : segments) {
+                    long segmentRows = 0;
+                    while (segment.next(batch)) {
+                        for (int r = 0; r < batch.size(); r++) {
+                            assertRow(row(id++), batch, r);
+                        }
+                        segmentRows += batch.size();
+                        batch.clear();
+                    }
+                    assertEquals(segment.getRowCount(), segmentRows, segment.toString());
+                    assertFalse(segment.next(batch));
+                    segment.close();
+                }
+            } finally {
+                copier.cleanup();
+            }
+            assertEquals(TOTAL_ROWS, id);
+        }
+    }
+
+    private static void assertRow(Object[] expected, ColumnBatch batch, int r) {
+        for (int c = 0; c < expected.length; c++) {
+            String message = "row " + expected[0] + " column " + c;
+            assertEquals(expected[c] == null, batch.isNull(r, c), message);
+            if (expected[c] instanceof byte[]) {
+                assertArrayEquals((byte[]) expected[c], (byte[]) batch.getValue(r, c), message);
+            } else {
+                assertEquals(expected[c], batch.getValue(r, c), message);
+            }
+        }
+    }
+
+    @Test
+    void plainSnapshotReadsBackEveryRow() throws Exception {
+        readBack(write(false));
+    }
+
+    @Test
+    void deflatedSnapshotReadsBackEveryRow() throws Exception {
+        Path deflated = write(true);
+        readBack(deflated);
+        assertTrue(Files.size(deflated) < Files.size(write(false)));
+    }
+
+    @Test
+    void truncatedSnapshotIsRejected() throws Exception {
+        byte[] bytes = Files.readAllBytes(write(true));
+        Path truncated = dir.resolve("truncated.snap");
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+        IOException e = assertThrows(IOException.class, () -> new SnapshotReader(truncated));
+        assertTrue(e.getMessage().contains("not a complete snapshot"), e.getMessage());
+
+        Files.write(truncated, Arrays.copyOf(bytes, 20));
+        assertThrows(IOException.class, () -> new SnapshotReader(truncated));
+    }
+}
@@ -0,0 +1,59 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class StagingTablesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tablesWithACommonPrefixGetDifferentNames() {
+        StagingTables orders = new StagingTables(dir.toString(), "APP", "CUSTOMER_ORDER_HISTORY_ARCHIVE_2022", null, 7);
+        StagingTables items = new StagingTables(dir.toString(), "APP", "CUSTOMER_ORDER_HISTORY_ARCHIVE_2023", null, 7);
+        String first = orders.nextName();
+        assertNotEquals(first, items.nextName());
+        assertTrue(first.length() <= 30, first);
+        assertNotEquals(first, orders.nextName());
+    }
+
+    @Test
+    void runsGetDifferentNames() {
+        String first = new StagingTables(dir.toString(), "APP", "ORDERS", null, 1).nextName();
+        String second = new StagingTables(dir.toString(), "APP", "ORDERS", null, 2).nextName();
+        assertNotEquals(first, second);
+        assertNotEquals("ORDERS_STG1", first);
+    }
+
+    @Test
+    void recordsStagingTablesUntilDropped() throws Exception {
+        StagingTables stagingTables = new StagingTables(dir.toString(), "APP", "ORDERS", null, 1);
+        Path file = dir.resolve("APP.ORDERS.staging");
+        String first = stagingTables.nextName();
+        String second = stagingTables.nextName();
+        stagingTables.register(first);
+        stagingTables.register(second);
+        assertEquals(List.of(first, second), Files.readAllLines(file));
+
+        stagingTables.unregister(first);
+        assertEquals(List.of(second), Files.readAllLines(file));
+        stagingTables.unregister(second);
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void dropLeftoversWithoutRecordDoesNothing() {
+        new StagingTables(dir.toString(), "APP", "ORDERS", null, 1).dropLeftovers();
+        assertFalse(Files.exists(dir.resolve("APP.ORDERS.staging")));
+    }
+}
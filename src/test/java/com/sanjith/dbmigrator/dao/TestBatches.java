@@ -0,0 +1,85 @@
+package com.sanjith.dbmigrator.dao;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * Builds column batches from row values for the tests, read from an in-memory result set like from a source table
+ */
+final class TestBatches {
+
+    private TestBatches() {
+    }
+
+    /**
+     * Builds a batch
+     * @param columns Column names and types in java.sql.Types, in column order
+     * @param rows    Row values, null for NULL
+     * @return batch holding the rows
+     */
+    static ColumnBatch of(LinkedHashMap<String, Integer> columns, List<Object[]> rows) throws SQLException {
+        return of(columns, rows, Math.max(1, rows.size()));
+    }
+
+    /**
+     * Builds a batch with buffers for more rows than it holds
+     * @param columns  Column names and types in java.sql.Types, in column order
+     * @param rows     Row values, null for NULL
+     * @param capacity Row capacity of the batch
+     * @return batch holding the rows
+     */
+    static ColumnBatch of(LinkedHashMap<String, Integer> columns, List<Object[]> rows, int capacity) throws SQLException {
+        int[] typeArr = columns.values().stream().mapToInt(Integer::intValue).toArray();
+        RowCopier copier = new RowCopier(new LinkedHashSet<>(columns.keySet()), columns, typeArr);
+        ColumnBatch batch = new ColumnBatch(copier, capacity, null);
+        CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(typeArr.length);
+        int c = 1;
+        for (String column : columns.keySet()) {
+            metaData.setColumnName(c, column);
+            metaData.setColumnType(c, resultSetType(typeArr[c - 1]));
+            c++;
+        }
+        rs.setMetaData(metaData);
+        for (Object[] row : rows) {
+            rs.moveToInsertRow();
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] == null) {
+                    rs.updateNull(i + 1);
+                } else {
+                    rs.updateObject(i + 1, row[i]);
+                }
+            }
+            rs.insertRow();
+        }
+        rs.moveToCurrentRow();
+        rs.beforeFirst();
+        while (rs.next()) {
+            batch.readRow(rs);
+        }
+        return batch;
+    }
+
+    /**
+     * The in-memory result set only streams LONGVARBINARY and LONGVARCHAR values, LOB columns are declared as those
+     */
+    private static int resultSetType(int sqlType) {
+        switch (sqlType) {
+            case Types.BLOB:
+                return Types.LONGVARBINARY;
+            case Types.CLOB:
+            case Types.NCLOB:
+                return Types.LONGVARCHAR;
+            default:
+                return sqlType;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.sanjith.dbmigrator.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Isolation of refused rows by {@link WriterSession}, with a writer which refuses chosen keys after writing the rows
+ * before them, like a JDBC batch which stops at the first failing row
+ */
+class WriterSessionTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Transaction of the stub connection: rows written since the last commit, with the savepoints into them
+     */
+    private final List<Long> uncommitted = new ArrayList<>();
+
+    private final List<Long> committed = new ArrayList<>();
+
+    private final Deque<Integer> savepoints = new ArrayDeque<>();
+
+    private int releasedSavepoints = 0;
+
+    private boolean releaseSupported = true;
+
+    private final List<Integer> writtenSizes = new ArrayList<>();
+
+    private class RefusingWriter implements BulkWriter {
+
+        private final Set<Long> refused;
+
+        private final Set<Long> locked;
+
+        private final boolean commitPerBatch;
+
+        private RefusingWriter(Set<Long> refused, Set<Long> locked, boolean commitPerBatch) {
+            this.refused = refused;
+            this.locked = locked;
+            this.commitPerBatch = commitPerBatch;
+        }
+
+        @Override
+        public String getName() {
+            return "refusing";
+        }
+
+        @Override
+        public void open(Connection connection, String tableName, LinkedHashSet<String> columnNames, int[] typeArr) {
+        }
+
+        @Override
+        public int write(ColumnBatch batch) throws SQLException {
+            writtenSizes.add(batch.size());
+            for (int row = 0; row < batch.size(); row++) {
+                long id = (Long) batch.getValue(row, 0);
+                if (locked.contains(id)) {
+                    throw new SQLException("deadlock on " + id, "40001", -911);
+                }
+                if (refused.contains(id)) {
+                    throw new SQLException("duplicate key " + id, "23505", 803);
+                }
+                uncommitted.add(id);
+            }
+            return batch.size();
+        }
+
+        @Override
+        public boolean isCommitPerBatch() {
+            return commitPerBatch;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "setSavepoint":
+                    savepoints.push(uncommitted.size());
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Savepoint.class}, (p, m, a) -> null);
+                case "releaseSavepoint":
+                    if (!releaseSupported) {
+                        throw new SQLFeatureNotSupportedException("no release");
+                    }
+                    savepoints.pop();
+                    releasedSavepoints++;
+                    return null;
+                case "rollback":
+                    if (args == null) {
+                        uncommitted.clear();
+                        savepoints.clear();
+                    } else {
+                        int size = savepoints.pop();
+                        uncommitted.subList(size, uncommitted.size()).clear();
+                    }
+                    return null;
+                case "commit":
+                    committed.addAll(uncommitted);
+                    uncommitted.clear();
+                    savepoints.clear();
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private static ColumnBatch batch(int rows) throws SQLException {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        columns.put("ID", Types.BIGINT);
+        columns.put("NAME", Types.VARCHAR);
+        List<Object[]> values = new ArrayList<>();
+        for (long id = 0; id < rows; id++) {
+            values.add(new Object[]{id, "name\t" + id});
+        }
+        return TestBatches.of(columns, values);
+    }
+
+    private WriterSession session(BulkWriter writer) throws SQLException {
+        LinkedHashSet<String> columns = new LinkedHashSet<>(List.of("ID", "NAME"));
+        return new WriterSession(connection(), writer, "T", columns, new int[]{Types.BIGINT, Types.VARCHAR}, CommitPolicy.TABLE, 1);
+    }
+
+    private RejectLog rejectLog(long maxRejects) throws Exception {
+        return new RejectLog(dir.toString(), "T.rejects", List.of("ID", "NAME"), maxRejects, false);
+    }
+
+    private List<String> rejectedLines() throws Exception {
+        return Files.readAllLines(dir.resolve("T.rejects"));
+    }
+
+    @Test
+    void writesTheRowsAroundRefusedRows() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(3L, 64L, 65L, 99L), Set.of(), false));
+             RejectLog rejectLog = rejectLog(-1)) {
+            session.setRejectLog(rejectLog);
+            assertEquals(96, session.write(batch(100), 0));
+            assertEquals(96, session.getUncommittedRows());
+            session.commit();
+            assertEquals(4, rejectLog.getRejectedRows());
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long id = 0; id < 100; id++) {
+            if (id != 3 && id != 64 && id != 65 && id != 99) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, committed);
+        assertTrue(savepoints.isEmpty());
+
+        List<String> lines = rejectedLines();
+        assertEquals("SQLSTATE\tERRORCODE\tMESSAGE\tID\tNAME", lines.get(0));
+        assertEquals(List.of("23505\t803\tduplicate key 3\t3\tname\\t3", "23505\t803\tduplicate key 64\t64\tname\\t64",
+                "23505\t803\tduplicate key 65\t65\tname\\t65", "23505\t803\tduplicate key 99\t99\tname\\t99"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    void writesGoodRowsInHalvesNotRowByRow() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(500L), Set.of(), false));
+             RejectLog rejectLog = rejectLog(-1)) {
+            session.setRejectLog(rejectLog);
+            assertEquals(1023, session.write(batch(1024), 0));
+        }
+        // the full batch, then the two halves of every level down to the refused row
+        List<Integer> expected = new ArrayList<>(List.of(1024));
+        for (int size = 512; size >= 1; size /= 2) {
+            expected.add(size);
+            expected.add(size);
+        }
+        writtenSizes.sort(Collections.reverseOrder());
+        assertEquals(expected, writtenSizes);
+    }
+
+    @Test
+    void writesCleanBatchesOnce() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(), Set.of(), false));
+             RejectLog rejectLog = rejectLog(-1)) {
+            session.setRejectLog(rejectLog);
+            assertEquals(50, session.write(batch(50), 0));
+            session.commit();
+            assertEquals(0, rejectLog.getRejectedRows());
+        }
+        assertEquals(List.of(50), writtenSizes);
+        assertEquals(1, releasedSavepoints);
+        assertEquals(50, committed.size());
+        assertEquals(List.of("SQLSTATE\tERRORCODE\tMESSAGE\tID\tNAME"), rejectedLines());
+    }
+
+    @Test
+    void keepsSavepointsWhereReleaseIsNotSupported() throws Exception {
+        releaseSupported = false;
+        try (WriterSession session = session(new RefusingWriter(Set.of(7L), Set.of(), false));
+             RejectLog rejectLog = rejectLog(-1)) {
+            session.setRejectLog(rejectLog);
+            assertEquals(15, session.write(batch(16), 0));
+            assertEquals(15, session.write(batch(16).slice(8, 16), 0) + 7);
+            session.commit();
+        }
+        assertEquals(0, releasedSavepoints);
+        assertEquals(15 + 8, committed.size());
+    }
+
+    @Test
+    void failsOnceTheRejectLimitIsExceeded() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(1L, 2L, 3L), Set.of(), false));
+             RejectLog rejectLog = rejectLog(2)) {
+            session.setRejectLog(rejectLog);
+            SQLException e = assertThrows(SQLException.class, () -> session.write(batch(10), 0));
+            assertTrue(e.getMessage().contains("maximum of 2"), e.getMessage());
+            assertEquals(3, rejectLog.getRejectedRows());
+        }
+        assertEquals(3, rejectedLines().size() - 1);
+        assertTrue(committed.isEmpty());
+    }
+
+    @Test
+    void acceptsRejectsUpToTheLimit() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(1L, 2L), Set.of(), false));
+             RejectLog rejectLog = rejectLog(2)) {
+            session.setRejectLog(rejectLog);
+            assertEquals(8, session.write(batch(10), 0));
+        }
+    }
+
+    @Test
+    void leavesLockConflictsToTheCaller() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(), Set.of(5L), false));
+             RejectLog rejectLog = rejectLog(-1)) {
+            session.setRejectLog(rejectLog);
+            SQLException e = assertThrows(SQLException.class, () -> session.write(batch(10), 0));
+            assertTrue(DbUtils.isLockConflict(e));
+            assertEquals(0, rejectLog.getRejectedRows());
+        }
+        assertEquals(List.of(10), writtenSizes);
+    }
+
+    @Test
+    void failsTheBatchWithoutARejectLog() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(5L), Set.of(), false))) {
+            assertThrows(SQLException.class, () -> session.write(batch(10), 0));
+        }
+        assertEquals(List.of(10), writtenSizes);
+    }
+
+    @Test
+    void refusesWritersWhichCommitEveryBatch() throws Exception {
+        try (WriterSession session = session(new RefusingWriter(Set.of(), Set.of(), true));
+             RejectLog rejectLog = rejectLog(-1)) {
+            assertThrows(IllegalArgumentException.class, () -> session.setRejectLog(rejectLog));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.sanjith.dbmigrator.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sanjith.dbmigrator.dao.KeyRange;
+import com.sanjith.dbmigrator.dao.RowBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+class CheckpointStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private CheckpointStore store() {
+        return new CheckpointStore(dir.toString(), "SRC.T", "DEST.T");
+    }
+
+    private static List<KeyRange> ranges(Object first, Object second) {
+        return List.of(new KeyRange(1, "ID", null, first, true), new KeyRange(2, "ID", first, second, false),
+                new KeyRange(3, "ID", second, null, false));
+    }
+
+    private static RowBatch batch(KeyRange range, int sequence, Object lastKey) {
+        return new RowBatch(sequence + 1, range, sequence, null, lastKey);
+    }
+
+    private CheckpointStore reload() throws Exception {
+        CheckpointStore loaded = store();
+        assertTrue(loaded.exists());
+        loaded.load();
+        return loaded;
+    }
+
+    @Test
+    void freshCheckpointResumesEveryRange() throws Exception {
+        List<KeyRange> ranges = ranges(100L, 200L);
+        CheckpointStore store = store();
+        assertFalse(store.exists());
+        store.begin(ranges, Types.BIGINT, true);
+        assertTrue(Files.exists(dir.resolve("SRC.T-DEST.T.checkpoint")));
+
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertEquals(3, pending.size());
+        assertEquals("(ID < ? OR ID IS NULL)", pending.get(0).getPredicate());
+        assertArrayEquals(new Object[]{100L}, pending.get(0).getParameters());
+        assertEquals("ID >= ? AND ID < ?", pending.get(1).getPredicate());
+        assertArrayEquals(new Object[]{100L, 200L}, pending.get(1).getParameters());
+        assertEquals("ID >= ?", pending.get(2).getPredicate());
+        assertArrayEquals(new Object[]{200L}, pending.get(2).getParameters());
+        assertTrue(reload().isOrdered());
+        assertFalse(reload().isComplete());
+    }
+
+    @Test
+    void committedKeyWaitsForEarlierBatches() throws Exception {
+        List<KeyRange> ranges = ranges(100L, 200L);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.BIGINT, true);
+        KeyRange range = ranges.get(1);
+
+        store.batchCommitted(batch(range, 2, 130L));
+        store.batchCommitted(batch(range, 1, 120L));
+        // batch 0 is still open, nothing of the range is committed
+        assertEquals("ID >= ? AND ID < ?", reload().getPendingRanges().get(1).getPredicate());
+
+        store.batchCommitted(batch(range, 0, 110L));
+        KeyRange resumed = reload().getPendingRanges().get(1);
+        assertEquals("ID > ? AND ID < ?", resumed.getPredicate());
+        assertArrayEquals(new Object[]{130L, 200L}, resumed.getParameters());
+
+        store.batchCommitted(batch(range, 4, 150L));
+        assertArrayEquals(new Object[]{130L, 200L}, reload().getPendingRanges().get(1).getParameters());
+        store.batchCommitted(batch(range, 3, 140L));
+        assertArrayEquals(new Object[]{150L, 200L}, reload().getPendingRanges().get(1).getParameters());
+    }
+
+    @Test
+    void resumedFirstRangeDropsNulls() throws Exception {
+        List<KeyRange> ranges = ranges(100L, 200L);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.BIGINT, true);
+        store.batchCommitted(batch(ranges.get(0), 0, 50L));
+
+        KeyRange resumed = reload().getPendingRanges().get(0);
+        assertFalse(resumed.isIncludeNulls());
+        assertEquals("ID > ? AND ID < ?", resumed.getPredicate());
+        assertArrayEquals(new Object[]{50L, 100L}, resumed.getParameters());
+    }
+
+    @Test
+    void unorderedBatchesOnlyCompleteRanges() throws Exception {
+        List<KeyRange> ranges = ranges(100L, 200L);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.BIGINT, false);
+        store.batchCommitted(batch(ranges.get(0), 0, null));
+        assertEquals(3, reload().getPendingRanges().size());
+        assertEquals("(ID < ? OR ID IS NULL)", reload().getPendingRanges().get(0).getPredicate());
+
+        store.rangeExtracted(ranges.get(0), 2);
+        assertEquals(3, reload().getPendingRanges().size());
+        store.batchCommitted(batch(ranges.get(0), 1, null));
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertEquals(2, pending.size());
+        assertEquals(2, pending.get(0).getId());
+        assertFalse(reload().isOrdered());
+    }
+
+    @Test
+    void rangeWithoutBatchesIsDoneWhenExtracted() throws Exception {
+        List<KeyRange> ranges = ranges(100L, 200L);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.BIGINT, true);
+        store.rangeExtracted(ranges.get(2), 0);
+        assertEquals(List.of(1, 2), reload().getPendingRanges().stream().map(KeyRange::getId).toList());
+    }
+
+    @Test
+    void completeLeavesNothingPending() throws Exception {
+        CheckpointStore store = store();
+        store.begin(ranges(100L, 200L), Types.BIGINT, true);
+        store.complete();
+        CheckpointStore loaded = reload();
+        assertTrue(loaded.isComplete());
+        assertTrue(loaded.getPendingRanges().isEmpty());
+    }
+
+    @Test
+    void roundTripsDecimalKeys() throws Exception {
+        BigDecimal first = new BigDecimal("1E+3");
+        BigDecimal second = new BigDecimal("2000.50");
+        List<KeyRange> ranges = ranges(first, second);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.DECIMAL, true);
+        store.batchCommitted(batch(ranges.get(1), 0, new BigDecimal("1500.25")));
+
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertEquals(0, first.compareTo((BigDecimal) pending.get(0).getUpperBound()));
+        assertEquals("1000", ((BigDecimal) pending.get(0).getUpperBound()).toPlainString());
+        assertArrayEquals(new Object[]{new BigDecimal("1500.25"), new BigDecimal("2000.50")}, pending.get(1).getParameters());
+    }
+
+    @Test
+    void roundTripsDateKeys() throws Exception {
+        Date first = Date.valueOf("2020-01-01");
+        Date second = Date.valueOf("2021-06-30");
+        List<KeyRange> ranges = ranges(first, second);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.DATE, true);
+        store.batchCommitted(batch(ranges.get(1), 0, Date.valueOf("2020-12-31")));
+
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertArrayEquals(new Object[]{first}, pending.get(0).getParameters());
+        assertArrayEquals(new Object[]{Date.valueOf("2020-12-31"), second}, pending.get(1).getParameters());
+        assertArrayEquals(new Object[]{second}, pending.get(2).getParameters());
+    }
+
+    @Test
+    void roundTripsTimestampKeysWithNanos() throws Exception {
+        Timestamp first = Timestamp.valueOf("2020-01-01 00:00:00");
+        Timestamp second = Timestamp.valueOf("2021-06-30 12:30:45.5");
+        Timestamp committed = Timestamp.valueOf("2021-01-01 08:15:00.123456789");
+        List<KeyRange> ranges = ranges(first, second);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.TIMESTAMP, true);
+        store.batchCommitted(batch(ranges.get(1), 0, committed));
+
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertArrayEquals(new Object[]{first}, pending.get(0).getParameters());
+        assertArrayEquals(new Object[]{committed, second}, pending.get(1).getParameters());
+    }
+
+    @Test
+    void roundTripsIntegerKeysAsLongs() throws Exception {
+        List<KeyRange> ranges = ranges(100, 200);
+        CheckpointStore store = store();
+        store.begin(ranges, Types.INTEGER, true);
+        store.batchCommitted(batch(ranges.get(2), 0, 250));
+        List<KeyRange> pending = reload().getPendingRanges();
+        assertArrayEquals(new Object[]{100L, 200L}, pending.get(1).getParameters());
+        assertArrayEquals(new Object[]{250L}, pending.get(2).getParameters());
+    }
+}
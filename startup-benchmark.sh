@@ -0,0 +1,105 @@
+cd $(dirname $0)
+
+USAGE_STR="Data Migrator startup benchmark
+Compares the time from JVM start to the first rows written, with and without the fast-start AOT context and class
+data sharing archive. Build with: mvn -P fast-start package
+Usage:
+startup-benchmark.sh --runs RUNS --dir FAST_START_DIR
+startup-benchmark.sh --help
+
+Options:
+--help Print Usage
+--runs No. of runs of each mode [OPTIONAL]
+--dir Directory of db-migrator.jar, lib and db-migrator.jsa [OPTIONAL]
+"
+
+print_usage() {
+  echo "$USAGE_STR"
+}
+
+ARGUMENT_LIST=(
+  "runs:"
+  "dir:"
+  "help"
+)
+
+opts=$(getopt --longoptions "$(printf "%s," "${ARGUMENT_LIST[@]}")" --name "$(basename "$0")" --options "" -- "$@")
+
+if [[ $? -ne 0 ]]; then
+  exit 1
+fi
+
+eval set -- "$opts"
+
+while [ : ]; do
+  case "$1" in
+  --runs)
+    RUNS=$2
+    shift 2
+    ;;
+  --dir)
+    DIR=$2
+    shift 2
+    ;;
+  --)
+    shift
+    break
+    ;;
+  --help)
+    print_usage
+    exit 0
+    ;;
+  esac
+done
+
+if [[ -z $RUNS ]]; then
+  RUNS=5
+fi
+
+if [[ -z $DIR ]]; then
+  DIR=target/fast-start
+fi
+
+if [[ ! -f $DIR/db-migrator.jar || ! -f $DIR/db-migrator.jsa ]]; then
+  echo "db-migrator.jar or db-migrator.jsa not found in $DIR, build with: mvn -P fast-start package"
+  exit 1
+fi
+
+TRAINING_URL="jdbc:h2:mem:training;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM '$(pwd)/src/fast-start/training.sql'"
+APP_ARGS=(
+  "--src-url=$TRAINING_URL"
+  "--dest-url=$TRAINING_URL"
+  "--source.driver-class-name=org.h2.Driver"
+  "--destination.driver-class-name=org.h2.Driver"
+  "--src-schema=PUBLIC"
+  "--dest-schema=PUBLIC"
+  "--src-table=TRAIN_SOURCE"
+  "--dest-table=TRAIN_DEST"
+  "--batch-size=1000"
+  "--checkpoint=false"
+  "--metadata-cache-dir="
+  "--banner=false"
+)
+
+# Runs the migration once and prints the logged time to first row in MS
+run_once() {
+  local LOG_FILE_NAME="startup_benchmark_$1_$2"
+  shift 2
+  (cd "$DIR" && java "$@" -Dspring.devtools.restart.enabled=false -Dlogfilename=$LOG_FILE_NAME -jar db-migrator.jar "${APP_ARGS[@]}" >/dev/null 2>&1)
+  sed -n 's/.*TIME TO FIRST ROW \([0-9]*\) MS.*/\1/p' "$DIR/logs/$LOG_FILE_NAME.log" | head -1
+}
+
+# Runs a mode RUNS times and prints the median time to first row
+bench() {
+  local MODE=$1
+  shift
+  local TIMES=()
+  for ((i = 1; i <= RUNS; i++)); do
+    TIMES+=("$(run_once "$MODE" "$i" "$@")")
+  done
+  local MEDIAN=$(printf "%s\n" "${TIMES[@]}" | sort -n | awk '{a[NR]=$1} END {print a[int((NR+1)/2)]}')
+  echo "$MODE: TIME TO FIRST ROW ${MEDIAN} MS (median of $RUNS runs: ${TIMES[*]})"
+}
+
+bench "baseline" -Xshare:auto
+bench "fast-start" -XX:SharedArchiveFile=db-migrator.jsa -Dspring.aot.enabled=true